@@ -39,5 +39,13 @@ public class Classes {
 
     public static final String REQUEST_CONFIG = REQUEST_PACKAGE + ".RequestConfig";
 
+    public static final String CACHE_POLICY = REQUEST_PACKAGE + ".cache.CachePolicy";
+
+    public static final String BATCH_POLICY = REQUEST_PACKAGE + ".batch.BatchPolicy";
+
+    public static final String RETRY_POLICY = REQUEST_PACKAGE + ".retry.RetryPolicy";
+
+    public static final String HEDGE_POLICY = REQUEST_PACKAGE + ".hedge.HedgePolicy";
+
     public static final String VOID = void.class.getCanonicalName();
 }
@@ -4,12 +4,21 @@ import com.google.auto.service.AutoService;
 import com.google.common.collect.Sets;
 import com.raizlabs.android.broker.compiler.handler.Handler;
 import com.raizlabs.android.broker.compiler.handler.RestServiceHandler;
+import com.raizlabs.android.broker.core.Batch;
 import com.raizlabs.android.broker.core.Body;
+import com.raizlabs.android.broker.core.Cache;
+import com.raizlabs.android.broker.core.Deadline;
+import com.raizlabs.android.broker.core.DeltaSync;
 import com.raizlabs.android.broker.core.Endpoint;
+import com.raizlabs.android.broker.core.Lane;
+import com.raizlabs.android.broker.core.SwitchLatest;
+import com.raizlabs.android.broker.core.Timeout;
 import com.raizlabs.android.broker.core.Header;
+import com.raizlabs.android.broker.core.Hedge;
 import com.raizlabs.android.broker.core.Method;
 import com.raizlabs.android.broker.core.Param;
 import com.raizlabs.android.broker.core.RestService;
+import com.raizlabs.android.broker.core.Retry;
 import com.squareup.javawriter.JavaWriter;
 
 import java.io.IOException;
@@ -44,7 +53,10 @@ public class RequestProcessor extends AbstractProcessor {
     public Set<String> getSupportedAnnotationTypes() {
         return Sets.newHashSet(Method.class.getName(),
                 RestService.class.getName(), Header.class.getName(),
-                Body.class.getName(), Param.class.getName(), Endpoint.class.getName());
+                Body.class.getName(), Param.class.getName(), Endpoint.class.getName(),
+                Cache.class.getName(), DeltaSync.class.getName(), Batch.class.getName(),
+                Lane.class.getName(), SwitchLatest.class.getName(), Retry.class.getName(),
+                Hedge.class.getName(), Timeout.class.getName(), Deadline.class.getName());
     }
 
     @Override
@@ -1,9 +1,11 @@
 package com.raizlabs.android.broker.compiler.builder;
 
 import com.raizlabs.android.broker.compiler.Classes;
+import com.raizlabs.android.broker.core.Batch;
 import com.raizlabs.android.broker.core.Param;
 import com.raizlabs.android.broker.core.Part;
 import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.core.Retry;
 
 import java.util.Map;
 import java.util.Set;
@@ -137,4 +139,55 @@ public class RequestStatementBuilder  {
     public RequestStatementBuilder appendPriority(Priority priority) {
         return append(String.format(".priority(Priority.%1s)", priority.name()));
     }
+
+    public RequestStatementBuilder appendCachePolicy(long timeToLive, long staleWhileRevalidate) {
+        return append(String.format(".cachePolicy(new %1s(%dL, %dL))", Classes.CACHE_POLICY,
+                timeToLive, staleWhileRevalidate));
+    }
+
+    public RequestStatementBuilder appendDeltaSync() {
+        return append(".deltaSync(true)");
+    }
+
+    public RequestStatementBuilder appendBatch(Batch batch, String keyParam) {
+        String url = batch.url();
+        if (!url.startsWith("/")) {
+            url = "/" + url;
+        }
+        return append(String.format(".batch(new %1s(\"%s\", \"%s\", \"%s\", %dL, %d), String.valueOf(%s))",
+                Classes.BATCH_POLICY, url, batch.param(), batch.idField(), batch.window(), batch.maxSize(), keyParam));
+    }
+
+    public RequestStatementBuilder appendLane(String laneParam) {
+        return append(String.format(".lane(String.valueOf(%s))", laneParam));
+    }
+
+    public RequestStatementBuilder appendSwitchLatest(String group, long debounce) {
+        return append(String.format(".switchLatest(\"%s\", %dL)", group, debounce));
+    }
+
+    public RequestStatementBuilder appendRetryPolicy(Retry retry) {
+        return append(String.format(".retryPolicy(new %1s(%d, %dL, %dL, %b))", Classes.RETRY_POLICY,
+                retry.maxAttempts(), retry.baseDelay(), retry.maxDelay(), retry.idempotent()));
+    }
+
+    public RequestStatementBuilder appendHedgePolicy(long delay) {
+        return append(String.format(".hedgePolicy(new %1s(%dL))", Classes.HEDGE_POLICY, delay));
+    }
+
+    public RequestStatementBuilder appendTimeout(long timeout) {
+        return append(String.format(".timeout(%dL)", timeout));
+    }
+
+    public RequestStatementBuilder appendDeadline(long deadline) {
+        return append(String.format(".deadline(%dL)", deadline));
+    }
+
+    public RequestStatementBuilder appendService(String service) {
+        return append(String.format(".service(\"%s\")", service));
+    }
+
+    public RequestStatementBuilder appendUrlTemplate(String url) {
+        return append(String.format(".urlTemplate(\"%s\")", url));
+    }
 }
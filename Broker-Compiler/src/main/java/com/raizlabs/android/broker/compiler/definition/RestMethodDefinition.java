@@ -9,14 +9,23 @@ import com.raizlabs.android.broker.compiler.RestParameterMatcher;
 import com.raizlabs.android.broker.compiler.WriterUtils;
 import com.raizlabs.android.broker.compiler.builder.RequestStatementBuilder;
 import com.raizlabs.android.broker.core.Body;
+import com.raizlabs.android.broker.core.Batch;
+import com.raizlabs.android.broker.core.Cache;
+import com.raizlabs.android.broker.core.Deadline;
+import com.raizlabs.android.broker.core.DeltaSync;
 import com.raizlabs.android.broker.core.Endpoint;
 import com.raizlabs.android.broker.core.Header;
+import com.raizlabs.android.broker.core.Hedge;
+import com.raizlabs.android.broker.core.Lane;
 import com.raizlabs.android.broker.core.Metadata;
 import com.raizlabs.android.broker.core.Method;
 import com.raizlabs.android.broker.core.Param;
 import com.raizlabs.android.broker.core.Part;
 import com.raizlabs.android.broker.core.Priority;
 import com.raizlabs.android.broker.core.ResponseHandler;
+import com.raizlabs.android.broker.core.Retry;
+import com.raizlabs.android.broker.core.SwitchLatest;
+import com.raizlabs.android.broker.core.Timeout;
 import com.squareup.javawriter.JavaWriter;
 
 import java.io.IOException;
@@ -26,6 +35,7 @@ import java.util.Map;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
@@ -51,6 +61,11 @@ public class RestMethodDefinition implements Definition {
 
     String url;
 
+    /**
+     * The url before the endpoints are filled in
+     */
+    String urlTemplate;
+
     int methodType;
 
     final Map<String, String> headers = Maps.newLinkedHashMap();
@@ -82,6 +97,36 @@ public class RestMethodDefinition implements Definition {
 
     Priority priority;
 
+    Cache cache;
+
+    boolean deltaSync;
+
+    Batch batch;
+
+    String batchKeyParam;
+
+    /**
+     * The name of the variable that is the lane key
+     */
+    String laneParam;
+
+    SwitchLatest switchLatest;
+
+    String switchLatestGroup;
+
+    Retry retry;
+
+    Hedge hedge;
+
+    Timeout timeout;
+
+    Deadline deadline;
+
+    /**
+     * The qualified name of the interface this method is in
+     */
+    String serviceName;
+
     public RestMethodDefinition(RequestManager requestManager, Element inElement) {
         this.requestManager = requestManager;
         method = inElement.getAnnotation(Method.class);
@@ -110,6 +155,7 @@ public class RestMethodDefinition implements Definition {
         }
 
         elementName = element.getSimpleName().toString();
+        serviceName = ((TypeElement) element.getEnclosingElement()).getQualifiedName().toString();
 
         url = method.url();
         priority = method.priority();
@@ -137,6 +183,20 @@ public class RestMethodDefinition implements Definition {
         }
 
 
+        cache = inElement.getAnnotation(Cache.class);
+        deltaSync = inElement.getAnnotation(DeltaSync.class) != null;
+        batch = inElement.getAnnotation(Batch.class);
+        switchLatest = inElement.getAnnotation(SwitchLatest.class);
+        if (switchLatest != null) {
+            switchLatestGroup = switchLatest.group().isEmpty()
+                    ? element.getEnclosingElement().getSimpleName() + "." + elementName : switchLatest.group();
+        }
+
+        retry = inElement.getAnnotation(Retry.class);
+        hedge = inElement.getAnnotation(Hedge.class);
+        timeout = inElement.getAnnotation(Timeout.class);
+        deadline = inElement.getAnnotation(Deadline.class);
+
         if(inElement.getAnnotation(ResponseHandler.class) != null) {
             responseHandler = RequestUtils.getResponseHandler(inElement.getAnnotation(ResponseHandler.class));
         }
@@ -162,6 +222,14 @@ public class RestMethodDefinition implements Definition {
             boolean isCallback = RequestUtils.implementsClassSuper(types, callbackType, variableElement)
                     || (scrubbed != null && RequestUtils.implementsClass(requestManager.getProcessingEnvironment(), Classes.REQUEST_CALLBACK, scrubbed));
 
+            // a lane key can also be an endpoint or param
+            if (variableElement.getAnnotation(Lane.class) != null) {
+                if (laneParam != null) {
+                    requestManager.logError("Duplicate Lane found for method %1s.", elementName);
+                }
+                laneParam = name;
+            }
+
             // prioritize callbacks
             if(isCallback) {
                 if(callbackParam != null) {
@@ -192,6 +260,7 @@ public class RestMethodDefinition implements Definition {
             }
         }
 
+        urlTemplate = url;
         String newUrl = url;
         if (replaceParams.size() == endpoints.size()) {
             for (int i = 0; i < replaceParams.size(); i++) {
@@ -204,6 +273,18 @@ public class RestMethodDefinition implements Definition {
         }
 
         url = newUrl;
+
+        if (batch != null) {
+            if (!batch.key().isEmpty()) {
+                for (VariableElement param : params) {
+                    if (param.getSimpleName().toString().equals(batch.key())) {
+                        batchKeyParam = batch.key();
+                    }
+                }
+            } else if (endpoints.size() == 1) {
+                batchKeyParam = endpoints.keySet().iterator().next();
+            }
+        }
     }
 
     @Override
@@ -261,6 +342,45 @@ public class RestMethodDefinition implements Definition {
                         builder.appendEmpty();
                         builder.appendPriority(priority);
 
+                        if (cache != null) {
+                            builder.appendEmpty().appendCachePolicy(cache.timeToLive(), cache.staleWhileRevalidate());
+                        }
+
+                        if (deltaSync) {
+                            builder.appendEmpty().appendDeltaSync();
+                        }
+
+                        if (batch != null && batchKeyParam != null) {
+                            builder.appendEmpty().appendBatch(batch, batchKeyParam);
+                        }
+
+                        if (laneParam != null) {
+                            builder.appendEmpty().appendLane(laneParam);
+                        }
+
+                        if (switchLatest != null) {
+                            builder.appendEmpty().appendSwitchLatest(switchLatestGroup, switchLatest.debounce());
+                        }
+
+                        if (retry != null) {
+                            builder.appendEmpty().appendRetryPolicy(retry);
+                        }
+
+                        if (hedge != null) {
+                            builder.appendEmpty().appendHedgePolicy(hedge.delay());
+                        }
+
+                        if (timeout != null) {
+                            builder.appendEmpty().appendTimeout(timeout.value());
+                        }
+
+                        if (deadline != null) {
+                            builder.appendEmpty().appendDeadline(deadline.value());
+                        }
+
+                        builder.appendEmpty().appendService(serviceName);
+                        builder.appendEmpty().appendUrlTemplate(urlTemplate);
+
                         if(!returnsRequestBuilder) {
                             builder.appendBuild(requestCallbackName);
                         }
@@ -1,6 +1,7 @@
 package com.raizlabs.android.broker.compiler.definition;
 
 import com.raizlabs.android.broker.compiler.RequestManager;
+import com.raizlabs.android.broker.core.Method;
 
 /**
  * Description: Validates RestMethod data to ensure proper usage
@@ -33,6 +34,88 @@ public class RestMethodValidator implements Validator<RestMethodDefinition> {
             success = false;
         }
 
+        if (restMethodDefinition.cache != null) {
+            if (restMethodDefinition.methodType != Method.GET && restMethodDefinition.methodType != Method.HEAD) {
+                requestManager.logError("RestMethod %1s can only be cached if it is a GET or HEAD",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+
+            if (restMethodDefinition.cache.timeToLive() < 0 || restMethodDefinition.cache.staleWhileRevalidate() < 0) {
+                requestManager.logError("RestMethod %1s must not have a negative Cache duration",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+        }
+
+        if (restMethodDefinition.deltaSync && restMethodDefinition.methodType != Method.GET) {
+            requestManager.logError("RestMethod %1s can only use DeltaSync if it is a GET",
+                    restMethodDefinition.elementName);
+            success = false;
+        }
+
+        if (restMethodDefinition.batch != null) {
+            if (restMethodDefinition.methodType != Method.GET) {
+                requestManager.logError("RestMethod %1s can only be batched if it is a GET",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+
+            if (restMethodDefinition.batchKeyParam == null) {
+                requestManager.logError("RestMethod %1s must name its Batch key parameter, or have exactly one Endpoint",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+
+            if (restMethodDefinition.batch.url().trim().isEmpty() || restMethodDefinition.batch.window() < 0
+                    || restMethodDefinition.batch.maxSize() <= 0) {
+                requestManager.logError("RestMethod %1s must have a Batch url, a non-negative window and a positive maxSize",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+        }
+
+        if (restMethodDefinition.switchLatest != null && restMethodDefinition.switchLatest.debounce() < 0) {
+            requestManager.logError("RestMethod %1s must not have a negative SwitchLatest debounce",
+                    restMethodDefinition.elementName);
+            success = false;
+        }
+
+        if (restMethodDefinition.retry != null && (restMethodDefinition.retry.maxAttempts() < 1
+                || restMethodDefinition.retry.baseDelay() < 0
+                || restMethodDefinition.retry.maxDelay() < restMethodDefinition.retry.baseDelay())) {
+            requestManager.logError("RestMethod %1s must have a Retry of at least 1 attempt and a maxDelay of at least its baseDelay",
+                    restMethodDefinition.elementName);
+            success = false;
+        }
+
+        if (restMethodDefinition.hedge != null) {
+            if (restMethodDefinition.methodType != Method.GET && restMethodDefinition.methodType != Method.HEAD
+                    && restMethodDefinition.methodType != Method.DELETE && restMethodDefinition.methodType != Method.OPTIONS) {
+                requestManager.logError("RestMethod %1s can only be hedged if it is a GET, HEAD, DELETE or OPTIONS",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+
+            if (restMethodDefinition.hedge.delay() < 0) {
+                requestManager.logError("RestMethod %1s must not have a negative Hedge delay",
+                        restMethodDefinition.elementName);
+                success = false;
+            }
+        }
+
+        if (restMethodDefinition.timeout != null && restMethodDefinition.timeout.value() <= 0) {
+            requestManager.logError("RestMethod %1s must have a Timeout of more than 0",
+                    restMethodDefinition.elementName);
+            success = false;
+        }
+
+        if (restMethodDefinition.deadline != null && restMethodDefinition.deadline.value() <= 0) {
+            requestManager.logError("RestMethod %1s must have a Deadline of more than 0",
+                    restMethodDefinition.elementName);
+            success = false;
+        }
+
         return success;
     }
 }
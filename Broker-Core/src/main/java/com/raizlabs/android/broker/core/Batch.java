@@ -0,0 +1,49 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Batches calls to a per-item {@link Method#GET} {@link com.raizlabs.android.broker.core.Method} into
+ * one request to a bulk endpoint when they run on a KeyBatchingRequestExecutor. Calls made within the {@link #window()}
+ * are sent together, with the keys joined by commas in the {@link #param()}, and the response is split back up
+ * so every call receives only its own item.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Batch {
+
+    /**
+     * @return The url of the bulk endpoint, relative to the base url of the service.
+     */
+    String url();
+
+    /**
+     * @return The name of the method parameter that holds the key of the item. Can be left empty if the method has
+     * exactly one {@link com.raizlabs.android.broker.core.Endpoint}.
+     */
+    String key() default "";
+
+    /**
+     * @return The url param of the bulk endpoint that the keys are sent in.
+     */
+    String param() default "ids";
+
+    /**
+     * @return The field that holds the key of each item when the bulk endpoint returns a JSON array. Leave it empty if
+     * the bulk endpoint returns a JSON object with a member for each key.
+     */
+    String idField() default "";
+
+    /**
+     * @return How long, in milliseconds, to wait for more calls after the first one.
+     */
+    long window() default 10;
+
+    /**
+     * @return The most keys to send in one request. Reaching it sends the batch right away.
+     */
+    int maxSize() default 50;
+}
@@ -0,0 +1,27 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Allows the handled response of a {@link com.raizlabs.android.broker.core.Method} to be cached
+ * in memory when the request runs on a CachingRequestExecutor. Only applies to {@link Method#GET}
+ * and {@link Method#HEAD} methods.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Cache {
+
+    /**
+     * @return How long, in milliseconds, the cached response is served without going to the network.
+     */
+    long timeToLive();
+
+    /**
+     * @return How long, in milliseconds, past the {@link #timeToLive()} the cached response is still served
+     * while a fresh one is fetched in the background.
+     */
+    long staleWhileRevalidate() default 0;
+}
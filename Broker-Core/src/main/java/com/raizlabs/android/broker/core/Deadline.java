@@ -0,0 +1,20 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Gives a {@link com.raizlabs.android.broker.core.Method}'s request a deadline, counted from when the
+ * request is built. Once it passes, the request fails instead of waiting in a queue, being retried or being handled.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Deadline {
+
+    /**
+     * @return How long, in milliseconds, the response stays useful.
+     */
+    long value();
+}
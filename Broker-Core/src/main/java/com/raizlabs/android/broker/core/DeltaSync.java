@@ -0,0 +1,15 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Lets a {@link Method#GET} {@link com.raizlabs.android.broker.core.Method} receive a JSON Patch
+ * against the version of the document it already has, when the request runs on a DeltaSyncRequestExecutor.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface DeltaSync {
+}
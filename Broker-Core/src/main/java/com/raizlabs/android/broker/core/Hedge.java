@@ -0,0 +1,21 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Lets a HedgingRequestExecutor send a second copy of a {@link com.raizlabs.android.broker.core.Method}'s
+ * request when the first is slow, and use whichever answers first. Only applies to idempotent methods without a body.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Hedge {
+
+    /**
+     * @return How long, in milliseconds, to wait for a response before sending the copy. 0 waits for the percentile of
+     * latency the executor observed for the endpoint.
+     */
+    long delay() default 0;
+}
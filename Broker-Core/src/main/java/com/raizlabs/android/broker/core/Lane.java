@@ -0,0 +1,17 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Marks a parameter in a {@link com.raizlabs.android.broker.core.RestService} method as the key of the
+ * lane the request runs in. Requests with the same key run one at a time, in the order they were made, when they
+ * run on a SerialLaneRequestExecutor. The parameter may also be an {@link com.raizlabs.android.broker.core.Endpoint}
+ * or {@link com.raizlabs.android.broker.core.Param}.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Lane {
+}
@@ -0,0 +1,37 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Sets how the requests of a {@link com.raizlabs.android.broker.core.Method} are retried when they run on
+ * a RetryRequestExecutor, in place of its default policy. Only failures without a response, 408, 429 and 5xx responses
+ * are retried, and only for idempotent methods unless {@link #idempotent()} is set.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Retry {
+
+    /**
+     * @return The most times the request is sent, including the first. 1 turns retries off.
+     */
+    int maxAttempts() default 3;
+
+    /**
+     * @return The most, in milliseconds, to wait before the first retry. It doubles with each retry.
+     */
+    long baseDelay() default 100;
+
+    /**
+     * @return The most, in milliseconds, to wait before any retry.
+     */
+    long maxDelay() default 10000;
+
+    /**
+     * @return True if the request is safe to send twice even though its method is not idempotent, such as a
+     * {@link Method#POST} with an idempotency key.
+     */
+    boolean idempotent() default false;
+}
@@ -0,0 +1,27 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Puts the requests of a {@link com.raizlabs.android.broker.core.Method} in a switch-latest group when
+ * they run on a SwitchLatestRequestExecutor. Starting a request in the group cancels the one before it, so only the
+ * latest, such as the search for the last keystroke, is handled and called back.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface SwitchLatest {
+
+    /**
+     * @return The name of the group. Methods with the same group cancel each other. Defaults to a group of its own
+     * for this method.
+     */
+    String group() default "";
+
+    /**
+     * @return How long, in milliseconds, to wait for a newer request before sending one.
+     */
+    long debounce() default 0;
+}
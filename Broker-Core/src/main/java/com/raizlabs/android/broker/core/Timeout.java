@@ -0,0 +1,20 @@
+package com.raizlabs.android.broker.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Description: Gives a {@link com.raizlabs.android.broker.core.Method}'s request a fixed socket timeout. It takes the
+ * place of the executor's default and of the timeout an AdaptiveTimeoutRequestExecutor would pick for the endpoint.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface Timeout {
+
+    /**
+     * @return How long, in milliseconds, to wait on the socket.
+     */
+    long value();
+}
@@ -0,0 +1,120 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.executor.AdaptiveConcurrencyRequestExecutor;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.AdaptiveConcurrencyRequestExecutor} grows its
+ * limit while latency holds, and shrinks it when latency rises or requests fail.
+ */
+public class AdaptiveConcurrencyRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    static final String HOST = "www.google.com";
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    private long mNow = 1000000;
+
+    private final AdaptiveConcurrencyRequestExecutor mExecutor
+            = new AdaptiveConcurrencyRequestExecutor(mHoldingExecutor, 4, 1, 20) {
+        @Override
+        protected long now() {
+            return mNow;
+        }
+    };
+
+    public void testQueuesOverLimit() {
+        for (int i = 0; i < 6; i++) {
+            newRequest().execute();
+        }
+        assertEquals(4, mHoldingExecutor.mRequests.size());
+        assertEquals(4, mExecutor.getInFlight(HOST));
+        assertEquals(2, mExecutor.getQueueDepth(HOST));
+        assertEquals(4, mExecutor.getLimit("other.example.com"));
+    }
+
+    public void testLimitGrowsAndShrinksWithLatency() {
+        runUnderLoad(50, 100);
+        int grown = mExecutor.getLimit(HOST);
+        assertTrue(grown > 4);
+
+        runUnderLoad(20, 1000);
+        assertTrue(mExecutor.getLimit(HOST) < grown);
+    }
+
+    public void testErrorsBackOff() {
+        for (int i = 0; i < 4; i++) {
+            newRequest().execute();
+        }
+        mNow += 100;
+        for (int i = 0; i < 4; i++) {
+            mHoldingExecutor.fail(i);
+        }
+        assertEquals(2, mExecutor.getLimit(HOST));
+
+        // Cancelled requests free their slot without moving the limit
+        newRequest().execute();
+        mExecutor.cancelRequest(null, mHoldingExecutor.mRequests.get(4));
+        assertEquals(0, mExecutor.getInFlight(HOST));
+        assertEquals(2, mExecutor.getLimit(HOST));
+    }
+
+    public void testIdleKeysForgotten() {
+        runUnderLoad(50, 100);
+        int grown = mExecutor.getLimit(HOST);
+        for (int i = 0; i < 100; i++) {
+            newRequest("http://host" + i + ".example.com/").execute();
+            mHoldingExecutor.respond(mHoldingExecutor.mRequests.size() - 1);
+        }
+        // Recently used keys are kept, so they do not lose what they learned
+        assertEquals(grown, mExecutor.getLimit(HOST));
+        assertTrue(mExecutor.getLimitCount() > 100);
+
+        // Idle keys are forgotten once enough new keys come in
+        mNow += AdaptiveConcurrencyRequestExecutor.IDLE_TIMEOUT;
+        for (int i = 100; i < 130; i++) {
+            newRequest("http://host" + i + ".example.com/").execute();
+        }
+        assertTrue(mExecutor.getLimitCount() < 40);
+
+        // A key with requests in flight is never forgotten
+        assertEquals(grown, mExecutor.getLimit(HOST));
+    }
+
+    /**
+     * Keeps the limit full of requests and answers each after the latency.
+     */
+    private void runUnderLoad(int count, long latency) {
+        for (int i = 0; i < count; i++) {
+            while (mExecutor.getQueueDepth(HOST) == 0) {
+                newRequest().execute();
+            }
+            mNow += latency;
+            mHoldingExecutor.respond(mHoldingExecutor.mRequests.size() - mExecutor.getInFlight(HOST));
+        }
+    }
+
+    private Request<String> newRequest() {
+        return newRequest(URL);
+    }
+
+    private Request<String> newRequest(String url) {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(url))
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                    }
+                });
+    }
+}
@@ -0,0 +1,119 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.timeout.AdaptiveTimeoutRequestExecutor;
+import com.raizlabs.android.broker.timeout.LatencySketch;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.timeout.LatencySketch} stays within its accuracy and
+ * that the {@link com.raizlabs.android.broker.timeout.AdaptiveTimeoutRequestExecutor} follows the observed latency of
+ * each endpoint within its bounds.
+ */
+public class AdaptiveTimeoutRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private long mNow;
+
+    public void testSketchAccuracy() {
+        LatencySketch sketch = new LatencySketch();
+        assertEquals(-1, sketch.getQuantile(0.99));
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+        assertEquals(10000, sketch.getCount());
+        assertEquals(9900, sketch.getQuantile(0.99), 9900 * LatencySketch.RELATIVE_ACCURACY);
+        assertEquals(5000, sketch.getQuantile(0.5), 5000 * LatencySketch.RELATIVE_ACCURACY);
+        assertEquals(1, sketch.getQuantile(0));
+
+        sketch.clear();
+        sketch.add(LatencySketch.MAX_LATENCY * 2);
+        assertEquals(LatencySketch.MAX_LATENCY, sketch.getQuantile(1), LatencySketch.MAX_LATENCY * LatencySketch.RELATIVE_ACCURACY);
+    }
+
+    public void testTimeoutFollowsLatency() {
+        AdaptiveTimeoutRequestExecutor executor = newExecutor();
+        String key = Method.GET + " " + URL;
+        assertEquals(15000, executor.getTimeout(key));
+
+        Request first = null;
+        for (int i = 0; i < AdaptiveTimeoutRequestExecutor.MIN_SAMPLES; i++) {
+            Request request = newRequest(executor);
+            request.execute();
+            assertEquals(15000, request.getTimeout());
+            mNow += 1000;
+            mHolding.respond(request);
+            if (first == null) {
+                first = request;
+            }
+        }
+        assertEquals(3000, executor.getTimeout(key), 3000 * LatencySketch.RELATIVE_ACCURACY);
+
+        // The adapted timeout is picked again when a request runs again
+        assertFalse(first.hasFixedTimeout());
+        first.execute();
+        assertEquals(executor.getTimeout(key), first.getTimeout());
+        mNow += 1000;
+        mHolding.respond(first);
+
+        // Fast responses bring it down to the min
+        for (int i = 0; i < 2 * AdaptiveTimeoutRequestExecutor.WINDOW; i++) {
+            Request request = newRequest(executor);
+            request.execute();
+            mNow += 10;
+            mHolding.respond(request);
+        }
+        assertEquals(1000, executor.getTimeout(key));
+
+        // Requests that time out push it back up
+        for (int i = 0; i < 20; i++) {
+            Request request = newRequest(executor);
+            request.execute();
+            mNow += request.getTimeout();
+            mHolding.fail(request, new SocketTimeoutException());
+        }
+        assertEquals(15000, executor.getTimeout(key));
+    }
+
+    public void testOwnTimeoutIsKept() {
+        AdaptiveTimeoutRequestExecutor executor = newExecutor();
+        Request<String> request = new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL))
+                .timeout(60000)
+                .build();
+        request.execute();
+        assertEquals(60000, request.getTimeout());
+        assertTrue(request.hasFixedTimeout());
+
+        // Requests built from a method are keyed on their url template
+        Request post = new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL, Method.POST))
+                .urlTemplate("/albums")
+                .build();
+        assertEquals(Method.POST + " www.google.com/albums", RequestUtils.getEndpointKey(post));
+    }
+
+    private AdaptiveTimeoutRequestExecutor newExecutor() {
+        return new AdaptiveTimeoutRequestExecutor(mHolding) {
+            @Override
+            protected long now() {
+                return mNow;
+            }
+        };
+    }
+
+    private Request<String> newRequest(AdaptiveTimeoutRequestExecutor executor) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL))
+                .build();
+    }
+}
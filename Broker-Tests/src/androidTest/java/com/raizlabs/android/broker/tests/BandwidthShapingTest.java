@@ -0,0 +1,126 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.shaping.BandwidthShaper;
+import com.raizlabs.android.broker.shaping.BandwidthShapingRequestExecutor;
+import com.raizlabs.android.broker.shaping.ShapedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.shaping.BandwidthShaper} holds background transfers
+ * to its rate, follows rate changes, and yields to foreground requests without ever stopping them.
+ */
+public class BandwidthShapingTest extends AndroidTestCase {
+
+    public void testRateLimitsReads() throws IOException {
+        BandwidthShaper shaper = new BandwidthShaper(100000);
+        long start = System.nanoTime();
+        readFully(shaper.shape(new ByteArrayInputStream(new byte[50000])));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("Read in " + elapsed + "ms", elapsed >= 400 && elapsed < 2000);
+
+        // Lifting the limit at runtime applies to the next reads
+        shaper.setRate(0);
+        start = System.nanoTime();
+        readFully(shaper.shape(new ByteArrayInputStream(new byte[1000000])));
+        assertTrue((System.nanoTime() - start) / 1000000 < 400);
+    }
+
+    public void testYieldsToForeground() throws IOException {
+        BandwidthShaper shaper = new BandwidthShaper(1000000, 0);
+        shaper.foregroundStarted();
+
+        // A yield rate of 0 slows background transfers to a trickle, but they still finish
+        long start = System.nanoTime();
+        readFully(shaper.shape(new ByteArrayInputStream(new byte[8192])));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("Read in " + elapsed + "ms", elapsed >= 400 && elapsed < 4000);
+
+        shaper.foregroundFinished();
+        start = System.nanoTime();
+        readFully(shaper.shape(new ByteArrayInputStream(new byte[8192])));
+        assertTrue((System.nanoTime() - start) / 1000000 < 400);
+    }
+
+    public void testQueuedForegroundDoesNotYield() {
+        BandwidthShaper shaper = new BandwidthShaper(1000000, 0);
+        HoldingRequestExecutor holding = new HoldingRequestExecutor();
+        BandwidthShapingRequestExecutor executor = new BandwidthShapingRequestExecutor(holding, shaper);
+
+        // The backend counts it once it is on the wire, not while it waits behind background transfers
+        newRequest(executor, Priority.NORMAL).execute();
+        assertEquals(0, shaper.getForegroundCount());
+    }
+
+    public void testMoreBackgroundTransfersThanThreads() throws InterruptedException {
+        final BandwidthShaper shaper = new BandwidthShaper(1000000, 0);
+
+        // As many transfers as volley has network dispatchers, and more, while a foreground request is sent
+        shaper.foregroundStarted();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        readFully(shaper.shape(new ByteArrayInputStream(new byte[1024])));
+                        done.countDown();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, shaper.getForegroundCount());
+    }
+
+    public void testBodiesShapedOnlyWhenAsked() {
+        BandwidthShaper shaper = new BandwidthShaper(1000000);
+        HoldingRequestExecutor holding = new HoldingRequestExecutor();
+
+        // Backends such as volley's ShapedHttpClientStack shape the body themselves
+        Request<String> request = new Request.Builder<String>(new BandwidthShapingRequestExecutor(holding, shaper))
+                .provider(new SimpleUrlProvider("http://www.google.com/", Method.POST))
+                .priority(Priority.LOW).body("upload").build();
+        request.execute();
+        assertFalse(request.getBody() instanceof ShapedInputStream);
+
+        request = new Request.Builder<String>(new BandwidthShapingRequestExecutor(holding, shaper, true))
+                .provider(new SimpleUrlProvider("http://www.google.com/", Method.POST))
+                .priority(Priority.LOW).body("upload").build();
+        request.execute();
+        assertTrue(request.getBody() instanceof ShapedInputStream);
+    }
+
+    private static void readFully(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (inputStream.read(buffer) != -1) {
+        }
+    }
+
+    private Request<String> newRequest(BandwidthShapingRequestExecutor executor, Priority priority) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/"))
+                .priority(priority)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                    }
+                });
+    }
+}
@@ -0,0 +1,109 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.BoundedRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.BoundedRequestExecutor} holds the delegate
+ * to its limits, and rejects, blocks or sheds the requests that do not fit.
+ */
+public class BoundedRequestExecutorTest extends AndroidTestCase {
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private final List<Throwable> mErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    public void testRejectsOverLimits() {
+        BoundedRequestExecutor executor = new BoundedRequestExecutor(mHolding, 2, 100, BoundedRequestExecutor.Policy.REJECT);
+        newRequest(executor, Priority.NORMAL).body(new String(new byte[60])).build(newCallback()).execute();
+        newRequest(executor, Priority.NORMAL).body(new String(new byte[60])).build(newCallback()).execute();
+        assertEquals(1, mHolding.mRequests.size());
+        assertEquals(60, executor.getAdmittedBytes());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof RejectedExecutionException);
+
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        assertEquals(2, mHolding.mRequests.size());
+        assertEquals(2, mErrors.size());
+
+        // A finished request frees its room
+        mHolding.respond(0);
+        assertEquals(0, executor.getAdmittedBytes());
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        assertEquals(3, mHolding.mRequests.size());
+        assertEquals(2, executor.getAdmittedCount());
+    }
+
+    public void testBlocksUntilRoom() {
+        BoundedRequestExecutor executor = new BoundedRequestExecutor(mHolding, 1, 100,
+                BoundedRequestExecutor.Policy.BLOCK, 2000);
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                mHolding.respond(0);
+            }
+        }).start();
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        assertEquals(2, mHolding.mRequests.size());
+        assertTrue(mErrors.isEmpty());
+
+        executor = new BoundedRequestExecutor(new HoldingRequestExecutor(), 1, 100, BoundedRequestExecutor.Policy.BLOCK, 50);
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        assertEquals(1, mErrors.size());
+    }
+
+    public void testDropsLowestPriority() {
+        BoundedRequestExecutor executor = new BoundedRequestExecutor(mHolding, 2, 100,
+                BoundedRequestExecutor.Policy.DROP_LOWEST);
+        newRequest(executor, Priority.NORMAL).build(newCallback()).execute();
+        newRequest(executor, Priority.LOW).build(newCallback()).execute();
+        newRequest(executor, Priority.HIGH).build(newCallback()).execute();
+        assertEquals(3, mHolding.mRequests.size());
+        assertEquals(1, mHolding.mCancelled.size());
+        assertEquals(Priority.LOW, mHolding.mCancelled.get(0).getPriority());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof RejectedExecutionException);
+
+        // Nothing is lower than a low request, so it is the one rejected
+        newRequest(executor, Priority.LOW).build(newCallback()).execute();
+        assertEquals(3, mHolding.mRequests.size());
+        assertEquals(2, mErrors.size());
+        assertEquals(2, executor.getAdmittedCount());
+    }
+
+    private Request.Builder<String> newRequest(BoundedRequestExecutor executor, Priority priority) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/"))
+                .priority(priority);
+    }
+
+    private RequestCallback<String> newCallback() {
+        return new RequestCallback<String>() {
+            @Override
+            public void onRequestDone(String s) {
+            }
+
+            @Override
+            public void onRequestError(Throwable error, String stringError) {
+                mErrors.add(error);
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.MockRequest;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallbackAdapter;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.cache.CachePolicy;
+import com.raizlabs.android.broker.cache.CachingRequestExecutor;
+import com.raizlabs.android.broker.cache.ResponseCache;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description: Tests the in-memory {@link com.raizlabs.android.broker.cache.ResponseCache} and its stale-while-revalidate
+ * behavior in the {@link com.raizlabs.android.broker.cache.CachingRequestExecutor}.
+ */
+public class CachingRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com";
+
+    private long mNow = 0;
+
+    private final ResponseCache mCache = new ResponseCache(2) {
+        @Override
+        protected long now() {
+            return mNow;
+        }
+    };
+
+    private final CountingExecutor mMockExecutor = new CountingExecutor();
+
+    private final CachingRequestExecutor mExecutor = new CachingRequestExecutor(mMockExecutor, mCache,
+            ExecutorUtils.IMMEDIATE);
+
+    private final List<String> mResponses = new ArrayList<>();
+
+    private final List<String> mErrors = new ArrayList<>();
+
+    public void testStaleWhileRevalidate() {
+        newRequest("first").execute();
+        assertEquals(1, mMockExecutor.count);
+        assertEquals("first", mResponses.get(0));
+
+        // fresh, served from cache
+        mNow = 500;
+        newRequest("second").execute();
+        assertEquals(1, mMockExecutor.count);
+        assertEquals("first", mResponses.get(1));
+
+        // stale, served from cache then refreshed
+        mNow = 1500;
+        newRequest("third").execute();
+        assertEquals(2, mMockExecutor.count);
+        assertEquals("first", mResponses.get(2));
+        assertEquals("third", mResponses.get(3));
+
+        // expired past the stale window, goes to the network
+        mNow = 5000;
+        newRequest("fourth").execute();
+        assertEquals(3, mMockExecutor.count);
+        assertEquals(5, mResponses.size());
+        assertEquals("fourth", mResponses.get(4));
+    }
+
+    public void testEviction() {
+        mCache.put("a", "a", new CachePolicy(1000));
+        mCache.put("b", "b", new CachePolicy(1000));
+        mCache.get("a");
+        mCache.put("c", "c", new CachePolicy(1000));
+
+        assertEquals(2, mCache.size());
+        assertNotNull(mCache.get("a"));
+        assertNull(mCache.get("b"));
+        assertNotNull(mCache.get("c"));
+    }
+
+    public void testMutationInvalidates() {
+        newRequest("first").execute();
+        new MockRequest.Builder<String>(mExecutor)
+                .dummyResponse("put")
+                .provider(new SimpleUrlProvider(URL, Method.PUT))
+                .build().execute();
+        newRequest("second").execute();
+        assertEquals(3, mMockExecutor.count);
+        assertEquals("second", mResponses.get(mResponses.size() - 1));
+    }
+
+    public void testMutationWithOwnHeadersInvalidates() {
+        newRequest("first").execute();
+        new MockRequest.Builder<String>(mExecutor)
+                .dummyResponse("put")
+                .provider(new SimpleUrlProvider(URL, Method.PUT))
+                .addRequestHeader("Idempotency-Key", "1234")
+                .addRequestHeader("Content-Type", "application/json")
+                .build().execute();
+        newRequest("second").execute();
+        assertEquals(3, mMockExecutor.count);
+        assertEquals("second", mResponses.get(mResponses.size() - 1));
+    }
+
+    public void testFailedRevalidationKeepsStaleResponse() {
+        newRequest("first").execute();
+
+        mNow = 1500;
+        newRequest("second", true).execute();
+        assertEquals(2, mMockExecutor.count);
+        assertEquals(2, mResponses.size());
+        assertEquals("first", mResponses.get(1));
+        assertTrue(mErrors.isEmpty());
+
+        // A request that misses the cache still gets its error
+        mNow = 5000;
+        newRequest("third", true).execute();
+        assertEquals(1, mErrors.size());
+    }
+
+    private Request<String> newRequest(String response) {
+        return newRequest(response, false);
+    }
+
+    private Request<String> newRequest(String response, boolean error) {
+        return new MockRequest.Builder<String>(mExecutor)
+                .dummyResponse(response)
+                .setHasError(error)
+                .provider(new SimpleUrlProvider(URL))
+                .cachePolicy(new CachePolicy(1000, 2000))
+                .build(new RequestCallbackAdapter<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        mErrors.add(stringError);
+                    }
+                });
+    }
+
+    private static class CountingExecutor extends MockRequestExecutor {
+
+        int count;
+
+        @Override
+        public void execute(Request request) {
+            count++;
+            super.execute(request);
+        }
+    }
+}
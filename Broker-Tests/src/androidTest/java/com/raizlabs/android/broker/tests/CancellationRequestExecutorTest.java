@@ -0,0 +1,85 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.cancel.CancellationRegistry;
+import com.raizlabs.android.broker.cancel.CancellationRequestExecutor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.cancel.CancellationRegistry} finds requests by
+ * identity, metadata and group, and that the {@link com.raizlabs.android.broker.cancel.CancellationRequestExecutor}
+ * cancels a whole group down the chain.
+ */
+public class CancellationRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    public void testRegistry() {
+        CancellationRegistry<String> registry = new CancellationRegistry<>();
+        Request avatar = newRequest(mHolding, "profile/avatar", "user");
+        Request feed = newRequest(mHolding, "profile/feed", "user");
+        Request settings = newRequest(mHolding, "settings", null);
+        registry.register(avatar, "avatar");
+        registry.register(feed, "feed");
+        registry.register(settings, "settings");
+
+        assertEquals("avatar", registry.get(avatar));
+        assertEquals(new HashSet<>(Arrays.asList("avatar", "feed")), new HashSet<>(registry.getByMetadata("user")));
+        assertEquals(Collections.singletonList("avatar"), registry.getGroup("profile/avatar"));
+        assertTrue(registry.getGroup("prof").isEmpty());
+
+        // Registering a request again keeps it indexed under the keys it still has
+        registry.register(avatar, "avatar");
+        assertEquals(Collections.singletonList("avatar"), registry.getGroup("profile"
+                + CancellationRegistry.GROUP_SEPARATOR + "avatar"));
+        assertEquals(2, registry.getByMetadata("user").size());
+
+        // A finished request is only dropped if it still has the same handle
+        assertFalse(registry.unregister(settings, "other"));
+        assertTrue(registry.unregister(settings, "settings"));
+        assertTrue(registry.getGroup("settings").isEmpty());
+
+        // Cancelling a parent group takes its children, and drops them from every index
+        assertEquals(new HashSet<>(Arrays.asList("avatar", "feed")), new HashSet<>(registry.removeGroup("profile")));
+        assertTrue(registry.getByMetadata("user").isEmpty());
+        assertEquals(0, registry.size());
+    }
+
+    public void testCancelGroup() {
+        CancellationRequestExecutor executor = new CancellationRequestExecutor(mHolding);
+        Request avatar = newRequest(executor, "profile/avatar", null);
+        Request feed = newRequest(executor, "profile/feed", null);
+        Request settings = newRequest(executor, "settings", null);
+        avatar.execute();
+        feed.execute();
+        settings.execute();
+        assertEquals(3, executor.getTrackedCount());
+
+        executor.cancelGroup("profile");
+        assertEquals(new HashSet<>(Arrays.asList(avatar, feed)), new HashSet<>(mHolding.mCancelled));
+        assertEquals(1, executor.getTrackedCount());
+
+        // A delivered request is no longer tracked
+        mHolding.respond(settings);
+        assertEquals(0, executor.getTrackedCount());
+        executor.cancelGroup("settings");
+        assertEquals(2, mHolding.mCancelled.size());
+    }
+
+    private Request<String> newRequest(RequestExecutor executor, String group, Object metadata) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL))
+                .group(group)
+                .metaData(metadata)
+                .build();
+    }
+}
@@ -0,0 +1,195 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.DeadlineExceededException;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.circuit.CircuitBreakerRequestExecutor;
+import com.raizlabs.android.broker.circuit.CircuitListener;
+import com.raizlabs.android.broker.circuit.CircuitOpenException;
+import com.raizlabs.android.broker.circuit.CircuitState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.circuit.CircuitBreakerRequestExecutor} opens on
+ * failures and slow calls, fails fast while open, and closes again after successful trial requests.
+ */
+public class CircuitBreakerRequestExecutorTest extends AndroidTestCase {
+
+    static final String HOST = "www.google.com";
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private final List<Throwable> mErrors = new ArrayList<>();
+
+    private final List<String> mEvents = new ArrayList<>();
+
+    private long mNow;
+
+    private final CircuitBreakerRequestExecutor mExecutor = new CircuitBreakerRequestExecutor(mHolding) {
+        @Override
+        protected long now() {
+            return mNow;
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor.setWindow(10, 4).setOpenDuration(1000, 2).setThresholds(0.5, 100, 0.5);
+        mExecutor.addListener(new CircuitListener() {
+            @Override
+            public void onStateChanged(String key, CircuitState from, CircuitState to) {
+                mEvents.add(key + " " + from + " " + to);
+            }
+        });
+    }
+
+    public void testOpensAndRecovers() {
+        // Client errors say nothing about the health of the server
+        for (int i = 0; i < 4; i++) {
+            execute();
+            mHolding.respond(i, 404);
+        }
+        assertEquals(CircuitState.CLOSED, mExecutor.getState(HOST));
+
+        for (int i = 4; i < 8; i++) {
+            execute();
+            mHolding.respond(i, i % 2 == 0 ? 503 : -1);
+        }
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+        execute();
+        assertEquals(8, mHolding.mRequests.size());
+        assertTrue(mErrors.get(mErrors.size() - 1) instanceof CircuitOpenException);
+
+        // Only two trials run half-open, and both must succeed
+        mNow += 1000;
+        execute();
+        execute();
+        execute();
+        assertEquals(10, mHolding.mRequests.size());
+        assertEquals(CircuitState.HALF_OPEN, mExecutor.getState(HOST));
+        mHolding.respond(8, 200);
+        mHolding.respond(9, 200);
+        assertEquals(CircuitState.CLOSED, mExecutor.getState(HOST));
+        assertEquals(Arrays.asList(HOST + " CLOSED OPEN", HOST + " OPEN HALF_OPEN", HOST + " HALF_OPEN CLOSED"),
+                mEvents);
+    }
+
+    public void testFailedTrialReopens() {
+        for (int i = 0; i < 4; i++) {
+            execute();
+            mNow += 150;
+            mHolding.respond(i, 200);
+        }
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+
+        mNow += 1000;
+        execute();
+        mHolding.respond(4, 500);
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+        execute();
+        assertEquals(5, mHolding.mRequests.size());
+    }
+
+    public void testCancelledTrialFreesPlace() {
+        openCircuit();
+        mNow += 1000;
+        execute();
+        execute();
+        assertEquals(6, mHolding.mRequests.size());
+
+        // A cancelled trial never reports, so its place goes to the next request
+        mExecutor.cancelRequest(null, mHolding.mRequests.get(4));
+        execute();
+        assertEquals(7, mHolding.mRequests.size());
+        mHolding.respond(5, 200);
+        mHolding.respond(6, 200);
+        assertEquals(CircuitState.CLOSED, mExecutor.getState(HOST));
+    }
+
+    public void testLocalFailuresNotRecorded() {
+        // Failures that executors below report themselves say nothing about the server
+        List<Throwable> failures = Arrays.<Throwable>asList(new DeadlineExceededException(),
+                new RejectedExecutionException("Full"), new DeadlineExceededException(),
+                new RejectedExecutionException("Full"));
+        for (int i = 0; i < failures.size(); i++) {
+            execute();
+            mHolding.fail(mHolding.mRequests.get(i), failures.get(i));
+        }
+        assertEquals(CircuitState.CLOSED, mExecutor.getState(HOST));
+
+        // Nor do they take up the places of trials
+        for (int i = 4; i < 8; i++) {
+            execute();
+            mHolding.respond(i, 503);
+        }
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+        mNow += 1000;
+        execute();
+        mHolding.fail(mHolding.mRequests.get(mHolding.mRequests.size() - 1), new DeadlineExceededException());
+        execute();
+        execute();
+        mHolding.respond(mHolding.mRequests.size() - 2, 200);
+        mHolding.respond(mHolding.mRequests.size() - 1, 200);
+        assertEquals(CircuitState.CLOSED, mExecutor.getState(HOST));
+    }
+
+    public void testStuckTrialsReopen() {
+        mExecutor.setHalfOpenTimeout(500);
+        openCircuit();
+        mNow += 1000;
+        execute();
+        execute();
+        execute();
+        assertEquals(6, mHolding.mRequests.size());
+
+        mNow += 500;
+        execute();
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+        assertEquals(6, mHolding.mRequests.size());
+
+        // Late outcomes of the old trials are ignored, and new trials run after the open duration
+        mHolding.respond(4, 200);
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+        mNow += 1000;
+        execute();
+        assertEquals(7, mHolding.mRequests.size());
+        assertEquals(CircuitState.HALF_OPEN, mExecutor.getState(HOST));
+    }
+
+    public void testUnparsableUrlSkipsCircuit() {
+        new Request.Builder<String>(mExecutor).provider(new SimpleUrlProvider("not a url")).build().execute();
+        assertEquals(1, mHolding.mRequests.size());
+        assertTrue(mErrors.isEmpty());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 4; i++) {
+            execute();
+            mHolding.respond(i, 503);
+        }
+        assertEquals(CircuitState.OPEN, mExecutor.getState(HOST));
+    }
+
+    private void execute() {
+        new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider("http://" + HOST + "/"))
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        mErrors.add(error);
+                    }
+                }).execute();
+    }
+}
@@ -0,0 +1,96 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.CoalescingRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.CoalescingRequestExecutor} shares one
+ * in-flight request between identical ones and reference counts their cancellation.
+ */
+public class CoalescingRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com";
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    private final CoalescingRequestExecutor mExecutor = new CoalescingRequestExecutor(mHoldingExecutor);
+
+    private final List<String> mResponses = new ArrayList<>();
+
+    public void testIdenticalRequestsShareResponse() {
+        newRequest(URL, "a").execute();
+        newRequest(URL, "b").execute();
+        newRequest(URL + "/other", "c").execute();
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+
+        mHoldingExecutor.respond(0, "shared");
+        assertEquals(2, mResponses.size());
+        assertEquals("shared", mResponses.get(0));
+        assertEquals("shared", mResponses.get(1));
+
+        // finished, so the next one runs again
+        newRequest(URL, "d").execute();
+        assertEquals(3, mHoldingExecutor.mRequests.size());
+    }
+
+    public void testMutationsNotCoalesced() {
+        new Request.Builder<String>(mExecutor).provider(new SimpleUrlProvider(URL, Method.POST)).build().execute();
+        new Request.Builder<String>(mExecutor).provider(new SimpleUrlProvider(URL, Method.POST)).build().execute();
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+    }
+
+    public void testCancellationIsReferenceCounted() {
+        Request<String> first = newRequest(URL, "a");
+        Request<String> second = newRequest(URL, "b");
+        first.execute();
+        second.execute();
+
+        mExecutor.cancelRequest(null, first);
+        assertEquals(0, mHoldingExecutor.mCancelled.size());
+
+        mHoldingExecutor.respond(0, "response");
+        assertEquals(1, mResponses.size());
+
+        Request<String> third = newRequest(URL, "c");
+        third.execute();
+        mExecutor.cancelRequest(null, third);
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+    }
+
+    public void testTagCancelRestartsForOthers() {
+        newRequest(URL, "a").execute();
+        newRequest(URL, "b").execute();
+
+        mExecutor.cancelRequest("a", null);
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+
+        mHoldingExecutor.respond(1, "response");
+        assertEquals(1, mResponses.size());
+    }
+
+    private Request<String> newRequest(String url, String tag) {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(url))
+                .metaData(tag)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        fail(stringError);
+                    }
+                });
+    }
+}
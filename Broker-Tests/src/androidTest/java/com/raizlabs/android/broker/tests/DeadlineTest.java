@@ -0,0 +1,113 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.DeadlineExceededException;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.executor.PriorityRequestExecutor;
+import com.raizlabs.android.broker.retry.RetryPolicy;
+import com.raizlabs.android.broker.retry.RetryRequestExecutor;
+import com.raizlabs.android.broker.routing.RoutingRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Description: Tests that a request whose deadline passed fails instead of leaving a queue, being retried or being
+ * handled, and that its socket timeout never runs past the deadline.
+ */
+public class DeadlineTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private final List<Throwable> mErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    private final RequestCallback<String> mCallback = new RequestCallback<String>() {
+        @Override
+        public void onRequestDone(String s) {
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            mErrors.add(error);
+        }
+    };
+
+    public void testExpiresInQueue() throws InterruptedException {
+        PriorityRequestExecutor executor = new PriorityRequestExecutor(mHolding, 1);
+        newBuilder(executor).build(mCallback).execute();
+        newBuilder(executor).deadline(20).build(mCallback).execute();
+        Thread.sleep(50);
+
+        // The queued request expired while the first one ran, so it never reaches the delegate
+        mHolding.respond(0);
+        assertEquals(1, mHolding.mRequests.size());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof DeadlineExceededException);
+    }
+
+    public void testExpiresInBulkhead() throws InterruptedException {
+        RoutingRequestExecutor executor = new RoutingRequestExecutor(mHolding, 1, 10);
+        newBuilder(executor).build(mCallback).execute();
+        newBuilder(executor).deadline(20).build(mCallback).execute();
+        newBuilder(executor).build(mCallback).execute();
+        Thread.sleep(50);
+
+        // The expired request gives its place to the one behind it
+        mHolding.respond(0);
+        assertEquals(2, mHolding.mRequests.size());
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof DeadlineExceededException);
+        assertEquals(1, executor.getRunningCount(RoutingRequestExecutor.DEFAULT));
+    }
+
+    public void testNoRetryPastDeadline() throws InterruptedException {
+        RetryRequestExecutor executor = new RetryRequestExecutor(mHolding, new RetryPolicy(3, 1000, 1000, false), null) {
+            @Override
+            protected long getDelay(RetryPolicy policy, int retry) {
+                return 1000;
+            }
+        };
+        newBuilder(executor).deadline(500).build(mCallback).execute();
+        mHolding.fail(0);
+        assertEquals(0, executor.getRetryableCount());
+        assertEquals(1, mErrors.size());
+        assertFalse(mErrors.get(0) instanceof DeadlineExceededException);
+
+        // Without a deadline the same failure is retried
+        newBuilder(executor).build(mCallback).execute();
+        mHolding.fail(1);
+        assertEquals(1, executor.getRetryableCount());
+        executor.cancelAllRequests();
+    }
+
+    public void testHandlerAndSocketTimeout() throws InterruptedException {
+        Request<String> request = newBuilder(mHolding).deadline(2000).build();
+        long timeout = RequestUtils.getSocketTimeout(request, 15000);
+        assertTrue(timeout > 0 && timeout <= 2000);
+        assertEquals(15000, RequestUtils.getSocketTimeout(newBuilder(mHolding).build(), 15000));
+        assertEquals(1000, RequestUtils.getSocketTimeout(newBuilder(mHolding).timeout(1000).deadline(2000).build(), 15000));
+
+        Request<String> expired = newBuilder(mHolding).deadline(1).build();
+        Thread.sleep(10);
+        assertTrue(expired.isExpired());
+        assertEquals(0, expired.getTimeRemaining());
+        try {
+            RequestUtils.handleResponse(expired, 200, null, "response".getBytes(), "UTF-8");
+            fail("An expired request must not be handled");
+        } catch (Exception e) {
+            assertTrue(e instanceof DeadlineExceededException);
+        }
+    }
+
+    private Request.Builder<String> newBuilder(RequestExecutor executor) {
+        return new Request.Builder<String>(executor).provider(new SimpleUrlProvider(URL));
+    }
+}
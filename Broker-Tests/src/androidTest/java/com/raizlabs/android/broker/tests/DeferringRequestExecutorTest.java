@@ -0,0 +1,105 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.deferral.Connectivity;
+import com.raizlabs.android.broker.deferral.DeferringRequestExecutor;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.deferral.DeferringRequestExecutor} holds low priority
+ * requests until the network wakes for something else, the max delay passes, or the network is unmetered.
+ */
+public class DeferringRequestExecutorTest extends AndroidTestCase {
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private final FakeConnectivity mConnectivity = new FakeConnectivity();
+
+    public void testFlushesWithHigherPriority() {
+        DeferringRequestExecutor executor = new DeferringRequestExecutor(mHolding, 60000, mConnectivity);
+        newRequest(executor, Priority.LOW).execute();
+        newRequest(executor, Priority.LOW).execute();
+        assertEquals(0, mHolding.mRequests.size());
+        assertEquals(2, executor.getDeferredCount());
+
+        newRequest(executor, Priority.NORMAL).execute();
+        assertEquals(3, mHolding.mRequests.size());
+        assertEquals(Priority.NORMAL, mHolding.mRequests.get(0).getPriority());
+        assertEquals(0, executor.getDeferredCount());
+
+        // Raising a held request sends it with the rest
+        Request<String> held = newRequest(executor, Priority.LOW);
+        held.execute();
+        newRequest(executor, Priority.LOW).execute();
+        held.reprioritize(Priority.HIGH);
+        assertEquals(5, mHolding.mRequests.size());
+    }
+
+    public void testFlushesAfterMaxDelay() throws InterruptedException {
+        DeferringRequestExecutor executor = new DeferringRequestExecutor(mHolding, 100, mConnectivity);
+        newRequest(executor, Priority.LOW).execute();
+        Thread.sleep(30);
+        newRequest(executor, Priority.LOW).execute();
+        assertEquals(0, mHolding.mRequests.size());
+        Thread.sleep(300);
+        assertEquals(2, mHolding.mRequests.size());
+    }
+
+    public void testFlushesBeforeDeadline() throws InterruptedException {
+        DeferringRequestExecutor executor = new DeferringRequestExecutor(mHolding, 60000, mConnectivity);
+        executor.setDeadlineMargin(100);
+        newRequest(executor, Priority.LOW).execute();
+        new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/"))
+                .priority(Priority.LOW)
+                .deadline(300)
+                .build().execute();
+        assertEquals(0, mHolding.mRequests.size());
+
+        // Sent with time to spare, not at the deadline
+        Thread.sleep(250);
+        assertEquals(2, mHolding.mRequests.size());
+        assertFalse(mHolding.mRequests.get(1).isExpired());
+
+        // Too close to its deadline to be held at all
+        new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/"))
+                .priority(Priority.LOW)
+                .deadline(50)
+                .build().execute();
+        assertEquals(3, mHolding.mRequests.size());
+    }
+
+    public void testUnmeteredNetwork() {
+        DeferringRequestExecutor executor = new DeferringRequestExecutor(mHolding, 60000, mConnectivity);
+        newRequest(executor, Priority.LOW).execute();
+        executor.onNetworkChanged();
+        assertEquals(0, mHolding.mRequests.size());
+
+        mConnectivity.mUnmetered = true;
+        executor.onNetworkChanged();
+        assertEquals(1, mHolding.mRequests.size());
+        newRequest(executor, Priority.LOW).execute();
+        assertEquals(2, mHolding.mRequests.size());
+    }
+
+    private Request<String> newRequest(DeferringRequestExecutor executor, Priority priority) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/"))
+                .priority(priority)
+                .build();
+    }
+
+    private static class FakeConnectivity implements Connectivity {
+
+        volatile boolean mUnmetered;
+
+        @Override
+        public boolean isUnmetered() {
+            return mUnmetered;
+        }
+    }
+}
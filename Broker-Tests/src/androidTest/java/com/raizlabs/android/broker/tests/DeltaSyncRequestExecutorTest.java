@@ -0,0 +1,180 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.cache.DeltaSyncRequestExecutor;
+import com.raizlabs.android.broker.cache.JsonPatch;
+import com.raizlabs.android.broker.cache.OffHeapResponseCache;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Runs the {@link com.raizlabs.android.broker.cache.DeltaSyncRequestExecutor} against a stand-in server
+ * that answers with a JSON Patch when it knows the base version the client sent.
+ */
+public class DeltaSyncRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com";
+
+    private final StandInServer mServer = new StandInServer();
+
+    private final DeltaSyncRequestExecutor mExecutor = new DeltaSyncRequestExecutor(mServer,
+            new OffHeapResponseCache(64 * 1024));
+
+    private final List<String> mResponses = new ArrayList<>();
+
+    public void testPatchApplied() {
+        mServer.setDocument("v1", "{\"version\":1,\"items\":[\"a\"]}", null);
+        newRequest().execute();
+        assertNull(mServer.mLastBaseVersion);
+        assertEquals("{\"version\":1,\"items\":[\"a\"]}", mResponses.get(0));
+
+        mServer.setDocument("v2", "{\"version\":2,\"items\":[\"a\",\"b\"]}",
+                "[{\"op\":\"replace\",\"path\":\"/version\",\"value\":2},{\"op\":\"add\",\"path\":\"/items/-\",\"value\":\"b\"}]");
+        newRequest().execute();
+        assertEquals("v1", mServer.mLastBaseVersion);
+        assertEquals(1, mServer.mPatchesSent);
+        assertEquals("{\"version\":2,\"items\":[\"a\",\"b\"]}", mResponses.get(1));
+
+        // the patched document is the new base
+        mServer.setDocument("v3", "{\"version\":3,\"items\":[\"a\",\"b\"]}",
+                "[{\"op\":\"replace\",\"path\":\"/version\",\"value\":3}]");
+        newRequest().execute();
+        assertEquals("v2", mServer.mLastBaseVersion);
+        assertEquals("{\"version\":3,\"items\":[\"a\",\"b\"]}", mResponses.get(2));
+    }
+
+    public void testMismatchFallsBackToFullFetch() {
+        mServer.setDocument("v1", "{\"version\":1}", null);
+        newRequest().execute();
+
+        // a patch whose test fails against our base
+        mServer.setDocument("v2", "{\"version\":2}",
+                "[{\"op\":\"test\",\"path\":\"/version\",\"value\":5},{\"op\":\"replace\",\"path\":\"/version\",\"value\":2}]");
+        newRequest().execute();
+        assertEquals(3, mServer.mRequests);
+        assertNull(mServer.mLastBaseVersion);
+        assertEquals(2, mResponses.size());
+        assertEquals("{\"version\":2}", mResponses.get(1));
+    }
+
+    public void testVersionWithoutETag() throws Exception {
+        mServer.mSendETag = false;
+        String first = "{\"version\": 1}";
+        mServer.setDocument(sha1(first), first, null);
+        newRequest().execute();
+
+        String second = "{\"version\": 2}";
+        mServer.setDocument(sha1(second), second, "[{\"op\":\"replace\",\"path\":\"/version\",\"value\":2}]");
+        newRequest().execute();
+        assertEquals(sha1(first), mServer.mLastBaseVersion);
+        assertEquals(1, mServer.mPatchesSent);
+
+        // Our copy of the patched document is not the server's bytes, so it is not offered as a base
+        newRequest().execute();
+        assertNull(mServer.mLastBaseVersion);
+        assertEquals(3, mResponses.size());
+    }
+
+    public void testNotDeltaSync() {
+        mServer.setDocument("v1", "{\"version\":1}", null);
+        new Request.Builder<String>(mExecutor).provider(new SimpleUrlProvider(URL)).build().execute();
+        new Request.Builder<String>(mExecutor).provider(new SimpleUrlProvider(URL)).build().execute();
+        assertNull(mServer.mLastBaseVersion);
+    }
+
+    private static String sha1(String document) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(document.getBytes("UTF-8"))) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private Request<String> newRequest() {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(URL))
+                .deltaSync(true)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        fail(stringError);
+                    }
+                });
+    }
+
+    /**
+     * Answers with a patch from the previous version when the client sends that version, otherwise the full document.
+     */
+    private static class StandInServer extends MockRequestExecutor {
+
+        private String mPreviousVersion;
+
+        private String mVersion;
+
+        private String mDocument;
+
+        private String mPatch;
+
+        String mLastBaseVersion;
+
+        boolean mSendETag = true;
+
+        int mRequests;
+
+        int mPatchesSent;
+
+        void setDocument(String version, String document, String patchFromPrevious) {
+            mPreviousVersion = mVersion;
+            mVersion = version;
+            mDocument = document;
+            mPatch = patchFromPrevious;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void execute(Request request) {
+            mRequests++;
+            mLastBaseVersion = (String) request.getHeaders().get(DeltaSyncRequestExecutor.BASE_VERSION_HEADER);
+
+            Map<String, String> headers = new HashMap<>();
+            if (mSendETag) {
+                headers.put("etag", mVersion);
+            }
+            String body = mDocument;
+            if (mPatch != null && mLastBaseVersion != null && mLastBaseVersion.equals(mPreviousVersion)) {
+                headers.put(Request.CONTENT_TYPE_HEADER, JsonPatch.CONTENT_TYPE);
+                body = mPatch;
+                mPatchesSent++;
+            } else {
+                headers.put(Request.CONTENT_TYPE_HEADER, "application/json");
+            }
+
+            RequestCallback callback = request.getCallback();
+            try {
+                Object response = RequestUtils.handleResponse(request, 200, headers, body.getBytes("UTF-8"), "UTF-8");
+                if (callback != null) {
+                    callback.onRequestDone(response);
+                }
+            } catch (IOException e) {
+                if (callback != null) {
+                    callback.onRequestError(e, e.getMessage());
+                }
+            }
+        }
+    }
+}
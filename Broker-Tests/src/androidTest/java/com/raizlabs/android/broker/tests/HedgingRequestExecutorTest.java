@@ -0,0 +1,122 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.hedge.HedgePolicy;
+import com.raizlabs.android.broker.hedge.HedgingRequestExecutor;
+import com.raizlabs.android.broker.retry.RetryBudget;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.hedge.HedgingRequestExecutor} sends a copy of slow
+ * requests within its budget, delivers the first answer once, and learns the delay from observed latency.
+ */
+public class HedgingRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHolding = new HoldingRequestExecutor();
+
+    private final List<String> mResults = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testFirstAnswerWins() throws InterruptedException {
+        HedgingRequestExecutor executor = new HedgingRequestExecutor(mHolding, 95, null);
+        newRequest(executor, new HedgePolicy(20)).execute();
+        Thread.sleep(200);
+        assertEquals(2, mHolding.mRequests.size());
+
+        // The copy answers first, so the original is cancelled
+        mHolding.respond(1, "copy");
+        assertEquals(1, mHolding.mCancelled.size());
+        assertSame(mHolding.mRequests.get(0), mHolding.mCancelled.get(0));
+        assertEquals(Collections.singletonList("copy"), mResults);
+
+        // A request answered in time is never copied
+        newRequest(executor, new HedgePolicy(100)).execute();
+        mHolding.respond(2, "fast");
+        Thread.sleep(200);
+        assertEquals(3, mHolding.mRequests.size());
+    }
+
+    public void testBudgetCapsHedges() throws InterruptedException {
+        HedgingRequestExecutor executor = new HedgingRequestExecutor(mHolding, 95, new RetryBudget(0, 0, 1));
+        newRequest(executor, new HedgePolicy(10)).execute();
+        newRequest(executor, new HedgePolicy(10)).execute();
+        Thread.sleep(200);
+        assertEquals(3, mHolding.mRequests.size());
+
+        // A post is never hedged
+        new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL, Method.POST))
+                .hedgePolicy(new HedgePolicy(10))
+                .build().execute();
+        Thread.sleep(100);
+        assertEquals(4, mHolding.mRequests.size());
+    }
+
+    public void testObservedDelay() {
+        final long[] now = new long[1];
+        HedgingRequestExecutor executor = new HedgingRequestExecutor(mHolding, 95, null) {
+            @Override
+            protected long now() {
+                return now[0];
+            }
+        };
+        String key = Method.GET + " " + URL;
+        for (int i = 0; i < HedgingRequestExecutor.MIN_SAMPLES; i++) {
+            assertEquals(-1, executor.getHedgeDelay(key));
+            newRequest(executor, HedgePolicy.OBSERVED).execute();
+            now[0] += i < HedgingRequestExecutor.MIN_SAMPLES - 1 ? 10 : 500;
+            mHolding.respond(i, "response");
+        }
+        assertEquals(10, executor.getHedgeDelay(key));
+    }
+
+    public void testWinningCopyRecordsLatencyFromOriginal() throws InterruptedException {
+        final AtomicLong now = new AtomicLong();
+        HedgingRequestExecutor executor = new HedgingRequestExecutor(mHolding, 95, null) {
+            @Override
+            protected long now() {
+                return now.get();
+            }
+        };
+        for (int i = 0; i < HedgingRequestExecutor.MIN_SAMPLES; i++) {
+            mHolding.mSent = new CountDownLatch(2);
+            newRequest(executor, new HedgePolicy(20)).execute();
+            now.addAndGet(50);
+            assertTrue(mHolding.mSent.await(2, TimeUnit.SECONDS));
+
+            // The copy answers 10ms after it was sent, 60ms after the original
+            now.addAndGet(10);
+            mHolding.respond(2 * i + 1, "copy");
+        }
+        assertEquals(60, executor.getHedgeDelay(Method.GET + " " + URL));
+    }
+
+    private Request<String> newRequest(HedgingRequestExecutor executor, HedgePolicy policy) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL))
+                .hedgePolicy(policy)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResults.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        mResults.add(stringError);
+                    }
+                });
+    }
+}
@@ -0,0 +1,108 @@
+package com.raizlabs.android.broker.tests;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Description: Keeps the requests it is given, and the ones it is asked to cancel, until a test answers them. Answers
+ * go through the response interceptors and handler of the request, as they would from a real backend.
+ */
+public class HoldingRequestExecutor extends MockRequestExecutor {
+
+    final List<Request> mRequests = Collections.synchronizedList(new ArrayList<Request>());
+
+    final List<Request> mCancelled = Collections.synchronizedList(new ArrayList<Request>());
+
+    /**
+     * Counted down for each request, if set.
+     */
+    volatile CountDownLatch mSent;
+
+    @Override
+    public void execute(Request request) {
+        mRequests.add(request);
+        CountDownLatch sent = mSent;
+        if (sent != null) {
+            sent.countDown();
+        }
+    }
+
+    @Override
+    public void cancelRequest(String s, Request request) {
+        mCancelled.add(request);
+    }
+
+    void respond(int index) {
+        respond(mRequests.get(index));
+    }
+
+    void respond(int index, String response) {
+        respond(mRequests.get(index), response);
+    }
+
+    void respond(int index, int statusCode) {
+        respond(index, statusCode, null);
+    }
+
+    /**
+     * @param retryAfter The Retry-After header of the response, or null for none.
+     */
+    void respond(int index, int statusCode, String retryAfter) {
+        Map<String, String> headers = new HashMap<>();
+        if (retryAfter != null) {
+            headers.put("Retry-After", retryAfter);
+        }
+        respond(mRequests.get(index), statusCode, headers, "response");
+    }
+
+    void respond(Request request) {
+        respond(request, "response");
+    }
+
+    void respond(Request request, String response) {
+        respond(request, 200, new HashMap<String, String>(), response);
+    }
+
+    /**
+     * Fails the request without a response, as a dropped connection does.
+     */
+    void fail(int index) {
+        fail(mRequests.get(index), new IOException("Connection reset"));
+    }
+
+    @SuppressWarnings("unchecked")
+    void fail(Request request, Throwable error) {
+        RequestCallback callback = request.getCallback();
+        if (callback != null) {
+            callback.onRequestError(error, error.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respond(Request request, int statusCode, Map<String, String> headers, String response) {
+        RequestCallback callback = request.getCallback();
+        if (callback == null) {
+            return;
+        }
+        if (statusCode == 200) {
+            try {
+                callback.onRequestDone(RequestUtils.handleResponse(request, statusCode, headers, response.getBytes(),
+                        "UTF-8"));
+            } catch (IOException e) {
+                callback.onRequestError(e, e.getMessage());
+            }
+        } else {
+            RequestUtils.interceptErrorResponse(request, statusCode, headers, null, "UTF-8");
+            callback.onRequestError(null, "Failed with " + statusCode);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.executor.HostLimitRequestExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.HostLimitRequestExecutor} limits the
+ * requests in flight and their rate per host, and pauses a host that answers with Retry-After.
+ */
+public class HostLimitRequestExecutorTest extends AndroidTestCase {
+
+    static final String PARTNER = "http://partner.example.com/";
+
+    static final String OTHER = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    public void testMaxInFlightPerHost() {
+        HostLimitRequestExecutor executor = new HostLimitRequestExecutor(mHoldingExecutor, 2);
+        newRequest(executor, PARTNER + "1").execute();
+        newRequest(executor, PARTNER + "2").execute();
+        newRequest(executor, PARTNER + "3").execute();
+        newRequest(executor, OTHER + "4").execute();
+        assertEquals(3, mHoldingExecutor.mRequests.size());
+        assertEquals(1, executor.getQueueDepth("partner.example.com"));
+        assertEquals(2, executor.getRunningCount("partner.example.com"));
+
+        mHoldingExecutor.respond(0, 200, null);
+        assertEquals(4, mHoldingExecutor.mRequests.size());
+        assertEquals(PARTNER + "3", mHoldingExecutor.mRequests.get(3).getFullUrl());
+    }
+
+    public void testTokenBucket() throws InterruptedException {
+        HostLimitRequestExecutor executor = new HostLimitRequestExecutor(mHoldingExecutor, 10, 20, 1);
+        mHoldingExecutor.mSent = new CountDownLatch(3);
+        newRequest(executor, PARTNER + "1").execute();
+        newRequest(executor, PARTNER + "2").execute();
+        newRequest(executor, PARTNER + "3").execute();
+        assertEquals(1, mHoldingExecutor.mRequests.size());
+
+        assertTrue(mHoldingExecutor.mSent.await(5, TimeUnit.SECONDS));
+        assertEquals(PARTNER + "3", mHoldingExecutor.mRequests.get(2).getFullUrl());
+    }
+
+    public void testRetryAfterPausesOnlyThatHost() throws InterruptedException {
+        HostLimitRequestExecutor executor = new HostLimitRequestExecutor(mHoldingExecutor, 1);
+        newRequest(executor, PARTNER + "1").execute();
+        newRequest(executor, PARTNER + "2").execute();
+
+        mHoldingExecutor.mSent = new CountDownLatch(2);
+        mHoldingExecutor.respond(0, 429, "1");
+        assertTrue(executor.getRetryAfter("partner.example.com") > 0);
+        newRequest(executor, OTHER + "3").execute();
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+        assertEquals(OTHER + "3", mHoldingExecutor.mRequests.get(1).getFullUrl());
+
+        assertTrue(mHoldingExecutor.mSent.await(5, TimeUnit.SECONDS));
+        assertEquals(PARTNER + "2", mHoldingExecutor.mRequests.get(2).getFullUrl());
+    }
+
+    public void testIdleHostsForgotten() {
+        HostLimitRequestExecutor executor = new HostLimitRequestExecutor(mHoldingExecutor, 1);
+        executor.setHostLimits("partner.example.com", 5, 0, 0);
+        for (int i = 0; i < 100; i++) {
+            newRequest(executor, "http://host" + i + ".example.com/").execute();
+            mHoldingExecutor.respond(i, 200, null);
+        }
+        assertTrue(executor.getHostCount() < 20);
+
+        // Hosts with their own limits keep them
+        for (int i = 0; i < 5; i++) {
+            newRequest(executor, PARTNER + i).execute();
+        }
+        assertEquals(5, executor.getRunningCount("partner.example.com"));
+    }
+
+    private Request<String> newRequest(HostLimitRequestExecutor executor, String url) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(url))
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                    }
+                });
+    }
+}
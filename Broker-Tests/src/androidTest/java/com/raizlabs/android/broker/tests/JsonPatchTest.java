@@ -0,0 +1,55 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.cache.JsonPatch;
+import com.raizlabs.android.broker.cache.JsonPatchException;
+
+/**
+ * Description: Tests the RFC 6902 operations of {@link com.raizlabs.android.broker.cache.JsonPatch}
+ */
+public class JsonPatchTest extends AndroidTestCase {
+
+    public void testOperations() throws JsonPatchException {
+        String document = "{\"name\": \"catalogue\", \"price\": 1.50, \"items\": [1, 2, 3], \"a/b\": {\"c\": null}}";
+
+        assertEquals("{\"name\":\"catalogue\",\"price\":1.50,\"items\":[1,5,2,3,4],\"a/b\":{\"c\":null},\"new\":true}",
+                JsonPatch.apply(document, "[{\"op\": \"add\", \"path\": \"/items/1\", \"value\": 5},"
+                        + "{\"op\": \"add\", \"path\": \"/items/-\", \"value\": 4},"
+                        + "{\"op\": \"add\", \"path\": \"/new\", \"value\": true}]"));
+
+        assertEquals("{\"name\":\"shop\",\"items\":[1,3],\"a/b\":{\"c\":null}}",
+                JsonPatch.apply(document, "[{\"op\": \"test\", \"path\": \"/price\", \"value\": 1.5},"
+                        + "{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"shop\"},"
+                        + "{\"op\": \"remove\", \"path\": \"/price\"},"
+                        + "{\"op\": \"remove\", \"path\": \"/items/1\"}]"));
+
+        assertEquals("{\"name\":\"catalogue\",\"price\":1.50,\"a/b\":{\"c\":null,\"d\":[1,2,3]},\"copy\":1.50}",
+                JsonPatch.apply(document, "[{\"op\": \"move\", \"from\": \"/items\", \"path\": \"/a~1b/d\"},"
+                        + "{\"op\": \"copy\", \"from\": \"/price\", \"path\": \"/copy\"}]"));
+
+        assertEquals("[\"line\\nbreak\"]", JsonPatch.apply(document,
+                "[{\"op\": \"replace\", \"path\": \"\", \"value\": [\"line\\nbreak\"]}]"));
+    }
+
+    public void testFailures() {
+        String document = "{\"items\": [1, 2]}";
+        assertFails(document, "[{\"op\": \"test\", \"path\": \"/items\", \"value\": [1]}]");
+        assertFails(document, "[{\"op\": \"remove\", \"path\": \"/missing\"}]");
+        assertFails(document, "[{\"op\": \"add\", \"path\": \"/items/3\", \"value\": 1}]");
+        assertFails(document, "[{\"op\": \"replace\", \"path\": \"/items/01\", \"value\": 1}]");
+        assertFails(document, "[{\"op\": \"move\", \"from\": \"/items\", \"path\": \"/items/0\"}]");
+        assertFails(document, "[{\"op\": \"unknown\", \"path\": \"/items\"}]");
+        assertFails(document, "{\"op\": \"remove\", \"path\": \"/items\"}");
+        assertFails("{\"items\": [1, 2", "[]");
+    }
+
+    private static void assertFails(String document, String patch) {
+        try {
+            JsonPatch.apply(document, patch);
+            fail("Expected " + patch + " to fail");
+        } catch (JsonPatchException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.batch.BatchPolicy;
+import com.raizlabs.android.broker.batch.KeyBatchingRequestExecutor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.batch.KeyBatchingRequestExecutor} sends per-item
+ * requests to a stand-in bulk endpoint together and splits the response back to each request.
+ */
+public class KeyBatchingRequestExecutorTest extends AndroidTestCase {
+
+    static final String BASE_URL = "http://www.google.com";
+
+    private final BulkServer mServer = new BulkServer();
+
+    private final KeyBatchingRequestExecutor mExecutor = new KeyBatchingRequestExecutor(mServer);
+
+    private final List<String> mResponses = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> mErrors = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testMaxSizeSendsDeduplicatedKeys() {
+        BatchPolicy policy = new BatchPolicy("/items", "ids", null, 60000, 2);
+        newRequest(policy, "1", null).execute();
+        newRequest(policy, "1", null).execute();
+        assertTrue(mServer.mUrls.isEmpty());
+
+        newRequest(policy, "2", null).execute();
+        assertEquals(1, mServer.mUrls.size());
+        assertEquals(BASE_URL + "/items?ids=1%2C2", mServer.mUrls.get(0));
+        assertEquals(3, mResponses.size());
+        assertEquals(2, Collections.frequency(mResponses, "{\"id\":\"1\"}"));
+        assertTrue(mResponses.contains("{\"id\":\"2\"}"));
+    }
+
+    public void testWindowAndMissingKey() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        mServer.mArray = true;
+        BatchPolicy policy = new BatchPolicy("/items", "ids", "id", 20, 50);
+        newRequest(policy, "3", latch).execute();
+        newRequest(policy, "missing", latch).execute();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mServer.mUrls.size());
+        assertEquals(Collections.singletonList("{\"id\":\"3\"}"), mResponses);
+        assertEquals(1, mErrors.size());
+    }
+
+    public void testCancelledBeforeSend() {
+        BatchPolicy policy = new BatchPolicy("/items", "ids", null, 60000, 2);
+        Request<String> cancelled = newRequest(policy, "1", null);
+        cancelled.execute();
+        mExecutor.cancelRequest(null, cancelled);
+        newRequest(policy, "2", null).execute();
+        newRequest(policy, "3", null).execute();
+
+        assertEquals(BASE_URL + "/items?ids=2%2C3", mServer.mUrls.get(0));
+        assertEquals(2, mResponses.size());
+    }
+
+    public void testCancelledByTagBeforeSend() {
+        BatchPolicy policy = new BatchPolicy("/items", "ids", null, 60000, 3);
+        newRequest(policy, "1", null, "screen").execute();
+        newRequest(policy, "1", null, "other").execute();
+        newRequest(policy, "4", null, "screen").execute();
+        mExecutor.cancelRequest("screen", null);
+
+        // Key 4 is no longer asked for, so two more keys fill the batch
+        newRequest(policy, "2", null, "other").execute();
+        assertTrue(mServer.mUrls.isEmpty());
+        newRequest(policy, "3", null, "other").execute();
+        assertEquals(BASE_URL + "/items?ids=1%2C2%2C3", mServer.mUrls.get(0));
+        assertEquals(3, mResponses.size());
+    }
+
+    private Request<String> newRequest(BatchPolicy policy, String key, CountDownLatch latch) {
+        return newRequest(policy, key, latch, null);
+    }
+
+    private Request<String> newRequest(BatchPolicy policy, String key, final CountDownLatch latch, Object tag) {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(BASE_URL, "/items/" + key))
+                .batch(policy, key)
+                .metaData(tag)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        mErrors.add(stringError);
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Answers a bulk request with an object keyed by id, or an array of objects with an id, leaving out the key
+     * "missing".
+     */
+    private static class BulkServer extends MockRequestExecutor {
+
+        final List<String> mUrls = Collections.synchronizedList(new ArrayList<String>());
+
+        boolean mArray;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void execute(Request request) {
+            mUrls.add(request.getFullUrl());
+            String[] keys = ((String) request.getParams().get("ids")).split(",");
+            StringBuilder body = new StringBuilder(mArray ? "[" : "{");
+            for (String key : keys) {
+                if (!key.equals("missing")) {
+                    if (body.length() > 1) {
+                        body.append(',');
+                    }
+                    if (!mArray) {
+                        body.append('"').append(key).append("\":");
+                    }
+                    body.append("{\"id\":\"").append(key).append("\"}");
+                }
+            }
+            body.append(mArray ? "]" : "}");
+
+            RequestCallback callback = request.getCallback();
+            try {
+                callback.onRequestDone(RequestUtils.handleResponse(request, 200, null,
+                        body.toString().getBytes("UTF-8"), "UTF-8"));
+            } catch (IOException e) {
+                callback.onRequestError(e, e.getMessage());
+            }
+        }
+    }
+}
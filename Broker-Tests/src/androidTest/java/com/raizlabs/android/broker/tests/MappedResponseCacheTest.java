@@ -0,0 +1,145 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.cache.MappedResponseCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Description: Tests sharing, recycling, and expiring bodies in the {@link com.raizlabs.android.broker.cache.MappedResponseCache}.
+ * Two instances on the same file stand in for two processes.
+ */
+public class MappedResponseCacheTest extends AndroidTestCase {
+
+    private long mNow = 0;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("broker", ".cache");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testSharedBetweenInstances() throws IOException {
+        MappedResponseCache first = newCache(100, 64 * 1024);
+        MappedResponseCache second = newCache(100, 64 * 1024);
+
+        byte[] body = randomBody(3000);
+        first.put(1, body, 1000);
+        first.put(0, "zero".getBytes(), 1000);
+        assertTrue(Arrays.equals(body, second.get(1)));
+        assertEquals("zero", new String(second.get(0)));
+        assertNull(second.get(2));
+
+        second.put(1, "replaced".getBytes(), 1000);
+        assertEquals("replaced", new String(first.get(1)));
+
+        second.remove(1);
+        assertNull(first.get(1));
+
+        first.close();
+        second.close();
+
+        MappedResponseCache reopened = newCache(100, 64 * 1024);
+        assertEquals("zero", new String(reopened.get(0)));
+        reopened.clear();
+        assertNull(reopened.get(0));
+        reopened.close();
+    }
+
+    public void testExpiry() throws IOException {
+        MappedResponseCache cache = newCache(10, 16 * 1024);
+        cache.put(1, "test".getBytes(), 1000);
+        mNow = 999;
+        assertNotNull(cache.get(1));
+        mNow = 1000;
+        assertNull(cache.get(1));
+        cache.close();
+    }
+
+    public void testSegmentsRecycled() throws IOException {
+        // 8 segments of 2KB, so only the most recent bodies survive the ring wrapping around.
+        MappedResponseCache cache = newCache(1000, 16 * 1024);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, randomBody(1000), 1000);
+        }
+        assertNull(cache.get(0));
+        assertTrue(Arrays.equals(randomBody(1000), cache.get(99)));
+        assertTrue(Arrays.equals(randomBody(1000), cache.get(95)));
+
+        // Too large for a segment
+        cache.put(200, randomBody(4096), 1000);
+        assertNull(cache.get(200));
+        cache.close();
+    }
+
+    public void testIndexFull() throws IOException {
+        MappedResponseCache cache = newCache(16, 64 * 1024);
+        for (int i = 1; i <= 40; i++) {
+            cache.put(i, ("body" + i).getBytes(), 1000);
+            assertEquals("body" + i, new String(cache.get(i)));
+        }
+
+        // Making room takes old entries one at a time instead of wiping the index
+        int kept = 0;
+        for (int i = 25; i <= 40; i++) {
+            if (cache.get(i) != null) {
+                kept++;
+            }
+        }
+        assertTrue(kept >= 8);
+        assertEquals("body40", new String(cache.get(40)));
+
+        // Removed keys give their slots to new ones
+        for (int i = 1; i <= 40; i++) {
+            cache.remove(i);
+        }
+        for (int i = 100; i < 116; i++) {
+            cache.put(i, ("body" + i).getBytes(), 1000);
+        }
+        for (int i = 100; i < 116; i++) {
+            assertEquals("body" + i, new String(cache.get(i)));
+        }
+        cache.close();
+    }
+
+    public void testOtherLayoutFails() throws IOException {
+        MappedResponseCache cache = newCache(16, 64 * 1024);
+        cache.put(1, "body".getBytes(), 1000);
+        try {
+            newCache(32, 64 * 1024);
+            fail("A file with another layout must not be reset");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals("body", new String(cache.get(1)));
+        cache.close();
+    }
+
+    private MappedResponseCache newCache(int maxEntries, long capacity) throws IOException {
+        return new MappedResponseCache(mFile, maxEntries, capacity) {
+            @Override
+            protected long now() {
+                return mNow;
+            }
+        };
+    }
+
+    private static byte[] randomBody(int length) {
+        byte[] body = new byte[length];
+        new Random(length).nextBytes(body);
+        return body;
+    }
+}
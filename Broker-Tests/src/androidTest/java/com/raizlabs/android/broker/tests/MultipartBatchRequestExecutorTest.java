@@ -0,0 +1,169 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.batch.MultipartBatchRequestExecutor;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.core.Priority;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.batch.MultipartBatchRequestExecutor} encodes requests
+ * into one multipart/mixed batch for a stand-in batch server and delivers each part of the response to its request.
+ */
+public class MultipartBatchRequestExecutorTest extends AndroidTestCase {
+
+    static final String BASE_URL = "http://www.google.com";
+
+    static final String BATCH_URL = BASE_URL + "/batch";
+
+    private final BatchServer mServer = new BatchServer();
+
+    private final List<String> mResponses = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> mErrors = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testBatchesAndDemultiplexes() {
+        MultipartBatchRequestExecutor executor = new MultipartBatchRequestExecutor(mServer, BATCH_URL, 60000, 3);
+        newRequest(executor, "/albums", Method.GET, Priority.NORMAL, null).execute();
+        newRequest(executor, "/albums/1", Method.PUT, Priority.NORMAL, "{\"title\":\"a\"}").execute();
+        assertTrue(mServer.mRequestLines.isEmpty());
+
+        newRequest(executor, "/missing", Method.GET, Priority.NORMAL, null).execute();
+        assertEquals(1, mServer.mBatches);
+        assertEquals(3, mServer.mRequestLines.size());
+        assertEquals("GET /albums HTTP/1.1", mServer.mRequestLines.get(0));
+        assertEquals("PUT /albums/1 HTTP/1.1", mServer.mRequestLines.get(1));
+
+        assertEquals(2, mResponses.size());
+        assertTrue(mResponses.contains("GET /albums"));
+        assertTrue(mResponses.contains("PUT /albums/1 {\"title\":\"a\"}"));
+        assertEquals(Collections.singletonList("Not found"), mErrors);
+    }
+
+    public void testPriorityOrderAndImmediateBypass() {
+        MultipartBatchRequestExecutor executor = new MultipartBatchRequestExecutor(mServer, BATCH_URL, 60000, 2);
+        newRequest(executor, "/now", Method.GET, Priority.IMMEDIATE, null).execute();
+        assertEquals(0, mServer.mBatches);
+        assertEquals(Collections.singletonList("direct /now"), mResponses);
+
+        newRequest(executor, "/low", Method.GET, Priority.LOW, null).execute();
+        newRequest(executor, "/high", Method.GET, Priority.HIGH, null).execute();
+        assertEquals(1, mServer.mBatches);
+        assertEquals(Priority.HIGH, mServer.mLastPriority);
+        assertEquals("GET /high HTTP/1.1", mServer.mRequestLines.get(0));
+        assertEquals("GET /low HTTP/1.1", mServer.mRequestLines.get(1));
+    }
+
+    public void testOtherHostAndCancel() {
+        MultipartBatchRequestExecutor executor = new MultipartBatchRequestExecutor(mServer, BATCH_URL, 60000, 2);
+        new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://example.com", "/elsewhere"))
+                .build(new Callback())
+                .execute();
+        assertEquals(Collections.singletonList("direct /elsewhere"), mResponses);
+
+        Request<String> cancelled = newRequest(executor, "/cancelled", Method.GET, Priority.NORMAL, null);
+        cancelled.execute();
+        executor.cancelRequest(null, cancelled);
+        newRequest(executor, "/a", Method.GET, Priority.NORMAL, null).execute();
+        newRequest(executor, "/b", Method.GET, Priority.NORMAL, null).execute();
+
+        assertEquals(1, mServer.mBatches);
+        assertEquals(2, mServer.mRequestLines.size());
+        assertFalse(mResponses.contains("GET /cancelled"));
+    }
+
+    private Request<String> newRequest(MultipartBatchRequestExecutor executor, String url, int method,
+                                       Priority priority, String body) {
+        Request.Builder<String> builder = new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(BASE_URL, url, method))
+                .priority(priority);
+        if (body != null) {
+            builder.bodyContentType("application/json").body(body);
+        }
+        return builder.build(new Callback());
+    }
+
+    private class Callback implements RequestCallback<String> {
+
+        @Override
+        public void onRequestDone(String s) {
+            mResponses.add(s);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            mErrors.add(stringError);
+        }
+    }
+
+    /**
+     * Answers each part of a batch with its request line and body, in reverse order to check the Content-IDs are
+     * followed, and with a 404 for "/missing". Requests that are not batches are answered directly.
+     */
+    private static class BatchServer extends MockRequestExecutor {
+
+        final List<String> mRequestLines = new ArrayList<>();
+
+        int mBatches;
+
+        Priority mLastPriority;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void execute(Request request) {
+            RequestCallback callback = request.getCallback();
+            if (!request.getUrl().equals(BATCH_URL)) {
+                callback.onRequestDone("direct " + request.getUrl().substring(request.getUrl().lastIndexOf('/')));
+                return;
+            }
+
+            mBatches++;
+            mLastPriority = request.getPriority();
+            String boundary = request.getBodyContentType().substring(request.getBodyContentType().indexOf('=') + 1);
+            String[] parts = RequestUtils.readRequestBodyIntoString(request).split("--" + boundary);
+            StringBuilder response = new StringBuilder();
+            for (int i = parts.length - 2; i >= 1; i--) {
+                String part = parts[i];
+                String contentId = part.substring(part.indexOf("<") + 1, part.indexOf(">"));
+                String http = part.substring(part.indexOf("\r\n\r\n") + 4);
+                String requestLine = http.substring(0, http.indexOf("\r\n"));
+                String body = http.substring(http.indexOf("\r\n\r\n") + 4, http.length() - 2);
+                mRequestLines.add(requestLine);
+
+                response.append("--resp\r\nContent-Type: application/http\r\nContent-ID: <response-")
+                        .append(contentId).append(">\r\n\r\n");
+                if (requestLine.contains("/missing")) {
+                    response.append("HTTP/1.1 404 Not Found\r\n\r\nNot found\r\n");
+                } else {
+                    String answer = requestLine.substring(0, requestLine.lastIndexOf(' '));
+                    response.append("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\n")
+                            .append(body.isEmpty() ? answer : answer + " " + body).append("\r\n");
+                }
+            }
+            response.append("--resp--\r\n");
+            Collections.reverse(mRequestLines.subList(mRequestLines.size() - (parts.length - 2),
+                    mRequestLines.size()));
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Content-Type", "multipart/mixed; boundary=resp");
+            try {
+                callback.onRequestDone(RequestUtils.handleResponse(request, 200, headers,
+                        response.toString().getBytes("UTF-8"), "UTF-8"));
+            } catch (IOException e) {
+                callback.onRequestError(e, e.getMessage());
+            }
+        }
+    }
+}
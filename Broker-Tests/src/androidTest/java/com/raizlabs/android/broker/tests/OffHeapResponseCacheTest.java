@@ -0,0 +1,93 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.cache.OffHeapResponseCache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Description: Tests storing, evicting, and expiring bodies in the {@link com.raizlabs.android.broker.cache.OffHeapResponseCache}
+ */
+public class OffHeapResponseCacheTest extends AndroidTestCase {
+
+    private long mNow = 0;
+
+    public void testRoundTrip() {
+        OffHeapResponseCache cache = newCache(64 * 1024, 256);
+
+        byte[] small = "{\"id\": 1}".getBytes();
+        byte[] large = randomBody(10000);
+        cache.put(1, small, 1000);
+        cache.put(2, large, 1000);
+        cache.put(0, small, 1000);
+
+        assertTrue(Arrays.equals(small, cache.get(1)));
+        assertTrue(Arrays.equals(large, cache.get(2)));
+        assertTrue(Arrays.equals(small, cache.get(0)));
+        assertNull(cache.get(3));
+
+        cache.remove(2);
+        assertNull(cache.get(2));
+        assertEquals(2, cache.size());
+    }
+
+    public void testExpiry() {
+        OffHeapResponseCache cache = newCache(16 * 1024, 256);
+        cache.put(1, "test".getBytes(), 1000);
+        mNow = 999;
+        assertNotNull(cache.get(1));
+        mNow = 1000;
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+    }
+
+    public void testClockEviction() {
+        // random bodies do not compress, so each takes up two of the four blocks.
+        OffHeapResponseCache cache = newCache(1024, 256);
+        cache.put(1, randomBody(400), 1000);
+        cache.put(2, randomBody(400), 1000);
+        assertNotNull(cache.get(1));
+
+        cache.put(3, randomBody(400), 1000);
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    public void testManyKeys() {
+        // large enough that nothing is evicted, so this only exercises probing and removal in the index.
+        OffHeapResponseCache cache = newCache(1024 * 1024, 128);
+        for (long i = 0; i < 5000; i++) {
+            cache.put(i * 31, ("body" + i).getBytes(), 1000);
+            if (i % 3 == 0) {
+                cache.remove(i * 31);
+            }
+        }
+        for (long i = 0; i < 5000; i++) {
+            byte[] body = cache.get(i * 31);
+            if (i % 3 == 0) {
+                assertNull(body);
+            } else {
+                assertEquals("body" + i, new String(body));
+            }
+        }
+        assertTrue(cache.usedBytes() <= cache.capacity());
+    }
+
+    private OffHeapResponseCache newCache(long capacity, int blockSize) {
+        return new OffHeapResponseCache(capacity, blockSize) {
+            @Override
+            protected long now() {
+                return mNow;
+            }
+        };
+    }
+
+    private static byte[] randomBody(int length) {
+        byte[] body = new byte[length];
+        new Random(length).nextBytes(body);
+        return body;
+    }
+}
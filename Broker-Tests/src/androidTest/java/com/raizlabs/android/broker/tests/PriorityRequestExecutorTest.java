@@ -0,0 +1,165 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.PriorityRequestExecutor;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.PriorityRequestExecutor} runs queued
+ * requests by priority, deadline and age, moves them when reprioritized, and reports its queue depth.
+ */
+public class PriorityRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    private long mNow = 1000000;
+
+    private final PriorityRequestExecutor mExecutor = new PriorityRequestExecutor(mHoldingExecutor, 1, 1000) {
+        @Override
+        protected long now() {
+            return mNow;
+        }
+    };
+
+    public void testPriorityThenDeadlineThenOrder() {
+        newRequest("running", Priority.NORMAL, 0).execute();
+        newRequest("low", Priority.LOW, 0).execute();
+        newRequest("normal", Priority.NORMAL, 0).execute();
+        newRequest("late", Priority.NORMAL, 60000).execute();
+        newRequest("soon", Priority.NORMAL, 1000).execute();
+        newRequest("high", Priority.HIGH, 0).execute();
+
+        assertEquals(1, mHoldingExecutor.mRequests.size());
+        assertEquals(1, mExecutor.getRunningCount());
+        assertEquals(5, mExecutor.getQueueDepth());
+        assertEquals(3, mExecutor.getQueueDepth(Priority.NORMAL));
+
+        for (int i = 0; i < 5; i++) {
+            mHoldingExecutor.respond(i);
+        }
+        assertEquals("running", name(0));
+        assertEquals("high", name(1));
+        assertEquals("soon", name(2));
+        assertEquals("late", name(3));
+        assertEquals("normal", name(4));
+        assertEquals("low", name(5));
+        assertEquals(0, mExecutor.getQueueDepth());
+    }
+
+    public void testAgingPreventsStarvation() {
+        newRequest("running", Priority.NORMAL, 0).execute();
+        newRequest("low", Priority.LOW, 0).execute();
+        mNow += 2000;
+        newRequest("high", Priority.HIGH, 0).execute();
+        mNow += 1000;
+        newRequest("newer high", Priority.HIGH, 0).execute();
+        assertEquals(3000, mExecutor.getOldestWaitTime());
+
+        mHoldingExecutor.respond(0);
+        mHoldingExecutor.respond(1);
+        mHoldingExecutor.respond(2);
+        assertEquals("low", name(1));
+        assertEquals("high", name(2));
+        assertEquals("newer high", name(3));
+    }
+
+    public void testDeadlinesAcrossAgingIntervals() {
+        newRequest("running", Priority.NORMAL, 0).execute();
+        mNow += 999;
+        newRequest("late", Priority.NORMAL, 60000).execute();
+        mNow += 2;
+        newRequest("soon", Priority.NORMAL, 1000).execute();
+
+        // Both waited less than an interval, so they are at the same level whichever interval they started in
+        mHoldingExecutor.respond(0);
+        mHoldingExecutor.respond(1);
+        assertEquals("soon", name(1));
+        assertEquals("late", name(2));
+    }
+
+    public void testImmediateAndCancel() {
+        newRequest("running", Priority.NORMAL, 0).execute();
+        Request<String> cancelled = newRequest("cancelled", Priority.HIGH, 0);
+        cancelled.execute();
+        newRequest("immediate", Priority.IMMEDIATE, 0).execute();
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+        assertEquals("immediate", name(1));
+
+        mExecutor.cancelRequest(null, cancelled);
+        assertEquals(0, mHoldingExecutor.mCancelled.size());
+        assertEquals(0, mExecutor.getQueueDepth());
+
+        newRequest("next", Priority.LOW, 0).execute();
+        mHoldingExecutor.respond(1);
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+
+        // Cancelling a running request frees its slot
+        mExecutor.cancelRequest(null, mHoldingExecutor.mRequests.get(0));
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+        assertEquals("next", name(2));
+    }
+
+    public void testReprioritize() {
+        newRequest("running", Priority.NORMAL, 0).execute();
+        Request<String> visible = newRequest("visible", Priority.LOW, 0);
+        visible.execute();
+        newRequest("normal", Priority.NORMAL, 0).execute();
+        Request<String> offScreen = newRequest("offscreen", Priority.HIGH, 0);
+        offScreen.execute();
+        Request<String> now = newRequest("now", Priority.LOW, 0);
+        now.execute();
+
+        assertTrue(visible.reprioritize(Priority.HIGH));
+        assertTrue(mExecutor.reprioritizeRequest("offscreen", null, Priority.LOW));
+        assertEquals(Priority.LOW, offScreen.getPriority());
+        assertEquals(1, mExecutor.getQueueDepth(Priority.HIGH));
+        assertEquals(2, mExecutor.getQueueDepth(Priority.LOW));
+
+        // Becoming immediate runs the request at once
+        assertTrue(now.reprioritize(Priority.IMMEDIATE));
+        assertEquals("now", name(1));
+        assertEquals(3, mExecutor.getQueueDepth());
+
+        // A running request is not moved
+        assertFalse(mHoldingExecutor.mRequests.get(0).reprioritize(Priority.LOW));
+
+        mHoldingExecutor.respond(0);
+        mHoldingExecutor.respond(1);
+        mHoldingExecutor.respond(2);
+        mHoldingExecutor.respond(3);
+        assertEquals("visible", name(2));
+        assertEquals("normal", name(3));
+        assertEquals("offscreen", name(4));
+    }
+
+    private String name(int index) {
+        String url = mHoldingExecutor.mRequests.get(index).getUrl();
+        return url.substring(URL.length());
+    }
+
+    private Request<String> newRequest(String name, Priority priority, long deadline) {
+        Request.Builder<String> builder = new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(URL + name))
+                .priority(priority)
+                .metaData(name);
+        if (deadline > 0) {
+            builder.deadline(deadline);
+        }
+        return builder.build(new RequestCallback<String>() {
+            @Override
+            public void onRequestDone(String s) {
+            }
+
+            @Override
+            public void onRequestError(Throwable error, String stringError) {
+                fail(stringError);
+            }
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestConfig;
+import com.raizlabs.android.broker.RequestFingerprint;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.metadata.FingerprintMetadataGenerator;
+
+/**
+ * Description: Tests which differences between requests change their {@link com.raizlabs.android.broker.RequestFingerprint}
+ */
+public class RequestFingerprintTest extends AndroidTestCase {
+
+    public void testOrderDoesNotMatter() {
+        Request first = newBuilder("http://www.google.com/search")
+                .addUrlParam("q", "broker").addUrlParam("page", "2")
+                .addRequestHeader("Accept", "application/json").addRequestHeader("Authorization", "token")
+                .build();
+        Request second = newBuilder("HTTP://WWW.Google.com:80/search?page=2#results")
+                .addUrlParam("q", "broker")
+                .addRequestHeader("authorization", "token").addRequestHeader("accept", "application/json")
+                .build();
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+    }
+
+    public void testVaryHeaders() {
+        long base = newBuilder("http://www.google.com/search")
+                .addRequestHeader("Accept", "application/json").build().getFingerprint();
+        assertFalse(base == newBuilder("http://www.google.com/search").addRequestHeader("Accept", "application/json")
+                .addRequestHeader("X-Api-Version", "2").build().getFingerprint());
+
+        RequestConfig.setFingerprintVaryHeaders("Accept");
+        try {
+            Request first = newBuilder("http://www.google.com/search")
+                    .addRequestHeader("Accept", "application/json").build();
+            Request second = newBuilder("http://www.google.com/search")
+                    .addRequestHeader("accept", "application/json").addRequestHeader("X-Request-Id", "1234").build();
+            assertEquals(first.getFingerprint(), second.getFingerprint());
+        } finally {
+            RequestConfig.setFingerprintVaryHeaders((String[]) null);
+        }
+    }
+
+    public void testDifferencesMatter() {
+        long base = newBuilder("http://www.google.com/search").addUrlParam("q", "broker").build().getFingerprint();
+        assertFalse(base == newBuilder("http://www.google.com/search").addUrlParam("q", "other")
+                .build().getFingerprint());
+        assertFalse(base == newBuilder("http://www.google.com/Search").addUrlParam("q", "broker")
+                .build().getFingerprint());
+        assertFalse(base == newBuilder("http://www.google.com/search").addUrlParam("q", "broker")
+                .addRequestHeader("Accept-Language", "fr").build().getFingerprint());
+        assertFalse(base == new Request.Builder<String>()
+                .provider(new SimpleUrlProvider("http://www.google.com/search", Method.HEAD))
+                .addUrlParam("q", "broker").build().getFingerprint());
+
+        Request post = new Request.Builder<String>()
+                .provider(new SimpleUrlProvider("http://www.google.com/search", Method.POST))
+                .addUrlParam("q", "broker").body("{\"a\":1}").build();
+        Request otherPost = new Request.Builder<String>()
+                .provider(new SimpleUrlProvider("http://www.google.com/search", Method.POST))
+                .addUrlParam("q", "broker").body("{\"a\":2}").build();
+        assertFalse(post.getFingerprint() == otherPost.getFingerprint());
+        assertEquals(base, RequestFingerprint.compute(post, Method.GET, false));
+
+        // the resource a mutation targets does not depend on its own headers
+        Request put = new Request.Builder<String>()
+                .provider(new SimpleUrlProvider("http://www.google.com/search", Method.PUT))
+                .addUrlParam("q", "broker").addRequestHeader("Idempotency-Key", "1234").build();
+        assertFalse(base == RequestFingerprint.compute(put, Method.GET, false));
+        assertEquals(base, RequestFingerprint.computeResource(put, Method.GET));
+
+        // the body is still there to send
+        assertEquals(7, post.getBodyLength());
+        assertEquals(post.getFingerprint(), RequestFingerprint.compute(post));
+    }
+
+    public void testMetadataGenerator() {
+        Request request = newBuilder("http://www.google.com/search")
+                .metaDataGenerator(new FingerprintMetadataGenerator()).build();
+        assertEquals(request.getFingerprint(), request.getMetaData());
+    }
+
+    private static Request.Builder<String> newBuilder(String url) {
+        return new Request.Builder<String>().provider(new SimpleUrlProvider(url));
+    }
+}
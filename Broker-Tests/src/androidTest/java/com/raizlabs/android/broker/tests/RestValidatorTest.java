@@ -5,11 +5,13 @@ import android.test.AndroidTestCase;
 import com.raizlabs.android.broker.Request;
 import com.raizlabs.android.broker.RequestConfig;
 import com.raizlabs.android.broker.RequestManager;
+import com.raizlabs.android.broker.core.Method;
 import com.raizlabs.android.broker.core.Priority;
 import com.raizlabs.android.broker.multipart.RequestEntityPart;
 import com.raizlabs.android.broker.responsehandler.SimpleJsonArrayResponseHandler;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 import java.util.List;
 import java.util.Map;
@@ -99,5 +101,85 @@ public class RestValidatorTest extends AndroidTestCase {
         assertEquals("albumId", part.getName());
         assertEquals("3", part.getValue());
         assertTrue(part.isFile());
+
+        // Testing cached request
+
+        request = restInterface.getCachedAlbumsRequest(null);
+
+        assertNotNull(request.getCachePolicy());
+        assertEquals(60000, request.getCachePolicy().getTimeToLive());
+        assertEquals(300000, request.getCachePolicy().getStaleWhileRevalidate());
+        assertFalse(request.isDeltaSync());
+
+        // Testing delta sync request
+
+        request = restInterface.getDeltaSyncAlbumsRequest(null);
+
+        assertTrue(request.isDeltaSync());
+        assertNull(request.getCachePolicy());
+
+        // Testing batched request
+
+        Request<JSONObject> batchedRequest = restInterface.getBatchedAlbumRequest("7", null);
+
+        assertEquals("7", batchedRequest.getBatchKey());
+        assertEquals("/" + TestRestInterface2.ALBUMS, batchedRequest.getBatchPolicy().getUrl());
+        assertEquals("ids", batchedRequest.getBatchPolicy().getParam());
+        assertEquals("id", batchedRequest.getBatchPolicy().getIdField());
+        assertEquals(20, batchedRequest.getBatchPolicy().getWindow());
+        assertEquals(50, batchedRequest.getBatchPolicy().getMaxSize());
+        assertNull(batchedRequest.getLaneKey());
+
+        // Testing lane request
+
+        Request<JSONObject> laneRequest = restInterface.updateAlbumRequest(7, "{}", null);
+
+        assertEquals("7", laneRequest.getLaneKey());
+        assertEquals(Method.PUT, laneRequest.getMethod());
+        assertNull(laneRequest.getSwitchLatestGroup());
+
+        // Testing switch-latest request
+
+        request = restInterface.searchAlbumsRequest("abc", null);
+
+        assertEquals("TestRestInterface2.searchAlbumsRequest", request.getSwitchLatestGroup());
+        assertEquals(300, request.getSwitchLatestDebounce());
+        assertEquals(TestRestInterface2.class.getCanonicalName(), request.getService());
+        assertNull(request.getRetryPolicy());
+
+        // Testing retried request
+
+        Request<JSONObject> retriedRequest = restInterface.createAlbumRequest("key", "{}", null);
+
+        assertNotNull(retriedRequest.getRetryPolicy());
+        assertEquals(5, retriedRequest.getRetryPolicy().getMaxAttempts());
+        assertEquals(200, retriedRequest.getRetryPolicy().getBaseDelay());
+        assertEquals(10000, retriedRequest.getRetryPolicy().getMaxDelay());
+        assertTrue(retriedRequest.getRetryPolicy().isIdempotent());
+        assertNull(retriedRequest.getHedgePolicy());
+
+        // Testing hedged request
+
+        Request<JSONObject> hedgedRequest = restInterface.getHedgedAlbumRequest("7", null);
+
+        assertNotNull(hedgedRequest.getHedgePolicy());
+        assertEquals(250, hedgedRequest.getHedgePolicy().getDelay());
+        assertEquals("/albums/{id}", hedgedRequest.getUrlTemplate());
+        assertFalse(hedgedRequest.hasTimeout());
+
+        // Testing request with a fixed timeout
+
+        Request<JSONObject> downloadRequest = restInterface.downloadAlbumRequest("7", null);
+
+        assertEquals(60000, downloadRequest.getTimeout());
+        assertEquals("/albums/{id}/download", downloadRequest.getUrlTemplate());
+
+        // Testing request with a deadline
+
+        Request<JSONObject> coverRequest = restInterface.getAlbumCoverRequest("7", null);
+
+        assertTrue(coverRequest.hasDeadline());
+        assertTrue(coverRequest.getTimeRemaining() <= 3000);
+        assertFalse(downloadRequest.hasDeadline());
     }
 }
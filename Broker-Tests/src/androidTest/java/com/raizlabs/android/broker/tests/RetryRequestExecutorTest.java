@@ -0,0 +1,193 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.DeadlineExceededException;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.circuit.CircuitOpenException;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.SupersededException;
+import com.raizlabs.android.broker.retry.RetryBudget;
+import com.raizlabs.android.broker.retry.RetryPolicy;
+import com.raizlabs.android.broker.retry.RetryRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.retry.RetryRequestExecutor} retries only failures
+ * that may go away, only for idempotent requests, and only within its budget.
+ */
+public class RetryRequestExecutorTest extends AndroidTestCase {
+
+    private final ScriptedExecutor mScripted = new ScriptedExecutor();
+
+    private final RetryPolicy mPolicy = new RetryPolicy(3, 1, 10, false);
+
+    public void testBackoff() {
+        assertEquals(100, RetryPolicy.DEFAULT.getBackoff(1));
+        assertEquals(200, RetryPolicy.DEFAULT.getBackoff(2));
+        assertEquals(400, RetryPolicy.DEFAULT.getBackoff(3));
+        assertEquals(10000, RetryPolicy.DEFAULT.getBackoff(20));
+    }
+
+    public void testRetriesUntilSuccess() throws InterruptedException {
+        RetryRequestExecutor executor = new RetryRequestExecutor(mScripted, mPolicy, null);
+        mScripted.script(503, -1, 200);
+        Result result = execute(newRequest(executor, Method.GET));
+        assertTrue(result.mDone.await(2, TimeUnit.SECONDS));
+        assertNull(result.mError);
+        assertEquals(3, mScripted.mBodies.size());
+        assertEquals(0, executor.getRetryableCount());
+    }
+
+    public void testRetriesOnlySafeFailures() throws InterruptedException {
+        RetryRequestExecutor executor = new RetryRequestExecutor(mScripted, mPolicy, null);
+        mScripted.script(503);
+        assertTrue(execute(newRequest(executor, Method.POST).body("{}")).mDone.await(2, TimeUnit.SECONDS));
+        mScripted.script(404);
+        assertTrue(execute(newRequest(executor, Method.GET)).mDone.await(2, TimeUnit.SECONDS));
+        assertEquals(2, mScripted.mBodies.size());
+
+        // A post marked idempotent is retried, with its whole body each time
+        mScripted.mBodies.clear();
+        mScripted.script(503, 200);
+        Result result = execute(newRequest(executor, Method.POST).body("{\"id\":1}")
+                .retryPolicy(new RetryPolicy(3, 1, 10, true)));
+        assertTrue(result.mDone.await(2, TimeUnit.SECONDS));
+        assertNull(result.mError);
+        assertEquals(Arrays.asList("{\"id\":1}", "{\"id\":1}"), mScripted.mBodies);
+    }
+
+    public void testBudgetCapsRetries() throws InterruptedException {
+        RetryRequestExecutor executor = new RetryRequestExecutor(mScripted, new RetryPolicy(5, 1, 10, false),
+                new RetryBudget(0, 0, 1));
+        mScripted.script(503, 503, 503, 503, 503);
+        Result result = execute(newRequest(executor, Method.GET));
+        assertTrue(result.mDone.await(2, TimeUnit.SECONDS));
+        assertNotNull(result.mError);
+        assertEquals(2, mScripted.mBodies.size());
+
+        mScripted.script(503, 503);
+        assertTrue(execute(newRequest(executor, Method.GET)).mDone.await(2, TimeUnit.SECONDS));
+        assertEquals(3, mScripted.mBodies.size());
+    }
+
+    public void testBudgetKeptForUnsentRetries() throws InterruptedException {
+        RetryBudget budget = new RetryBudget(0, 0, 1);
+        RetryRequestExecutor executor = new RetryRequestExecutor(mScripted, mPolicy, budget) {
+            @Override
+            protected long getDelay(RetryPolicy policy, int retry) {
+                return 500;
+            }
+        };
+
+        // The deadline would pass during the backoff, so the retry is not taken
+        mScripted.script(503);
+        Result result = execute(newRequest(executor, Method.GET).deadline(200));
+        assertTrue(result.mDone.await(2, TimeUnit.SECONDS));
+        assertNotNull(result.mError);
+        assertEquals(1, (int) budget.getTokens());
+
+        // A retry cancelled during its backoff is given back
+        mScripted.script(503);
+        Request<String> request = newRequest(executor, Method.GET).build();
+        request.execute();
+        assertEquals(0, (int) budget.getTokens());
+        executor.cancelRequest(null, request);
+        assertEquals(1, (int) budget.getTokens());
+    }
+
+    public void testLocalFailuresNotRetried() throws InterruptedException {
+        HoldingRequestExecutor holding = new HoldingRequestExecutor();
+        RetryRequestExecutor executor = new RetryRequestExecutor(holding, mPolicy, null);
+        List<Throwable> failures = Arrays.<Throwable>asList(new CircuitOpenException("www.google.com"),
+                new RejectedExecutionException("Full"), new SupersededException(newRequest(executor, Method.PUT).build()),
+                new DeadlineExceededException());
+        for (Throwable failure : failures) {
+            Result result = execute(newRequest(executor, Method.GET));
+            holding.fail(holding.mRequests.get(holding.mRequests.size() - 1), failure);
+            assertTrue(result.mDone.await(2, TimeUnit.SECONDS));
+            assertNotNull(result.mError);
+        }
+        assertEquals(failures.size(), holding.mRequests.size());
+
+        // A dropped connection is still retried
+        execute(newRequest(executor, Method.GET));
+        holding.mSent = new CountDownLatch(1);
+        holding.fail(failures.size());
+        assertTrue(holding.mSent.await(2, TimeUnit.SECONDS));
+        assertEquals(failures.size() + 2, holding.mRequests.size());
+    }
+
+    private Request.Builder<String> newRequest(RetryRequestExecutor executor, int method) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider("http://www.google.com/", method));
+    }
+
+    private Result execute(Request.Builder<String> builder) {
+        final Result result = new Result();
+        builder.build(new RequestCallback<String>() {
+            @Override
+            public void onRequestDone(String s) {
+                result.mDone.countDown();
+            }
+
+            @Override
+            public void onRequestError(Throwable error, String stringError) {
+                result.mError = stringError;
+                result.mDone.countDown();
+            }
+        }).execute();
+        return result;
+    }
+
+    private static class Result {
+
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        volatile String mError;
+    }
+
+    /**
+     * Answers each request with the next status it was given, and records the body it sent.
+     */
+    private static class ScriptedExecutor extends MockRequestExecutor {
+
+        final LinkedList<Integer> mStatuses = new LinkedList<>();
+
+        final List<String> mBodies = Collections.synchronizedList(new ArrayList<String>());
+
+        synchronized void script(Integer... statuses) {
+            mStatuses.clear();
+            mStatuses.addAll(Arrays.asList(statuses));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void execute(Request request) {
+            mBodies.add(request.hasBody() ? RequestUtils.readRequestBodyIntoString(request) : "");
+            int statusCode;
+            synchronized (this) {
+                statusCode = mStatuses.isEmpty() ? 200 : mStatuses.removeFirst();
+            }
+            RequestCallback callback = request.getCallback();
+            if (statusCode == 200) {
+                callback.onRequestDone("response");
+            } else {
+                RequestUtils.interceptErrorResponse(request, statusCode, new HashMap<String, String>(), null, "UTF-8");
+                callback.onRequestError(null, "Failed with " + statusCode);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.routing.Routes;
+import com.raizlabs.android.broker.routing.RoutingRequestExecutor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.routing.RoutingRequestExecutor} keeps each bulkhead
+ * to its own limits, and spills or rejects the requests one has no room for.
+ */
+public class RoutingRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/";
+
+    static final String PARTNER_SERVICE = "com.example.PartnerService";
+
+    private final HoldingRequestExecutor mApiExecutor = new HoldingRequestExecutor();
+
+    private final HoldingRequestExecutor mTransferExecutor = new HoldingRequestExecutor();
+
+    private final HoldingRequestExecutor mPartnerExecutor = new HoldingRequestExecutor();
+
+    private final List<Throwable> mErrors = new ArrayList<>();
+
+    private final RoutingRequestExecutor mExecutor = new RoutingRequestExecutor(mApiExecutor, 2, 10)
+            .addBulkhead("transfers", Routes.any(Routes.hasFile(), Routes.bodyAtLeast(1000)), mTransferExecutor, 1, 1)
+            .addBulkhead("partner", Routes.service(PARTNER_SERVICE), mPartnerExecutor, 1, 0);
+
+    public void testTransfersDoNotBlockApiCalls() {
+        newRequest().downloadToFile(new File("big.zip")).build(newCallback()).execute();
+        newRequest().body(new String(new byte[2000])).build(newCallback()).execute();
+        newRequest().build(newCallback()).execute();
+        newRequest().body("{}").build(newCallback()).execute();
+
+        assertEquals(1, mTransferExecutor.mRequests.size());
+        assertEquals(1, mExecutor.getQueueDepth("transfers"));
+        assertEquals(2, mApiExecutor.mRequests.size());
+
+        // A finished transfer hands its slot to the next one
+        mTransferExecutor.respond(0);
+        assertEquals(2, mTransferExecutor.mRequests.size());
+        assertEquals(1, mExecutor.getRunningCount("transfers"));
+    }
+
+    public void testRoutesByService() {
+        newRequest().service(PARTNER_SERVICE).build(newCallback()).execute();
+        newRequest().service("com.example.OtherService").build(newCallback()).execute();
+        assertEquals(1, mPartnerExecutor.mRequests.size());
+        assertEquals(1, mApiExecutor.mRequests.size());
+    }
+
+    public void testOverflowSpillsThenRejects() {
+        mExecutor.setOverflow("partner", RoutingRequestExecutor.DEFAULT);
+        newRequest().service(PARTNER_SERVICE).build(newCallback()).execute();
+        newRequest().service(PARTNER_SERVICE).priority(Priority.HIGH).build(newCallback()).execute();
+        assertEquals(1, mPartnerExecutor.mRequests.size());
+        assertEquals(1, mApiExecutor.mRequests.size());
+
+        mExecutor.setOverflow("partner", null);
+        newRequest().service(PARTNER_SERVICE).build(newCallback()).execute();
+        assertEquals(1, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof RejectedExecutionException);
+
+        // Cancelling a running request frees its slot
+        mExecutor.cancelRequest(null, mPartnerExecutor.mRequests.get(0));
+        assertEquals(0, mExecutor.getRunningCount("partner"));
+    }
+
+    private Request.Builder<String> newRequest() {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(URL));
+    }
+
+    private RequestCallback<String> newCallback() {
+        return new RequestCallback<String>() {
+            @Override
+            public void onRequestDone(String s) {
+            }
+
+            @Override
+            public void onRequestError(Throwable error, String stringError) {
+                mErrors.add(error);
+            }
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.executor.SerialLaneRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.SerialLaneRequestExecutor} runs requests in
+ * the same lane one at a time and in order, and requests in different lanes in parallel.
+ */
+public class SerialLaneRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/documents";
+
+    public void testSameLaneRunsInOrder() {
+        HoldingRequestExecutor holding = new HoldingRequestExecutor();
+        SerialLaneRequestExecutor executor = new SerialLaneRequestExecutor(holding);
+        List<String> responses = new ArrayList<>();
+
+        newRequest(executor, "a", "1", responses).execute();
+        newRequest(executor, "a", "2", responses).execute();
+        newRequest(executor, "b", "3", responses).execute();
+        newRequest(executor, null, "4", responses).execute();
+        assertEquals(3, holding.mRequests.size());
+
+        holding.respond(0, "1");
+        assertEquals(4, holding.mRequests.size());
+        assertEquals(URL + "/2", holding.mRequests.get(3).getUrl());
+        assertEquals(Collections.singletonList("1"), responses);
+    }
+
+    public void testCancelQueuedAndRunning() {
+        HoldingRequestExecutor holding = new HoldingRequestExecutor();
+        SerialLaneRequestExecutor executor = new SerialLaneRequestExecutor(holding);
+        List<String> responses = new ArrayList<>();
+
+        Request<String> running = newRequest(executor, "a", "1", responses);
+        running.execute();
+        Request<String> queued = newRequest(executor, "a", "2", responses);
+        queued.execute();
+        newRequest(executor, "a", "3", responses).execute();
+
+        executor.cancelRequest(null, queued);
+        assertEquals(0, holding.mCancelled.size());
+        executor.cancelRequest(null, running);
+        assertEquals(1, holding.mCancelled.size());
+        assertEquals(2, holding.mRequests.size());
+        assertEquals(URL + "/3", holding.mRequests.get(1).getUrl());
+
+        // A late response for the cancelled request does not release the lane twice
+        holding.respond(0, "late");
+        newRequest(executor, "a", "4", responses).execute();
+        assertEquals(2, holding.mRequests.size());
+    }
+
+    public void testConcurrentLanesKeepOrder() throws InterruptedException {
+        final int lanes = 8;
+        final int perLane = 200;
+        final ExecutorService network = Executors.newFixedThreadPool(4);
+        final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        final Map<String, List<Integer>> order = new ConcurrentHashMap<>();
+        final AtomicInteger overlaps = new AtomicInteger();
+        for (int lane = 0; lane < lanes; lane++) {
+            running.put("lane" + lane, new AtomicInteger());
+            order.put("lane" + lane, Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        final SerialLaneRequestExecutor executor = new SerialLaneRequestExecutor(new MockRequestExecutor() {
+            @Override
+            public void execute(final Request request) {
+                final String lane = request.getLaneKey();
+                if (running.get(lane).incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                network.execute(new Runnable() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void run() {
+                        String url = request.getUrl();
+                        order.get(lane).add(Integer.valueOf(url.substring(url.lastIndexOf('/') + 1)));
+                        running.get(lane).decrementAndGet();
+                        request.getCallback().onRequestDone(url);
+                    }
+                });
+            }
+        });
+
+        final CountDownLatch done = new CountDownLatch(lanes * perLane);
+        List<Thread> threads = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            final String key = "lane" + lane;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perLane; i++) {
+                        new Request.Builder<String>(executor)
+                                .provider(new SimpleUrlProvider(URL, "/" + i))
+                                .lane(key)
+                                .build(new RequestCallback<String>() {
+                                    @Override
+                                    public void onRequestDone(String s) {
+                                        done.countDown();
+                                    }
+
+                                    @Override
+                                    public void onRequestError(Throwable error, String stringError) {
+                                        fail(stringError);
+                                    }
+                                })
+                                .execute();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        network.shutdown();
+        assertEquals(0, overlaps.get());
+        for (List<Integer> laneOrder : order.values()) {
+            assertEquals(perLane, laneOrder.size());
+            for (int i = 0; i < perLane; i++) {
+                assertEquals(i, laneOrder.get(i).intValue());
+            }
+        }
+    }
+
+    private Request<String> newRequest(SerialLaneRequestExecutor executor, String lane, String id,
+                                       final List<String> responses) {
+        return new Request.Builder<String>(executor)
+                .provider(new SimpleUrlProvider(URL, "/" + id))
+                .lane(lane)
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        responses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        fail(stringError);
+                    }
+                });
+    }
+}
@@ -0,0 +1,108 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.executor.SwitchLatestRequestExecutor;
+import com.raizlabs.android.broker.responsehandler.ResponseHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.SwitchLatestRequestExecutor} cancels the
+ * requests a newer one in the same group supersedes, and debounces bursts of requests.
+ */
+public class SwitchLatestRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/search";
+
+    /**
+     * Far longer than the steps a test takes before the timer fires, so those steps never race it.
+     */
+    static final long DEBOUNCE = 300;
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    private final SwitchLatestRequestExecutor mExecutor = new SwitchLatestRequestExecutor(mHoldingExecutor);
+
+    private final List<String> mResponses = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> mHandled = Collections.synchronizedList(new ArrayList<String>());
+
+    public void testNewerRequestCancelsOlder() {
+        newRequest("search", "a", 0).execute();
+        newRequest("search", "ab", 0).execute();
+        newRequest("other", "x", 0).execute();
+        assertEquals(3, mHoldingExecutor.mRequests.size());
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+
+        // The response of the superseded request is neither handled nor called back
+        mHoldingExecutor.respond(0, "a");
+        mHoldingExecutor.respond(1, "ab");
+        mHoldingExecutor.respond(2, "x");
+        assertEquals(2, mHandled.size());
+        assertEquals(2, mResponses.size());
+        assertEquals("ab", mResponses.get(0));
+        assertEquals("x", mResponses.get(1));
+
+        // The group is free again, so the next request cancels nothing
+        newRequest("search", "abc", 0).execute();
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+    }
+
+    public void testDebounceOnlySendsLatest() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        mHoldingExecutor.mSent = latch;
+        newRequest("search", "a", DEBOUNCE).execute();
+        newRequest("search", "ab", DEBOUNCE).execute();
+        newRequest("search", "abc", DEBOUNCE).execute();
+        assertTrue(mHoldingExecutor.mRequests.isEmpty());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mHoldingExecutor.mRequests.size());
+        assertEquals(0, mHoldingExecutor.mCancelled.size());
+        assertEquals(URL + "?q=abc", mHoldingExecutor.mRequests.get(0).getFullUrl());
+    }
+
+    public void testCancelWhileDebouncing() throws InterruptedException {
+        Request<String> request = newRequest("search", "a", DEBOUNCE);
+        request.execute();
+        mExecutor.cancelRequest(null, request);
+
+        // Wait well past the debounce, so a timer that survived the cancel would have sent it
+        Thread.sleep(DEBOUNCE * 2);
+        assertTrue(mHoldingExecutor.mRequests.isEmpty());
+        assertEquals(0, mHoldingExecutor.mCancelled.size());
+    }
+
+    private Request<String> newRequest(String group, String query, long debounce) {
+        return new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(URL))
+                .addUrlParam("q", query)
+                .switchLatest(group, debounce)
+                .responseHandler(new ResponseHandler<String, String>() {
+                    @Override
+                    public String handleResponse(String response) {
+                        mHandled.add(response);
+                        return response;
+                    }
+                })
+                .build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        fail(stringError);
+                    }
+                });
+    }
+}
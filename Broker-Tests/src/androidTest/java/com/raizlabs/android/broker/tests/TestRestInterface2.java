@@ -2,17 +2,28 @@ package com.raizlabs.android.broker.tests;
 
 import com.raizlabs.android.broker.Request;
 import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.core.Batch;
+import com.raizlabs.android.broker.core.Body;
+import com.raizlabs.android.broker.core.Cache;
+import com.raizlabs.android.broker.core.Deadline;
+import com.raizlabs.android.broker.core.DeltaSync;
 import com.raizlabs.android.broker.core.Endpoint;
 import com.raizlabs.android.broker.core.Header;
+import com.raizlabs.android.broker.core.Hedge;
+import com.raizlabs.android.broker.core.Lane;
 import com.raizlabs.android.broker.core.Method;
 import com.raizlabs.android.broker.core.Param;
 import com.raizlabs.android.broker.core.Part;
 import com.raizlabs.android.broker.core.Priority;
 import com.raizlabs.android.broker.core.ResponseHandler;
 import com.raizlabs.android.broker.core.RestService;
+import com.raizlabs.android.broker.core.Retry;
+import com.raizlabs.android.broker.core.SwitchLatest;
+import com.raizlabs.android.broker.core.Timeout;
 import com.raizlabs.android.broker.responsehandler.SimpleJsonArrayResponseHandler;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 /**
  * Description:
@@ -52,4 +63,41 @@ public interface TestRestInterface2 {
     @ResponseHandler(SimpleJsonArrayResponseHandler.class)
     public Request<JSONArray> getAllAlbumsAsJSONArray(@Param("albumId") String albumId,
                                                       RequestCallback<JSONArray> callback);
+
+    @Method(url = ALBUMS)
+    @Cache(timeToLive = 60000, staleWhileRevalidate = 300000)
+    public Request<JSONArray> getCachedAlbumsRequest(RequestCallback<JSONArray> callback);
+
+    @Method(url = ALBUMS)
+    @DeltaSync
+    public Request<JSONArray> getDeltaSyncAlbumsRequest(RequestCallback<JSONArray> callback);
+
+    @Method(url = ALBUMS + "/{id}")
+    @Batch(url = ALBUMS, idField = "id", window = 20)
+    public Request<JSONObject> getBatchedAlbumRequest(@Endpoint String id, RequestCallback<JSONObject> callback);
+
+    @Method(url = ALBUMS + "/{id}", method = Method.PUT)
+    public Request<JSONObject> updateAlbumRequest(@Endpoint @Lane long id, @Body String album,
+                                                  RequestCallback<JSONObject> callback);
+
+    @Method(url = ALBUMS)
+    @SwitchLatest(debounce = 300)
+    public Request<JSONArray> searchAlbumsRequest(@Param("q") String query, RequestCallback<JSONArray> callback);
+
+    @Method(url = ALBUMS, method = Method.POST)
+    @Retry(maxAttempts = 5, baseDelay = 200, idempotent = true)
+    public Request<JSONObject> createAlbumRequest(@Header("Idempotency-Key") String key, @Body String album,
+                                                  RequestCallback<JSONObject> callback);
+
+    @Method(url = ALBUMS + "/{id}")
+    @Hedge(delay = 250)
+    public Request<JSONObject> getHedgedAlbumRequest(@Endpoint String id, RequestCallback<JSONObject> callback);
+
+    @Method(url = ALBUMS + "/{id}/download")
+    @Timeout(60000)
+    public Request<JSONObject> downloadAlbumRequest(@Endpoint String id, RequestCallback<JSONObject> callback);
+
+    @Method(url = ALBUMS + "/{id}/cover")
+    @Deadline(3000)
+    public Request<JSONObject> getAlbumCoverRequest(@Endpoint String id, RequestCallback<JSONObject> callback);
 }
@@ -0,0 +1,121 @@
+package com.raizlabs.android.broker.tests;
+
+import android.test.AndroidTestCase;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.SupersededException;
+import com.raizlabs.android.broker.executor.WriteCoalescingRequestExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description: Tests that the {@link com.raizlabs.android.broker.executor.WriteCoalescingRequestExecutor} replaces
+ * queued writes to the same resource with the newest one and leaves the write on the wire alone.
+ */
+public class WriteCoalescingRequestExecutorTest extends AndroidTestCase {
+
+    static final String URL = "http://www.google.com/settings";
+
+    private final HoldingRequestExecutor mHoldingExecutor = new HoldingRequestExecutor();
+
+    private final WriteCoalescingRequestExecutor mExecutor = new WriteCoalescingRequestExecutor(mHoldingExecutor);
+
+    private final List<String> mResponses = new ArrayList<>();
+
+    private final List<Throwable> mErrors = new ArrayList<>();
+
+    public void testLastQueuedWriteWins() {
+        newRequest(URL, Method.PUT, "1").execute();
+        newRequest(URL, Method.PUT, "2").execute();
+        newRequest(URL, Method.PUT, "3").execute();
+        newRequest(URL, Method.PUT, "4").execute();
+        assertEquals(1, mHoldingExecutor.mRequests.size());
+        assertEquals(2, mErrors.size());
+        assertTrue(mErrors.get(0) instanceof SupersededException);
+
+        mHoldingExecutor.respond(0, "done 1");
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+        assertEquals("4", RequestUtils.readRequestBodyIntoString(mHoldingExecutor.mRequests.get(1)));
+
+        mHoldingExecutor.respond(1, "done 4");
+        assertEquals(2, mResponses.size());
+        assertEquals("done 4", mResponses.get(1));
+
+        // The lane is empty again, so the next write goes straight out
+        newRequest(URL, Method.PUT, "5").execute();
+        assertEquals(3, mHoldingExecutor.mRequests.size());
+    }
+
+    public void testOtherResourcesAndMethodsAreKept() {
+        newRequest(URL, Method.PUT, "1").execute();
+        newRequest(URL + "/other", Method.PUT, "2").execute();
+        newRequest(URL, Method.POST, "3").execute();
+        assertEquals(3, mHoldingExecutor.mRequests.size());
+
+        newRequest(URL, Method.PATCH, "4").execute();
+        newRequest(URL, Method.PUT, "5").execute();
+        assertEquals(0, mErrors.size());
+
+        mHoldingExecutor.respond(0, "done 1");
+        assertEquals("4", RequestUtils.readRequestBodyIntoString(mHoldingExecutor.mRequests.get(3)));
+    }
+
+    public void testCancelInFlightSendsNext() {
+        Request<String> first = newRequest(URL, Method.PUT, "1");
+        first.execute();
+        Request<String> queued = newRequest(URL, Method.PUT, "2");
+        queued.execute();
+        mExecutor.cancelRequest(null, queued);
+        assertEquals(0, mHoldingExecutor.mCancelled.size());
+
+        newRequest(URL, Method.PUT, "3").execute();
+        mExecutor.cancelRequest(null, first);
+        assertEquals(1, mHoldingExecutor.mCancelled.size());
+        assertEquals(2, mHoldingExecutor.mRequests.size());
+        assertEquals("3", RequestUtils.readRequestBodyIntoString(mHoldingExecutor.mRequests.get(1)));
+        assertEquals(0, mErrors.size());
+    }
+
+    public void testHeadersDoNotSplitLanes() {
+        newRequest(URL, Method.PUT, "1", "a").execute();
+        newRequest(URL, Method.PUT, "2", "b").execute();
+        newRequest(URL, Method.PUT, "3", "c").execute();
+        assertEquals(1, mHoldingExecutor.mRequests.size());
+        assertEquals(1, mErrors.size());
+
+        mHoldingExecutor.respond(0, "done 1");
+        assertEquals("3", RequestUtils.readRequestBodyIntoString(mHoldingExecutor.mRequests.get(1)));
+    }
+
+    private Request<String> newRequest(String url, int method, String body) {
+        return newRequest(url, method, body, null);
+    }
+
+    /**
+     * @param idempotencyKey The Idempotency-Key header of the write, or null for none.
+     */
+    private Request<String> newRequest(String url, int method, String body, String idempotencyKey) {
+        Request.Builder<String> builder = new Request.Builder<String>(mExecutor)
+                .provider(new SimpleUrlProvider(url, method))
+                .body(body);
+        if (idempotencyKey != null) {
+            builder.addRequestHeader("Idempotency-Key", idempotencyKey);
+        }
+        return builder.build(new RequestCallback<String>() {
+                    @Override
+                    public void onRequestDone(String s) {
+                        mResponses.add(s);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        mErrors.add(error);
+                    }
+                });
+    }
+}
@@ -1,9 +1,12 @@
 package com.raizlabs.android.broker.webservicemanager;
 
+import com.raizlabs.android.broker.DeadlineExceededException;
 import com.raizlabs.android.broker.Request;
 import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestConfig;
 import com.raizlabs.android.broker.RequestUtils;
 import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.shaping.BandwidthShaper;
 import com.raizlabs.logging.Logger;
 import com.raizlabs.net.requests.BaseWebServiceRequest;
 import com.raizlabs.net.requests.RequestBuilder;
@@ -14,7 +17,14 @@ import com.raizlabs.net.webservicemanager.WebServiceRequestListener;
 
 import org.apache.http.HttpEntity;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Description: A simple wrapper that is the mediator between a {@link com.raizlabs.net.requests.BaseWebServiceRequest}
@@ -22,25 +32,82 @@ import java.io.IOException;
  */
 public class BrokerWebServiceRequest<ResultType> extends BaseWebServiceRequest<ResultType> {
 
+    /**
+     * WebServiceManager reads the content as a String, so we pass it through interceptors in this charset.
+     */
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * The response headers passed on to {@link com.raizlabs.android.broker.ResponseInterceptor}s. The manager can only
+     * look headers up by name.
+     */
+    private static final String[] FORWARDED_HEADERS = {Request.ETAG_HEADER, Request.RETRY_AFTER_HEADER,
+            "Cache-Control", "Expires", "Last-Modified", "Location"};
+
     private final RequestBuilder mBuilder;
 
     private final Request<ResultType> mRequest;
 
+    /**
+     * The shaper that the bodies of this request are read and written through, or null if it is not shaped.
+     */
+    private final BandwidthShaper mShaper;
+
+    /**
+     * The shaper this request counts as foreground for while it runs, or null.
+     */
+    private final BandwidthShaper mForegroundShaper;
+
+    /**
+     * Set when a {@link com.raizlabs.android.broker.ResponseInterceptor} fails the response, so we report it
+     * instead of the result.
+     */
+    private IOException mError;
+
+    /**
+     * Set once the {@link com.raizlabs.net.webservicemanager.WebServiceManager} started running this request.
+     */
+    private volatile boolean mStarted;
+
     /**
      * Constructs a new broker webservice request with our {@link com.raizlabs.android.broker.Request} object.
      *
      * @param request The request to wrap and handle the {@link com.raizlabs.net.requests.BaseWebServiceRequest} class.
      */
     public BrokerWebServiceRequest(Request<ResultType> request) {
+        this(request, null);
+    }
+
+    /**
+     * Constructs a new broker webservice request whose bodies are read and written through a shaper.
+     *
+     * @param request The request to wrap and handle the {@link com.raizlabs.net.requests.BaseWebServiceRequest} class.
+     * @param shaper  The shaper for a background transfer, or null to not shape it.
+     */
+    public BrokerWebServiceRequest(Request<ResultType> request, BandwidthShaper shaper) {
+        this(request, shaper, true);
+    }
+
+    /**
+     * Constructs a new broker webservice request that shares a shaper, either as a shaped background transfer or as a
+     * foreground request that the background transfers yield to once the manager starts it.
+     *
+     * @param request    The request to wrap and handle the {@link com.raizlabs.net.requests.BaseWebServiceRequest} class.
+     * @param shaper     The shaper, or null to not shape it.
+     * @param background True if it is a background transfer, false if it is a foreground request.
+     */
+    public BrokerWebServiceRequest(Request<ResultType> request, BandwidthShaper shaper, boolean background) {
         mBuilder = new RequestBuilder(WebServiceManagerUtils.convertMethodIntToMethod(request.getMethod()),
                 request.getFullUrl());
+        mShaper = background ? shaper : null;
+        mForegroundShaper = background ? null : shaper;
 
         if (request.hasBody()) {
-            mBuilder.setInputStream(request.getBody(), request.getBodyLength(), null);
+            mBuilder.setInputStream(shape(request.getBody()), request.getBodyLength(), null);
         } else if (request.isMultiPart()) {
             HttpEntity multipartEntity = RequestUtils.createMultipartEntity(request);
             try {
-                mBuilder.setInputStream(multipartEntity.getContent(), multipartEntity.getContentLength(), null);
+                mBuilder.setInputStream(shape(multipartEntity.getContent()), multipartEntity.getContentLength(), null);
             } catch (IOException e) {
                 Logger.e(getClass().getSimpleName(), "Error getting content for the multipart request");
             }
@@ -52,28 +119,124 @@ public class BrokerWebServiceRequest<ResultType> extends BaseWebServiceRequest<R
             mBuilder.addHeader(Request.CONTENT_TYPE_HEADER, request.getBodyContentType());
         }
         mBuilder.addParams(request.getParams());
+        if (request.hasTimeout()) {
+            int timeout = (int) Math.min(request.getTimeout(), Integer.MAX_VALUE);
+            mBuilder.setConnectionTimeout(timeout);
+            mBuilder.setReadTimeout(timeout);
+        }
         mRequest = request;
     }
 
     @Override
     protected RequestBuilder getRequestBuilder() {
+        if (!mStarted && mForegroundShaper != null) {
+            mForegroundShaper.foregroundStarted();
+        }
+        mStarted = true;
+        if (mRequest.hasDeadline()) {
+            applyDeadline();
+        }
         return mBuilder;
     }
 
+    /**
+     * Called as the manager starts a request with a deadline. Cuts its socket timeouts to the time left and tells the
+     * server about it. The manager cannot skip a request it already took, so one whose deadline passed gets a timeout
+     * of a millisecond and fails with a {@link com.raizlabs.android.broker.DeadlineExceededException}.
+     */
+    private void applyDeadline() {
+        if (mRequest.isExpired()) {
+            mError = new DeadlineExceededException();
+        }
+        int timeout = (int) Math.min(RequestUtils.getSocketTimeout(mRequest, Integer.MAX_VALUE), Integer.MAX_VALUE);
+        mBuilder.setConnectionTimeout(timeout);
+        mBuilder.setReadTimeout(timeout);
+        String deadlineHeader = RequestConfig.getDeadlineHeader();
+        if (deadlineHeader != null) {
+            mBuilder.addHeader(deadlineHeader, String.valueOf(mRequest.getTimeRemaining()));
+        }
+    }
+
     public Request<ResultType> getRequest() {
         return mRequest;
     }
 
+    /**
+     * @return True once the {@link com.raizlabs.net.webservicemanager.WebServiceManager} started running this request.
+     */
+    public boolean isStarted() {
+        return mStarted;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected ResultType translate(Response response) {
 
         // Download content into file specified.
         if (mRequest.hasFile()) {
-            response.readContentToFile(mRequest.getDownloadToFile(), null);
+            if (mShaper != null) {
+                readShapedContentToFile(response, mRequest.getDownloadToFile());
+            } else {
+                response.readContentToFile(mRequest.getDownloadToFile(), null);
+            }
             return null;
         } else {
-            return (ResultType) mRequest.getResponseHandler().handleResponse(response.getContentAsString());
+            Map<String, String> headers = new HashMap<>();
+            if (response.getContentType() != null) {
+                headers.put(Request.CONTENT_TYPE_HEADER, response.getContentType());
+            }
+            for (String header : FORWARDED_HEADERS) {
+                if (response.containsHeader(header)) {
+                    headers.put(header, response.getHeaderValue(header));
+                }
+            }
+            try {
+                return (ResultType) RequestUtils.handleResponse(mRequest, response.getResponseCode(), headers,
+                        response.getContentAsString().getBytes(CHARSET), CHARSET);
+            } catch (IOException e) {
+                mError = e;
+                return null;
+            }
+        }
+    }
+
+    private InputStream shape(InputStream inputStream) {
+        return mShaper != null ? mShaper.shape(inputStream) : inputStream;
+    }
+
+    /**
+     * Downloads the content through the shaper, since the manager reads it to the file at full speed.
+     */
+    private void readShapedContentToFile(Response response, File file) {
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            input = mShaper.shape(response.getContentStream());
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+            output = new FileOutputStream(file);
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Logger.e(getClass().getSimpleName(), "Error downloading the content to " + file);
+            mError = e;
+        } finally {
+            close(input);
+            close(output);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
         }
     }
 
@@ -89,14 +252,19 @@ public class BrokerWebServiceRequest<ResultType> extends BaseWebServiceRequest<R
             public void onRequestComplete(WebServiceManager manager, ResultInfo<ResultType> result) {
                 RequestCallback<ResultType> callback = mRequest.getCallback();
                 executor.removeRequest(BrokerWebServiceRequest.this);
+                if (mStarted && mForegroundShaper != null) {
+                    mForegroundShaper.foregroundFinished();
+                }
                 if (callback != null && !result.wasCancelled()) {
-                    if (result.isStatusOK()) {
+                    if (mError != null) {
+                        callback.onRequestError(mError, mError.getMessage());
+                    } else if (result.isStatusOK()) {
                         callback.onRequestDone(result.getResult());
                     } else {
                         callback.onRequestError(null, result.getResponseMessage());
                     }
                 }
             }
-        });
+        }, executor.convertPriority(mRequest.getPriority()));
     }
 }
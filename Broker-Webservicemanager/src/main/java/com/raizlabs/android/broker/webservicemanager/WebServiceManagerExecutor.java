@@ -1,77 +1,131 @@
 package com.raizlabs.android.broker.webservicemanager;
 
+import com.raizlabs.android.broker.GroupCancellableExecutor;
+import com.raizlabs.android.broker.ReprioritizableExecutor;
+import com.raizlabs.android.broker.cancel.CancellationRegistry;
 import com.raizlabs.android.broker.core.Priority;
 import com.raizlabs.android.broker.Request;
-import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.shaping.BandwidthShaper;
 import com.raizlabs.concurrent.Prioritized;
 import com.raizlabs.net.webservicemanager.WebServiceManager;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Description: Executes the requests using our {@link com.raizlabs.net.webservicemanager.WebServiceManager}.
+ * <br />
+ * The manager orders its queue once, when a request is added, so reprioritizing a request it has not started yet
+ * cancels it and runs it again with the new priority. The manager may have started it at the same moment, so only
+ * requests with an idempotent method are moved. Running requests are kept in a
+ * {@link com.raizlabs.android.broker.cancel.CancellationRegistry}, so cancelling one or a group does not walk them.
+ * <br />
+ * With a {@link com.raizlabs.android.broker.shaping.BandwidthShaper}, the uploads and file downloads of background
+ * requests, by default {@link Priority#LOW} ones, go through it. Every other request counts as foreground from when
+ * the manager starts it until it completes.
  */
-public class WebServiceManagerExecutor implements RequestExecutor<Void> {
+public class WebServiceManagerExecutor implements ReprioritizableExecutor<Void>, GroupCancellableExecutor<Void> {
 
     private WebServiceManager mManager = new WebServiceManager();
 
-    private final List<BrokerWebServiceRequest> mRequests = new ArrayList<>();
+    private final CancellationRegistry<BrokerWebServiceRequest> mRequests = new CancellationRegistry<>();
+
+    private BandwidthShaper mShaper;
 
     public WebServiceManager getWebServiceManager() {
         return mManager;
     }
 
+    /**
+     * Shapes the transfers of background requests, such as with the shaper of a
+     * {@link com.raizlabs.android.broker.shaping.BandwidthShapingRequestExecutor}.
+     *
+     * @param shaper The shaper, or null to not shape any.
+     */
+    public void setShaper(BandwidthShaper shaper) {
+        mShaper = shaper;
+    }
+
+    /**
+     * @return The shaper that background transfers go through, or null.
+     */
+    public BandwidthShaper getShaper() {
+        return mShaper;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public void execute(final Request request) {
-        BrokerWebServiceRequest brokerWebServiceRequest = new BrokerWebServiceRequest(request);
-        brokerWebServiceRequest.execute(this);
+        newWebServiceRequest(request).execute(this);
+    }
+
+    /**
+     * @param request The request to run.
+     * @return True if its transfers go through the shaper.
+     */
+    protected boolean isBackground(Request request) {
+        return request.getPriority() == Priority.LOW;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BrokerWebServiceRequest newWebServiceRequest(Request request) {
+        return new BrokerWebServiceRequest(request, mShaper, isBackground(request));
     }
 
     void addRequest(BrokerWebServiceRequest brokerWebServiceRequest) {
-        synchronized (mRequests) {
-            mRequests.add(brokerWebServiceRequest);
-        }
+        mRequests.register(brokerWebServiceRequest.getRequest(), brokerWebServiceRequest);
     }
 
     void removeRequest(BrokerWebServiceRequest brokerWebServiceRequest) {
-        synchronized (mRequests) {
-            mRequests.remove(brokerWebServiceRequest);
-        }
+        mRequests.unregister(brokerWebServiceRequest.getRequest(), brokerWebServiceRequest);
     }
 
     public int getActiveRequestSize() {
-        synchronized (mRequests) {
-            return mRequests.size();
-        }
+        return mRequests.size();
     }
 
     @Override
     public void cancelRequest(Void aVoid, Request request) {
-        synchronized (mRequests) {
-            int removePosition = -1;
-            for (int i = 0; i < mRequests.size(); i++) {
-                BrokerWebServiceRequest brokerWebServiceRequest = mRequests.get(i);
-                if (brokerWebServiceRequest.getRequest().equals(request)) {
-                    removePosition = i;
-                    break;
-                }
-            }
-            if (removePosition != -1) {
-                BrokerWebServiceRequest webServiceRequest = mRequests.remove(removePosition);
+        if (request != null) {
+            BrokerWebServiceRequest webServiceRequest = mRequests.remove(request);
+            if (webServiceRequest != null) {
                 webServiceRequest.cancel();
             }
         }
     }
 
+    @Override
+    public void cancelGroup(String group) {
+        cancel(mRequests.removeGroup(group));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean reprioritizeRequest(Void aVoid, Request request, Priority priority) {
+        if (request == null) {
+            return false;
+        }
+        request.setPriority(priority);
+        if (!RequestUtils.isIdempotent(request.getMethod())) {
+            return false;
+        }
+        BrokerWebServiceRequest moved = mRequests.get(request);
+        if (moved == null || moved.isStarted() || moved.isCancelled() || !mRequests.unregister(request, moved)) {
+            return false;
+        }
+        moved.cancel();
+        newWebServiceRequest(request).execute(this);
+        return true;
+    }
+
     @Override
     public void cancelAllRequests() {
-        synchronized (mRequests) {
-            for (BrokerWebServiceRequest brokerWebServiceRequest : mRequests) {
-                brokerWebServiceRequest.cancel();
-            }
-            mRequests.clear();
+        cancel(mRequests.removeAll());
+    }
+
+    private static void cancel(List<BrokerWebServiceRequest> webServiceRequests) {
+        for (BrokerWebServiceRequest webServiceRequest : webServiceRequests) {
+            webServiceRequest.cancel();
         }
     }
 
@@ -0,0 +1,16 @@
+package com.raizlabs.android.broker;
+
+import java.io.IOException;
+
+/**
+ * Description: Reported to the callback of a request whose deadline passed before it was sent, retried or handled,
+ * so no more work is spent on it.
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException() {
+        super("The deadline of the request passed");
+    }
+}
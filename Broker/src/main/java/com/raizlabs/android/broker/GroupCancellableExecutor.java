@@ -0,0 +1,15 @@
+package com.raizlabs.android.broker;
+
+/**
+ * Description: A {@link com.raizlabs.android.broker.RequestExecutor} that can cancel every request in a group, such
+ * as all the requests of a screen when it closes, in one call.
+ */
+public interface GroupCancellableExecutor<RequestMetaData> extends RequestExecutor<RequestMetaData> {
+
+    /**
+     * Cancels the requests in a group and in every group below it.
+     *
+     * @param group - the group, as set with {@link com.raizlabs.android.broker.Request#setGroup(String)}
+     */
+    public void cancelGroup(String group);
+}
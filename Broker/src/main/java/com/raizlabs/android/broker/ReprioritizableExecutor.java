@@ -0,0 +1,21 @@
+package com.raizlabs.android.broker;
+
+import com.raizlabs.android.broker.core.Priority;
+
+/**
+ * Description: A {@link com.raizlabs.android.broker.RequestExecutor} that can change the priority of requests it
+ * already received, so a request that is still waiting to run moves in its queue instead of having to be cancelled
+ * and executed again.
+ */
+public interface ReprioritizableExecutor<RequestMetaData> extends RequestExecutor<RequestMetaData> {
+
+    /**
+     * Changes the priority of a request. Once a request started running, only its priority value changes.
+     *
+     * @param data     - a tag or some other ID that we use to find the requests. Can be null or empty.
+     * @param request  - the original request (could be null if data is not)
+     * @param priority - the new priority
+     * @return True if a request that had not started yet moved in its queue.
+     */
+    public boolean reprioritizeRequest(RequestMetaData data, Request request, Priority priority);
+}
@@ -1,9 +1,13 @@
 package com.raizlabs.android.broker;
 
+import com.raizlabs.android.broker.batch.BatchPolicy;
+import com.raizlabs.android.broker.cache.CachePolicy;
 import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.hedge.HedgePolicy;
 import com.raizlabs.android.broker.metadata.RequestMetadataGenerator;
 import com.raizlabs.android.broker.multipart.RequestEntityPart;
 import com.raizlabs.android.broker.responsehandler.ResponseHandler;
+import com.raizlabs.android.broker.retry.RetryPolicy;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -26,6 +30,10 @@ public class Request<ResponseType> implements UrlProvider {
 
     public static final String CONTENT_TYPE_HEADER = "Content-Type";
 
+    public static final String ETAG_HEADER = "ETag";
+
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+
     /**
      * The {@link com.raizlabs.android.broker.UrlProvider} that we use to retrieve the url for this request.
      */
@@ -104,6 +112,83 @@ public class Request<ResponseType> implements UrlProvider {
      */
     private Priority mPriority = Priority.NORMAL;
 
+    /**
+     * The time, in {@link System#currentTimeMillis()}, by which the response must arrive to be useful. 0 means none.
+     */
+    private long mDeadline;
+
+    /**
+     * How long, in milliseconds, the executor waits on the socket for this request. 0 means the executor's default.
+     */
+    private long mTimeout;
+
+    /**
+     * The timeout an executor picked for this run of the request, used when it has no timeout of its own.
+     */
+    private long mAdaptiveTimeout;
+
+    /**
+     * How long the handled response of this request may be cached for. Null means it is not cached.
+     */
+    private CachePolicy mCachePolicy;
+
+    /**
+     * True if the server may answer with a JSON Patch against the version of the response we already have.
+     */
+    private boolean mDeltaSync;
+
+    /**
+     * How calls to this per-item request are batched, and the key of its item. Null means it is not batched.
+     */
+    private BatchPolicy mBatchPolicy;
+
+    private String mBatchKey;
+
+    /**
+     * Requests with the same lane key run one at a time in the order they were executed. Null runs in parallel.
+     */
+    private String mLaneKey;
+
+    /**
+     * Starting a request in the same switch-latest group cancels this one. Null means it is in no group.
+     */
+    private String mSwitchLatestGroup;
+
+    private long mSwitchLatestDebounce;
+
+    /**
+     * The qualified name of the {@link com.raizlabs.android.broker.core.RestService} that built this request, if any.
+     */
+    private String mService;
+
+    /**
+     * The url of the {@link com.raizlabs.android.broker.core.Method} that built this request, before its endpoints
+     * were filled in, such as /albums/{id}.
+     */
+    private String mUrlTemplate;
+
+    /**
+     * The group this request is cancelled with, a path such as profile/avatar. Null means none.
+     */
+    private String mGroup;
+
+    /**
+     * How this request is retried. Null means the retrying executor's default.
+     */
+    private RetryPolicy mRetryPolicy;
+
+    /**
+     * When a second copy of this request is sent if it is slow. Null means it is never hedged.
+     */
+    private HedgePolicy mHedgePolicy;
+
+    /**
+     * The canonical fingerprint of this request, computed the first time it is needed.
+     */
+    private long mFingerprint;
+
+    private volatile boolean mHasFingerprint;
+
     /**
      * @param requestExecutor
      */
@@ -121,20 +206,60 @@ public class Request<ResponseType> implements UrlProvider {
     }
 
     /**
-     * Sets a priority for this request.
+     * Sets a priority for this request. This does not move the request if it was already executed, use
+     * {@link #reprioritize(com.raizlabs.android.broker.core.Priority)} for that.
      *
      * @param mPriority The priority value to assign.
      */
-    void setPriority(Priority mPriority) {
+    public void setPriority(Priority mPriority) {
         this.mPriority = mPriority;
     }
 
     /**
-     * Sets the listener for when the request has finished. It will return the response.
+     * Sets the deadline of this request.
+     *
+     * @param deadline The time, in {@link System#currentTimeMillis()}, or 0 for none.
+     */
+    void setDeadline(long deadline) {
+        mDeadline = deadline;
+    }
+
+    /**
+     * Sets how long the executor waits on the socket for this request. Executors read it when the request is added to
+     * their queue, so set it before then.
+     *
+     * @param timeout The timeout in milliseconds, or 0 for the executor's default.
+     */
+    public void setTimeout(long timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Sets the timeout an executor picked for the current run of this request, such as one that adapts to the
+     * latency of its endpoint. A timeout set with {@link #setTimeout(long)} takes precedence.
+     *
+     * @param timeout The timeout in milliseconds, or 0 for the executor's default.
+     */
+    public void setAdaptiveTimeout(long timeout) {
+        mAdaptiveTimeout = timeout;
+    }
+
+    /**
+     * Sets the service this request belongs to.
+     *
+     * @param service The qualified name of the service.
+     */
+    void setService(String service) {
+        mService = service;
+    }
+
+    /**
+     * Sets the listener for when the request has finished. It will return the response. This is public so that
+     * a decorating {@link com.raizlabs.android.broker.RequestExecutor} can observe the result before passing it on.
      *
      * @param callback
      */
-    void setCallback(RequestCallback callback) {
+    public void setCallback(RequestCallback callback) {
         mCallback = callback;
     }
 
@@ -166,6 +291,92 @@ public class Request<ResponseType> implements UrlProvider {
         mMetadataGenerator = generator;
     }
 
+    /**
+     * Sets how long the handled response of this request can be cached.
+     *
+     * @param cachePolicy The policy to use, or null to never cache.
+     */
+    void setCachePolicy(CachePolicy cachePolicy) {
+        mCachePolicy = cachePolicy;
+    }
+
+    /**
+     * Sets whether the server may answer with a JSON Patch against the response we already have.
+     *
+     * @param deltaSync True to accept patches.
+     */
+    void setDeltaSync(boolean deltaSync) {
+        mDeltaSync = deltaSync;
+    }
+
+    /**
+     * Sets how this request is batched with others for the same bulk endpoint.
+     *
+     * @param batchPolicy The policy to use, or null to never batch.
+     * @param batchKey    The key of the item this request fetches.
+     */
+    void setBatch(BatchPolicy batchPolicy, String batchKey) {
+        mBatchPolicy = batchPolicy;
+        mBatchKey = batchKey;
+    }
+
+    /**
+     * Sets the lane this request runs in, in order with the other requests in it.
+     *
+     * @param laneKey The key of the lane, or null to run in parallel.
+     */
+    void setLaneKey(String laneKey) {
+        mLaneKey = laneKey;
+    }
+
+    /**
+     * Sets the switch-latest group of this request.
+     *
+     * @param group    The name of the group, or null for none.
+     * @param debounce How long, in milliseconds, to wait for a newer request in the group before sending.
+     */
+    void setSwitchLatest(String group, long debounce) {
+        mSwitchLatestGroup = group;
+        mSwitchLatestDebounce = debounce;
+    }
+
+    /**
+     * Sets the url this request was built from, before its endpoints were filled in.
+     *
+     * @param urlTemplate The url of the method, such as /albums/{id}.
+     */
+    void setUrlTemplate(String urlTemplate) {
+        mUrlTemplate = urlTemplate;
+    }
+
+    /**
+     * Puts this request in a group, such as the screen or feature it belongs to, so the whole group can be cancelled
+     * at once. Set it before the request is executed.
+     *
+     * @param group A path such as profile/avatar, which is also in the group profile, or null for none.
+     */
+    public void setGroup(String group) {
+        mGroup = group;
+    }
+
+    /**
+     * Sets how this request is retried.
+     *
+     * @param retryPolicy The policy to use, or null for the retrying executor's default.
+     */
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets when a second copy of this request is sent if it is slow.
+     *
+     * @param hedgePolicy The policy to use, or null to never hedge.
+     */
+    void setHedgePolicy(HedgePolicy hedgePolicy) {
+        mHedgePolicy = hedgePolicy;
+    }
+
     /**
      * Sets the content type of the body of this request
      *
@@ -176,11 +387,11 @@ public class Request<ResponseType> implements UrlProvider {
     }
 
     /**
-     * Sets the body of the request
+     * Sets the body of the request. Executors can replace it before the request runs, such as to wrap the stream.
      *
      * @param mBody
      */
-    void setBody(InputStream mBody, long inputStreamLength) {
+    public void setBody(InputStream mBody, long inputStreamLength) {
         this.mBody = mBody;
         this.mBodyLength = inputStreamLength;
     }
@@ -232,6 +443,20 @@ public class Request<ResponseType> implements UrlProvider {
         return providerBaseUrl != null ? (providerBaseUrl + providerUrl) : (providerUrl);
     }
 
+    /**
+     * Computes the {@link com.raizlabs.android.broker.RequestFingerprint} of this request the first time it is called
+     * and returns the same value from then on, so it should only be called once the request is built.
+     *
+     * @return The 64-bit fingerprint identifying this request.
+     */
+    public long getFingerprint() {
+        if (!mHasFingerprint) {
+            mFingerprint = RequestFingerprint.compute(this);
+            mHasFingerprint = true;
+        }
+        return mFingerprint;
+    }
+
     /**
      * @return The full URL including base url, url, and encoded URL params.
      */
@@ -335,6 +560,149 @@ public class Request<ResponseType> implements UrlProvider {
         return mPriority;
     }
 
+    /**
+     * @return The time, in {@link System#currentTimeMillis()}, by which the response must arrive, 0 if there is none.
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * @return True if this request has a deadline.
+     */
+    public boolean hasDeadline() {
+        return mDeadline > 0;
+    }
+
+    /**
+     * @return True if the deadline of this request passed.
+     */
+    public boolean isExpired() {
+        return hasDeadline() && System.currentTimeMillis() >= mDeadline;
+    }
+
+    /**
+     * @return How long, in milliseconds, until the deadline of this request, 0 if it passed, or
+     * {@link Long#MAX_VALUE} if it has none.
+     */
+    public long getTimeRemaining() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, mDeadline - System.currentTimeMillis());
+    }
+
+    /**
+     * @return How long, in milliseconds, the executor waits on the socket for this request, 0 for its default.
+     */
+    public long getTimeout() {
+        return mTimeout > 0 ? mTimeout : mAdaptiveTimeout;
+    }
+
+    /**
+     * @return True if this request has a timeout of its own, whether it was set or adapted.
+     */
+    public boolean hasTimeout() {
+        return getTimeout() > 0;
+    }
+
+    /**
+     * @return True if the timeout of this request was set with {@link #setTimeout(long)}, such as from a
+     * {@link com.raizlabs.android.broker.core.Timeout}, rather than adapted.
+     */
+    public boolean hasFixedTimeout() {
+        return mTimeout > 0;
+    }
+
+    /**
+     * @return The policy for caching the handled response of this request, null if it should not be cached.
+     */
+    public CachePolicy getCachePolicy() {
+        return mCachePolicy;
+    }
+
+    /**
+     * @return True if the server may answer this request with a JSON Patch against the version we already have.
+     */
+    public boolean isDeltaSync() {
+        return mDeltaSync;
+    }
+
+    /**
+     * @return How this request is batched with others, null if it is not.
+     */
+    public BatchPolicy getBatchPolicy() {
+        return mBatchPolicy;
+    }
+
+    /**
+     * @return The key of the item this request fetches when it is batched.
+     */
+    public String getBatchKey() {
+        return mBatchKey;
+    }
+
+    /**
+     * @return The key of the lane this request runs in, null if it runs in parallel.
+     */
+    public String getLaneKey() {
+        return mLaneKey;
+    }
+
+    /**
+     * @return The switch-latest group of this request, null if it is in none.
+     */
+    public String getSwitchLatestGroup() {
+        return mSwitchLatestGroup;
+    }
+
+    /**
+     * @return How long, in milliseconds, to wait for a newer request in the switch-latest group before sending.
+     */
+    public long getSwitchLatestDebounce() {
+        return mSwitchLatestDebounce;
+    }
+
+    /**
+     * @return The qualified name of the {@link com.raizlabs.android.broker.core.RestService} that built this request,
+     * null if it was built by hand.
+     */
+    public String getService() {
+        return mService;
+    }
+
+    /**
+     * @return The url of the {@link com.raizlabs.android.broker.core.Method} that built this request before its
+     * endpoints were filled in, such as /albums/{id}, null if it was built by hand. Requests with the same template
+     * hit the same endpoint.
+     */
+    public String getUrlTemplate() {
+        return mUrlTemplate;
+    }
+
+    /**
+     * @return The group this request is cancelled with, null if it has none.
+     */
+    public String getGroup() {
+        return mGroup;
+    }
+
+    /**
+     * @return How this request is retried by a {@link com.raizlabs.android.broker.retry.RetryRequestExecutor}, null for
+     * its default.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * @return When a {@link com.raizlabs.android.broker.hedge.HedgingRequestExecutor} sends a second copy of this
+     * request, null if it never does.
+     */
+    public HedgePolicy getHedgePolicy() {
+        return mHedgePolicy;
+    }
+
     /**
      * @return True if this request has parts defined for it.
      */
@@ -367,6 +735,63 @@ public class Request<ResponseType> implements UrlProvider {
         }
     }
 
+    /**
+     * Changes the priority of this request. If it is waiting to run on a
+     * {@link com.raizlabs.android.broker.ReprioritizableExecutor}, it moves in that executor's queue.
+     *
+     * @param priority The new priority.
+     * @return True if the request had not started yet and moved in its queue.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean reprioritize(Priority priority) {
+        RequestExecutor executor = mExecutor != null ? mExecutor : RequestConfig.getSharedExecutor();
+        if (executor instanceof ReprioritizableExecutor) {
+            return ((ReprioritizableExecutor) executor).reprioritizeRequest(null, this, priority);
+        }
+        setPriority(priority);
+        return false;
+    }
+
+    /**
+     * Copies this request so it can be sent again alongside it. The copy has the same callback, and shares the body
+     * stream and download file, so only copy requests that have neither.
+     *
+     * @return A new request with the same settings.
+     */
+    public Request<ResponseType> copy() {
+        Request<ResponseType> copy = new Request<>(mExecutor);
+        copy.mProvider = mProvider;
+        copy.mFullUrl = mFullUrl;
+        copy.mCallback = mCallback;
+        copy.mContentType = mContentType;
+        copy.mMetaData = mMetaData;
+        copy.mMetadataGenerator = mMetadataGenerator;
+        copy.mBody = mBody;
+        copy.mBodyLength = mBodyLength;
+        copy.mDownloadToFile = mDownloadToFile;
+        copy.mResponseHandler = mResponseHandler;
+        copy.mParams.putAll(mParams);
+        copy.mHeaders.putAll(mHeaders);
+        copy.mPartMap.putAll(mPartMap);
+        copy.mPriority = mPriority;
+        copy.mDeadline = mDeadline;
+        copy.mTimeout = mTimeout;
+        copy.mAdaptiveTimeout = mAdaptiveTimeout;
+        copy.mCachePolicy = mCachePolicy;
+        copy.mDeltaSync = mDeltaSync;
+        copy.mBatchPolicy = mBatchPolicy;
+        copy.mBatchKey = mBatchKey;
+        copy.mLaneKey = mLaneKey;
+        copy.mSwitchLatestGroup = mSwitchLatestGroup;
+        copy.mSwitchLatestDebounce = mSwitchLatestDebounce;
+        copy.mService = mService;
+        copy.mUrlTemplate = mUrlTemplate;
+        copy.mGroup = mGroup;
+        copy.mRetryPolicy = mRetryPolicy;
+        copy.mHedgePolicy = mHedgePolicy;
+        return copy;
+    }
+
     @Override
     public String toString() {
         StringBuilder retString = new StringBuilder("URL: ").append(getFullUrl());
@@ -444,6 +869,163 @@ public class Request<ResponseType> implements UrlProvider {
             return this;
         }
 
+        /**
+         * Gives this request a deadline, counted from now. Schedulers run requests with an earlier deadline first
+         * within the same priority. Once it passes, the request fails with a
+         * {@link com.raizlabs.android.broker.DeadlineExceededException} instead of being sent, retried or handled,
+         * and its socket timeout never runs past it.
+         *
+         * @param timeout How long, in milliseconds, the response stays useful.
+         * @return
+         */
+        public Builder<ResponseType> deadline(long timeout) {
+            mRequest.setDeadline(System.currentTimeMillis() + timeout);
+            return this;
+        }
+
+        /**
+         * Gives this request a socket timeout of its own instead of the executor's default.
+         *
+         * @param timeout How long, in milliseconds, to wait on the socket.
+         * @return
+         */
+        public Builder<ResponseType> timeout(long timeout) {
+            mRequest.setTimeout(timeout);
+            return this;
+        }
+
+        /**
+         * Allows the handled response of this request to be served from a {@link com.raizlabs.android.broker.cache.ResponseCache}
+         * when it runs on a {@link com.raizlabs.android.broker.cache.CachingRequestExecutor}.
+         *
+         * @param cachePolicy How long the response stays fresh and how long it can be served stale.
+         * @return
+         */
+        public Builder<ResponseType> cachePolicy(CachePolicy cachePolicy) {
+            mRequest.setCachePolicy(cachePolicy);
+            return this;
+        }
+
+        /**
+         * Allows the server to answer this GET request with an RFC 6902 JSON Patch against the version of the
+         * document we already have, when it runs on a {@link com.raizlabs.android.broker.cache.DeltaSyncRequestExecutor}.
+         *
+         * @param deltaSync True to accept patches.
+         * @return
+         */
+        public Builder<ResponseType> deltaSync(boolean deltaSync) {
+            mRequest.setDeltaSync(deltaSync);
+            return this;
+        }
+
+        /**
+         * Allows this per-item request to be sent together with others in one request to a bulk endpoint, when it
+         * runs on a {@link com.raizlabs.android.broker.batch.KeyBatchingRequestExecutor}.
+         *
+         * @param batchPolicy Where the bulk endpoint is and how long to wait for other requests.
+         * @param batchKey    The key of the item this request fetches.
+         * @return
+         */
+        public Builder<ResponseType> batch(BatchPolicy batchPolicy, String batchKey) {
+            mRequest.setBatch(batchPolicy, batchKey);
+            return this;
+        }
+
+        /**
+         * Runs this request strictly after the requests executed before it with the same lane key, when it runs on a
+         * {@link com.raizlabs.android.broker.executor.SerialLaneRequestExecutor}. Requests in different lanes still
+         * run in parallel.
+         *
+         * @param laneKey The key of the lane, such as the id of the resource the request changes.
+         * @return
+         */
+        public Builder<ResponseType> lane(String laneKey) {
+            mRequest.setLaneKey(laneKey);
+            return this;
+        }
+
+        /**
+         * Puts this request in a switch-latest group when it runs on a
+         * {@link com.raizlabs.android.broker.executor.SwitchLatestRequestExecutor}. Starting a newer request in the
+         * group cancels this one, and its response is never handled.
+         *
+         * @param group The name of the group.
+         * @return
+         */
+        public Builder<ResponseType> switchLatest(String group) {
+            return switchLatest(group, 0);
+        }
+
+        /**
+         * Puts this request in a switch-latest group, and only sends it once no newer request joined the group for
+         * the debounce interval.
+         *
+         * @param group    The name of the group.
+         * @param debounce How long, in milliseconds, to wait for a newer request before sending.
+         * @return
+         */
+        public Builder<ResponseType> switchLatest(String group, long debounce) {
+            mRequest.setSwitchLatest(group, debounce);
+            return this;
+        }
+
+        /**
+         * Marks the service this request belongs to, so executors can route it by service.
+         *
+         * @param service The qualified name of the service.
+         * @return
+         */
+        public Builder<ResponseType> service(String service) {
+            mRequest.setService(service);
+            return this;
+        }
+
+        /**
+         * Marks the url this request was built from, so executors can group requests to the same endpoint.
+         *
+         * @param urlTemplate The url before its endpoints were filled in, such as /albums/{id}.
+         * @return
+         */
+        public Builder<ResponseType> urlTemplate(String urlTemplate) {
+            mRequest.setUrlTemplate(urlTemplate);
+            return this;
+        }
+
+        /**
+         * Puts this request in a group that a {@link com.raizlabs.android.broker.GroupCancellableExecutor} can cancel
+         * at once.
+         *
+         * @param group A path such as profile/avatar, which is also in the group profile.
+         * @return
+         */
+        public Builder<ResponseType> group(String group) {
+            mRequest.setGroup(group);
+            return this;
+        }
+
+        /**
+         * Sets how this request is retried when it runs on a {@link com.raizlabs.android.broker.retry.RetryRequestExecutor}.
+         *
+         * @param retryPolicy The policy to use instead of the executor's default.
+         * @return
+         */
+        public Builder<ResponseType> retryPolicy(RetryPolicy retryPolicy) {
+            mRequest.setRetryPolicy(retryPolicy);
+            return this;
+        }
+
+        /**
+         * Lets a {@link com.raizlabs.android.broker.hedge.HedgingRequestExecutor} send a second copy of this request
+         * when it is slow.
+         *
+         * @param hedgePolicy When to send the copy.
+         * @return
+         */
+        public Builder<ResponseType> hedgePolicy(HedgePolicy hedgePolicy) {
+            mRequest.setHedgePolicy(hedgePolicy);
+            return this;
+        }
+
         /**
          * Sets a file to download contents of the response to the specified location.
          *
@@ -16,6 +16,16 @@ public class RequestConfig {
 
     private static RequestExecutor mRequestExecutor;
 
+    /**
+     * The only headers that are part of a {@link com.raizlabs.android.broker.RequestFingerprint}. Null means all of them.
+     */
+    private static String[] mFingerprintVaryHeaders;
+
+    /**
+     * The header that tells servers how long a request with a deadline has left. Null means it is not sent.
+     */
+    private static String mDeadlineHeader;
+
     /**
      * Default handler will simply return the response as is.
      */
@@ -49,6 +59,42 @@ public class RequestConfig {
         mResponseHandler = responseHandler;
     }
 
+    /**
+     * Narrows a {@link com.raizlabs.android.broker.RequestFingerprint} to the headers that can change a response, so
+     * requests that only differ in others, such as a request id, share caches and coalescing. By default every header
+     * is part of the fingerprint.
+     *
+     * @param headers The header names, compared without case, or null to use every header again.
+     */
+    public static void setFingerprintVaryHeaders(String... headers) {
+        mFingerprintVaryHeaders = headers == null ? null : headers.clone();
+    }
+
+    /**
+     * @return The only headers that are part of a {@link com.raizlabs.android.broker.RequestFingerprint}, or null if
+     * all of them are.
+     */
+    public static String[] getFingerprintVaryHeaders() {
+        return mFingerprintVaryHeaders;
+    }
+
+    /**
+     * Sends the time left until the deadline of a request, in milliseconds, to servers in a header, so they can give
+     * up on work that will not be used. Off by default.
+     *
+     * @param header The name of the header, such as X-Request-Timeout, or null to not send it.
+     */
+    public static void setDeadlineHeader(String header) {
+        mDeadlineHeader = header;
+    }
+
+    /**
+     * @return The header that carries the time left until the deadline of a request, null if it is not sent.
+     */
+    public static String getDeadlineHeader() {
+        return mDeadlineHeader;
+    }
+
     /**
      * @return Shared executor to run all requests by default.
      */
@@ -0,0 +1,250 @@
+package com.raizlabs.android.broker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Description: Computes a canonical 64-bit fingerprint of a {@link com.raizlabs.android.broker.Request}, so that
+ * requests which only differ in the order of their params or headers share caches, coalescing and cancellation.
+ * <br />
+ * The fingerprint covers the method, the url with a lowercase scheme and host and without a default port or fragment,
+ * every query param from both the url and the request sorted by name and value, every header with its name compared
+ * without case, or only the {@link com.raizlabs.android.broker.RequestConfig#getFingerprintVaryHeaders()} when they
+ * are set, and the body.
+ * A body stream that cannot be reset is not read, so that request gets a fingerprint of its own.
+ */
+public class RequestFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final String CHARSET = "UTF-8";
+
+    private long mHash = FNV_OFFSET;
+
+    /**
+     * Computes the fingerprint of the request as its own method, body included. Prefer
+     * {@link com.raizlabs.android.broker.Request#getFingerprint()}, which computes it only once.
+     *
+     * @param request The request
+     * @return The fingerprint.
+     */
+    public static long compute(Request request) {
+        return compute(request, request.getMethod(), true);
+    }
+
+    /**
+     * Computes the fingerprint the request would have with another method, such as the GET that a PUT to the same url
+     * invalidates.
+     *
+     * @param request     The request
+     * @param method      The method to fingerprint the request as.
+     * @param includeBody True to include the body.
+     * @return The fingerprint.
+     */
+    public static long compute(Request request, int method, boolean includeBody) {
+        return compute(request, method, includeBody, true);
+    }
+
+    /**
+     * Computes the fingerprint of the resource the request targets, as a request with another method and without a
+     * body would have it, such as the cached GET that a PUT to the same url invalidates. Only the
+     * {@link com.raizlabs.android.broker.RequestConfig#getFingerprintVaryHeaders()} are kept, or no headers when they
+     * are not set, so headers that only the request sends, such as an Idempotency-Key, do not change it.
+     *
+     * @param request The request
+     * @param method  The method to fingerprint the request as.
+     * @return The fingerprint.
+     */
+    public static long computeResource(Request request, int method) {
+        return compute(request, method, false, false);
+    }
+
+    /**
+     * Computes the fingerprint of the url and params of the request alone, without its method, headers or body, such
+     * as to find the writes to the same resource.
+     *
+     * @param request The request
+     * @return The fingerprint.
+     */
+    public static long computeUrl(Request request) {
+        RequestFingerprint fingerprint = new RequestFingerprint();
+        fingerprint.updateUrl(request);
+        return fingerprint.finish();
+    }
+
+    private static long compute(Request<?> request, int method, boolean includeBody, boolean includeHeaders) {
+        RequestFingerprint fingerprint = new RequestFingerprint();
+        fingerprint.update(method);
+        fingerprint.updateUrl(request);
+
+        Map<String, String> headers = includeHeaders ? request.getHeaders() : Collections.<String, String>emptyMap();
+        String[] varyHeaders = RequestConfig.getFingerprintVaryHeaders();
+        if (varyHeaders == null) {
+            List<String> allHeaders = new ArrayList<>();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                allHeaders.add(header.getKey().toLowerCase(Locale.US) + ':' + header.getValue());
+            }
+            Collections.sort(allHeaders);
+            fingerprint.update(allHeaders.size());
+            for (String header : allHeaders) {
+                fingerprint.update(header);
+            }
+        } else {
+            for (String varyHeader : varyHeaders) {
+                String value = null;
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (varyHeader.equalsIgnoreCase(header.getKey())) {
+                        value = header.getValue();
+                        break;
+                    }
+                }
+                fingerprint.update(value == null ? "" : value);
+            }
+        }
+
+        if (includeBody && request.hasBody()) {
+            fingerprint.updateBody(request.getBody(), request.getBodyLength());
+        }
+        return fingerprint.finish();
+    }
+
+    /**
+     * Lowercases the scheme and host and drops the default port for http and https.
+     */
+    private static String normalizeUrl(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return url;
+        }
+        int hostEnd = url.indexOf('/', schemeEnd + 3);
+        if (hostEnd < 0) {
+            hostEnd = url.length();
+        }
+
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.US);
+        String host = url.substring(schemeEnd + 3, hostEnd).toLowerCase(Locale.US);
+        if (("http".equals(scheme) && host.endsWith(":80")) || ("https".equals(scheme) && host.endsWith(":443"))) {
+            host = host.substring(0, host.lastIndexOf(':'));
+        }
+        String path = url.substring(hostEnd);
+        return scheme + "://" + host + (path.isEmpty() ? "/" : path);
+    }
+
+    private static void addQueryParams(List<String> params, String query) {
+        for (String param : query.split("&")) {
+            if (!param.isEmpty()) {
+                int equals = param.indexOf('=');
+                String key = equals < 0 ? param : param.substring(0, equals);
+                String value = equals < 0 ? "" : param.substring(equals + 1);
+                params.add(decode(key) + '=' + decode(value));
+            }
+        }
+    }
+
+    private static String decode(String component) {
+        try {
+            return URLDecoder.decode(component, CHARSET);
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return component;
+        }
+    }
+
+    private RequestFingerprint() {
+    }
+
+    /**
+     * Hashes the normalized url and every query param from both the url and the request, sorted.
+     */
+    private void updateUrl(Request<?> request) {
+        String url = request.getUrl();
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+        List<String> params = new ArrayList<>();
+        int queryStart = url.indexOf('?');
+        if (queryStart >= 0) {
+            addQueryParams(params, url.substring(queryStart + 1));
+            url = url.substring(0, queryStart);
+        }
+        update(normalizeUrl(url));
+
+        Map<String, String> requestParams = request.getParams();
+        for (Map.Entry<String, String> param : requestParams.entrySet()) {
+            params.add(param.getKey() + '=' + param.getValue());
+        }
+        Collections.sort(params);
+        update(params.size());
+        for (String param : params) {
+            update(param);
+        }
+    }
+
+    private void update(long value) {
+        for (int i = 0; i < 8; i++) {
+            mHash = (mHash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Hashes the length first, so that neighboring strings can never run together.
+     */
+    private void update(String value) {
+        update(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            mHash = (mHash ^ value.charAt(i)) * FNV_PRIME;
+        }
+    }
+
+    private void updateBody(InputStream body, long length) {
+        if (!body.markSupported()) {
+            update(System.identityHashCode(body));
+            return;
+        }
+
+        update(length);
+        body.mark((int) Math.min(Integer.MAX_VALUE, length + 1));
+        try {
+            byte[] buffer = new byte[4096];
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining))) > 0) {
+                for (int i = 0; i < read; i++) {
+                    mHash = (mHash ^ (buffer[i] & 0xff)) * FNV_PRIME;
+                }
+                remaining -= read;
+            }
+        } catch (IOException e) {
+            update(System.identityHashCode(body));
+        } finally {
+            try {
+                body.reset();
+            } catch (IOException e) {
+                // The stream said it supports marks
+            }
+        }
+    }
+
+    /**
+     * FNV-1a mixes its last bytes poorly, so finish with the MurmurHash3 finalizer.
+     */
+    private long finish() {
+        long hash = mHash;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
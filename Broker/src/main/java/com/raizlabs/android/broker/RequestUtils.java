@@ -2,6 +2,10 @@ package com.raizlabs.android.broker;
 
 import android.util.Log;
 
+import com.raizlabs.android.broker.circuit.CircuitOpenException;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+import com.raizlabs.android.broker.executor.SupersededException;
 import com.raizlabs.android.broker.multipart.RequestEntityPart;
 
 import org.apache.http.HttpEntity;
@@ -12,10 +16,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Description: Provides some handy methods for formatting and encoding urls
@@ -67,6 +75,69 @@ public class RequestUtils {
         return encoded;
     }
 
+    /**
+     * @param method The {@link com.raizlabs.android.broker.core.Method} of a request.
+     * @return True if sending the request more than once has the same effect as sending it once.
+     */
+    public static boolean isIdempotent(int method) {
+        return method == Method.GET || method == Method.HEAD || method == Method.PUT || method == Method.DELETE
+                || method == Method.OPTIONS || method == Method.TRACE;
+    }
+
+    /**
+     * @param error The error a request failed with, or null.
+     * @return True if an executor failed the request without sending it to the endpoint, or gave up on it, such as a
+     * {@link com.raizlabs.android.broker.circuit.CircuitOpenException}, a full queue, a newer write or a passed deadline.
+     * Such a failure says nothing about the endpoint, and sending the request again would not help.
+     */
+    public static boolean isLocalFailure(Throwable error) {
+        return error instanceof CircuitOpenException || error instanceof RejectedExecutionException
+                || error instanceof SupersededException || error instanceof DeadlineExceededException;
+    }
+
+    /**
+     * @param url The url to read.
+     * @return The lower case host of the url, with its port if it has one, or null if it has none.
+     */
+    public static String getHost(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return null;
+            }
+            String host = uri.getHost().toLowerCase(Locale.US);
+            return uri.getPort() != -1 ? host + ":" + uri.getPort() : host;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param request The request to read.
+     * @return The endpoint of the request, for executors that keep statistics per endpoint. Its method, host and url
+     * template if it was built from a {@link com.raizlabs.android.broker.core.Method}, otherwise its method and url
+     * without params.
+     */
+    public static String getEndpointKey(Request request) {
+        if (request.getUrlTemplate() != null) {
+            return request.getMethod() + " " + getHost(request.getFullUrl()) + request.getUrlTemplate();
+        }
+        return request.getMethod() + " " + request.getUrl();
+    }
+
+    /**
+     * @param request        The request to send.
+     * @param defaultTimeout The socket timeout of the executor, in milliseconds.
+     * @return The socket timeout of the request, cut to the time left until its deadline. Never less than 1.
+     */
+    public static long getSocketTimeout(Request request, long defaultTimeout) {
+        long timeout = request.hasTimeout() ? request.getTimeout() : defaultTimeout;
+        if (request.hasDeadline()) {
+            timeout = Math.max(1, Math.min(timeout, request.getTimeRemaining()));
+        }
+        return timeout;
+    }
+
     /**
      * @param request The request to extract the parts from.
      * @return A an {@link org.apache.http.HttpEntity} that is used in a multipart request.
@@ -140,4 +211,80 @@ public class RequestUtils {
     public static String readRequestBodyIntoString(Request request) {
         return new String(readRequestBodyIntoByteArray(request));
     }
+
+    /**
+     * Runs the raw body of a response through every {@link com.raizlabs.android.broker.ResponseInterceptor} in the
+     * request's callback chain and then converts it with the request's
+     * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}. {@link com.raizlabs.android.broker.RequestExecutor}
+     * implementations should call this rather than the handler directly.
+     *
+     * @param request    The request the response is for.
+     * @param statusCode The HTTP status code, or -1 if unknown.
+     * @param headers    The response headers, can be null.
+     * @param body       The raw body of the response.
+     * @param charset    The charset to decode the body with.
+     * @return The handled response.
+     * @throws IOException If an interceptor failed the request.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object handleResponse(Request request, int statusCode, Map<String, String> headers,
+                                        byte[] body, String charset) throws IOException {
+        if (headers == null) {
+            headers = Collections.emptyMap();
+        }
+
+        RequestCallback callback = request.getCallback();
+        while (callback != null) {
+            if (callback instanceof ResponseInterceptor) {
+                body = ((ResponseInterceptor) callback).interceptResponse(request, statusCode, headers, body,
+                        charset);
+            }
+            callback = callback instanceof RequestCallbackWrapper ? ((RequestCallbackWrapper) callback).getCallback() : null;
+        }
+
+        if (request.isExpired()) {
+            throw new DeadlineExceededException();
+        }
+
+        String parsed;
+        try {
+            parsed = new String(body, charset);
+        } catch (UnsupportedEncodingException e) {
+            parsed = new String(body);
+        }
+        return request.getResponseHandler().handleResponse(parsed);
+    }
+
+    /**
+     * Passes an error response through the {@link com.raizlabs.android.broker.ResponseInterceptor}s of the request
+     * without handling it, for executors whose backend reports HTTP errors apart from responses. The request fails
+     * either way, so interceptors that fail it are ignored.
+     *
+     * @param request    The request the response is for.
+     * @param statusCode The HTTP status code.
+     * @param headers    The response headers, can be null.
+     * @param body       The raw body of the response, can be null.
+     * @param charset    The charset the body is in.
+     */
+    public static void interceptErrorResponse(Request request, int statusCode, Map<String, String> headers,
+                                              byte[] body, String charset) {
+        if (headers == null) {
+            headers = Collections.emptyMap();
+        }
+        if (body == null) {
+            body = new byte[0];
+        }
+
+        RequestCallback callback = request.getCallback();
+        while (callback != null) {
+            if (callback instanceof ResponseInterceptor) {
+                try {
+                    body = ((ResponseInterceptor) callback).interceptResponse(request, statusCode, headers, body,
+                            charset);
+                } catch (IOException ignored) {
+                }
+            }
+            callback = callback instanceof RequestCallbackWrapper ? ((RequestCallbackWrapper) callback).getCallback() : null;
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package com.raizlabs.android.broker;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Description: Sees the raw body of a response before it is converted by the
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}. A {@link com.raizlabs.android.broker.RequestCallback}
+ * installed on the request by a decorating {@link com.raizlabs.android.broker.RequestExecutor} can implement this, and
+ * every interceptor in the chain of {@link com.raizlabs.android.broker.executor.RequestCallbackWrapper} is called by
+ * {@link com.raizlabs.android.broker.RequestUtils#handleResponse(Request, int, java.util.Map, byte[], String)}, starting
+ * with the one closest to the network.
+ */
+public interface ResponseInterceptor {
+
+    /**
+     * @param request    The request the response is for.
+     * @param statusCode The HTTP status code, or -1 if the executor does not know it.
+     * @param headers    The response headers. Never null, but may be empty if the executor does not expose them.
+     * @param body       The raw body of the response.
+     * @param charset    The charset the body will be decoded with.
+     * @return The body to continue with. Return the same array to leave it untouched.
+     * @throws IOException To fail the request instead of handling the response.
+     */
+    public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                    String charset) throws IOException;
+}
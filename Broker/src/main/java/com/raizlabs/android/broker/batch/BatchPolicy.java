@@ -0,0 +1,57 @@
+package com.raizlabs.android.broker.batch;
+
+/**
+ * Description: Describes how calls to a per-item endpoint are batched into one request to a bulk endpoint by the
+ * {@link com.raizlabs.android.broker.batch.KeyBatchingRequestExecutor}.
+ */
+public class BatchPolicy {
+
+    private final String mUrl;
+
+    private final String mParam;
+
+    private final String mIdField;
+
+    private final long mWindow;
+
+    private final int mMaxSize;
+
+    /**
+     * @param url     The url of the bulk endpoint, relative to the base url of the request.
+     * @param param   The url param that the comma separated keys are sent in.
+     * @param idField The field that holds the key of each item if the bulk endpoint returns a JSON array, or
+     *                null or empty if it returns a JSON object keyed by the keys.
+     * @param window  How long, in milliseconds, to wait for more calls after the first one.
+     * @param maxSize The most keys to send in one request.
+     */
+    public BatchPolicy(String url, String param, String idField, long window, int maxSize) {
+        if (window < 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("A BatchPolicy must have a non-negative window and a positive max size");
+        }
+        mUrl = url;
+        mParam = param;
+        mIdField = idField;
+        mWindow = window;
+        mMaxSize = maxSize;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getParam() {
+        return mParam;
+    }
+
+    public String getIdField() {
+        return mIdField;
+    }
+
+    public long getWindow() {
+        return mWindow;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+}
@@ -0,0 +1,372 @@
+package com.raizlabs.android.broker.batch;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+import com.raizlabs.android.broker.responsehandler.ResponseHandler;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Collects requests that have a {@link com.raizlabs.android.broker.batch.BatchPolicy} and sends them as
+ * one GET to the bulk endpoint of the policy, in the manner of a DataLoader. A batch is sent once the window of the
+ * policy has passed since its first request, or as soon as it reaches the max size.
+ * <br />
+ * Each key is sent once no matter how many requests asked for it. The bulk response is split on the network thread,
+ * either by member name when it is a JSON object or by the id field of each element when it is a JSON array, and
+ * every item is run through the {@link com.raizlabs.android.broker.responsehandler.ResponseHandler} of each request
+ * that asked for it. A key missing from the response is reported as an error to its requests.
+ * <br />
+ * Requests are batched together when they share a base url, bulk endpoint and headers. All other requests pass
+ * straight through.
+ */
+public class KeyBatchingRequestExecutor extends DelegateRequestExecutor {
+
+    private final Map<String, PendingBatch> mBatches = new HashMap<>();
+
+    /**
+     * Batches that were sent and have not been delivered yet, so their requests can still be cancelled.
+     */
+    private final List<PendingBatch> mSent = new ArrayList<>();
+
+    /**
+     * @param delegate The executor that runs the bulk requests and any request that is not batched.
+     */
+    public KeyBatchingRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(Request request) {
+        final BatchPolicy policy = request.getBatchPolicy();
+        if (policy == null || request.getBatchKey() == null || request.getMethod() != Method.GET) {
+            super.execute(request);
+            return;
+        }
+
+        String groupKey = request.getBaseUrl() + " " + policy.getUrl() + " " + policy.getParam() + " "
+                + request.getHeaders();
+        PendingBatch full = null;
+        synchronized (mBatches) {
+            PendingBatch batch = mBatches.get(groupKey);
+            if (batch == null) {
+                final PendingBatch newBatch = new PendingBatch(groupKey, policy, request);
+                newBatch.mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (detach(newBatch)) {
+                            send(newBatch);
+                        }
+                    }
+                }, policy.getWindow(), TimeUnit.MILLISECONDS);
+                mBatches.put(groupKey, newBatch);
+                batch = newBatch;
+            }
+
+            batch.add(request);
+            if (batch.keyCount() >= policy.getMaxSize()) {
+                mBatches.remove(groupKey);
+                batch.mTimer.cancel(false);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null && request.getBatchPolicy() != null) {
+            synchronized (mBatches) {
+                for (PendingBatch batch : mBatches.values()) {
+                    if (batch.remove(request)) {
+                        return;
+                    }
+                }
+                for (PendingBatch batch : mSent) {
+                    if (batch.remove(request)) {
+                        return;
+                    }
+                }
+            }
+        } else if (request == null && data != null) {
+            synchronized (mBatches) {
+                for (PendingBatch batch : mBatches.values()) {
+                    batch.removeMatching(data);
+                }
+                for (PendingBatch batch : mSent) {
+                    batch.removeMatching(data);
+                }
+            }
+        }
+        super.cancelRequest(data, request);
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mBatches) {
+            for (PendingBatch batch : mBatches.values()) {
+                batch.mTimer.cancel(false);
+            }
+            mBatches.clear();
+            mSent.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    private boolean detach(PendingBatch batch) {
+        synchronized (mBatches) {
+            if (mBatches.get(batch.mGroupKey) == batch) {
+                mBatches.remove(batch.mGroupKey);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(final PendingBatch batch) {
+        synchronized (mBatches) {
+            if (batch.snapshot().isEmpty()) {
+                return;
+            }
+            mSent.add(batch);
+        }
+
+        StringBuilder keys = new StringBuilder();
+        Priority priority = Priority.LOW;
+        for (Map.Entry<String, List<Request>> entry : batch.snapshot().entrySet()) {
+            if (keys.length() > 0) {
+                keys.append(',');
+            }
+            keys.append(entry.getKey());
+            for (Request request : entry.getValue()) {
+                if (request.getPriority().ordinal() > priority.ordinal()) {
+                    priority = request.getPriority();
+                }
+            }
+        }
+
+        Request first = batch.mFirst;
+        String baseUrl = first.getBaseUrl();
+        new Request.Builder<Map<String, Object>>(getDelegate())
+                .provider(baseUrl != null ? new SimpleUrlProvider(baseUrl, batch.mPolicy.getUrl(), Method.GET)
+                        : new SimpleUrlProvider(batch.mPolicy.getUrl(), Method.GET))
+                .addRequestHeaders(first.getHeaders())
+                .addUrlParam(batch.mPolicy.getParam(), keys.toString())
+                .priority(priority)
+                .responseHandler(new SplitResponseHandler(batch))
+                .build(new RequestCallback<Map<String, Object>>() {
+                    @Override
+                    public void onRequestDone(Map<String, Object> results) {
+                        deliver(batch, results, null, null);
+                    }
+
+                    @Override
+                    public void onRequestError(Throwable error, String stringError) {
+                        deliver(batch, null, error, stringError);
+                    }
+                })
+                .execute();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(PendingBatch batch, Map<String, Object> results, Throwable error, String stringError) {
+        synchronized (mBatches) {
+            if (!mSent.remove(batch)) {
+                // Cancelled
+                return;
+            }
+        }
+
+        for (Map.Entry<String, List<Request>> entry : batch.snapshot().entrySet()) {
+            for (Request request : entry.getValue()) {
+                RequestCallback callback = request.getCallback();
+                if (callback == null) {
+                    continue;
+                }
+
+                Object result = results != null ? results.get(keyFor(entry.getKey(), request)) : null;
+                if (results == null) {
+                    callback.onRequestError(error, stringError);
+                } else if (result instanceof MissingItem) {
+                    callback.onRequestError(null, ((MissingItem) result).mMessage);
+                } else {
+                    callback.onRequestDone(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests for the same key can have different handlers, so each result is stored per key and handler.
+     */
+    private static String keyFor(String key, Request request) {
+        return key + " " + System.identityHashCode(request.getResponseHandler());
+    }
+
+    /**
+     * Stands in for the result of a key that was not in the bulk response or failed to parse.
+     */
+    private static class MissingItem {
+
+        final String mMessage;
+
+        MissingItem(String message) {
+            mMessage = message;
+        }
+    }
+
+    /**
+     * The requests collected for one bulk endpoint, by key.
+     */
+    private static class PendingBatch {
+
+        final String mGroupKey;
+
+        final BatchPolicy mPolicy;
+
+        final Request mFirst;
+
+        final LinkedHashMap<String, List<Request>> mRequests = new LinkedHashMap<>();
+
+        ScheduledFuture<?> mTimer;
+
+        PendingBatch(String groupKey, BatchPolicy policy, Request first) {
+            mGroupKey = groupKey;
+            mPolicy = policy;
+            mFirst = first;
+        }
+
+        synchronized void add(Request request) {
+            List<Request> requests = mRequests.get(request.getBatchKey());
+            if (requests == null) {
+                requests = new ArrayList<>();
+                mRequests.put(request.getBatchKey(), requests);
+            }
+            requests.add(request);
+        }
+
+        synchronized boolean remove(Request request) {
+            List<Request> requests = mRequests.get(request.getBatchKey());
+            if (requests != null && requests.remove(request)) {
+                if (requests.isEmpty()) {
+                    mRequests.remove(request.getBatchKey());
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes every request whose metadata matches, emptying keys that no request asks for anymore.
+         */
+        synchronized void removeMatching(Object data) {
+            Iterator<List<Request>> keys = mRequests.values().iterator();
+            while (keys.hasNext()) {
+                List<Request> requests = keys.next();
+                Iterator<Request> iterator = requests.iterator();
+                while (iterator.hasNext()) {
+                    if (data.equals(iterator.next().getMetaData())) {
+                        iterator.remove();
+                    }
+                }
+                if (requests.isEmpty()) {
+                    keys.remove();
+                }
+            }
+        }
+
+        synchronized int keyCount() {
+            return mRequests.size();
+        }
+
+        synchronized Map<String, List<Request>> snapshot() {
+            Map<String, List<Request>> snapshot = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Request>> entry : mRequests.entrySet()) {
+                snapshot.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Splits the bulk response into the handled result for each key and handler.
+     */
+    private static class SplitResponseHandler implements ResponseHandler<String, Map<String, Object>> {
+
+        private final PendingBatch mBatch;
+
+        SplitResponseHandler(PendingBatch batch) {
+            mBatch = batch;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> handleResponse(String response) {
+            Map<String, Object> items = new HashMap<>();
+            String parseError = null;
+            try {
+                Object root = new JSONTokener(response).nextValue();
+                String idField = mBatch.mPolicy.getIdField();
+                if (idField == null || idField.isEmpty()) {
+                    JSONObject object = (JSONObject) root;
+                    for (String key : mBatch.snapshot().keySet()) {
+                        Object item = object.opt(key);
+                        if (item != null) {
+                            items.put(key, item);
+                        }
+                    }
+                } else {
+                    JSONArray array = (JSONArray) root;
+                    for (int i = 0; i < array.length(); i++) {
+                        JSONObject item = array.optJSONObject(i);
+                        if (item != null && item.has(idField)) {
+                            items.put(item.optString(idField), item);
+                        }
+                    }
+                }
+            } catch (JSONException | ClassCastException e) {
+                parseError = "Could not split the batch response: " + e.getMessage();
+            }
+
+            Map<String, Object> results = new HashMap<>();
+            for (Map.Entry<String, List<Request>> entry : mBatch.snapshot().entrySet()) {
+                String key = entry.getKey();
+                Object item = items.get(key);
+                for (Request request : entry.getValue()) {
+                    String resultKey = keyFor(key, request);
+                    if (results.containsKey(resultKey)) {
+                        continue;
+                    }
+                    if (item == null) {
+                        results.put(resultKey, new MissingItem(parseError != null ? parseError
+                                : "The batch response has no item for " + key));
+                    } else {
+                        results.put(resultKey, request.getResponseHandler().handleResponse(item.toString()));
+                    }
+                }
+            }
+            return results;
+        }
+    }
+}
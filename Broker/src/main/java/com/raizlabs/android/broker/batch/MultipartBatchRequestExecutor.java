@@ -0,0 +1,624 @@
+package com.raizlabs.android.broker.batch;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.SimpleUrlProvider;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Gathers the requests executed within a short window and sends them to a batch endpoint as the parts of
+ * one {@code multipart/mixed} POST, in the manner of the Google and OData batch protocols. Each part is an
+ * {@code application/http} request with a {@code Content-ID}, and the server answers with a {@code multipart/mixed}
+ * response holding one {@code application/http} response per part. Each of those is run through the interceptors and
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler} of its request, and delivered to its callback
+ * as if it had been sent on its own.
+ * <br />
+ * Parts are sent highest priority first, and the batch runs at the highest priority of its parts. A batch holds at most
+ * the max size of parts, anything past that waits for the next one. {@link com.raizlabs.android.broker.core.Priority#IMMEDIATE}
+ * requests, requests to another host than the batch endpoint, and requests with parts or a file to download to are
+ * never batched.
+ */
+public class MultipartBatchRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * How long to gather requests by default, in milliseconds.
+     */
+    public static final long DEFAULT_WINDOW = 10;
+
+    /**
+     * The most requests in one batch by default.
+     */
+    public static final int DEFAULT_MAX_SIZE = 20;
+
+    /**
+     * The content type of a batch and of its response.
+     */
+    public static final String MULTIPART_MIXED = "multipart/mixed";
+
+    /**
+     * The content type of each part in a batch.
+     */
+    public static final String APPLICATION_HTTP = "application/http";
+
+    private static final String CONTENT_ID_HEADER = "Content-ID";
+
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
+    private static final String PART_ID_PREFIX = "item-";
+
+    private static final String RESPONSE_ID_PREFIX = "response-";
+
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Maps bytes to chars one to one, so binary bodies survive being sliced as strings.
+     */
+    private static final String RAW = "ISO-8859-1";
+
+    private static final String[] METHOD_NAMES = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "TRACE", "PATCH"};
+
+    private final String mBatchUrl;
+
+    private final String mOrigin;
+
+    private final long mWindow;
+
+    private final int mMaxSize;
+
+    private final List<Request> mPending = new ArrayList<>();
+
+    /**
+     * Batches that were sent and have not been delivered yet, so their requests can still be cancelled.
+     */
+    private final List<Envelope> mSent = new ArrayList<>();
+
+    private ScheduledFuture<?> mTimer;
+
+    /**
+     * @param delegate The executor that runs the batches and any request that is not batched.
+     * @param batchUrl The full url of the batch endpoint. Only requests to the same host are batched.
+     */
+    public MultipartBatchRequestExecutor(RequestExecutor delegate, String batchUrl) {
+        this(delegate, batchUrl, DEFAULT_WINDOW, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param delegate The executor that runs the batches and any request that is not batched.
+     * @param batchUrl The full url of the batch endpoint. Only requests to the same host are batched.
+     * @param window   How long, in milliseconds, to gather requests after the first one before sending them.
+     * @param maxSize  The most requests to send in one batch.
+     */
+    public MultipartBatchRequestExecutor(RequestExecutor delegate, String batchUrl, long window, int maxSize) {
+        super(delegate);
+        if (window < 0 || maxSize <= 0) {
+            throw new IllegalArgumentException("A batch needs a window of at least 0 and a max size of at least 1");
+        }
+        mOrigin = getOrigin(batchUrl);
+        if (mOrigin == null) {
+            throw new IllegalArgumentException("The batch url must be absolute: " + batchUrl);
+        }
+        mBatchUrl = batchUrl;
+        mWindow = window;
+        mMaxSize = maxSize;
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (!isBatchable(request)) {
+            super.execute(request);
+            return;
+        }
+
+        boolean full;
+        synchronized (mPending) {
+            mPending.add(request);
+            full = mPending.size() >= mMaxSize;
+            if (!full && mTimer == null) {
+                mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, mWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full) {
+            flush();
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            if (!detach(request)) {
+                super.cancelRequest(data, request);
+            }
+        } else {
+            List<Request> matching = new ArrayList<>();
+            synchronized (mPending) {
+                for (Request pending : mPending) {
+                    if (data != null && data.equals(pending.getMetaData())) {
+                        matching.add(pending);
+                    }
+                }
+                for (Envelope envelope : mSent) {
+                    for (Request sent : envelope.mRequests) {
+                        if (data != null && data.equals(sent.getMetaData())) {
+                            matching.add(sent);
+                        }
+                    }
+                }
+            }
+            for (Request match : matching) {
+                detach(match);
+            }
+            super.cancelRequest(data, null);
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mPending) {
+            if (mTimer != null) {
+                mTimer.cancel(false);
+                mTimer = null;
+            }
+            mPending.clear();
+            for (Envelope envelope : mSent) {
+                envelope.mCancelled.addAll(envelope.mRequests);
+            }
+            mSent.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @param request The request
+     * @return True if the request can be sent as part of a batch.
+     */
+    protected boolean isBatchable(Request request) {
+        return request.getPriority() != Priority.IMMEDIATE && !request.isMultiPart() && !request.hasFile()
+                && request.getMethod() >= 0 && request.getMethod() < METHOD_NAMES.length
+                && mOrigin.equalsIgnoreCase(getOrigin(request.getFullUrl()));
+    }
+
+    /**
+     * Sends up to the max size of the pending requests, highest priority first.
+     */
+    private void flush() {
+        List<Request> requests = new ArrayList<>();
+        synchronized (mPending) {
+            if (mTimer != null) {
+                mTimer.cancel(false);
+                mTimer = null;
+            }
+            for (int ordinal = Priority.IMMEDIATE.ordinal(); ordinal >= 0 && requests.size() < mMaxSize; ordinal--) {
+                for (Request pending : mPending) {
+                    if (pending.getPriority().ordinal() == ordinal && requests.size() < mMaxSize) {
+                        requests.add(pending);
+                    }
+                }
+            }
+            mPending.removeAll(requests);
+            if (!mPending.isEmpty()) {
+                // What did not fit has already waited a window
+                mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (!requests.isEmpty()) {
+            send(new Envelope(requests));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(Envelope envelope) {
+        String boundary = "batch_" + UUID.randomUUID().toString();
+        byte[] body;
+        try {
+            body = encode(envelope.mRequests, boundary);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        synchronized (mPending) {
+            mSent.add(envelope);
+        }
+
+        envelope.mBatchRequest = new Request.Builder<Object>(getDelegate())
+                .provider(new SimpleUrlProvider(mBatchUrl, Method.POST))
+                .priority(envelope.mRequests.get(0).getPriority())
+                .bodyContentType(MULTIPART_MIXED + "; boundary=" + boundary)
+                .body(new ByteArrayInputStream(body), body.length)
+                .build(new EnvelopeCallback(envelope));
+        envelope.mBatchRequest.execute();
+    }
+
+    /**
+     * Takes the request out of its pending or sent batch. A sent batch is cancelled once all of its requests are.
+     *
+     * @return False if the request was not batched here.
+     */
+    private boolean detach(Request request) {
+        Request batchToCancel = null;
+        synchronized (mPending) {
+            if (mPending.remove(request)) {
+                return true;
+            }
+            boolean found = false;
+            for (Envelope envelope : mSent) {
+                if (envelope.mRequests.contains(request)) {
+                    found = true;
+                    envelope.mCancelled.add(request);
+                    if (envelope.mCancelled.size() == envelope.mRequests.size()) {
+                        mSent.remove(envelope);
+                        batchToCancel = envelope.mBatchRequest;
+                    }
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        if (batchToCancel != null) {
+            super.cancelRequest(batchToCancel.getMetaData(), batchToCancel);
+        }
+        return true;
+    }
+
+    private static byte[] encode(List<Request> requests, String boundary) throws UnsupportedEncodingException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < requests.size(); i++) {
+            Request<?> request = requests.get(i);
+            byte[] body = request.hasBody() ? RequestUtils.readRequestBodyIntoByteArray(request) : null;
+
+            StringBuilder head = new StringBuilder();
+            head.append("--").append(boundary).append(CRLF)
+                    .append(Request.CONTENT_TYPE_HEADER).append(": ").append(APPLICATION_HTTP).append(CRLF)
+                    .append(CONTENT_ID_HEADER).append(": <").append(PART_ID_PREFIX).append(i + 1).append('>')
+                    .append(CRLF).append(CRLF);
+
+            String url = request.getFullUrl();
+            head.append(METHOD_NAMES[request.getMethod()]).append(' ')
+                    .append(url.substring(getOrigin(url).length())).append(" HTTP/1.1").append(CRLF);
+            Map<String, String> headers = request.getHeaders();
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append(CRLF);
+            }
+            if (body != null) {
+                if (request.getBodyContentType() != null) {
+                    head.append(Request.CONTENT_TYPE_HEADER).append(": ").append(request.getBodyContentType())
+                            .append(CRLF);
+                }
+                head.append(CONTENT_LENGTH_HEADER).append(": ").append(body.length).append(CRLF);
+            }
+            head.append(CRLF);
+
+            byte[] headBytes = head.toString().getBytes("UTF-8");
+            out.write(headBytes, 0, headBytes.length);
+            if (body != null) {
+                out.write(body, 0, body.length);
+            }
+            byte[] crlf = CRLF.getBytes(RAW);
+            out.write(crlf, 0, crlf.length);
+        }
+        byte[] close = ("--" + boundary + "--" + CRLF).getBytes(RAW);
+        out.write(close, 0, close.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The scheme, host and port of the url, or null if it is not absolute.
+     */
+    private static String getOrigin(String url) {
+        if (url == null) {
+            return null;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return null;
+        }
+        int end = schemeEnd + 3;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        return url.substring(0, end);
+    }
+
+    private static String getHeader(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The value of the parameter in a header value such as {@code multipart/mixed; boundary=abc}.
+     */
+    private static String getHeaderParam(String value, String name) {
+        if (value == null) {
+            return null;
+        }
+        for (String param : value.split(";")) {
+            int equals = param.indexOf('=');
+            if (equals > 0 && name.equalsIgnoreCase(param.substring(0, equals).trim())) {
+                String paramValue = param.substring(equals + 1).trim();
+                if (paramValue.length() > 1 && paramValue.startsWith("\"") && paramValue.endsWith("\"")) {
+                    paramValue = paramValue.substring(1, paramValue.length() - 1);
+                }
+                return paramValue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits a block of header lines, followed by an empty line, off the front of the text.
+     *
+     * @return The index just past the empty line.
+     */
+    private static int readHeaders(String text, int start, Map<String, String> headers) {
+        int position = start;
+        while (position < text.length()) {
+            int lineEnd = text.indexOf('\n', position);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            String line = text.substring(position, lineEnd);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            position = Math.min(text.length(), lineEnd + 1);
+            if (line.isEmpty()) {
+                break;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Splits the body of a multipart response into its parts, without their delimiters.
+     */
+    private static List<String> splitParts(String body, String boundary) {
+        List<String> parts = new ArrayList<>();
+        String delimiter = "--" + boundary;
+        int start = body.indexOf(delimiter);
+        while (start >= 0) {
+            int contentStart = start + delimiter.length();
+            if (body.startsWith("--", contentStart)) {
+                break;
+            }
+            int lineEnd = body.indexOf('\n', contentStart);
+            if (lineEnd < 0) {
+                break;
+            }
+            int next = body.indexOf(delimiter, lineEnd + 1);
+            if (next < 0) {
+                break;
+            }
+            // The line break before a delimiter belongs to the delimiter
+            int contentEnd = next;
+            if (contentEnd > lineEnd + 1 && body.charAt(contentEnd - 1) == '\n') {
+                contentEnd--;
+                if (contentEnd > lineEnd + 1 && body.charAt(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+            }
+            parts.add(body.substring(lineEnd + 1, contentEnd));
+            start = next;
+        }
+        return parts;
+    }
+
+    /**
+     * @return The one-based index of the request a response part answers, or -1 if it has no usable Content-ID.
+     */
+    private static int getPartIndex(String contentId) {
+        if (contentId == null) {
+            return -1;
+        }
+        String id = contentId.trim();
+        if (id.startsWith("<") && id.endsWith(">")) {
+            id = id.substring(1, id.length() - 1);
+        }
+        if (id.startsWith(RESPONSE_ID_PREFIX)) {
+            id = id.substring(RESPONSE_ID_PREFIX.length());
+        }
+        if (!id.startsWith(PART_ID_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(id.substring(PART_ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The handled response, or error, for one request in a batch.
+     */
+    private static class Result {
+
+        final boolean mSuccess;
+
+        final Object mResponse;
+
+        final Throwable mError;
+
+        final String mStringError;
+
+        Result(boolean success, Object response, Throwable error, String stringError) {
+            mSuccess = success;
+            mResponse = response;
+            mError = error;
+            mStringError = stringError;
+        }
+    }
+
+    /**
+     * The requests sent in one batch, in the order of their parts.
+     */
+    private static class Envelope {
+
+        final List<Request> mRequests;
+
+        /**
+         * Only touched while holding the pending lock.
+         */
+        final List<Request> mCancelled = new ArrayList<>();
+
+        Request mBatchRequest;
+
+        Envelope(List<Request> requests) {
+            mRequests = requests;
+        }
+    }
+
+    /**
+     * Splits the batch response on the network thread and delivers each part to its request.
+     */
+    private class EnvelopeCallback implements RequestCallback<Object>, ResponseInterceptor {
+
+        private final Envelope mEnvelope;
+
+        private final Map<Request, Result> mResults = new HashMap<>();
+
+        EnvelopeCallback(Envelope envelope) {
+            mEnvelope = envelope;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            if (statusCode != -1 && (statusCode < 200 || statusCode >= 300)) {
+                return body;
+            }
+
+            String boundary = getHeaderParam(getHeader(headers, Request.CONTENT_TYPE_HEADER), "boundary");
+            if (boundary == null) {
+                throw new IOException("The batch response is not " + MULTIPART_MIXED);
+            }
+
+            Map<Integer, String> parts = new LinkedHashMap<>();
+            List<String> split = splitParts(new String(body, RAW), boundary);
+            for (int i = 0; i < split.size(); i++) {
+                String part = split.get(i);
+                Map<String, String> partHeaders = new HashMap<>();
+                int start = readHeaders(part, 0, partHeaders);
+                int index = getPartIndex(getHeader(partHeaders, CONTENT_ID_HEADER));
+                parts.put(index > 0 ? index : i + 1, part.substring(start));
+            }
+
+            for (int i = 0; i < mEnvelope.mRequests.size(); i++) {
+                Request partRequest = mEnvelope.mRequests.get(i);
+                String part = parts.get(i + 1);
+                mResults.put(partRequest, part != null ? handlePart(partRequest, part, charset)
+                        : new Result(false, null, null, "The batch response has no part for " + partRequest.getUrl()));
+            }
+            return body;
+        }
+
+        private Result handlePart(Request request, String part, String charset) {
+            int statusLineEnd = part.indexOf('\n');
+            String statusLine = (statusLineEnd < 0 ? part : part.substring(0, statusLineEnd)).trim();
+            String[] status = statusLine.split(" ", 3);
+            int statusCode;
+            try {
+                statusCode = Integer.parseInt(status[1]);
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                return new Result(false, null, null, "Invalid status line in the batch response: " + statusLine);
+            }
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            int bodyStart = statusLineEnd < 0 ? part.length() : readHeaders(part, statusLineEnd + 1, headers);
+            String partCharset = getHeaderParam(getHeader(headers, Request.CONTENT_TYPE_HEADER), "charset");
+            if (partCharset == null) {
+                partCharset = charset;
+            }
+
+            try {
+                byte[] body = part.substring(bodyStart).getBytes(RAW);
+                if (statusCode < 200 || statusCode >= 300) {
+                    String message = body.length > 0 ? new String(body, partCharset) : statusLine;
+                    return new Result(false, null, new IOException(statusLine), message);
+                }
+                return new Result(true, RequestUtils.handleResponse(request, statusCode, headers, body, partCharset),
+                        null, null);
+            } catch (IOException | RuntimeException e) {
+                return new Result(false, null, e, e.getMessage());
+            }
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            deliver(null, null);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            deliver(error, stringError);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(Throwable error, String stringError) {
+            List<Request> cancelled;
+            synchronized (mPending) {
+                if (!mSent.remove(mEnvelope)) {
+                    // Cancelled
+                    return;
+                }
+                cancelled = new ArrayList<>(mEnvelope.mCancelled);
+            }
+
+            for (Request request : mEnvelope.mRequests) {
+                RequestCallback callback = request.getCallback();
+                if (callback == null || cancelled.contains(request)) {
+                    continue;
+                }
+
+                Result result = mResults.get(request);
+                if (result == null) {
+                    callback.onRequestError(error, stringError != null ? stringError
+                            : "The batch request failed for " + request.getUrl());
+                } else if (result.mSuccess) {
+                    callback.onRequestDone(result.mResponse);
+                } else {
+                    callback.onRequestError(result.mError, result.mStringError);
+                }
+            }
+        }
+    }
+}
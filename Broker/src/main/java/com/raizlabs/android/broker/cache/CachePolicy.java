@@ -0,0 +1,49 @@
+package com.raizlabs.android.broker.cache;
+
+/**
+ * Description: Describes how long the handled response of a {@link com.raizlabs.android.broker.Request} can be
+ * kept in a {@link com.raizlabs.android.broker.cache.ResponseCache}.
+ */
+public class CachePolicy {
+
+    /**
+     * How long, in milliseconds, a cached response is served without going to the network.
+     */
+    private final long mTimeToLive;
+
+    /**
+     * How long, in milliseconds, after {@link #mTimeToLive} a cached response is still served while a fresh
+     * copy is fetched in the background.
+     */
+    private final long mStaleWhileRevalidate;
+
+    /**
+     * Constructs a policy that does not serve stale responses.
+     *
+     * @param timeToLive How long, in milliseconds, the response stays fresh.
+     */
+    public CachePolicy(long timeToLive) {
+        this(timeToLive, 0);
+    }
+
+    /**
+     * @param timeToLive           How long, in milliseconds, the response stays fresh.
+     * @param staleWhileRevalidate How long, in milliseconds, past the time to live the response can be served while
+     *                             it is refreshed.
+     */
+    public CachePolicy(long timeToLive, long staleWhileRevalidate) {
+        if (timeToLive < 0 || staleWhileRevalidate < 0) {
+            throw new IllegalArgumentException("A CachePolicy cannot have negative durations");
+        }
+        mTimeToLive = timeToLive;
+        mStaleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public long getTimeToLive() {
+        return mTimeToLive;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return mStaleWhileRevalidate;
+    }
+}
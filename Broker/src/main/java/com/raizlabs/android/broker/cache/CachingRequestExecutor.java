@@ -0,0 +1,166 @@
+package com.raizlabs.android.broker.cache;
+
+import android.util.Log;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestFingerprint;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Description: Serves requests that have a {@link com.raizlabs.android.broker.cache.CachePolicy} from a
+ * {@link com.raizlabs.android.broker.cache.ResponseCache}, so a hit skips both the network and the
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}. A stale hit is returned to the
+ * {@link com.raizlabs.android.broker.RequestCallback} right away and the request is then run on the delegate in
+ * the background; the fresh response is delivered to the same callback once it arrives. If the refresh fails, the
+ * stale response stands and the error is only logged, so a callback never gets an error after its response.
+ * <br />
+ * Hits are delivered on the callback executor, which is the main thread by default to match Volley and the
+ * {@link com.raizlabs.android.broker.cache.RawCachingRequestExecutor}.
+ * <br />
+ * Requests without a policy, or that download to a file, pass straight through. Any other request to the same
+ * URL and params, such as a PUT or DELETE, removes the cached GET response for it. Cached GETs that send headers
+ * are only found when those headers are the {@link com.raizlabs.android.broker.RequestConfig#setFingerprintVaryHeaders(String...)}
+ * and the mutation sends the same values.
+ */
+public class CachingRequestExecutor extends DelegateRequestExecutor {
+
+    private final ResponseCache mCache;
+
+    private final Executor mCallbackExecutor;
+
+    /**
+     * The keys of stale entries that are currently being refreshed, so we only refresh each once.
+     */
+    private final ConcurrentHashMap<Object, Boolean> mRevalidating = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs this executor delivering hits on the main thread.
+     *
+     * @param delegate The executor that runs requests that miss the cache.
+     * @param cache    The cache to store handled responses in.
+     */
+    public CachingRequestExecutor(RequestExecutor delegate, ResponseCache cache) {
+        this(delegate, cache, ExecutorUtils.getMainThreadExecutor());
+    }
+
+    /**
+     * @param delegate         The executor that runs requests that miss the cache.
+     * @param cache            The cache to store handled responses in.
+     * @param callbackExecutor Where to call the {@link com.raizlabs.android.broker.RequestCallback} on a hit.
+     */
+    public CachingRequestExecutor(RequestExecutor delegate, ResponseCache cache, Executor callbackExecutor) {
+        super(delegate);
+        mCache = cache;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    public ResponseCache getCache() {
+        return mCache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute(Request request) {
+        CachePolicy policy = request.getCachePolicy();
+        if (request.getMethod() != Method.GET && request.getMethod() != Method.HEAD) {
+            mCache.remove(getCacheKey(request, Method.GET));
+            super.execute(request);
+        } else if (policy == null || request.hasFile()) {
+            super.execute(request);
+        } else {
+            Object key = getCacheKey(request, request.getMethod());
+            ResponseCache.Entry entry = mCache.get(key);
+            if (entry == null) {
+                executeDelegate(request, new CacheCallback(request, key, policy, false));
+            } else {
+                deliverEntry(request, entry.getValue());
+
+                if (mCache.isStale(entry) && mRevalidating.putIfAbsent(key, Boolean.TRUE) == null) {
+                    executeDelegate(request, new CacheCallback(request, key, policy, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the key that identifies a request in the cache.
+     *
+     * @param request The request
+     * @param method  The method to key the request as. For another method than its own, only the resource is keyed,
+     *                so a mutation finds the cached GET whatever headers of its own it sends.
+     * @return The key for the request.
+     */
+    protected Object getCacheKey(Request request, int method) {
+        return method == request.getMethod() ? request.getFingerprint()
+                : RequestFingerprint.computeResource(request, method);
+    }
+
+    private void deliverEntry(Request request, final Object value) {
+        final RequestCallback callback = request.getCallback();
+        if (callback != null) {
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run() {
+                    callback.onRequestDone(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores successful responses before passing them along.
+     */
+    private class CacheCallback extends RequestCallbackWrapper {
+
+        private final Object mKey;
+
+        private final CachePolicy mPolicy;
+
+        private final boolean mRevalidation;
+
+        @SuppressWarnings("unchecked")
+        CacheCallback(Request request, Object key, CachePolicy policy, boolean revalidation) {
+            super(request);
+            mKey = key;
+            mPolicy = policy;
+            mRevalidation = revalidation;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onRequestDone(Object response) {
+            if (response != null) {
+                mCache.put(mKey, response, mPolicy);
+            }
+            finishRevalidation();
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            finishRevalidation();
+            if (mRevalidation) {
+                // The stale response was already delivered and stands
+                Log.w(CachingRequestExecutor.class.getSimpleName(), "Could not refresh "
+                        + getRequest().getFullUrl() + ": " + stringError);
+            } else {
+                deliverError(error, stringError);
+            }
+        }
+
+        private void finishRevalidation() {
+            if (mRevalidation) {
+                mRevalidating.remove(mKey);
+            }
+        }
+    }
+}
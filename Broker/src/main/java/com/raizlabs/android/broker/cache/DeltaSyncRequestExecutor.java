@@ -0,0 +1,245 @@
+package com.raizlabs.android.broker.cache;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Description: Lets the server answer {@link com.raizlabs.android.broker.Request#isDeltaSync()} GET requests with an
+ * RFC 6902 JSON Patch instead of the whole document.
+ * <br />
+ * The last full document of each request is kept as its base in a {@link com.raizlabs.android.broker.cache.RawResponseCache}.
+ * When there is a base, its version is sent in the {@link #BASE_VERSION_HEADER}. The version is the ETag the server
+ * sent with the document, or the lowercase hex SHA-1 of the bytes received when a full document came without one. A
+ * patched document without an ETag is not kept, since its bytes are ours and not the server's, so the next request
+ * fetches the full document again. The server may then respond
+ * with a {@link com.raizlabs.android.broker.cache.JsonPatch#CONTENT_TYPE} body, which is applied to the base before the
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler} sees it. If the patch does not apply, or arrives
+ * when there is no base, the base is dropped and the request is run again without one to fetch the full document.
+ * <br />
+ * This should be the executor closest to the network, so other caches store the patched document.
+ */
+public class DeltaSyncRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * The request header that carries the version of the base document.
+     */
+    public static final String BASE_VERSION_HEADER = "X-Base-Version";
+
+    /**
+     * How long a base is kept by default, one week.
+     */
+    public static final long DEFAULT_BASE_TIME_TO_LIVE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String ENCODING = "UTF-8";
+
+    private final RawResponseCache mBases;
+
+    private final long mBaseTimeToLive;
+
+    /**
+     * @param delegate The executor that runs the requests.
+     * @param bases    Where to keep the base documents.
+     */
+    public DeltaSyncRequestExecutor(RequestExecutor delegate, RawResponseCache bases) {
+        this(delegate, bases, DEFAULT_BASE_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param delegate       The executor that runs the requests.
+     * @param bases          Where to keep the base documents.
+     * @param baseTimeToLive How long, in milliseconds, to keep a base document after it was last received.
+     */
+    public DeltaSyncRequestExecutor(RequestExecutor delegate, RawResponseCache bases, long baseTimeToLive) {
+        super(delegate);
+        mBases = bases;
+        mBaseTimeToLive = baseTimeToLive;
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (!request.isDeltaSync() || request.getMethod() != Method.GET || request.hasFile()) {
+            super.execute(request);
+        } else {
+            long key = getCacheKey(request);
+            Base base = Base.decode(mBases.get(key));
+            execute(request, key, base);
+        }
+    }
+
+    /**
+     * @param request The request
+     * @return The key that identifies the base document of the request.
+     */
+    protected long getCacheKey(Request request) {
+        return request.getFingerprint();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void execute(Request request, long key, Base base) {
+        Map<String, String> headers = request.getHeaders();
+        if (base != null) {
+            headers.put(BASE_VERSION_HEADER, base.mVersion);
+        } else {
+            headers.remove(BASE_VERSION_HEADER);
+        }
+        executeDelegate(request, new DeltaSyncCallback(request, key, base));
+    }
+
+    private static String getHeader(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String sha1(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A base document with its version and the charset its bytes are in.
+     */
+    private static class Base {
+
+        final String mVersion;
+
+        final String mCharset;
+
+        final byte[] mBody;
+
+        Base(String version, String charset, byte[] body) {
+            mVersion = version;
+            mCharset = charset;
+            mBody = body;
+        }
+
+        /**
+         * Lays out the base as [version length][version][charset length][charset][body], with two byte lengths.
+         */
+        byte[] encode() throws UnsupportedEncodingException {
+            byte[] version = mVersion.getBytes(ENCODING);
+            byte[] charset = mCharset.getBytes(ENCODING);
+            byte[] entry = new byte[4 + version.length + charset.length + mBody.length];
+            int offset = putBytes(entry, 0, version);
+            offset = putBytes(entry, offset, charset);
+            System.arraycopy(mBody, 0, entry, offset, mBody.length);
+            return entry;
+        }
+
+        static Base decode(byte[] entry) {
+            if (entry == null) {
+                return null;
+            }
+            try {
+                int versionLength = ((entry[0] & 0xff) << 8) | (entry[1] & 0xff);
+                String version = new String(entry, 2, versionLength, ENCODING);
+                int offset = 2 + versionLength;
+                int charsetLength = ((entry[offset] & 0xff) << 8) | (entry[offset + 1] & 0xff);
+                String charset = new String(entry, offset + 2, charsetLength, ENCODING);
+                offset += 2 + charsetLength;
+                byte[] body = new byte[entry.length - offset];
+                System.arraycopy(entry, offset, body, 0, body.length);
+                return new Base(version, charset, body);
+            } catch (UnsupportedEncodingException | IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        private static int putBytes(byte[] entry, int offset, byte[] bytes) {
+            entry[offset] = (byte) (bytes.length >> 8);
+            entry[offset + 1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, entry, offset + 2, bytes.length);
+            return offset + 2 + bytes.length;
+        }
+    }
+
+    /**
+     * Applies patches to the base, stores full documents as the new base, and falls back to a full fetch if the
+     * patch does not apply.
+     */
+    private class DeltaSyncCallback extends RequestCallbackWrapper implements ResponseInterceptor {
+
+        private final long mKey;
+
+        private final Base mBase;
+
+        private volatile boolean mMismatch;
+
+        @SuppressWarnings("unchecked")
+        DeltaSyncCallback(Request request, long key, Base base) {
+            super(request);
+            mKey = key;
+            mBase = base;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            if (statusCode != -1 && (statusCode < 200 || statusCode >= 300)) {
+                return body;
+            }
+
+            String version = getHeader(headers, Request.ETAG_HEADER);
+            String contentType = getHeader(headers, Request.CONTENT_TYPE_HEADER);
+            if (contentType != null && contentType.startsWith(JsonPatch.CONTENT_TYPE)) {
+                if (mBase == null) {
+                    throw mismatch("Received a JSON Patch without a base document");
+                }
+                try {
+                    String document = JsonPatch.apply(new String(mBase.mBody, mBase.mCharset),
+                            new String(body, charset));
+                    body = document.getBytes(charset);
+                } catch (JsonPatchException e) {
+                    throw mismatch(e.getMessage());
+                }
+                if (version == null) {
+                    // The server's bytes of the patched document are unknown, so no version of ours would match
+                    mBases.remove(mKey);
+                    return body;
+                }
+            } else if (version == null) {
+                version = sha1(body);
+            }
+            mBases.put(mKey, new Base(version, charset, body).encode(), mBaseTimeToLive);
+            return body;
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            if (mMismatch) {
+                // Executors wrap the exception differently, so rely on the flag instead of the error type.
+                restore();
+                execute(getRequest(), mKey, null);
+            } else {
+                super.onRequestError(error, stringError);
+            }
+        }
+
+        private IOException mismatch(String message) {
+            mMismatch = true;
+            mBases.remove(mKey);
+            return new IOException("Delta sync failed, fetching the full document: " + message);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.raizlabs.android.broker.cache;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Applies an RFC 6902 JSON Patch to a JSON document. The document is parsed into plain maps and lists,
+ * since org.json cannot insert into or remove from a JSONArray on older API levels, and numbers keep their original
+ * text so untouched values are written back exactly as they were received.
+ */
+public class JsonPatch {
+
+    /**
+     * The Content-Type of a JSON Patch body.
+     */
+    public static final String CONTENT_TYPE = "application/json-patch+json";
+
+    private static final Object NULL = new Object() {
+        @Override
+        public String toString() {
+            return "null";
+        }
+    };
+
+    /**
+     * Applies every operation in the patch to the document, in order. If any operation fails none of the changes
+     * are kept, since the document is only written back once all of them succeed.
+     *
+     * @param document The JSON document.
+     * @param patch    A JSON array of patch operations.
+     * @return The patched document.
+     * @throws JsonPatchException If either could not be parsed, or an operation does not apply.
+     */
+    public static String apply(String document, String patch) throws JsonPatchException {
+        Object root = new Parser(document).parseDocument();
+        Object operations = new Parser(patch).parseDocument();
+        if (!(operations instanceof List)) {
+            throw new JsonPatchException("A JSON Patch must be an array of operations");
+        }
+
+        for (Object operation : (List) operations) {
+            if (!(operation instanceof Map)) {
+                throw new JsonPatchException("A JSON Patch operation must be an object");
+            }
+            root = applyOperation(root, (Map) operation);
+        }
+
+        StringBuilder builder = new StringBuilder(document.length() + 16);
+        write(builder, root);
+        return builder.toString();
+    }
+
+    private static Object applyOperation(Object root, Map operation) throws JsonPatchException {
+        String op = getString(operation, "op");
+        List<String> path = parsePointer(getString(operation, "path"));
+        if ("add".equals(op)) {
+            return add(root, path, getValue(operation));
+        } else if ("remove".equals(op)) {
+            get(root, path);
+            return remove(root, path);
+        } else if ("replace".equals(op)) {
+            return replace(root, path, getValue(operation));
+        } else if ("move".equals(op)) {
+            List<String> from = parsePointer(getString(operation, "from"));
+            if (from.size() < path.size() && path.subList(0, from.size()).equals(from)) {
+                throw new JsonPatchException("Cannot move a value into one of its children");
+            }
+            Object value = get(root, from);
+            return add(remove(root, from), path, value);
+        } else if ("copy".equals(op)) {
+            Object value = copy(get(root, parsePointer(getString(operation, "from"))));
+            return add(root, path, value);
+        } else if ("test".equals(op)) {
+            if (!valueEquals(get(root, path), getValue(operation))) {
+                throw new JsonPatchException("Test failed at " + operation.get("path"));
+            }
+            return root;
+        } else {
+            throw new JsonPatchException("Unknown JSON Patch operation " + op);
+        }
+    }
+
+    private static String getString(Map operation, String name) throws JsonPatchException {
+        Object value = operation.get(name);
+        if (!(value instanceof String)) {
+            throw new JsonPatchException("JSON Patch operation is missing " + name);
+        }
+        return (String) value;
+    }
+
+    private static Object getValue(Map operation) throws JsonPatchException {
+        if (!operation.containsKey("value")) {
+            throw new JsonPatchException("JSON Patch operation is missing value");
+        }
+        return operation.get("value");
+    }
+
+    /**
+     * Splits an RFC 6901 JSON Pointer into its unescaped reference tokens.
+     */
+    private static List<String> parsePointer(String pointer) throws JsonPatchException {
+        List<String> tokens = new ArrayList<>();
+        if (pointer.isEmpty()) {
+            return tokens;
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new JsonPatchException("Invalid JSON Pointer " + pointer);
+        }
+
+        int start = 1;
+        while (true) {
+            int end = pointer.indexOf('/', start);
+            String token = pointer.substring(start, end < 0 ? pointer.length() : end);
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+            if (end < 0) {
+                return tokens;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static Object get(Object root, List<String> path) throws JsonPatchException {
+        Object value = root;
+        for (String token : path) {
+            if (value instanceof Map) {
+                Map map = (Map) value;
+                if (!map.containsKey(token)) {
+                    throw new JsonPatchException("No value at " + token);
+                }
+                value = map.get(token);
+            } else if (value instanceof List) {
+                List list = (List) value;
+                value = list.get(parseIndex(token, list.size() - 1));
+            } else {
+                throw new JsonPatchException("No value at " + token);
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object add(Object root, List<String> path, Object value) throws JsonPatchException {
+        if (path.isEmpty()) {
+            return value;
+        }
+
+        Object parent = get(root, path.subList(0, path.size() - 1));
+        String token = path.get(path.size() - 1);
+        if (parent instanceof Map) {
+            ((Map) parent).put(token, value);
+        } else if (parent instanceof List) {
+            List list = (List) parent;
+            if ("-".equals(token)) {
+                list.add(value);
+            } else {
+                list.add(parseIndex(token, list.size()), value);
+            }
+        } else {
+            throw new JsonPatchException("Cannot add to a value that is not an object or array");
+        }
+        return root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object replace(Object root, List<String> path, Object value) throws JsonPatchException {
+        get(root, path);
+        if (path.isEmpty()) {
+            return value;
+        }
+
+        Object parent = get(root, path.subList(0, path.size() - 1));
+        String token = path.get(path.size() - 1);
+        if (parent instanceof Map) {
+            ((Map) parent).put(token, value);
+        } else {
+            List list = (List) parent;
+            list.set(parseIndex(token, list.size() - 1), value);
+        }
+        return root;
+    }
+
+    private static Object remove(Object root, List<String> path) throws JsonPatchException {
+        if (path.isEmpty()) {
+            return NULL;
+        }
+
+        Object parent = get(root, path.subList(0, path.size() - 1));
+        String token = path.get(path.size() - 1);
+        if (parent instanceof Map) {
+            ((Map) parent).remove(token);
+        } else {
+            List list = (List) parent;
+            list.remove(parseIndex(token, list.size() - 1));
+        }
+        return root;
+    }
+
+    private static int parseIndex(String token, int maxIndex) throws JsonPatchException {
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new JsonPatchException("Invalid array index " + token);
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+                throw new JsonPatchException("Invalid array index " + token);
+            }
+        }
+        int index = Integer.parseInt(token);
+        if (index > maxIndex) {
+            throw new JsonPatchException("Array index out of bounds " + token);
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List) value) {
+                copy.add(copy(item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static boolean valueEquals(Object first, Object second) {
+        if (first instanceof RawNumber && second instanceof RawNumber) {
+            return ((RawNumber) first).compareTo((RawNumber) second) == 0;
+        } else if (first instanceof Map && second instanceof Map) {
+            Map firstMap = (Map) first;
+            Map secondMap = (Map) second;
+            if (firstMap.size() != secondMap.size()) {
+                return false;
+            }
+            for (Object key : firstMap.keySet()) {
+                if (!secondMap.containsKey(key) || !valueEquals(firstMap.get(key), secondMap.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (first instanceof List && second instanceof List) {
+            List firstList = (List) first;
+            List secondList = (List) second;
+            if (firstList.size() != secondList.size()) {
+                return false;
+            }
+            for (int i = 0; i < firstList.size(); i++) {
+                if (!valueEquals(firstList.get(i), secondList.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return first.equals(second);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(StringBuilder builder, Object value) {
+        if (value instanceof String) {
+            writeString(builder, (String) value);
+        } else if (value instanceof Map) {
+            builder.append('{');
+            Iterator<Map.Entry<String, Object>> iterator = ((Map<String, Object>) value).entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Object> entry = iterator.next();
+                writeString(builder, entry.getKey());
+                builder.append(':');
+                write(builder, entry.getValue());
+                if (iterator.hasNext()) {
+                    builder.append(',');
+                }
+            }
+            builder.append('}');
+        } else if (value instanceof List) {
+            builder.append('[');
+            List list = (List) value;
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                write(builder, list.get(i));
+            }
+            builder.append(']');
+        } else {
+            builder.append(value);
+        }
+    }
+
+    private static void writeString(StringBuilder builder, String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c == '\n') {
+                builder.append("\\n");
+            } else if (c == '\r') {
+                builder.append("\\r");
+            } else if (c == '\t') {
+                builder.append("\\t");
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    /**
+     * A number that keeps the text it was parsed from.
+     */
+    private static class RawNumber {
+
+        final String mText;
+
+        RawNumber(String text) {
+            mText = text;
+        }
+
+        int compareTo(RawNumber other) {
+            return new BigDecimal(mText).compareTo(new BigDecimal(other.mText));
+        }
+
+        @Override
+        public String toString() {
+            return mText;
+        }
+    }
+
+    private static class Parser {
+
+        private final String mJson;
+
+        private int mPosition;
+
+        Parser(String json) {
+            mJson = json;
+        }
+
+        Object parseDocument() throws JsonPatchException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (mPosition != mJson.length()) {
+                throw error("Unexpected trailing characters");
+            }
+            return value;
+        }
+
+        private Object parseValue() throws JsonPatchException {
+            skipWhitespace();
+            if (mPosition >= mJson.length()) {
+                throw error("Unexpected end of JSON");
+            }
+
+            char c = mJson.charAt(mPosition);
+            if (c == '{') {
+                return parseObject();
+            } else if (c == '[') {
+                return parseArray();
+            } else if (c == '"') {
+                return parseString();
+            } else if (mJson.startsWith("true", mPosition)) {
+                mPosition += 4;
+                return Boolean.TRUE;
+            } else if (mJson.startsWith("false", mPosition)) {
+                mPosition += 5;
+                return Boolean.FALSE;
+            } else if (mJson.startsWith("null", mPosition)) {
+                mPosition += 4;
+                return NULL;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                return parseNumber();
+            }
+            throw error("Unexpected character " + c);
+        }
+
+        private Map<String, Object> parseObject() throws JsonPatchException {
+            Map<String, Object> map = new LinkedHashMap<>();
+            mPosition++;
+            skipWhitespace();
+            if (consume('}')) {
+                return map;
+            }
+            do {
+                skipWhitespace();
+                if (mPosition >= mJson.length() || mJson.charAt(mPosition) != '"') {
+                    throw error("Expected a name");
+                }
+                String name = parseString();
+                skipWhitespace();
+                if (!consume(':')) {
+                    throw error("Expected :");
+                }
+                map.put(name, parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume('}')) {
+                throw error("Expected }");
+            }
+            return map;
+        }
+
+        private List<Object> parseArray() throws JsonPatchException {
+            List<Object> list = new ArrayList<>();
+            mPosition++;
+            skipWhitespace();
+            if (consume(']')) {
+                return list;
+            }
+            do {
+                list.add(parseValue());
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume(']')) {
+                throw error("Expected ]");
+            }
+            return list;
+        }
+
+        private String parseString() throws JsonPatchException {
+            StringBuilder builder = new StringBuilder();
+            mPosition++;
+            while (mPosition < mJson.length()) {
+                char c = mJson.charAt(mPosition++);
+                if (c == '"') {
+                    return builder.toString();
+                } else if (c != '\\') {
+                    builder.append(c);
+                } else if (mPosition < mJson.length()) {
+                    char escaped = mJson.charAt(mPosition++);
+                    switch (escaped) {
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'u':
+                            if (mPosition + 4 > mJson.length()) {
+                                throw error("Invalid unicode escape");
+                            }
+                            try {
+                                builder.append((char) Integer.parseInt(mJson.substring(mPosition, mPosition + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw error("Invalid unicode escape");
+                            }
+                            mPosition += 4;
+                            break;
+                        default:
+                            builder.append(escaped);
+                    }
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private RawNumber parseNumber() throws JsonPatchException {
+            int start = mPosition;
+            while (mPosition < mJson.length() && "+-0123456789.eE".indexOf(mJson.charAt(mPosition)) >= 0) {
+                mPosition++;
+            }
+            String text = mJson.substring(start, mPosition);
+            try {
+                new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number " + text);
+            }
+            return new RawNumber(text);
+        }
+
+        private boolean consume(char c) {
+            if (mPosition < mJson.length() && mJson.charAt(mPosition) == c) {
+                mPosition++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (mPosition < mJson.length() && Character.isWhitespace(mJson.charAt(mPosition))) {
+                mPosition++;
+            }
+        }
+
+        private JsonPatchException error(String message) {
+            return new JsonPatchException(message + " at " + mPosition);
+        }
+    }
+}
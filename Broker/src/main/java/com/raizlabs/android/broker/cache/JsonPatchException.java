@@ -0,0 +1,13 @@
+package com.raizlabs.android.broker.cache;
+
+/**
+ * Description: Thrown when a JSON document or patch cannot be parsed, or a patch does not apply to the document.
+ */
+public class JsonPatchException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public JsonPatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,533 @@
+package com.raizlabs.android.broker.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Description: A {@link com.raizlabs.android.broker.cache.RawResponseCache} backed by a memory-mapped file, so every
+ * process that opens the same file, such as an app's UI process and its sync service, shares the cached bodies.
+ * <br />
+ * The file holds a header, a hash index of 64-bit request keys, and a data region split into segments that are
+ * written append-only as a ring. When the ring wraps into a segment, index entries that point into it are dropped.
+ * A dropped or removed entry keeps its slot until a new key reuses it. Once the index holds the max entries, it is
+ * compacted, and if every entry is still live a new key takes the oldest one on its probe chain, so the index is
+ * never wiped to make room.
+ * <br />
+ * Readers never lock. Every record carries its key and a CRC32 of its body, so a reader that races a writer, or
+ * follows an index entry into a segment that was just recycled, sees a mismatch and reports a miss instead of returning
+ * a corrupt body. Writers take a short {@link java.nio.channels.FileLock} on the header, which serializes them across
+ * processes, while the append and index update are done.
+ * <br />
+ * Every process must open the file with the same entry count and data capacity. Opening a file that was created with
+ * others fails, since another process may still have it mapped, so use another file when they change.
+ */
+public class MappedResponseCache implements RawResponseCache, Closeable {
+
+    private static final int MAGIC = 0x42524b43;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int RECORD_HEADER_SIZE = 24;
+
+    private static final int SEGMENT_COUNT = 8;
+
+    // Header fields
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_DATA_CAPACITY = 16;
+    private static final int HEADER_APPEND_OFFSET = 24;
+    private static final int HEADER_ENTRY_COUNT = 32;
+
+    private static final long EMPTY = 0;
+
+    private static final long EMPTY_REMAP = 0x9E3779B97F4A7C15L;
+
+    /**
+     * {@link java.nio.channels.FileLock} is held per process, so threads in one process serialize on these first.
+     * Keyed by the canonical path of the file.
+     */
+    private static final Map<String, Object> sProcessLocks = new HashMap<>();
+
+    private final RandomAccessFile mFile;
+
+    private final FileChannel mChannel;
+
+    private final MappedByteBuffer mBuffer;
+
+    private final Object mProcessLock;
+
+    private final int mSlotCount;
+
+    private final int mMask;
+
+    private final int mMaxEntries;
+
+    private final long mDataStart;
+
+    private final long mDataCapacity;
+
+    private final long mSegmentSize;
+
+    /**
+     * @param file         The file to map. Created if it does not exist.
+     * @param maxEntries   The most bodies to index at once.
+     * @param dataCapacity The number of bytes of bodies to keep.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public MappedResponseCache(File file, int maxEntries, long dataCapacity) throws IOException {
+        if (maxEntries <= 0 || dataCapacity < SEGMENT_COUNT * 1024) {
+            throw new IllegalArgumentException("A MappedResponseCache needs at least one entry and 8KB of data");
+        }
+
+        mMaxEntries = maxEntries;
+        mSlotCount = Integer.highestOneBit(Math.max(2, maxEntries + maxEntries / 3) - 1) << 1;
+        mMask = mSlotCount - 1;
+        mSegmentSize = (dataCapacity / SEGMENT_COUNT) & ~7L;
+        mDataCapacity = mSegmentSize * SEGMENT_COUNT;
+        mDataStart = HEADER_SIZE + (long) mSlotCount * SLOT_SIZE;
+        long size = mDataStart + mDataCapacity;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A MappedResponseCache cannot be larger than 2GB");
+        }
+
+        String path = file.getCanonicalPath();
+        synchronized (sProcessLocks) {
+            Object lock = sProcessLocks.get(path);
+            if (lock == null) {
+                lock = new Object();
+                sProcessLocks.put(path, lock);
+            }
+            mProcessLock = lock;
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+
+        MappedByteBuffer buffer = null;
+        try {
+            synchronized (mProcessLock) {
+                FileLock fileLock = mChannel.lock(0, HEADER_SIZE, false);
+                try {
+                    boolean created = checkHeader();
+                    if (mFile.length() < size) {
+                        mFile.setLength(size);
+                    }
+                    buffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    if (created) {
+                        buffer.putInt(HEADER_SLOT_COUNT, mSlotCount);
+                        buffer.putLong(HEADER_DATA_CAPACITY, mDataCapacity);
+                        buffer.putLong(HEADER_APPEND_OFFSET, 0);
+                        buffer.putInt(HEADER_ENTRY_COUNT, 0);
+                        buffer.putInt(HEADER_VERSION, VERSION);
+                        buffer.putInt(HEADER_MAGIC, MAGIC);
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } finally {
+            if (buffer == null) {
+                mFile.close();
+            }
+        }
+        mBuffer = buffer;
+    }
+
+    /**
+     * Reads the header of the file before it is mapped. Must hold the write lock.
+     *
+     * @return True if the file is new, false if it is a cache with the same layout as this one.
+     * @throws IOException If the file is something else, or a cache with another entry count or capacity.
+     */
+    private boolean checkHeader() throws IOException {
+        if (mFile.length() < HEADER_SIZE) {
+            return true;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && mChannel.read(header, header.position()) >= 0) {
+            // Read the whole header
+        }
+        int magic = header.getInt(HEADER_MAGIC);
+        if (magic == 0) {
+            return true;
+        } else if (magic != MAGIC || header.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("The file is not a MappedResponseCache of this version");
+        } else if (header.getInt(HEADER_SLOT_COUNT) != mSlotCount
+                || header.getLong(HEADER_DATA_CAPACITY) != mDataCapacity) {
+            throw new IOException("The file is a MappedResponseCache with another entry count or data capacity");
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] get(long key) {
+        key = remap(key);
+        int slot = (int) mix(key) & mMask;
+        for (int i = 0; i < mSlotCount; i++) {
+            int position = slotPosition(slot);
+            long slotKey = mBuffer.getLong(position);
+            if (slotKey == EMPTY) {
+                return null;
+            } else if (slotKey == key) {
+                long offset = mBuffer.getLong(position + 8);
+                return offset == 0 ? null : readRecord(key, offset - 1);
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return null;
+    }
+
+    @Override
+    public void put(long key, byte[] body, long timeToLive) {
+        key = remap(key);
+        long recordSize = (RECORD_HEADER_SIZE + body.length + 7) & ~7L;
+        if (recordSize > mSegmentSize) {
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        long expiresAt = now() + timeToLive;
+
+        try {
+            synchronized (mProcessLock) {
+                FileLock fileLock = mChannel.lock(0, HEADER_SIZE, false);
+                try {
+                    int slot = findSlotForWrite(key, false);
+                    if (slot < 0) {
+                        // The index is full and the key's probe chain has no dead entry to take over
+                        compact();
+                        slot = findSlotForWrite(key, true);
+                    }
+
+                    long offset = reserve(recordSize);
+                    writeRecord(offset, key, expiresAt, (int) crc.getValue(), body);
+
+                    // Publish the record before the key, so a reader that finds the key can follow it.
+                    int position = slotPosition(slot);
+                    long slotKey = mBuffer.getLong(position);
+                    mBuffer.putLong(position + 8, offset + 1);
+                    if (slotKey != key) {
+                        mBuffer.putLong(position, key);
+                        if (slotKey == EMPTY) {
+                            mBuffer.putInt(HEADER_ENTRY_COUNT, mBuffer.getInt(HEADER_ENTRY_COUNT) + 1);
+                        }
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            // The cache is only an optimization, a failed write is a miss later on.
+        }
+    }
+
+    @Override
+    public void remove(long key) {
+        key = remap(key);
+        try {
+            synchronized (mProcessLock) {
+                FileLock fileLock = mChannel.lock(0, HEADER_SIZE, false);
+                try {
+                    int slot = findSlot(key);
+                    if (slot >= 0) {
+                        mBuffer.putLong(slotPosition(slot) + 8, 0);
+                    }
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            // Ignored, see put()
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            synchronized (mProcessLock) {
+                FileLock fileLock = mChannel.lock(0, HEADER_SIZE, false);
+                try {
+                    reset();
+                } finally {
+                    fileLock.release();
+                }
+            }
+        } catch (IOException e) {
+            // Ignored, see put()
+        }
+    }
+
+    /**
+     * Closes the file. The mapping stays valid until it is garbage collected, but this cache must not be used again.
+     */
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+        mFile.close();
+    }
+
+    /**
+     * @return The current time, in milliseconds, that expiry is measured against. This is wall clock time, since
+     * it is compared across processes.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Clears the index and rewinds the data region. Must hold the write lock.
+     */
+    private void reset() {
+        clearIndex();
+        mBuffer.putLong(HEADER_APPEND_OFFSET, 0);
+    }
+
+    private void clearIndex() {
+        ByteBuffer index = mBuffer.duplicate();
+        index.position(HEADER_SIZE);
+        byte[] zeros = new byte[4096];
+        long remaining = (long) mSlotCount * SLOT_SIZE;
+        while (remaining > 0) {
+            int count = (int) Math.min(zeros.length, remaining);
+            index.put(zeros, 0, count);
+            remaining -= count;
+        }
+        mBuffer.putInt(HEADER_ENTRY_COUNT, 0);
+    }
+
+    /**
+     * @return The slot holding the key, or -1 if it is not in the index. Must hold the write lock.
+     */
+    private int findSlot(long key) {
+        int slot = (int) mix(key) & mMask;
+        for (int i = 0; i < mSlotCount; i++) {
+            long slotKey = mBuffer.getLong(slotPosition(slot));
+            if (slotKey == key) {
+                return slot;
+            } else if (slotKey == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the slot to write the key to. Keys are never cleared from slots, since readers probe without locking, but
+     * a slot whose entry was dropped or removed, or that holds the oldest entry on the probe chain, can take another
+     * key. Readers of the old key then find a record with another key, which is a miss. Must hold the write lock.
+     *
+     * @param evict True to make room in a full index by evicting the oldest entry on the probe chain, or the oldest
+     *              entry of all if the chain is empty.
+     * @return The slot holding the key, or a slot it can take, or -1 if the index is full and nothing is evicted.
+     */
+    private int findSlotForWrite(long key, boolean evict) {
+        boolean full = mBuffer.getInt(HEADER_ENTRY_COUNT) >= mMaxEntries;
+        long append = mBuffer.getLong(HEADER_APPEND_OFFSET);
+        int reusable = -1;
+        int oldest = -1;
+        long oldestAge = -1;
+        int slot = (int) mix(key) & mMask;
+        for (int i = 0; i < mSlotCount; i++) {
+            int position = slotPosition(slot);
+            long slotKey = mBuffer.getLong(position);
+            if (slotKey == key) {
+                return slot;
+            } else if (slotKey == EMPTY) {
+                break;
+            }
+            long offset = mBuffer.getLong(position + 8) - 1;
+            if (offset < 0) {
+                if (reusable < 0) {
+                    reusable = slot;
+                }
+            } else {
+                long age = (append - offset + mDataCapacity) % mDataCapacity;
+                if (age > oldestAge) {
+                    oldestAge = age;
+                    oldest = slot;
+                }
+            }
+            slot = (slot + 1) & mMask;
+        }
+
+        if (reusable >= 0) {
+            return reusable;
+        } else if (!full) {
+            return slot;
+        } else if (!evict) {
+            return -1;
+        } else if (oldest >= 0) {
+            return oldest;
+        }
+
+        // The key's home slot is empty, so drop the oldest entry of all instead. Its slot stays taken until the next
+        // compaction, which keeps the index one over the max until then.
+        oldest = -1;
+        oldestAge = -1;
+        for (int i = 0; i < mSlotCount; i++) {
+            long offset = mBuffer.getLong(slotPosition(i) + 8) - 1;
+            long age = (append - offset + mDataCapacity) % mDataCapacity;
+            if (offset >= 0 && age > oldestAge) {
+                oldestAge = age;
+                oldest = i;
+            }
+        }
+        if (oldest >= 0) {
+            mBuffer.putLong(slotPosition(oldest) + 8, 0);
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuilds the index with only the entries that can still be read. Readers that race the rebuild miss. Must hold
+     * the write lock.
+     */
+    private void compact() {
+        long[] keys = new long[mSlotCount];
+        long[] offsets = new long[mSlotCount];
+        int count = 0;
+        long now = now();
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            int position = slotPosition(slot);
+            long key = mBuffer.getLong(position);
+            long offset = mBuffer.getLong(position + 8) - 1;
+            if (key != EMPTY && offset >= 0 && isLive(key, offset, now)) {
+                keys[count] = key;
+                offsets[count] = offset;
+                count++;
+            }
+        }
+
+        clearIndex();
+        for (int i = 0; i < count; i++) {
+            int slot = (int) mix(keys[i]) & mMask;
+            while (mBuffer.getLong(slotPosition(slot)) != EMPTY) {
+                slot = (slot + 1) & mMask;
+            }
+            mBuffer.putLong(slotPosition(slot) + 8, offsets[i] + 1);
+            mBuffer.putLong(slotPosition(slot), keys[i]);
+        }
+        mBuffer.putInt(HEADER_ENTRY_COUNT, count);
+    }
+
+    /**
+     * @return True if the record at the offset belongs to the key and has not expired.
+     */
+    private boolean isLive(long key, long offset, long now) {
+        if (offset + RECORD_HEADER_SIZE > mDataCapacity) {
+            return false;
+        }
+        int position = (int) (mDataStart + offset);
+        return mBuffer.getLong(position + 4) == key && mBuffer.getLong(position + 12) > now;
+    }
+
+    /**
+     * Moves the append offset past a new record, wrapping into the next segment if it does not fit in the current
+     * one. Must hold the write lock.
+     *
+     * @return The offset of the record within the data region.
+     */
+    private long reserve(long recordSize) {
+        long offset = mBuffer.getLong(HEADER_APPEND_OFFSET);
+        long segmentEnd = (offset / mSegmentSize + 1) * mSegmentSize;
+        if (offset % mSegmentSize == 0 || offset + recordSize > segmentEnd) {
+            if (offset % mSegmentSize != 0) {
+                offset = segmentEnd;
+            }
+            if (offset >= mDataCapacity) {
+                offset = 0;
+            }
+            dropSegment(offset);
+        }
+        mBuffer.putLong(HEADER_APPEND_OFFSET, offset + recordSize);
+        return offset;
+    }
+
+    /**
+     * Unlinks every index entry that points into the segment starting at the offset, before it is overwritten.
+     */
+    private void dropSegment(long segmentStart) {
+        long segmentEnd = segmentStart + mSegmentSize;
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            int position = slotPosition(slot) + 8;
+            long offset = mBuffer.getLong(position) - 1;
+            if (offset >= segmentStart && offset < segmentEnd) {
+                mBuffer.putLong(position, 0);
+            }
+        }
+    }
+
+    private void writeRecord(long offset, long key, long expiresAt, int crc, byte[] body) {
+        int position = (int) (mDataStart + offset);
+        ByteBuffer record = mBuffer.duplicate();
+        record.position(position);
+        record.putInt(body.length);
+        record.putLong(key);
+        record.putLong(expiresAt);
+        record.putInt(crc);
+        record.put(body);
+    }
+
+    private byte[] readRecord(long key, long offset) {
+        if (offset < 0 || offset + RECORD_HEADER_SIZE > mDataCapacity) {
+            return null;
+        }
+
+        ByteBuffer record = mBuffer.duplicate();
+        record.position((int) (mDataStart + offset));
+        int length = record.getInt();
+        if (record.getLong() != key || length < 0 || offset + RECORD_HEADER_SIZE + length > mDataCapacity) {
+            return null;
+        }
+        if (record.getLong() <= now()) {
+            return null;
+        }
+        int expectedCrc = record.getInt();
+        byte[] body = new byte[length];
+        record.get(body);
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue() == expectedCrc ? body : null;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static long remap(long key) {
+        return key == EMPTY ? EMPTY_REMAP : key;
+    }
+
+    /**
+     * The same finalizer as {@link com.raizlabs.android.broker.cache.OffHeapResponseCache}, so keys spread evenly.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
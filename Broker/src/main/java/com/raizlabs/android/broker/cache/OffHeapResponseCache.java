@@ -0,0 +1,405 @@
+package com.raizlabs.android.broker.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Description: A {@link com.raizlabs.android.broker.cache.RawResponseCache} that keeps deflated bodies in direct
+ * {@link java.nio.ByteBuffer} slabs, outside of the garbage collected heap. The slabs are split into fixed size blocks
+ * and a body takes up a chain of them. The only heap the cache holds is a compact open-addressing index of primitive
+ * arrays keyed by the 64-bit request hash, plus one int per block for the chains.
+ * <br />
+ * When the cache runs out of blocks it evicts with the clock algorithm: every hit marks its entry as referenced, and
+ * the clock hand sweeps the index clearing marks until it finds an entry that was not used since the last sweep.
+ */
+public class OffHeapResponseCache implements RawResponseCache {
+
+    /**
+     * The default size of a block, a little larger than a typical deflated JSON response.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 2048;
+
+    /**
+     * The size of each direct buffer. Allocating several smaller slabs is far more likely to succeed than
+     * one large one on a fragmented device.
+     */
+    private static final int SLAB_SIZE = 1024 * 1024;
+
+    /**
+     * Marks an empty slot in the index. A request hash that happens to be this value is remapped.
+     */
+    private static final long EMPTY = 0;
+
+    private static final long EMPTY_REMAP = 0x9E3779B97F4A7C15L;
+
+    private static final int NO_BLOCK = -1;
+
+    private final ByteBuffer[] mSlabs;
+
+    private final int mBlockSize;
+
+    private final int mBlocksPerSlab;
+
+    private final int mBlockCount;
+
+    /**
+     * The next block in the chain of an entry, or in the free list.
+     */
+    private final int[] mNextBlock;
+
+    private int mFreeHead;
+
+    private int mFreeCount;
+
+    // The index. Each slot is spread across these arrays.
+
+    private final long[] mKeys;
+
+    private final int[] mFirstBlocks;
+
+    private final int[] mLengths;
+
+    private final int[] mRawLengths;
+
+    private final long[] mExpiresAt;
+
+    private final boolean[] mReferenced;
+
+    private final int mMask;
+
+    private final int mMaxEntries;
+
+    private int mSize;
+
+    private int mClockHand;
+
+    /**
+     * @param capacity The number of bytes of direct memory to allocate.
+     */
+    public OffHeapResponseCache(long capacity) {
+        this(capacity, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param capacity  The number of bytes of direct memory to allocate.
+     * @param blockSize The size of each block. Each body wastes half a block on average.
+     */
+    public OffHeapResponseCache(long capacity, int blockSize) {
+        if (blockSize <= 0 || capacity < blockSize) {
+            throw new IllegalArgumentException("An OffHeapResponseCache must fit at least one block");
+        }
+        if (capacity / blockSize > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Too many blocks for an OffHeapResponseCache, use a larger block size");
+        }
+
+        mBlockSize = blockSize;
+        mBlockCount = (int) (capacity / blockSize);
+        mBlocksPerSlab = Math.max(1, SLAB_SIZE / blockSize);
+
+        int slabCount = (mBlockCount + mBlocksPerSlab - 1) / mBlocksPerSlab;
+        mSlabs = new ByteBuffer[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            int blocks = Math.min(mBlocksPerSlab, mBlockCount - i * mBlocksPerSlab);
+            mSlabs[i] = ByteBuffer.allocateDirect(blocks * blockSize);
+        }
+
+        mNextBlock = new int[mBlockCount];
+
+        // Every entry takes at least one block, so that bounds the entries. Keep the index at most 3/4 full.
+        mMaxEntries = mBlockCount;
+        int slots = Integer.highestOneBit(Math.max(2, mMaxEntries + mMaxEntries / 3) - 1) << 1;
+        mKeys = new long[slots];
+        mFirstBlocks = new int[slots];
+        mLengths = new int[slots];
+        mRawLengths = new int[slots];
+        mExpiresAt = new long[slots];
+        mReferenced = new boolean[slots];
+        mMask = slots - 1;
+
+        resetBlocks();
+    }
+
+    @Override
+    public byte[] get(long key) {
+        key = remap(key);
+        byte[] compressed;
+        int rawLength;
+        synchronized (this) {
+            int slot = findSlot(key);
+            if (slot < 0) {
+                return null;
+            }
+            if (mExpiresAt[slot] <= now()) {
+                removeSlot(slot);
+                return null;
+            }
+
+            mReferenced[slot] = true;
+            rawLength = mRawLengths[slot];
+            compressed = readBlocks(mFirstBlocks[slot], mLengths[slot]);
+        }
+        return inflate(compressed, rawLength);
+    }
+
+    @Override
+    public void put(long key, byte[] body, long timeToLive) {
+        key = remap(key);
+        byte[] compressed = deflate(body);
+        int length = compressed.length;
+        int blocksNeeded = Math.max(1, (length + mBlockSize - 1) / mBlockSize);
+
+        synchronized (this) {
+            int existing = findSlot(key);
+            if (existing >= 0) {
+                removeSlot(existing);
+            }
+            if (blocksNeeded > mBlockCount) {
+                return;
+            }
+
+            while (mFreeCount < blocksNeeded || mSize >= mMaxEntries) {
+                evict();
+            }
+
+            int firstBlock = writeBlocks(compressed, blocksNeeded);
+            int slot = (int) mix(key) & mMask;
+            while (mKeys[slot] != EMPTY) {
+                slot = (slot + 1) & mMask;
+            }
+            mKeys[slot] = key;
+            mFirstBlocks[slot] = firstBlock;
+            mLengths[slot] = length;
+            mRawLengths[slot] = body.length;
+            mExpiresAt[slot] = now() + timeToLive;
+            mReferenced[slot] = false;
+            mSize++;
+        }
+    }
+
+    @Override
+    public synchronized void remove(long key) {
+        int slot = findSlot(remap(key));
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        mSize = 0;
+        mClockHand = 0;
+        resetBlocks();
+    }
+
+    /**
+     * @return The number of bodies stored.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of bytes of direct memory in use by stored bodies, including unused parts of blocks.
+     */
+    public synchronized long usedBytes() {
+        return (long) (mBlockCount - mFreeCount) * mBlockSize;
+    }
+
+    /**
+     * @return The total number of bytes of direct memory this cache allocated.
+     */
+    public long capacity() {
+        return (long) mBlockCount * mBlockSize;
+    }
+
+    /**
+     * @return The current time, in milliseconds, that expiry is measured against.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private void resetBlocks() {
+        for (int i = 0; i < mBlockCount - 1; i++) {
+            mNextBlock[i] = i + 1;
+        }
+        mNextBlock[mBlockCount - 1] = NO_BLOCK;
+        mFreeHead = 0;
+        mFreeCount = mBlockCount;
+    }
+
+    private int findSlot(long key) {
+        int slot = (int) mix(key) & mMask;
+        while (mKeys[slot] != EMPTY) {
+            if (mKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Advances the clock hand until it finds an entry that has expired or was not referenced since the last pass.
+     * Only called while there is at least one entry, so two sweeps of the index always find one.
+     */
+    private void evict() {
+        long now = now();
+        while (true) {
+            int slot = mClockHand;
+            mClockHand = (mClockHand + 1) & mMask;
+            if (mKeys[slot] != EMPTY) {
+                if (!mReferenced[slot] || mExpiresAt[slot] <= now) {
+                    removeSlot(slot);
+                    return;
+                }
+                mReferenced[slot] = false;
+            }
+        }
+    }
+
+    /**
+     * Frees the blocks of the entry and closes the gap with backward shift deletion, so we never need tombstones.
+     */
+    private void removeSlot(int slot) {
+        freeBlocks(mFirstBlocks[slot]);
+        mSize--;
+
+        int gap = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mMask;
+            long key = mKeys[next];
+            if (key == EMPTY) {
+                break;
+            }
+
+            // The entry may move into the gap only if its home slot is not cyclically within (gap, next].
+            int home = (int) mix(key) & mMask;
+            boolean stays = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+            if (!stays) {
+                mKeys[gap] = key;
+                mFirstBlocks[gap] = mFirstBlocks[next];
+                mLengths[gap] = mLengths[next];
+                mRawLengths[gap] = mRawLengths[next];
+                mExpiresAt[gap] = mExpiresAt[next];
+                mReferenced[gap] = mReferenced[next];
+                gap = next;
+            }
+        }
+        mKeys[gap] = EMPTY;
+    }
+
+    private int writeBlocks(byte[] data, int blockCount) {
+        int first = mFreeHead;
+        int block = first;
+        int offset = 0;
+        for (int i = 0; i < blockCount; i++) {
+            int length = Math.min(mBlockSize, data.length - offset);
+            ByteBuffer slab = slabFor(block);
+            slab.position(positionOf(block));
+            slab.put(data, offset, length);
+            offset += length;
+
+            int next = mNextBlock[block];
+            if (i == blockCount - 1) {
+                mNextBlock[block] = NO_BLOCK;
+            }
+            block = next;
+        }
+        mFreeHead = block;
+        mFreeCount -= blockCount;
+        return first;
+    }
+
+    private byte[] readBlocks(int block, int length) {
+        byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = Math.min(mBlockSize, length - offset);
+            ByteBuffer slab = slabFor(block);
+            slab.position(positionOf(block));
+            slab.get(data, offset, read);
+            offset += read;
+            block = mNextBlock[block];
+        }
+        return data;
+    }
+
+    private void freeBlocks(int block) {
+        while (block != NO_BLOCK) {
+            int next = mNextBlock[block];
+            mNextBlock[block] = mFreeHead;
+            mFreeHead = block;
+            mFreeCount++;
+            block = next;
+        }
+    }
+
+    private ByteBuffer slabFor(int block) {
+        return mSlabs[block / mBlocksPerSlab];
+    }
+
+    private int positionOf(int block) {
+        return (block % mBlocksPerSlab) * mBlockSize;
+    }
+
+    private static long remap(long key) {
+        return key == EMPTY ? EMPTY_REMAP : key;
+    }
+
+    /**
+     * Spreads the bits of the hash so sequential or low-entropy keys don't cluster in the index.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] body = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(body, offset, rawLength - offset);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                offset += count;
+            }
+            return body;
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
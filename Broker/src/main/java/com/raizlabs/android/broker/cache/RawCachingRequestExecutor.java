@@ -0,0 +1,166 @@
+package com.raizlabs.android.broker.cache;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestFingerprint;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Description: Serves requests that have a {@link com.raizlabs.android.broker.cache.CachePolicy} from a
+ * {@link com.raizlabs.android.broker.cache.RawResponseCache}. Unlike the {@link com.raizlabs.android.broker.cache.CachingRequestExecutor}
+ * it keeps the raw body, so a hit still runs the {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}, but
+ * nothing is kept for fields the handler ignores. The two can be stacked, with this one as the delegate of the other.
+ * <br />
+ * Hits are handled on a background thread and delivered on the callback executor, which is the main thread by default
+ * to match Volley.
+ */
+public class RawCachingRequestExecutor extends DelegateRequestExecutor {
+
+    private static final String CHARSET_ENCODING = "US-ASCII";
+
+    private final RawResponseCache mCache;
+
+    private final Executor mCallbackExecutor;
+
+    /**
+     * Constructs this executor delivering hits on the main thread.
+     *
+     * @param delegate The executor that runs requests that miss the cache.
+     * @param cache    The cache to store raw bodies in.
+     */
+    public RawCachingRequestExecutor(RequestExecutor delegate, RawResponseCache cache) {
+        this(delegate, cache, ExecutorUtils.getMainThreadExecutor());
+    }
+
+    /**
+     * @param delegate         The executor that runs requests that miss the cache.
+     * @param cache            The cache to store raw bodies in.
+     * @param callbackExecutor Where to call the {@link com.raizlabs.android.broker.RequestCallback} on a hit.
+     */
+    public RawCachingRequestExecutor(RequestExecutor delegate, RawResponseCache cache, Executor callbackExecutor) {
+        super(delegate);
+        mCache = cache;
+        mCallbackExecutor = callbackExecutor;
+    }
+
+    public RawResponseCache getCache() {
+        return mCache;
+    }
+
+    @Override
+    public void execute(Request request) {
+        CachePolicy policy = request.getCachePolicy();
+        if (request.getMethod() != Method.GET && request.getMethod() != Method.HEAD) {
+            mCache.remove(getCacheKey(request, Method.GET));
+            super.execute(request);
+        } else if (policy == null || request.hasFile()) {
+            super.execute(request);
+        } else {
+            long key = getCacheKey(request, request.getMethod());
+            byte[] entry = mCache.get(key);
+            if (entry == null) {
+                executeDelegate(request, new RawCacheCallback(request, key, policy));
+            } else {
+                deliverEntry(request, entry);
+            }
+        }
+    }
+
+    /**
+     * Builds the 64-bit key that identifies a request in the cache.
+     *
+     * @param request The request
+     * @param method  The method to key the request as. For another method than its own, only the resource is keyed,
+     *                so a mutation finds the cached GET whatever headers of its own it sends.
+     * @return The key for the request.
+     */
+    protected long getCacheKey(Request request, int method) {
+        return method == request.getMethod() ? request.getFingerprint()
+                : RequestFingerprint.computeResource(request, method);
+    }
+
+    private void deliverEntry(final Request request, final byte[] entry) {
+        final RequestCallback callback = request.getCallback();
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Object response = null;
+                IOException error = null;
+                try {
+                    int charsetLength = entry[0];
+                    String charset = new String(entry, 1, charsetLength, CHARSET_ENCODING);
+                    byte[] body = new byte[entry.length - charsetLength - 1];
+                    System.arraycopy(entry, charsetLength + 1, body, 0, body.length);
+                    response = RequestUtils.handleResponse(request, 200, null, body, charset);
+                } catch (IOException e) {
+                    error = e;
+                }
+
+                if (callback != null) {
+                    final Object finalResponse = response;
+                    final IOException finalError = error;
+                    mCallbackExecutor.execute(new Runnable() {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public void run() {
+                            if (finalError != null) {
+                                callback.onRequestError(finalError, finalError.getMessage());
+                            } else {
+                                callback.onRequestDone(finalResponse);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the raw body of successful responses as they pass through.
+     */
+    private class RawCacheCallback extends RequestCallbackWrapper implements ResponseInterceptor {
+
+        private final long mKey;
+
+        private final CachePolicy mPolicy;
+
+        @SuppressWarnings("unchecked")
+        RawCacheCallback(Request request, long key, CachePolicy policy) {
+            super(request);
+            mKey = key;
+            mPolicy = policy;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            if (statusCode == -1 || (statusCode >= 200 && statusCode < 300)) {
+                mCache.put(mKey, encode(body, charset), mPolicy.getTimeToLive());
+            }
+            return body;
+        }
+
+        /**
+         * Prefixes the body with its charset so a hit decodes the same way the network response did.
+         */
+        private byte[] encode(byte[] body, String charset) throws UnsupportedEncodingException {
+            byte[] charsetBytes = charset.getBytes(CHARSET_ENCODING);
+            byte[] entry = new byte[body.length + charsetBytes.length + 1];
+            entry[0] = (byte) charsetBytes.length;
+            System.arraycopy(charsetBytes, 0, entry, 1, charsetBytes.length);
+            System.arraycopy(body, 0, entry, charsetBytes.length + 1, body.length);
+            return entry;
+        }
+    }
+}
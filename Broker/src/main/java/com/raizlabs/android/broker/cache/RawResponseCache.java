@@ -0,0 +1,37 @@
+package com.raizlabs.android.broker.cache;
+
+/**
+ * Description: Stores raw response bodies, before they are converted by a
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}, keyed by a 64-bit hash of the request.
+ * Implementations must be safe to call from multiple threads.
+ */
+public interface RawResponseCache {
+
+    /**
+     * @param key The hash of the request
+     * @return A copy of the stored body, or null if there is none or it has expired.
+     */
+    public byte[] get(long key);
+
+    /**
+     * Stores a body, replacing any previous one for the key. Implementations may choose not to store it,
+     * for example if it is larger than the whole cache.
+     *
+     * @param key        The hash of the request
+     * @param body       The raw body
+     * @param timeToLive How long, in milliseconds, the body can be served.
+     */
+    public void put(long key, byte[] body, long timeToLive);
+
+    /**
+     * Removes the body for the key, if any.
+     *
+     * @param key The hash of the request
+     */
+    public void remove(long key);
+
+    /**
+     * Removes all bodies.
+     */
+    public void clear();
+}
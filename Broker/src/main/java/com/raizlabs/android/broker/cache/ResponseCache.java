@@ -0,0 +1,198 @@
+package com.raizlabs.android.broker.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Description: An in-memory cache of handled responses, meaning the objects returned from a
+ * {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}. Entries expire according to their
+ * {@link com.raizlabs.android.broker.cache.CachePolicy} and the least recently used ones are evicted once the
+ * cache has more entries or more weight than it allows.
+ */
+public class ResponseCache {
+
+    /**
+     * Computes how much of the cache's weight a value takes up, such as its approximate size in bytes.
+     */
+    public interface Weigher {
+
+        /**
+         * @param key   The key of the entry
+         * @param value The handled response
+         * @return The weight of the entry, must not be negative.
+         */
+        public int weigh(Object key, Object value);
+    }
+
+    /**
+     * Every entry weighs the same, so the weight limit acts as a second entry limit.
+     */
+    public static final Weigher SINGLETON_WEIGHER = new Weigher() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    /**
+     * A cached response along with when it stops being fresh and when it can no longer be served.
+     */
+    public static class Entry {
+
+        private final Object mValue;
+
+        private final long mExpiresAt;
+
+        private final long mStaleUntil;
+
+        private final int mWeight;
+
+        Entry(Object value, long expiresAt, long staleUntil, int weight) {
+            mValue = value;
+            mExpiresAt = expiresAt;
+            mStaleUntil = staleUntil;
+            mWeight = weight;
+        }
+
+        public Object getValue() {
+            return mValue;
+        }
+
+        boolean isStale(long now) {
+            return now >= mExpiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= mStaleUntil;
+        }
+    }
+
+    private final LinkedHashMap<Object, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int mMaxEntries;
+
+    private final long mMaxWeight;
+
+    private final Weigher mWeigher;
+
+    private long mWeight;
+
+    /**
+     * Constructs a cache that only limits the number of entries.
+     *
+     * @param maxEntries The most entries to hold at once.
+     */
+    public ResponseCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE, SINGLETON_WEIGHER);
+    }
+
+    /**
+     * @param maxEntries The most entries to hold at once.
+     * @param maxWeight  The most total weight to hold at once.
+     * @param weigher    Computes the weight of each entry.
+     */
+    public ResponseCache(int maxEntries, long maxWeight, Weigher weigher) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("A ResponseCache must allow at least one entry");
+        }
+        mMaxEntries = maxEntries;
+        mMaxWeight = maxWeight;
+        mWeigher = weigher;
+    }
+
+    /**
+     * @param key The key of the request
+     * @return The entry for the key, or null if there is none or it can no longer be served.
+     */
+    public synchronized Entry get(Object key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.isExpired(now())) {
+            remove(key);
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * @param entry An entry from {@link #get(Object)}
+     * @return True if the entry has passed its time to live and should be refreshed.
+     */
+    public boolean isStale(Entry entry) {
+        return entry.isStale(now());
+    }
+
+    /**
+     * Stores a handled response, replacing any previous one for the key.
+     *
+     * @param key    The key of the request
+     * @param value  The handled response
+     * @param policy How long the response can be kept.
+     */
+    public synchronized void put(Object key, Object value, CachePolicy policy) {
+        int weight = mWeigher.weigh(key, value);
+        remove(key);
+        if (weight > mMaxWeight) {
+            return;
+        }
+
+        long expiresAt = now() + policy.getTimeToLive();
+        mEntries.put(key, new Entry(value, expiresAt, expiresAt + policy.getStaleWhileRevalidate(), weight));
+        mWeight += weight;
+        trim();
+    }
+
+    /**
+     * Removes the entry for the key, if any.
+     *
+     * @param key The key of the request
+     */
+    public synchronized void remove(Object key) {
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mWeight -= entry.mWeight;
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mWeight = 0;
+    }
+
+    /**
+     * @return The number of entries, including ones that are past their lifetime but not removed yet.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return The total weight of all entries.
+     */
+    public synchronized long weight() {
+        return mWeight;
+    }
+
+    /**
+     * @return The current time, in milliseconds, that entry lifetimes are measured against.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within its limits. Entries past their lifetime are
+     * removed lazily when looked up instead of scanning the whole cache here.
+     */
+    private void trim() {
+        Iterator<Map.Entry<Object, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext() && (mEntries.size() > mMaxEntries || mWeight > mMaxWeight)) {
+            Map.Entry<Object, Entry> next = iterator.next();
+            iterator.remove();
+            mWeight -= next.getValue().mWeight;
+        }
+    }
+}
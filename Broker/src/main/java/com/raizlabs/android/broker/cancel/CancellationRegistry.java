@@ -0,0 +1,243 @@
+package com.raizlabs.android.broker.cancel;
+
+import com.raizlabs.android.broker.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Description: Indexes the requests an executor holds, so it can find them to cancel without walking its queue. Each
+ * request is found by its identity, by its metadata, and by its group and every parent of it, so cancelling one
+ * request or a whole group costs one lookup no matter how many requests are held.
+ * <br />
+ * Groups are paths such as "profile/avatar": cancelling "profile" also cancels "profile/avatar". The registry keeps a
+ * handle of the executor's choosing with each request, such as the backend's own request. It is thread safe.
+ *
+ * @param <Handle> What the executor needs to cancel a request.
+ */
+public class CancellationRegistry<Handle> {
+
+    /**
+     * Separates the levels of a group.
+     */
+    public static final char GROUP_SEPARATOR = '/';
+
+    private final ConcurrentMap<Request, Entry<Handle>> mEntries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Object, Set<Request>> mByMetadata = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Set<Request>> mByGroup = new ConcurrentHashMap<>();
+
+    /**
+     * Starts tracking a request, replacing the handle it had.
+     *
+     * @param request The request.
+     * @param handle  What is needed to cancel it.
+     */
+    public void register(Request request, Handle handle) {
+        Entry<Handle> entry = new Entry<>(handle, request.getMetaData(), getGroupPaths(request.getGroup()));
+        // Index before publishing, so a remove() that finds the entry always finds its index entries to drop
+        if (entry.mMetadata != null) {
+            index(mByMetadata, entry.mMetadata, request);
+        }
+        for (String path : entry.mGroupPaths) {
+            index(mByGroup, path, request);
+        }
+        Entry<Handle> previous = mEntries.put(request, entry);
+        if (previous != null) {
+            if (previous.mMetadata != null && !previous.mMetadata.equals(entry.mMetadata)) {
+                unindex(mByMetadata, previous.mMetadata, request);
+            }
+            for (String path : previous.mGroupPaths) {
+                if (!entry.mGroupPaths.contains(path)) {
+                    unindex(mByGroup, path, request);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a request once it finished, unless it was registered again with another handle.
+     *
+     * @param request The request.
+     * @param handle  The handle it was registered with.
+     * @return True if it was tracked with the handle.
+     */
+    public boolean unregister(Request request, Handle handle) {
+        Entry<Handle> entry = mEntries.get(request);
+        if (entry != null && entry.mHandle == handle && mEntries.remove(request, entry)) {
+            unindex(request, entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param request The request.
+     * @return Its handle, null if it is not tracked.
+     */
+    public Handle get(Request request) {
+        Entry<Handle> entry = mEntries.get(request);
+        return entry != null ? entry.mHandle : null;
+    }
+
+    /**
+     * @param metadata The metadata of the requests.
+     * @return The handles of the tracked requests with the metadata.
+     */
+    public List<Handle> getByMetadata(Object metadata) {
+        return get(mByMetadata.get(metadata), false);
+    }
+
+    /**
+     * @param group The group, such as "profile".
+     * @return The handles of the tracked requests in the group or any group below it.
+     */
+    public List<Handle> getGroup(String group) {
+        return get(mByGroup.get(group), false);
+    }
+
+    /**
+     * Stops tracking a request so it can be cancelled.
+     *
+     * @param request The request.
+     * @return Its handle, null if it is not tracked.
+     */
+    public Handle remove(Request request) {
+        Entry<Handle> entry = mEntries.remove(request);
+        if (entry == null) {
+            return null;
+        }
+        unindex(request, entry);
+        return entry.mHandle;
+    }
+
+    /**
+     * Stops tracking the requests with the metadata so they can be cancelled.
+     *
+     * @param metadata The metadata of the requests.
+     * @return The handles of the requests that were tracked.
+     */
+    public List<Handle> removeByMetadata(Object metadata) {
+        return metadata != null ? get(mByMetadata.get(metadata), true) : Collections.<Handle>emptyList();
+    }
+
+    /**
+     * Stops tracking the requests in the group, or any group below it, so they can be cancelled.
+     *
+     * @param group The group, such as "profile".
+     * @return The handles of the requests that were tracked.
+     */
+    public List<Handle> removeGroup(String group) {
+        return group != null ? get(mByGroup.get(group), true) : Collections.<Handle>emptyList();
+    }
+
+    /**
+     * Stops tracking every request so they can be cancelled.
+     *
+     * @return The handles of the requests that were tracked.
+     */
+    public List<Handle> removeAll() {
+        return get(mEntries.keySet(), true);
+    }
+
+    /**
+     * @return The number of requests tracked.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @param group A group such as "profile/avatar", can be null.
+     * @return The group and its parents, such as "profile" and "profile/avatar".
+     */
+    static List<String> getGroupPaths(String group) {
+        if (group == null || group.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> paths = new ArrayList<>();
+        int separator = group.indexOf(GROUP_SEPARATOR);
+        while (separator != -1) {
+            if (separator > 0) {
+                paths.add(group.substring(0, separator));
+            }
+            separator = group.indexOf(GROUP_SEPARATOR, separator + 1);
+        }
+        paths.add(group);
+        return paths;
+    }
+
+    private List<Handle> get(Set<Request> requests, boolean remove) {
+        if (requests == null) {
+            return Collections.emptyList();
+        }
+        List<Handle> handles = new ArrayList<>();
+        for (Request request : new ArrayList<>(requests)) {
+            Handle handle = remove ? remove(request) : get(request);
+            if (handle != null) {
+                handles.add(handle);
+            }
+        }
+        return handles;
+    }
+
+    private static <Key> void index(ConcurrentMap<Key, Set<Request>> index, Key key, Request request) {
+        while (true) {
+            Set<Request> requests = index.get(key);
+            if (requests == null) {
+                Set<Request> created = Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+                requests = index.putIfAbsent(key, created);
+                if (requests == null) {
+                    requests = created;
+                }
+            }
+            requests.add(request);
+            // An empty set may have been dropped from the index while we added to it
+            if (index.get(key) == requests) {
+                return;
+            }
+        }
+    }
+
+    private static <Key> void unindex(ConcurrentMap<Key, Set<Request>> index, Key key, Request request) {
+        Set<Request> requests = index.get(key);
+        if (requests != null) {
+            requests.remove(request);
+            if (requests.isEmpty()) {
+                index.remove(key, requests);
+            }
+        }
+    }
+
+    private void unindex(Request request, Entry<Handle> entry) {
+        if (entry.mMetadata != null) {
+            unindex(mByMetadata, entry.mMetadata, request);
+        }
+        for (String path : entry.mGroupPaths) {
+            unindex(mByGroup, path, request);
+        }
+    }
+
+    /**
+     * A tracked request's handle, with the keys it was indexed under.
+     */
+    private static class Entry<Handle> {
+
+        final Handle mHandle;
+
+        final Object mMetadata;
+
+        final List<String> mGroupPaths;
+
+        Entry(Handle handle, Object metadata, List<String> groupPaths) {
+            mHandle = handle;
+            mMetadata = metadata;
+            mGroupPaths = groupPaths;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.raizlabs.android.broker.cancel;
+
+import com.raizlabs.android.broker.GroupCancellableExecutor;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+/**
+ * Description: Lets a chain of decorators cancel a group of requests in one call, whichever of them holds the
+ * requests. Put it in front of the chain: it tracks every request from when it is executed until it is delivered in
+ * a {@link com.raizlabs.android.broker.cancel.CancellationRegistry}, and cancels the requests of a group one by one
+ * down the chain.
+ */
+public class CancellationRequestExecutor extends DelegateRequestExecutor implements GroupCancellableExecutor<Object> {
+
+    private final CancellationRegistry<TrackingCallback> mRegistry = new CancellationRegistry<>();
+
+    /**
+     * @param delegate The executor, usually a chain of decorators, that runs the requests.
+     */
+    public CancellationRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(Request request) {
+        TrackingCallback callback = new TrackingCallback(request);
+        mRegistry.register(request, callback);
+        executeDelegate(request, callback);
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            mRegistry.remove(request);
+        } else {
+            mRegistry.removeByMetadata(data);
+        }
+        super.cancelRequest(data, request);
+    }
+
+    @Override
+    public void cancelGroup(String group) {
+        for (TrackingCallback callback : mRegistry.removeGroup(group)) {
+            Request request = callback.getRequest();
+            super.cancelRequest(request.getMetaData(), request);
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        mRegistry.removeAll();
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @return The number of requests that were executed and not delivered or cancelled yet.
+     */
+    public int getTrackedCount() {
+        return mRegistry.size();
+    }
+
+    /**
+     * Stops tracking the request once it is delivered.
+     */
+    private class TrackingCallback extends RequestCallbackWrapper<Object> {
+
+        @SuppressWarnings("unchecked")
+        TrackingCallback(Request request) {
+            super(request);
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            mRegistry.unregister(getRequest(), this);
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            mRegistry.unregister(getRequest(), this);
+            deliverError(error, stringError);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.raizlabs.android.broker.circuit;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Description: Fails requests at once while their endpoint is down, instead of letting each one wait for its socket
+ * timeout. Each host, or each url template of a {@link com.raizlabs.android.broker.core.Method}, has its own circuit.
+ * A circuit records the outcomes of its last requests in a lock-free ring buffer, and opens once enough of them failed
+ * without a response or with a 5xx, or were slow. While it is open, requests fail with a
+ * {@link com.raizlabs.android.broker.circuit.CircuitOpenException}. After the open duration, a few trial requests run
+ * half-open: the circuit closes if they all succeed, and opens again if any fails or they do not all finish within the
+ * half-open timeout. A cancelled trial gives its place to another request.
+ * <br />
+ * {@link com.raizlabs.android.broker.circuit.CircuitListener}s are told of every change of state.
+ */
+public class CircuitBreakerRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * What requests share a circuit.
+     */
+    public enum Scope {
+
+        /**
+         * Requests to the same host.
+         */
+        HOST,
+
+        /**
+         * Requests built from the same url template of a {@link com.raizlabs.android.broker.core.Method}. Requests
+         * built by hand fall back to their host.
+         */
+        TEMPLATE
+    }
+
+    public static final int DEFAULT_WINDOW = 50;
+
+    public static final int DEFAULT_MIN_CALLS = 10;
+
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+
+    public static final long DEFAULT_SLOW_CALL_DURATION = 5000;
+
+    public static final double DEFAULT_SLOW_CALL_RATE = 0.8;
+
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    public static final long DEFAULT_HALF_OPEN_TIMEOUT = 60000;
+
+    private final Scope mScope;
+
+    private final ConcurrentMap<String, Circuit> mCircuits = new ConcurrentHashMap<>();
+
+    /**
+     * The trial requests in flight, so that cancelling one frees its place.
+     */
+    private final Map<Request, CircuitCallback> mTrials = new HashMap<>();
+
+    private final List<CircuitListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private volatile int mWindow = DEFAULT_WINDOW;
+
+    private volatile int mMinCalls = DEFAULT_MIN_CALLS;
+
+    private volatile double mFailureRate = DEFAULT_FAILURE_RATE;
+
+    private volatile long mSlowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+
+    private volatile double mSlowCallRate = DEFAULT_SLOW_CALL_RATE;
+
+    private volatile long mOpenDuration = DEFAULT_OPEN_DURATION;
+
+    private volatile int mHalfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+    private volatile long mHalfOpenTimeout = DEFAULT_HALF_OPEN_TIMEOUT;
+
+    /**
+     * Constructs an executor with a circuit per host.
+     *
+     * @param delegate The executor that runs the requests.
+     */
+    public CircuitBreakerRequestExecutor(RequestExecutor delegate) {
+        this(delegate, Scope.HOST);
+    }
+
+    /**
+     * @param delegate The executor that runs the requests.
+     * @param scope    What requests share a circuit.
+     */
+    public CircuitBreakerRequestExecutor(RequestExecutor delegate, Scope scope) {
+        super(delegate);
+        mScope = scope;
+    }
+
+    /**
+     * Sets how many outcomes the circuits look at. Applies to circuits created after.
+     *
+     * @param window   The number of recent outcomes kept per circuit.
+     * @param minCalls The outcomes a circuit needs before it can open.
+     * @return This executor, to set more.
+     */
+    public CircuitBreakerRequestExecutor setWindow(int window, int minCalls) {
+        if (window <= 0 || minCalls <= 0 || minCalls > window) {
+            throw new IllegalArgumentException("The window and min calls must be positive, and min calls at most the window");
+        }
+        mWindow = window;
+        mMinCalls = minCalls;
+        return this;
+    }
+
+    /**
+     * @param failureRate      The share of failed outcomes, from 0 to 1, that opens a circuit.
+     * @param slowCallDuration How long, in milliseconds, a request takes to count as slow.
+     * @param slowCallRate     The share of slow outcomes, from 0 to 1, that opens a circuit.
+     * @return This executor, to set more.
+     */
+    public CircuitBreakerRequestExecutor setThresholds(double failureRate, long slowCallDuration, double slowCallRate) {
+        if (failureRate <= 0 || failureRate > 1 || slowCallDuration <= 0 || slowCallRate <= 0 || slowCallRate > 1) {
+            throw new IllegalArgumentException("The rates must be above 0 and at most 1, and the slow call duration positive");
+        }
+        mFailureRate = failureRate;
+        mSlowCallDuration = slowCallDuration;
+        mSlowCallRate = slowCallRate;
+        return this;
+    }
+
+    /**
+     * @param openDuration  How long, in milliseconds, a circuit stays open before it lets trial requests through.
+     * @param halfOpenCalls The number of trial requests that must succeed to close it.
+     * @return This executor, to set more.
+     */
+    public CircuitBreakerRequestExecutor setOpenDuration(long openDuration, int halfOpenCalls) {
+        if (openDuration < 0 || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("The open duration must be 0 or more, with at least 1 half-open call");
+        }
+        mOpenDuration = openDuration;
+        mHalfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * @param halfOpenTimeout How long, in milliseconds, the trial requests have to finish before the circuit opens
+     *                        again.
+     * @return This executor, to set more.
+     */
+    public CircuitBreakerRequestExecutor setHalfOpenTimeout(long halfOpenTimeout) {
+        if (halfOpenTimeout <= 0) {
+            throw new IllegalArgumentException("The half-open timeout must be positive");
+        }
+        mHalfOpenTimeout = halfOpenTimeout;
+        return this;
+    }
+
+    public void addListener(CircuitListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(CircuitListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void execute(Request request) {
+        String key = getCircuitKey(request);
+        if (key == null) {
+            super.execute(request);
+            return;
+        }
+
+        Circuit circuit = mCircuits.get(key);
+        if (circuit == null) {
+            Circuit created = new Circuit(key, mWindow);
+            circuit = mCircuits.putIfAbsent(key, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+
+        Status admittedBy = circuit.tryAcquire(now());
+        if (admittedBy == null) {
+            RequestCallback callback = request.getCallback();
+            if (callback != null) {
+                CircuitOpenException error = new CircuitOpenException(key);
+                callback.onRequestError(error, error.getMessage());
+            }
+            return;
+        }
+
+        CircuitCallback callback = new CircuitCallback(circuit, request, admittedBy);
+        if (admittedBy.mState == CircuitState.HALF_OPEN) {
+            synchronized (mTrials) {
+                mTrials.put(request, callback);
+            }
+        }
+        executeDelegate(request, callback);
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        synchronized (mTrials) {
+            Iterator<CircuitCallback> callbacks = mTrials.values().iterator();
+            while (callbacks.hasNext()) {
+                CircuitCallback callback = callbacks.next();
+                Request next = callback.getRequest();
+                if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                    callbacks.remove();
+                    callback.release();
+                }
+            }
+        }
+        super.cancelRequest(data, request);
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mTrials) {
+            for (CircuitCallback callback : mTrials.values()) {
+                callback.release();
+            }
+            mTrials.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @param key The key of the circuit, as returned by {@link #getCircuitKey(com.raizlabs.android.broker.Request)}.
+     * @return The state of the circuit, {@link CircuitState#CLOSED} if it has seen no requests.
+     */
+    public CircuitState getState(String key) {
+        Circuit circuit = mCircuits.get(key);
+        return circuit != null ? circuit.mStatus.get().mState : CircuitState.CLOSED;
+    }
+
+    /**
+     * @param request The request.
+     * @return The key of the circuit the request goes through, by default its host or its method and url template,
+     * depending on the {@link Scope}, or null to send it without a circuit.
+     */
+    protected String getCircuitKey(Request request) {
+        if (mScope == Scope.TEMPLATE && request.getUrlTemplate() != null) {
+            return RequestUtils.getEndpointKey(request);
+        }
+        return RequestUtils.getHost(request.getFullUrl());
+    }
+
+    /**
+     * @return The current time in milliseconds, for measuring latency and open durations.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private void notifyListeners(String key, CircuitState from, CircuitState to) {
+        for (CircuitListener listener : mListeners) {
+            listener.onStateChanged(key, from, to);
+        }
+    }
+
+    /**
+     * A state and when it was entered, swapped as one so transitions need no lock.
+     */
+    private static class Status {
+
+        final CircuitState mState;
+
+        final long mSince;
+
+        /**
+         * The trial requests let through, and those that succeeded, while half-open.
+         */
+        final AtomicInteger mTrials = new AtomicInteger();
+
+        final AtomicInteger mTrialSuccesses = new AtomicInteger();
+
+        Status(CircuitState state, long since) {
+            mState = state;
+            mSince = since;
+        }
+    }
+
+    /**
+     * The state and recent outcomes of the requests with the same key.
+     */
+    private class Circuit {
+
+        private static final int EMPTY = 0;
+
+        private static final int SUCCESS = 1;
+
+        private static final int FAILURE = 2;
+
+        private static final int SLOW = 3;
+
+        final String mKey;
+
+        final AtomicReference<Status> mStatus = new AtomicReference<>(new Status(CircuitState.CLOSED, 0));
+
+        /**
+         * The ring buffer of outcomes. The counts follow the slots as they are overwritten.
+         */
+        final AtomicIntegerArray mOutcomes;
+
+        final AtomicLong mNext = new AtomicLong();
+
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        final AtomicInteger mFailures = new AtomicInteger();
+
+        final AtomicInteger mSlowCalls = new AtomicInteger();
+
+        Circuit(String key, int window) {
+            mKey = key;
+            mOutcomes = new AtomicIntegerArray(window);
+        }
+
+        /**
+         * @return The status the request is let through in, or null if it must fail.
+         */
+        Status tryAcquire(long now) {
+            while (true) {
+                Status status = mStatus.get();
+                switch (status.mState) {
+                    case CLOSED:
+                        return status;
+                    case OPEN:
+                        if (now - status.mSince < mOpenDuration) {
+                            return null;
+                        }
+                        transition(status, CircuitState.HALF_OPEN, now);
+                        break;
+                    default:
+                        if (now - status.mSince >= mHalfOpenTimeout) {
+                            // The trials are stuck, so give the endpoint another open duration
+                            transition(status, CircuitState.OPEN, now);
+                            break;
+                        }
+                        return status.mTrials.incrementAndGet() <= mHalfOpenCalls ? status : null;
+                }
+            }
+        }
+
+        /**
+         * Frees the place of a trial request that will not report an outcome.
+         *
+         * @param admittedBy The status the request was let through in.
+         */
+        void release(Status admittedBy) {
+            if (admittedBy.mState == CircuitState.HALF_OPEN) {
+                admittedBy.mTrials.decrementAndGet();
+            }
+        }
+
+        /**
+         * @param admittedBy The status the request was let through in.
+         * @param outcome    How the request went.
+         * @param now        The current time.
+         */
+        void record(Status admittedBy, int outcome, long now) {
+            Status status = mStatus.get();
+            if (admittedBy.mState == CircuitState.HALF_OPEN) {
+                if (status != admittedBy) {
+                    return;
+                }
+                if (outcome != SUCCESS) {
+                    transition(status, CircuitState.OPEN, now);
+                } else if (status.mTrialSuccesses.incrementAndGet() >= mHalfOpenCalls) {
+                    reset();
+                    transition(status, CircuitState.CLOSED, now);
+                }
+            } else if (status.mState == CircuitState.CLOSED) {
+                int index = (int) (mNext.getAndIncrement() % mOutcomes.length());
+                int previous = mOutcomes.getAndSet(index, outcome);
+                count(previous, -1);
+                count(outcome, 1);
+
+                int calls = mCalls.get();
+                if (calls >= mMinCalls && (mFailures.get() >= calls * mFailureRate
+                        || mSlowCalls.get() >= calls * mSlowCallRate)) {
+                    if (transition(status, CircuitState.OPEN, now)) {
+                        reset();
+                    }
+                }
+            }
+        }
+
+        private void count(int outcome, int delta) {
+            if (outcome != EMPTY) {
+                mCalls.addAndGet(delta);
+            }
+            if (outcome == FAILURE) {
+                mFailures.addAndGet(delta);
+            } else if (outcome == SLOW) {
+                mSlowCalls.addAndGet(delta);
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < mOutcomes.length(); i++) {
+                count(mOutcomes.getAndSet(i, EMPTY), -1);
+            }
+        }
+
+        private boolean transition(Status from, CircuitState to, long now) {
+            if (mStatus.compareAndSet(from, new Status(to, now))) {
+                notifyListeners(mKey, from.mState, to);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records the outcome of a request in its circuit.
+     */
+    private class CircuitCallback extends RequestCallbackWrapper<Object> implements ResponseInterceptor {
+
+        private final Circuit mCircuit;
+
+        private final Status mAdmittedBy;
+
+        private final long mStartTime = now();
+
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+
+        private volatile int mStatusCode = -1;
+
+        @SuppressWarnings("unchecked")
+        CircuitCallback(Circuit circuit, Request request, Status admittedBy) {
+            super(request);
+            mCircuit = circuit;
+            mAdmittedBy = admittedBy;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            mStatusCode = statusCode;
+            return body;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            record(false);
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            if (RequestUtils.isLocalFailure(error)) {
+                // An executor gave up on it, which says nothing about the endpoint
+                forgetTrial();
+                release();
+            } else {
+                int statusCode = mStatusCode;
+                record(statusCode == -1 || statusCode >= 500);
+            }
+            deliverError(error, stringError);
+        }
+
+        /**
+         * Frees the place of the request in its circuit without recording an outcome.
+         */
+        void release() {
+            if (mFinished.compareAndSet(false, true)) {
+                mCircuit.release(mAdmittedBy);
+            }
+        }
+
+        private void record(boolean failed) {
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
+            }
+            forgetTrial();
+            long now = now();
+            int outcome = failed ? Circuit.FAILURE
+                    : now - mStartTime >= mSlowCallDuration ? Circuit.SLOW : Circuit.SUCCESS;
+            mCircuit.record(mAdmittedBy, outcome, now);
+        }
+
+        private void forgetTrial() {
+            if (mAdmittedBy.mState == CircuitState.HALF_OPEN) {
+                synchronized (mTrials) {
+                    mTrials.remove(getRequest());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.raizlabs.android.broker.circuit;
+
+/**
+ * Description: Is told when a circuit of a {@link com.raizlabs.android.broker.circuit.CircuitBreakerRequestExecutor}
+ * changes state, such as to log outages or show an offline banner. Called on the thread that caused the change.
+ */
+public interface CircuitListener {
+
+    /**
+     * @param key  The key of the circuit, such as its host.
+     * @param from The state it was in.
+     * @param to   The state it is in now.
+     */
+    void onStateChanged(String key, CircuitState from, CircuitState to);
+}
@@ -0,0 +1,23 @@
+package com.raizlabs.android.broker.circuit;
+
+/**
+ * Description: Reported to the callback of a request that was not sent because its circuit is open.
+ */
+public class CircuitOpenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String mKey;
+
+    public CircuitOpenException(String key) {
+        super("The circuit for " + key + " is open");
+        mKey = key;
+    }
+
+    /**
+     * @return The key of the circuit, such as its host.
+     */
+    public String getKey() {
+        return mKey;
+    }
+}
@@ -0,0 +1,22 @@
+package com.raizlabs.android.broker.circuit;
+
+/**
+ * Description: The states of a circuit in a {@link com.raizlabs.android.broker.circuit.CircuitBreakerRequestExecutor}.
+ */
+public enum CircuitState {
+
+    /**
+     * Requests run, and their outcomes are recorded.
+     */
+    CLOSED,
+
+    /**
+     * Requests fail at once with a {@link com.raizlabs.android.broker.circuit.CircuitOpenException}.
+     */
+    OPEN,
+
+    /**
+     * A few trial requests run to find out if the endpoint recovered. The rest fail at once.
+     */
+    HALF_OPEN
+}
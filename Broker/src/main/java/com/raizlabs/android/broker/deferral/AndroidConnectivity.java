@@ -0,0 +1,36 @@
+package com.raizlabs.android.broker.deferral;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+/**
+ * Description: Reads the active network from the {@link android.net.ConnectivityManager}. The app needs the
+ * ACCESS_NETWORK_STATE permission. Before Jelly Bean, which has no metered flag, only Wi-Fi and ethernet count as
+ * unmetered.
+ */
+public class AndroidConnectivity implements Connectivity {
+
+    private final ConnectivityManager mConnectivityManager;
+
+    /**
+     * @param context The context to get the {@link android.net.ConnectivityManager} from.
+     */
+    public AndroidConnectivity(Context context) {
+        mConnectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public boolean isUnmetered() {
+        NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return !mConnectivityManager.isActiveNetworkMetered();
+        }
+        return info.getType() == ConnectivityManager.TYPE_WIFI || info.getType() == ConnectivityManager.TYPE_ETHERNET;
+    }
+}
@@ -0,0 +1,13 @@
+package com.raizlabs.android.broker.deferral;
+
+/**
+ * Description: Tells a {@link com.raizlabs.android.broker.deferral.DeferringRequestExecutor} what kind of network the
+ * device is on. Implement it to use another source, or to fake the network in tests.
+ */
+public interface Connectivity {
+
+    /**
+     * @return True if the device is connected to a network that is not billed by the byte, such as Wi-Fi.
+     */
+    boolean isUnmetered();
+}
@@ -0,0 +1,206 @@
+package com.raizlabs.android.broker.deferral;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Holds {@link com.raizlabs.android.broker.core.Priority#LOW} requests, such as analytics pings and
+ * prefetches, so they share the radio's wake-ups instead of each waking it. Held requests are sent together when
+ * a request of a higher priority runs, when the first of them has waited the max delay or comes within the deadline
+ * margin of its deadline, or when {@link #onNetworkChanged()} finds an unmetered network. On an unmetered network
+ * nothing is held.
+ */
+public class DeferringRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * How long, in milliseconds, before its deadline a held request is sent, unless changed with
+     * {@link #setDeadlineMargin(long)}.
+     */
+    public static final long DEFAULT_DEADLINE_MARGIN = 2000;
+
+    private final long mMaxDelay;
+
+    private final Connectivity mConnectivity;
+
+    private final List<Request> mDeferred = new ArrayList<>();
+
+    private volatile long mDeadlineMargin = DEFAULT_DEADLINE_MARGIN;
+
+    private ScheduledFuture<?> mTimer;
+
+    /**
+     * When the timer fires, in {@link System#currentTimeMillis()}.
+     */
+    private long mFlushAt;
+
+    /**
+     * @param delegate     The executor that runs the requests.
+     * @param maxDelay     The longest, in milliseconds, a request is held.
+     * @param connectivity Reports unmetered networks, or null to treat every network as metered.
+     */
+    public DeferringRequestExecutor(RequestExecutor delegate, long maxDelay, Connectivity connectivity) {
+        super(delegate);
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("The max delay must be 0 or more");
+        }
+        mMaxDelay = maxDelay;
+        mConnectivity = connectivity;
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (request.getPriority() == Priority.LOW && !isUnmetered()) {
+            boolean due;
+            synchronized (mDeferred) {
+                mDeferred.add(request);
+                long now = System.currentTimeMillis();
+                long flushAt = now + mMaxDelay;
+                if (request.hasDeadline()) {
+                    // Leave the request time to run before its deadline
+                    flushAt = Math.min(flushAt, request.getDeadline() - mDeadlineMargin);
+                }
+                due = flushAt <= now;
+                if (!due && (mTimer == null || flushAt < mFlushAt)) {
+                    schedule(flushAt);
+                }
+            }
+            if (due) {
+                // Too close to its deadline to wait, so the rest share its wake-up
+                flush();
+            }
+        } else {
+            super.execute(request);
+            flush();
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        synchronized (mDeferred) {
+            Iterator<Request> deferred = mDeferred.iterator();
+            while (deferred.hasNext()) {
+                Request next = deferred.next();
+                if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                    deferred.remove();
+                    if (request != null) {
+                        return;
+                    }
+                }
+            }
+        }
+        super.cancelRequest(data, request);
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mDeferred) {
+            mDeferred.clear();
+            cancelTimer();
+        }
+        super.cancelAllRequests();
+    }
+
+    @Override
+    public boolean reprioritizeRequest(Object data, Request request, Priority priority) {
+        boolean raised = false;
+        synchronized (mDeferred) {
+            for (Request next : mDeferred) {
+                if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                    next.setPriority(priority);
+                    raised |= priority != Priority.LOW;
+                }
+            }
+        }
+        if (raised) {
+            // A held request that now matters opens the network for the rest
+            flush();
+            return true;
+        }
+        return super.reprioritizeRequest(data, request, priority);
+    }
+
+    /**
+     * @param deadlineMargin How long, in milliseconds, before its deadline a held request is sent. A request with less
+     *                       time left than this is sent right away.
+     */
+    public void setDeadlineMargin(long deadlineMargin) {
+        if (deadlineMargin < 0) {
+            throw new IllegalArgumentException("The deadline margin must be 0 or more");
+        }
+        mDeadlineMargin = deadlineMargin;
+    }
+
+    /**
+     * Call when the network changes, such as from a CONNECTIVITY_ACTION receiver. Sends the held requests if the new
+     * network is unmetered.
+     */
+    public void onNetworkChanged() {
+        if (isUnmetered()) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the held requests now.
+     */
+    public void flush() {
+        List<Request> requests;
+        synchronized (mDeferred) {
+            cancelTimer();
+            if (mDeferred.isEmpty()) {
+                return;
+            }
+            requests = new ArrayList<>(mDeferred);
+            mDeferred.clear();
+        }
+        for (Request request : requests) {
+            super.execute(request);
+        }
+    }
+
+    /**
+     * @return The number of requests being held.
+     */
+    public int getDeferredCount() {
+        synchronized (mDeferred) {
+            return mDeferred.size();
+        }
+    }
+
+    private boolean isUnmetered() {
+        return mConnectivity != null && mConnectivity.isUnmetered();
+    }
+
+    /**
+     * Moves the timer, holding the lock of {@link #mDeferred}.
+     */
+    private void schedule(long flushAt) {
+        cancelTimer();
+        mFlushAt = flushAt;
+        mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, Math.max(0, flushAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the timer, holding the lock of {@link #mDeferred}.
+     */
+    private void cancelTimer() {
+        if (mTimer != null) {
+            mTimer.cancel(false);
+            mTimer = null;
+        }
+    }
+}
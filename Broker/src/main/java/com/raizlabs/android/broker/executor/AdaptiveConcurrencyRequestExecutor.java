@@ -0,0 +1,381 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.core.Priority;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Lets as many requests run on the delegate at once as the network and server keep up with, instead of
+ * a fixed count. Each host has its own limit, and requests over it wait in a queue for that host.
+ * <br />
+ * The limit follows the latency gradient: a long-term average of the round trip time is compared to each new one.
+ * While they match, the limit grows by its square root, and when requests slow down, it shrinks by the ratio between
+ * them. A request that fails without a response, or with a 429 or 5xx, shrinks it by {@link #BACKOFF_RATIO}. The limit
+ * only grows while at least half of it is in use, so a quiet period does not inflate it.
+ * <br />
+ * Keys with nothing queued or in flight for {@link #IDLE_TIMEOUT} are forgotten as new keys come in, and start over
+ * from the initial limit if they return.
+ * <br />
+ * Override {@link #getLimitKey(com.raizlabs.android.broker.Request)} to return the same key for every request to
+ * share one limit across the executor.
+ */
+public class AdaptiveConcurrencyRequestExecutor extends AdmissionRequestExecutor {
+
+    /**
+     * How much the limit is multiplied by when a request is dropped.
+     */
+    public static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * How long, in milliseconds, a key has to be idle before its limit may be forgotten.
+     */
+    public static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    /**
+     * The number of keys below which idle ones are not looked for.
+     */
+    private static final int MIN_SWEEP_SIZE = 16;
+
+    /**
+     * How much slower than the long-term round trip time a request can be before the limit shrinks.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * How many samples the long-term round trip time averages over.
+     */
+    private static final double LONG_WINDOW = 100;
+
+    /**
+     * How much of each new limit is blended into the current one.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final Map<String, Limit> mLimits = new HashMap<>();
+
+    private final int mInitialLimit;
+
+    private final int mMinLimit;
+
+    private final int mMaxLimit;
+
+    /**
+     * The number of keys at which idle ones are next looked for, so the cost of looking is spread over new keys.
+     */
+    private int mNextSweepSize = MIN_SWEEP_SIZE;
+
+    /**
+     * Starts each host at 4 requests, adapting between 1 and 32.
+     *
+     * @param delegate The executor that runs the requests.
+     */
+    public AdaptiveConcurrencyRequestExecutor(RequestExecutor delegate) {
+        this(delegate, 4, 1, 32);
+    }
+
+    /**
+     * @param delegate     The executor that runs the requests.
+     * @param initialLimit How many requests each host can have in flight before there are samples.
+     * @param minLimit     The fewest requests each host can have in flight.
+     * @param maxLimit     The most requests each host can have in flight.
+     */
+    public AdaptiveConcurrencyRequestExecutor(RequestExecutor delegate, int initialLimit, int minLimit, int maxLimit) {
+        super(delegate);
+        if (minLimit <= 0 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("The limits must be positive and min <= initial <= max");
+        }
+        mInitialLimit = initialLimit;
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+    }
+
+    @Override
+    public void execute(Request request) {
+        String key = getLimitKey(request);
+        if (key == null) {
+            super.execute(request);
+            return;
+        }
+
+        Limit limit;
+        synchronized (mLock) {
+            limit = getOrCreateLimit(key);
+            if (request.getPriority() == Priority.IMMEDIATE) {
+                limit.mQueue.addFirst(request);
+            } else {
+                limit.mQueue.addLast(request);
+            }
+        }
+        dispatch(limit);
+    }
+
+    /**
+     * @param key The limit key, by default the host of the url, with its port if it has one.
+     * @return How many requests with the key can be in flight right now.
+     */
+    public int getLimit(String key) {
+        synchronized (mLock) {
+            Limit limit = mLimits.get(key);
+            return limit != null ? limit.getAllowed() : mInitialLimit;
+        }
+    }
+
+    /**
+     * @param key The limit key.
+     * @return How many requests with the key are in flight.
+     */
+    public int getInFlight(String key) {
+        synchronized (mLock) {
+            Limit limit = mLimits.get(key);
+            return limit != null ? limit.mInFlight : 0;
+        }
+    }
+
+    /**
+     * @param key The limit key.
+     * @return The number of requests with the key waiting to run.
+     */
+    public int getQueueDepth(String key) {
+        synchronized (mLock) {
+            Limit limit = mLimits.get(key);
+            return limit != null ? limit.mQueue.size() : 0;
+        }
+    }
+
+    @Override
+    protected boolean removeQueued(Object data, Request request) {
+        boolean removed = false;
+        for (Limit limit : mLimits.values()) {
+            removed |= removeMatching(limit.mQueue, data, request);
+            if (removed && request != null) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    protected void clearQueued() {
+        for (Limit limit : mLimits.values()) {
+            limit.mQueue.clear();
+        }
+    }
+
+    /**
+     * @return The number of keys whose limits and queues are kept.
+     */
+    public int getLimitCount() {
+        synchronized (mLock) {
+            return mLimits.size();
+        }
+    }
+
+    /**
+     * @param request The request to run.
+     * @return The key of the limit that applies to the request, or null to run it without one.
+     */
+    protected String getLimitKey(Request request) {
+        return RequestUtils.getHost(request.getFullUrl());
+    }
+
+    /**
+     * @return The current time in milliseconds, from a clock that only moves forward.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private Limit getOrCreateLimit(String key) {
+        Limit limit = mLimits.get(key);
+        if (limit == null) {
+            if (mLimits.size() >= mNextSweepSize) {
+                removeIdleLimits();
+                mNextSweepSize = Math.max(MIN_SWEEP_SIZE, mLimits.size() * 2);
+            }
+            limit = new Limit();
+            mLimits.put(key, limit);
+        }
+        return limit;
+    }
+
+    /**
+     * Forgets the limits of keys that have been idle for {@link #IDLE_TIMEOUT}, holding {@link #mLock}.
+     */
+    private void removeIdleLimits() {
+        long now = now();
+        Iterator<Limit> limits = mLimits.values().iterator();
+        while (limits.hasNext()) {
+            if (limits.next().isIdle(now)) {
+                limits.remove();
+            }
+        }
+    }
+
+    private void dispatch(Limit limit) {
+        List<LimitCallback> admitted = new ArrayList<>();
+        synchronized (mLock) {
+            while (!limit.mQueue.isEmpty() && limit.mInFlight < limit.getAllowed()) {
+                limit.mInFlight++;
+                LimitCallback callback = new LimitCallback(limit, limit.mQueue.pollFirst(), now(), limit.mInFlight);
+                admit(callback);
+                admitted.add(callback);
+            }
+        }
+
+        for (LimitCallback callback : admitted) {
+            executeDelegate(callback.getRequest(), callback);
+        }
+    }
+
+    /**
+     * The limit and queue of one key.
+     */
+    private class Limit {
+
+        final ArrayDeque<Request> mQueue = new ArrayDeque<>();
+
+        double mLimit = mInitialLimit;
+
+        double mLongRtt;
+
+        int mInFlight;
+
+        /**
+         * When a request of the key last finished.
+         */
+        long mLastUsed = now();
+
+        int getAllowed() {
+            return (int) mLimit;
+        }
+
+        /**
+         * @return True if nothing is queued or in flight, and nothing has finished for {@link #IDLE_TIMEOUT}.
+         */
+        boolean isIdle(long now) {
+            return mQueue.isEmpty() && mInFlight == 0 && now - mLastUsed >= IDLE_TIMEOUT;
+        }
+
+        /**
+         * Moves the limit by how the round trip time of a request compares to the long-term one.
+         *
+         * @param rtt      The round trip time in milliseconds.
+         * @param inFlight How many requests were in flight when it started, itself included.
+         */
+        void sample(long rtt, int inFlight) {
+            if (mLongRtt == 0) {
+                mLongRtt = rtt;
+            } else {
+                mLongRtt += (rtt - mLongRtt) / LONG_WINDOW;
+                // Let the long-term average catch up quickly once a slow period is over
+                if (mLongRtt > 2 * rtt) {
+                    mLongRtt *= 0.95;
+                }
+            }
+
+            double gradient = Math.max(0.5, Math.min(1, TOLERANCE * mLongRtt / rtt));
+            if (gradient == 1 && inFlight * 2 < mLimit) {
+                return;
+            }
+            double newLimit = mLimit * gradient + Math.sqrt(mLimit);
+            set(mLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+        }
+
+        /**
+         * Backs off after a request was dropped.
+         */
+        void drop() {
+            set(mLimit * BACKOFF_RATIO);
+        }
+
+        private void set(double limit) {
+            mLimit = Math.max(mMinLimit, Math.min(mMaxLimit, limit));
+        }
+    }
+
+    /**
+     * Measures how long a request takes, and whether the server answered it.
+     */
+    private class LimitCallback extends AdmittedCallback implements ResponseInterceptor {
+
+        private final Limit mLimit;
+
+        private final long mStartTime;
+
+        private final int mInFlight;
+
+        private volatile int mStatusCode = -1;
+
+        /**
+         * Whether the request finished with a round trip time to sample, and whether it was dropped, for
+         * {@link #release()}. Cancelled requests are neither.
+         */
+        private boolean mSample;
+
+        private boolean mDropped;
+
+        LimitCallback(Limit limit, Request request, long startTime, int inFlight) {
+            super(request);
+            mLimit = limit;
+            mStartTime = startTime;
+            mInFlight = inFlight;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            mStatusCode = statusCode;
+            return body;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            finish(false);
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            int statusCode = mStatusCode;
+            finish(statusCode == -1 || statusCode == 429 || statusCode >= 500);
+            deliverError(error, stringError);
+        }
+
+        /**
+         * Frees the slot and records the sample, only the first time.
+         */
+        private void finish(boolean dropped) {
+            synchronized (mLock) {
+                mSample = true;
+                mDropped = dropped;
+            }
+            finish();
+        }
+
+        @Override
+        protected void release() {
+            mLimit.mInFlight--;
+            mLimit.mLastUsed = now();
+            if (mDropped) {
+                mLimit.drop();
+            } else if (mSample) {
+                mLimit.sample(Math.max(1, now() - mStartTime), mInFlight);
+            }
+        }
+
+        @Override
+        protected void onReleased() {
+            dispatch(mLimit);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Base class for an executor that decides when requests may run on the delegate, such as one that
+ * queues them or limits how many run at once. It keeps track of each request it admits with an
+ * {@link AdmittedCallback} until the request finishes or is cancelled, and frees what the request held exactly once.
+ * <br />
+ * Cancelling removes matching requests from the queues of the subclass through
+ * {@link #removeQueued(Object, com.raizlabs.android.broker.Request)}, then cancels the admitted ones on the delegate
+ * and finishes them. All of the state of the subclass should be guarded by {@link #mLock}.
+ */
+public abstract class AdmissionRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * Guards the admitted requests, and the queues and counts of subclasses.
+     */
+    protected final Object mLock = new Object();
+
+    /**
+     * The admitted requests, in the order they were admitted.
+     */
+    private final Map<Request, AdmittedCallback> mAdmitted = new LinkedHashMap<>();
+
+    /**
+     * @param delegate The executor that runs the requests.
+     */
+    public AdmissionRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        List<AdmittedCallback> admitted;
+        synchronized (mLock) {
+            if (removeQueued(data, request) && request != null) {
+                // It never reached the delegate
+                return;
+            }
+            admitted = getAdmitted(data, request);
+        }
+        cancelAdmitted(data, request, admitted);
+        for (AdmittedCallback callback : admitted) {
+            callback.finish();
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        List<AdmittedCallback> admitted;
+        synchronized (mLock) {
+            clearQueued();
+            admitted = getAdmitted();
+        }
+        cancelAllAdmitted();
+        for (AdmittedCallback callback : admitted) {
+            callback.finish();
+        }
+    }
+
+    /**
+     * @return The number of requests admitted to the delegate that have not finished.
+     */
+    public int getAdmittedCount() {
+        synchronized (mLock) {
+            return mAdmitted.size();
+        }
+    }
+
+    /**
+     * Tracks a request until its callback finishes. Call it before the request is run.
+     *
+     * @param callback The callback the request runs with.
+     */
+    protected void admit(AdmittedCallback callback) {
+        synchronized (mLock) {
+            mAdmitted.put(callback.getRequest(), callback);
+        }
+    }
+
+    /**
+     * @return The callbacks of all of the admitted requests, in the order they were admitted.
+     */
+    protected List<AdmittedCallback> getAdmitted() {
+        synchronized (mLock) {
+            return new ArrayList<>(mAdmitted.values());
+        }
+    }
+
+    /**
+     * @param data    The metadata to match, used when the request is null.
+     * @param request The request to match, or null to match by metadata.
+     * @return The callbacks of the admitted requests that match.
+     */
+    protected List<AdmittedCallback> getAdmitted(Object data, Request request) {
+        synchronized (mLock) {
+            if (request != null) {
+                AdmittedCallback callback = mAdmitted.get(request);
+                return callback != null ? Collections.singletonList(callback)
+                        : Collections.<AdmittedCallback>emptyList();
+            }
+            List<AdmittedCallback> admitted = new ArrayList<>();
+            if (data != null) {
+                for (AdmittedCallback callback : mAdmitted.values()) {
+                    if (data.equals(callback.getRequest().getMetaData())) {
+                        admitted.add(callback);
+                    }
+                }
+            }
+            return admitted;
+        }
+    }
+
+    /**
+     * Removes the requests that match from a queue.
+     *
+     * @param queue   The queue of a subclass.
+     * @param data    The metadata to match, used when the request is null.
+     * @param request The request to match, or null to match by metadata.
+     * @return True if a request was removed.
+     */
+    protected static boolean removeMatching(Iterable<Request> queue, Object data, Request request) {
+        boolean removed = false;
+        Iterator<Request> queued = queue.iterator();
+        while (queued.hasNext()) {
+            Request next = queued.next();
+            if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                queued.remove();
+                if (request != null) {
+                    return true;
+                }
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the queued requests that match, holding {@link #mLock}. Nothing is queued by default.
+     *
+     * @param data    The metadata to match, used when the request is null.
+     * @param request The request to match, or null to match by metadata.
+     * @return True if a request was removed.
+     */
+    protected boolean removeQueued(Object data, Request request) {
+        return false;
+    }
+
+    /**
+     * Removes every queued request, holding {@link #mLock}.
+     */
+    protected void clearQueued() {
+    }
+
+    /**
+     * Cancels requests on the executor they were admitted to, by default the delegate.
+     *
+     * @param data     The metadata to match, used when the request is null.
+     * @param request  The request to match, or null to match by metadata.
+     * @param admitted The callbacks of the admitted requests that match.
+     */
+    protected void cancelAdmitted(Object data, Request request, List<AdmittedCallback> admitted) {
+        super.cancelRequest(data, request);
+    }
+
+    /**
+     * Cancels every request on the executors they were admitted to, by default the delegate.
+     */
+    protected void cancelAllAdmitted() {
+        super.cancelAllRequests();
+    }
+
+    /**
+     * Frees what its request holds the first time it finishes, whether it was answered or cancelled.
+     */
+    protected abstract class AdmittedCallback extends RequestCallbackWrapper<Object> {
+
+        private boolean mFinished;
+
+        /**
+         * @param request The request whose current callback is wrapped.
+         */
+        @SuppressWarnings("unchecked")
+        public AdmittedCallback(Request request) {
+            super(request);
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            finish();
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            finish();
+            deliverError(error, stringError);
+        }
+
+        /**
+         * Stops tracking the request and frees what it holds, only the first time.
+         *
+         * @return True if this was the first time.
+         */
+        public boolean finish() {
+            boolean first;
+            synchronized (mLock) {
+                first = finishHoldingLock();
+            }
+            if (first) {
+                onReleased();
+            }
+            return first;
+        }
+
+        /**
+         * Like {@link #finish()}, for a caller that holds {@link #mLock}. {@link #onReleased()} is left to the caller.
+         *
+         * @return True if this was the first time.
+         */
+        protected boolean finishHoldingLock() {
+            if (mFinished) {
+                return false;
+            }
+            mFinished = true;
+            if (mAdmitted.get(getRequest()) == this) {
+                mAdmitted.remove(getRequest());
+            }
+            release();
+            return true;
+        }
+
+        /**
+         * Frees what the request holds, such as its place in a limit, holding {@link #mLock}.
+         */
+        protected abstract void release();
+
+        /**
+         * Called once the request is released, without holding {@link #mLock}, such as to run the next queued
+         * request.
+         */
+        protected void onReleased() {
+        }
+    }
+}
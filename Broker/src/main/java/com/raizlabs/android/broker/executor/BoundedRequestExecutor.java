@@ -0,0 +1,227 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Description: Bounds how many requests, and how many bytes of request bodies, the delegate holds at once, so a
+ * runaway loop or a reconnect storm cannot fill memory. A request counts from when it is executed until it finishes
+ * or is cancelled, since the delegate does not report when it leaves its queue.
+ * <br />
+ * What happens to a request that does not fit depends on the {@link Policy}. A request that is turned away, or shed
+ * for another, fails with a {@link java.util.concurrent.RejectedExecutionException} in
+ * {@link com.raizlabs.android.broker.RequestCallback#onRequestError(Throwable, String)}.
+ */
+public class BoundedRequestExecutor extends AdmissionRequestExecutor {
+
+    /**
+     * What to do with a request that does not fit.
+     */
+    public enum Policy {
+
+        /**
+         * Fail the request right away.
+         */
+        REJECT,
+
+        /**
+         * Block the thread that executes the request until there is room, or fail it after the block timeout. Do not
+         * use it on the main thread.
+         */
+        BLOCK,
+
+        /**
+         * Shed the newest requests with the lowest priority below the request's own to make room, or fail it if there
+         * are not enough of them. Shed requests are cancelled on the delegate.
+         */
+        DROP_LOWEST
+    }
+
+    private final int mMaxRequests;
+
+    private final long mMaxBytes;
+
+    private final Policy mPolicy;
+
+    private final long mBlockTimeout;
+
+    private long mBytes;
+
+    /**
+     * @param delegate    The executor that runs the requests.
+     * @param maxRequests The most requests the delegate holds at once.
+     * @param maxBytes    The most bytes of request bodies the delegate holds at once.
+     * @param policy      What to do with a request that does not fit. Use the other constructor for
+     *                    {@link Policy#BLOCK}.
+     */
+    public BoundedRequestExecutor(RequestExecutor delegate, int maxRequests, long maxBytes, Policy policy) {
+        this(delegate, maxRequests, maxBytes, policy, 0);
+    }
+
+    /**
+     * @param delegate     The executor that runs the requests.
+     * @param maxRequests  The most requests the delegate holds at once.
+     * @param maxBytes     The most bytes of request bodies the delegate holds at once.
+     * @param policy       What to do with a request that does not fit.
+     * @param blockTimeout How long, in milliseconds, {@link Policy#BLOCK} waits for room.
+     */
+    public BoundedRequestExecutor(RequestExecutor delegate, int maxRequests, long maxBytes, Policy policy,
+                                  long blockTimeout) {
+        super(delegate);
+        if (maxRequests <= 0 || maxBytes <= 0 || policy == null || blockTimeout < 0) {
+            throw new IllegalArgumentException("The limits must be positive, with a policy and a block timeout of 0 or more");
+        }
+        mMaxRequests = maxRequests;
+        mMaxBytes = maxBytes;
+        mPolicy = policy;
+        mBlockTimeout = blockTimeout;
+    }
+
+    @Override
+    public void execute(Request request) {
+        long bytes = request.hasBody() ? request.getBodyLength() : 0;
+        BoundedCallback callback = null;
+        List<BoundedCallback> shed = new ArrayList<>();
+        if (bytes <= mMaxBytes) {
+            synchronized (mLock) {
+                if (!fits(bytes)) {
+                    if (mPolicy == Policy.BLOCK) {
+                        block(bytes);
+                    } else if (mPolicy == Policy.DROP_LOWEST) {
+                        shed(request, bytes, shed);
+                    }
+                }
+                if (fits(bytes)) {
+                    callback = new BoundedCallback(request, bytes);
+                    admit(callback);
+                    mBytes += bytes;
+                }
+            }
+        }
+
+        for (BoundedCallback victim : shed) {
+            super.cancelRequest(victim.getRequest().getMetaData(), victim.getRequest());
+            victim.reject("Shed for a request with a higher priority");
+        }
+        if (callback != null) {
+            executeDelegate(request, callback);
+        } else {
+            RequestCallback original = request.getCallback();
+            if (original != null) {
+                RejectedExecutionException error = new RejectedExecutionException("Too many requests queued");
+                original.onRequestError(error, error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The bytes of request bodies the delegate holds.
+     */
+    public long getAdmittedBytes() {
+        synchronized (mLock) {
+            return mBytes;
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return getAdmittedCount() < mMaxRequests && mBytes + bytes <= mMaxBytes;
+    }
+
+    /**
+     * Waits for room, holding {@link #mLock}.
+     */
+    private void block(long bytes) {
+        long deadline = System.nanoTime() / 1000000 + mBlockTimeout;
+        long remaining = mBlockTimeout;
+        try {
+            while (!fits(bytes) && remaining > 0) {
+                mLock.wait(remaining);
+                remaining = deadline - System.nanoTime() / 1000000;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Releases the newest requests with the lowest priority below that of the request until it fits, holding
+     * {@link #mLock}. Nothing is released if that is not enough.
+     */
+    private void shed(Request request, long bytes, List<BoundedCallback> shed) {
+        List<BoundedCallback> candidates = new ArrayList<>();
+        for (AdmittedCallback callback : getAdmitted()) {
+            if (callback.getRequest().getPriority().ordinal() < request.getPriority().ordinal()) {
+                candidates.add((BoundedCallback) callback);
+            }
+        }
+
+        int count = getAdmittedCount();
+        long total = mBytes;
+        List<BoundedCallback> victims = new ArrayList<>();
+        while ((count >= mMaxRequests || total + bytes > mMaxBytes) && !candidates.isEmpty()) {
+            BoundedCallback victim = candidates.get(candidates.size() - 1);
+            for (int i = candidates.size() - 1; i >= 0; i--) {
+                if (candidates.get(i).getRequest().getPriority().ordinal() < victim.getRequest().getPriority().ordinal()) {
+                    victim = candidates.get(i);
+                }
+            }
+            candidates.remove(victim);
+            victims.add(victim);
+            count--;
+            total -= victim.mBodyLength;
+        }
+
+        if (count < mMaxRequests && total + bytes <= mMaxBytes) {
+            for (BoundedCallback victim : victims) {
+                if (victim.finishHoldingLock()) {
+                    shed.add(victim);
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the room of a request once it finishes.
+     */
+    private class BoundedCallback extends AdmittedCallback {
+
+        private final long mBodyLength;
+
+        BoundedCallback(Request request, long bytes) {
+            super(request);
+            mBodyLength = bytes;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            if (finish()) {
+                deliverDone(response);
+            }
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            if (finish()) {
+                deliverError(error, stringError);
+            }
+        }
+
+        @Override
+        protected void release() {
+            mBytes -= mBodyLength;
+            mLock.notifyAll();
+        }
+
+        /**
+         * Fails a request that was shed.
+         */
+        void reject(String reason) {
+            deliverError(new RejectedExecutionException(reason), reason);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Method;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description: Runs identical GET and HEAD requests once while they are in flight. The first request goes to the
+ * delegate and any identical request executed before it finishes attaches to it instead. Every attached request then
+ * receives the same handled response, or error, in its own {@link com.raizlabs.android.broker.RequestCallback}.
+ * <br />
+ * Cancelling one of the attached requests only detaches it. The request on the delegate is cancelled once every
+ * request attached to it has been cancelled. Cancelling by tag detaches the requests with that tag, and if that
+ * cancelled the running request out from under others, the next attached request is run in its place.
+ * <br />
+ * Requests with a body or a file to download to are never coalesced.
+ */
+public class CoalescingRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * The number of lock stripes in the flight maps.
+     */
+    private static final int STRIPES = 16;
+
+    private final ConcurrentHashMap<Object, Flight> mFlights = new ConcurrentHashMap<>(16, 0.75f, STRIPES);
+
+    private final ConcurrentHashMap<Request, Flight> mFlightsByRequest = new ConcurrentHashMap<>(16, 0.75f, STRIPES);
+
+    /**
+     * @param delegate The executor that runs the requests.
+     */
+    public CoalescingRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (!isCoalescable(request)) {
+            super.execute(request);
+            return;
+        }
+
+        Object key = getCoalescingKey(request);
+        while (true) {
+            Flight flight = mFlights.get(key);
+            if (flight == null) {
+                flight = new Flight(key);
+                flight.attach(request);
+                if (mFlights.putIfAbsent(key, flight) == null) {
+                    flight.start();
+                    return;
+                }
+                mFlightsByRequest.remove(request, flight);
+            } else if (flight.attach(request)) {
+                return;
+            } else {
+                // Finished while we looked it up
+                mFlights.remove(key, flight);
+            }
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            Flight flight = mFlightsByRequest.get(request);
+            if (flight == null) {
+                super.cancelRequest(data, request);
+            } else {
+                Request leader = flight.detach(request);
+                if (leader != null) {
+                    super.cancelRequest(leader.getMetaData(), leader);
+                }
+            }
+        } else {
+            // The delegate cancels every request with the tag, so detach those and rerun the others without them.
+            List<Flight> orphaned = new ArrayList<>();
+            for (Map.Entry<Request, Flight> entry : mFlightsByRequest.entrySet()) {
+                Request attached = entry.getKey();
+                if (data != null && data.equals(attached.getMetaData())) {
+                    Flight flight = entry.getValue();
+                    Request leader = flight.getLeader();
+                    Request toCancel = flight.detach(attached);
+                    if (toCancel != null && !data.equals(toCancel.getMetaData())) {
+                        super.cancelRequest(toCancel.getMetaData(), toCancel);
+                    } else if (toCancel == null && attached == leader) {
+                        orphaned.add(flight);
+                    }
+                }
+            }
+
+            super.cancelRequest(data, null);
+
+            for (Flight flight : orphaned) {
+                flight.restart();
+            }
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        for (Flight flight : mFlights.values()) {
+            flight.abandon();
+        }
+        mFlights.clear();
+        mFlightsByRequest.clear();
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @param request The request
+     * @return True if the request is idempotent and can share its response with identical ones.
+     */
+    protected boolean isCoalescable(Request request) {
+        return (request.getMethod() == Method.GET || request.getMethod() == Method.HEAD)
+                && !request.hasBody() && !request.isMultiPart() && !request.hasFile();
+    }
+
+    /**
+     * Builds the key under which identical requests share a flight. It must include everything that can change the
+     * handled response.
+     *
+     * @param request The request
+     * @return The key for the request.
+     */
+    protected Object getCoalescingKey(Request request) {
+        return request.getFingerprint() * 31 + request.getResponseHandler().getClass().getName().hashCode();
+    }
+
+    /**
+     * A request attached to a flight, with the callback it had when it was attached.
+     */
+    private static class Participant {
+
+        final Request mRequest;
+
+        final RequestCallback mCallback;
+
+        Participant(Request request) {
+            mRequest = request;
+            mCallback = request.getCallback();
+        }
+    }
+
+    /**
+     * One request running on the delegate and everything attached to it.
+     */
+    private class Flight {
+
+        private final Object mKey;
+
+        private final List<Participant> mParticipants = new ArrayList<>();
+
+        private Request mLeader;
+
+        private FlightCallback mLeaderCallback;
+
+        private boolean mDone;
+
+        Flight(Object key) {
+            mKey = key;
+        }
+
+        synchronized Request getLeader() {
+            return mLeader;
+        }
+
+        /**
+         * @return False if the flight already finished, so the request needs a new one.
+         */
+        synchronized boolean attach(Request request) {
+            if (mDone) {
+                return false;
+            }
+            mParticipants.add(new Participant(request));
+            mFlightsByRequest.put(request, this);
+            return true;
+        }
+
+        /**
+         * Runs the first participant on the delegate.
+         */
+        void start() {
+            Request leader;
+            FlightCallback callback;
+            synchronized (this) {
+                if (mDone || mParticipants.isEmpty()) {
+                    return;
+                }
+                leader = mParticipants.get(0).mRequest;
+                // The participant keeps the callback it had, the wrapper is only for the delegate.
+                callback = new FlightCallback(this, leader);
+                mLeader = leader;
+                mLeaderCallback = callback;
+            }
+            executeDelegate(leader, callback);
+        }
+
+        /**
+         * Runs the flight again after the delegate cancelled its request.
+         */
+        void restart() {
+            synchronized (this) {
+                if (mLeaderCallback != null) {
+                    mLeaderCallback.restore();
+                }
+            }
+            start();
+        }
+
+        /**
+         * @return The request to cancel on the delegate if this was the last participant, otherwise null.
+         */
+        synchronized Request detach(Request request) {
+            mFlightsByRequest.remove(request, this);
+            for (int i = 0; i < mParticipants.size(); i++) {
+                if (mParticipants.get(i).mRequest == request) {
+                    mParticipants.remove(i);
+                    break;
+                }
+            }
+
+            if (mParticipants.isEmpty() && !mDone) {
+                mDone = true;
+                mFlights.remove(mKey, this);
+                return mLeader;
+            }
+            return null;
+        }
+
+        synchronized void abandon() {
+            mDone = true;
+            mParticipants.clear();
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(FlightCallback callback, boolean success, Object response, Throwable error, String stringError) {
+            List<Participant> participants;
+            synchronized (this) {
+                if (mDone || callback != mLeaderCallback) {
+                    return;
+                }
+                mDone = true;
+                mFlights.remove(mKey, this);
+                participants = new ArrayList<>(mParticipants);
+                for (Participant participant : participants) {
+                    mFlightsByRequest.remove(participant.mRequest, this);
+                }
+            }
+
+            for (Participant participant : participants) {
+                if (participant.mCallback != null) {
+                    if (success) {
+                        participant.mCallback.onRequestDone(response);
+                    } else {
+                        participant.mCallback.onRequestError(error, stringError);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the response of the request running on the delegate to its flight.
+     */
+    private static class FlightCallback extends RequestCallbackWrapper {
+
+        private final Flight mFlight;
+
+        @SuppressWarnings("unchecked")
+        FlightCallback(Flight flight, Request request) {
+            super(request);
+            mFlight = flight;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            restore();
+            mFlight.complete(this, true, response, null, null);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            restore();
+            mFlight.complete(this, false, null, error, stringError);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.DeadlineExceededException;
+import com.raizlabs.android.broker.ReprioritizableExecutor;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Priority;
+
+/**
+ * Description: Base class for a {@link com.raizlabs.android.broker.RequestExecutor} that decorates another one.
+ * By default everything is passed straight through to the delegate, so subclasses only override the
+ * pieces they need, such as {@link #execute(com.raizlabs.android.broker.Request)}. Reprioritizing only moves requests
+ * when the delegate is a {@link com.raizlabs.android.broker.ReprioritizableExecutor}.
+ */
+public abstract class DelegateRequestExecutor implements ReprioritizableExecutor<Object> {
+
+    private final RequestExecutor mDelegate;
+
+    /**
+     * @param delegate The executor that actually runs the requests.
+     */
+    public DelegateRequestExecutor(RequestExecutor delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("A DelegateRequestExecutor must have a non-null delegate");
+        }
+        mDelegate = delegate;
+    }
+
+    /**
+     * @return The executor that this executor passes requests to.
+     */
+    public RequestExecutor getDelegate() {
+        return mDelegate;
+    }
+
+    @Override
+    public void execute(Request request) {
+        mDelegate.execute(request);
+    }
+
+    /**
+     * Runs the request on the delegate, reporting to the specified callback instead of the request's own. A request
+     * whose deadline passed, such as while it waited in a queue, fails with a
+     * {@link com.raizlabs.android.broker.DeadlineExceededException} instead.
+     *
+     * @param request  The request to run.
+     * @param callback The callback that the delegate will report to.
+     */
+    @SuppressWarnings("unchecked")
+    protected void executeDelegate(Request request, RequestCallback callback) {
+        request.setCallback(callback);
+        if (request.isExpired()) {
+            if (callback != null) {
+                DeadlineExceededException error = new DeadlineExceededException();
+                callback.onRequestError(error, error.getMessage());
+            }
+            return;
+        }
+        mDelegate.execute(request);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void cancelRequest(Object data, Request request) {
+        mDelegate.cancelRequest(data, request);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean reprioritizeRequest(Object data, Request request, Priority priority) {
+        if (mDelegate instanceof ReprioritizableExecutor) {
+            return ((ReprioritizableExecutor) mDelegate).reprioritizeRequest(data, request, priority);
+        }
+        if (request != null) {
+            request.setPriority(priority);
+        }
+        return false;
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        mDelegate.cancelAllRequests();
+    }
+
+    @Override
+    public Object convertPriority(Priority priority) {
+        return mDelegate.convertPriority(priority);
+    }
+}
@@ -0,0 +1,92 @@
+package com.raizlabs.android.broker.executor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description: Shared threads for {@link com.raizlabs.android.broker.RequestExecutor} decorators that need to do
+ * work off of the calling thread or at a later time. All threads are daemons so they never keep the process alive.
+ */
+public class ExecutorUtils {
+
+    private static ExecutorService sBackgroundExecutor;
+
+    private static ScheduledExecutorService sScheduler;
+
+    private static Executor sMainThreadExecutor;
+
+    /**
+     * @return A shared pool for short background work, such as handling a cached response.
+     */
+    public static synchronized ExecutorService getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new BrokerThreadFactory("Broker-Background"));
+        }
+        return sBackgroundExecutor;
+    }
+
+    /**
+     * @return A shared single thread for timers. Work scheduled here should only hand off to other executors.
+     */
+    public static synchronized ScheduledExecutorService getScheduler() {
+        if (sScheduler == null) {
+            sScheduler = new ScheduledThreadPoolExecutor(1, new BrokerThreadFactory("Broker-Scheduler"));
+        }
+        return sScheduler;
+    }
+
+    /**
+     * @return Runs work on the main thread, which is where Volley delivers its responses.
+     */
+    public static synchronized Executor getMainThreadExecutor() {
+        if (sMainThreadExecutor == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sMainThreadExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return sMainThreadExecutor;
+    }
+
+    /**
+     * Runs work on the thread that calls {@link java.util.concurrent.Executor#execute(Runnable)}.
+     */
+    public static final Executor IMMEDIATE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class BrokerThreadFactory implements ThreadFactory {
+
+        private final String mName;
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        BrokerThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
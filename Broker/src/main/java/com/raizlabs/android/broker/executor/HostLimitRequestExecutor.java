@@ -0,0 +1,397 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.core.Priority;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Admits requests to the delegate per host, so a burst to one backend cannot trip its rate limit while
+ * requests to other hosts keep flowing. Each host has a max number of requests in flight and a token bucket that
+ * refills at a steady rate up to a burst size, and requests wait in a queue per host for both.
+ * <br />
+ * A 429 or 503 response with a Retry-After header pauses its host's queue for as long as the server asks. Only
+ * responses the backend passes through {@link com.raizlabs.android.broker.RequestUtils} are seen, which includes the
+ * error responses of the {@link com.raizlabs.android.broker.RequestExecutor}s that ship with Broker.
+ * <br />
+ * Hosts that have nothing queued or running, are not paused and have a full bucket are forgotten as new hosts come
+ * in, unless their limits were set with {@link #setHostLimits(String, int, double, int)}.
+ * <br />
+ * Requests are grouped by the host and port of their url. Override {@link #getHostKey(com.raizlabs.android.broker.Request)}
+ * to group them another way, such as by the service they belong to.
+ */
+public class HostLimitRequestExecutor extends AdmissionRequestExecutor {
+
+    /**
+     * The HTTP-date format of a Retry-After header.
+     */
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /**
+     * The number of hosts below which idle ones are not looked for.
+     */
+    private static final int MIN_SWEEP_SIZE = 16;
+
+    private final Map<String, Host> mHosts = new HashMap<>();
+
+    private final int mMaxPerHost;
+
+    private final double mRatePerSecond;
+
+    private final int mBurst;
+
+    /**
+     * The number of hosts at which idle ones are next looked for, so the cost of looking is spread over new hosts.
+     */
+    private int mNextSweepSize = MIN_SWEEP_SIZE;
+
+    /**
+     * @param delegate   The executor that runs the requests.
+     * @param maxPerHost The most requests in flight to each host.
+     */
+    public HostLimitRequestExecutor(RequestExecutor delegate, int maxPerHost) {
+        this(delegate, maxPerHost, 0, 0);
+    }
+
+    /**
+     * @param delegate      The executor that runs the requests.
+     * @param maxPerHost    The most requests in flight to each host.
+     * @param ratePerSecond How many requests each host receives per second over time, or 0 for no rate limit.
+     * @param burst         How many requests each host can receive at once after being idle.
+     */
+    public HostLimitRequestExecutor(RequestExecutor delegate, int maxPerHost, double ratePerSecond, int burst) {
+        super(delegate);
+        if (maxPerHost <= 0 || ratePerSecond < 0 || (ratePerSecond > 0 && burst <= 0)) {
+            throw new IllegalArgumentException("The max per host and burst must be positive, and the rate not negative");
+        }
+        mMaxPerHost = maxPerHost;
+        mRatePerSecond = ratePerSecond;
+        mBurst = burst;
+    }
+
+    /**
+     * Overrides the limits of one host.
+     *
+     * @param host          The host key, by default the host of the url, with its port if it has one.
+     * @param maxInFlight   The most requests in flight to the host.
+     * @param ratePerSecond How many requests the host receives per second over time, or 0 for no rate limit.
+     * @param burst         How many requests the host can receive at once after being idle.
+     */
+    public void setHostLimits(String host, int maxInFlight, double ratePerSecond, int burst) {
+        if (maxInFlight <= 0 || ratePerSecond < 0 || (ratePerSecond > 0 && burst <= 0)) {
+            throw new IllegalArgumentException("The max in flight and burst must be positive, and the rate not negative");
+        }
+        Host limits;
+        synchronized (mLock) {
+            limits = getHost(host);
+            limits.mConfigured = true;
+            if (limits.mRatePerSecond <= 0) {
+                limits.mTokens = burst;
+            }
+            limits.mMaxInFlight = maxInFlight;
+            limits.mRatePerSecond = ratePerSecond;
+            limits.mBurst = burst;
+            limits.mTokens = Math.min(limits.mTokens, burst);
+        }
+        dispatch(limits);
+    }
+
+    @Override
+    public void execute(Request request) {
+        String key = getHostKey(request);
+        if (key == null) {
+            super.execute(request);
+            return;
+        }
+
+        Host host;
+        synchronized (mLock) {
+            host = getHost(key);
+            if (request.getPriority() == Priority.IMMEDIATE) {
+                host.mQueue.addFirst(request);
+            } else {
+                host.mQueue.addLast(request);
+            }
+        }
+        dispatch(host);
+    }
+
+    /**
+     * @param host The host key.
+     * @return The number of requests to the host waiting to be admitted.
+     */
+    public int getQueueDepth(String host) {
+        synchronized (mLock) {
+            Host limits = mHosts.get(host);
+            return limits != null ? limits.mQueue.size() : 0;
+        }
+    }
+
+    /**
+     * @param host The host key.
+     * @return The number of requests to the host in flight.
+     */
+    public int getRunningCount(String host) {
+        synchronized (mLock) {
+            Host limits = mHosts.get(host);
+            return limits != null ? limits.mRunning : 0;
+        }
+    }
+
+    /**
+     * @param host The host key.
+     * @return How long, in milliseconds, the host stays paused by a Retry-After, 0 if it is not.
+     */
+    public long getRetryAfter(String host) {
+        synchronized (mLock) {
+            Host limits = mHosts.get(host);
+            return limits != null ? Math.max(0, limits.mPausedUntil - now()) : 0;
+        }
+    }
+
+    /**
+     * @return The number of hosts whose limits and queues are kept.
+     */
+    public int getHostCount() {
+        synchronized (mLock) {
+            return mHosts.size();
+        }
+    }
+
+    @Override
+    protected boolean removeQueued(Object data, Request request) {
+        boolean removed = false;
+        for (Host host : mHosts.values()) {
+            removed |= removeMatching(host.mQueue, data, request);
+            if (removed && request != null) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    protected void clearQueued() {
+        for (Host host : mHosts.values()) {
+            host.mQueue.clear();
+        }
+    }
+
+    /**
+     * @param request The request to admit.
+     * @return The key of the host whose limits apply to the request, or null to run it without any.
+     */
+    protected String getHostKey(Request request) {
+        return RequestUtils.getHost(request.getFullUrl());
+    }
+
+    /**
+     * @return The current time in milliseconds, from a clock that only moves forward.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private Host getHost(String key) {
+        Host host = mHosts.get(key);
+        if (host == null) {
+            if (mHosts.size() >= mNextSweepSize) {
+                removeIdleHosts();
+                mNextSweepSize = Math.max(MIN_SWEEP_SIZE, mHosts.size() * 2);
+            }
+            host = new Host();
+            mHosts.put(key, host);
+        }
+        return host;
+    }
+
+    /**
+     * Forgets the hosts that a new {@link Host} would behave the same as, holding {@link #mLock}.
+     */
+    private void removeIdleHosts() {
+        long now = now();
+        Iterator<Host> hosts = mHosts.values().iterator();
+        while (hosts.hasNext()) {
+            if (hosts.next().isIdle(now)) {
+                hosts.remove();
+            }
+        }
+    }
+
+    /**
+     * Admits the queued requests of a host that its limits allow, and schedules another try for when the
+     * next one will be allowed.
+     */
+    private void dispatch(final Host host) {
+        List<HostCallback> admitted = new ArrayList<>();
+        synchronized (mLock) {
+            long now = now();
+            long wait = 0;
+            while (!host.mQueue.isEmpty() && host.mRunning < host.mMaxInFlight) {
+                if (host.mPausedUntil > now) {
+                    wait = host.mPausedUntil - now;
+                    break;
+                }
+                wait = host.take(now);
+                if (wait > 0) {
+                    break;
+                }
+                HostCallback callback = new HostCallback(host, host.mQueue.pollFirst());
+                admit(callback);
+                host.mRunning++;
+                admitted.add(callback);
+            }
+
+            if (wait > 0 && (host.mWakeup == null || host.mWakeupTime > now + wait)) {
+                if (host.mWakeup != null) {
+                    host.mWakeup.cancel(false);
+                }
+                host.mWakeupTime = now + wait;
+                host.mWakeup = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (mLock) {
+                            host.mWakeup = null;
+                        }
+                        dispatch(host);
+                    }
+                }, wait, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        for (HostCallback callback : admitted) {
+            executeDelegate(callback.getRequest(), callback);
+        }
+    }
+
+    /**
+     * Pauses a host until the time in a Retry-After header.
+     */
+    private void pause(Host host, String retryAfter) {
+        long delay;
+        try {
+            delay = Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                delay = format.parse(retryAfter.trim()).getTime() - System.currentTimeMillis();
+            } catch (ParseException ignored) {
+                return;
+            }
+        }
+        if (delay > 0) {
+            synchronized (mLock) {
+                host.mPausedUntil = Math.max(host.mPausedUntil, now() + delay);
+            }
+        }
+    }
+
+    /**
+     * The queue and limits of one host.
+     */
+    private class Host {
+
+        final ArrayDeque<Request> mQueue = new ArrayDeque<>();
+
+        int mMaxInFlight = mMaxPerHost;
+
+        double mRatePerSecond = HostLimitRequestExecutor.this.mRatePerSecond;
+
+        int mBurst = HostLimitRequestExecutor.this.mBurst;
+
+        /**
+         * True if its limits were set on their own, so it is never forgotten.
+         */
+        boolean mConfigured;
+
+        double mTokens = mBurst;
+
+        long mRefillTime = now();
+
+        int mRunning;
+
+        long mPausedUntil;
+
+        ScheduledFuture<?> mWakeup;
+
+        long mWakeupTime;
+
+        /**
+         * @return True if nothing is queued or running, it is not paused, and its bucket is full.
+         */
+        boolean isIdle(long now) {
+            return !mConfigured && mQueue.isEmpty() && mRunning == 0 && mPausedUntil <= now && mWakeup == null
+                    && (mRatePerSecond <= 0 || mTokens + (now - mRefillTime) * mRatePerSecond / 1000 >= mBurst);
+        }
+
+        /**
+         * Takes a token from the bucket if there is one.
+         *
+         * @return 0 if a token was taken, otherwise how long, in milliseconds, until there is one.
+         */
+        long take(long now) {
+            if (mRatePerSecond <= 0) {
+                return 0;
+            }
+            mTokens = Math.min(mBurst, mTokens + (now - mRefillTime) * mRatePerSecond / 1000);
+            mRefillTime = now;
+            if (mTokens >= 1) {
+                mTokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - mTokens) * 1000 / mRatePerSecond));
+        }
+    }
+
+    /**
+     * Frees the slot of a request once it finishes, and pauses its host when the server asks.
+     */
+    private class HostCallback extends AdmittedCallback implements ResponseInterceptor {
+
+        private final Host mHost;
+
+        HostCallback(Host host, Request request) {
+            super(request);
+            mHost = host;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            if (statusCode == 429 || statusCode == 503) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    if (Request.RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                        pause(mHost, header.getValue());
+                    }
+                }
+            }
+            return body;
+        }
+
+        @Override
+        protected void release() {
+            mHost.mRunning--;
+        }
+
+        @Override
+        protected void onReleased() {
+            dispatch(mHost);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Schedules requests in Broker itself, so they run in the same order whichever
+ * {@link com.raizlabs.android.broker.RequestExecutor} is plugged in underneath. At most the max concurrent requests
+ * run on the delegate at once, and the rest wait in a priority queue ordered by
+ * {@link com.raizlabs.android.broker.Request#getPriority()}, then by earliest
+ * {@link com.raizlabs.android.broker.Request#getDeadline()}, then by the order they were executed.
+ * {@link com.raizlabs.android.broker.core.Priority#IMMEDIATE} requests never wait.
+ * <br />
+ * Waiting requests age so that low priorities cannot starve. A request gains a level for every aging interval it has
+ * waited, up to {@link com.raizlabs.android.broker.core.Priority#HIGH}, and requests at the same level run by earliest
+ * deadline, then in order. Each level is its own heap, and a heap of the times requests next gain a level moves them
+ * up, so nothing is recomputed as time passes.
+ * <br />
+ * {@link #reprioritizeRequest(Object, com.raizlabs.android.broker.Request, com.raizlabs.android.broker.core.Priority)}
+ * moves a waiting request to its new place in O(log n), keeping the age it already gained. A request that is
+ * reprioritized after it started is passed on to the delegate.
+ * <br />
+ * A request leaves the running count once the delegate reports its response or error, or it is cancelled. Share one
+ * instance between services to schedule all of their requests together.
+ */
+public class PriorityRequestExecutor extends AdmissionRequestExecutor {
+
+    /**
+     * How long a request waits before it ranks with the next priority up by default, in milliseconds.
+     */
+    public static final long DEFAULT_AGING_INTERVAL = 2000;
+
+    /**
+     * The highest level a waiting request can age to.
+     */
+    private static final int MAX_LEVEL = Priority.HIGH.ordinal();
+
+    /**
+     * Orders the requests of a level.
+     */
+    private static final Comparator<Entry> DEADLINE_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.mDeadline != rhs.mDeadline) {
+                return lhs.mDeadline < rhs.mDeadline ? -1 : 1;
+            }
+            return compareSequence(lhs, rhs);
+        }
+    };
+
+    /**
+     * Orders requests by when they next gain a level.
+     */
+    private static final Comparator<Entry> AGING_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.mNextAging != rhs.mNextAging) {
+                return lhs.mNextAging < rhs.mNextAging ? -1 : 1;
+            }
+            return compareSequence(lhs, rhs);
+        }
+    };
+
+    private final int mMaxConcurrent;
+
+    private final long mAgingInterval;
+
+    /**
+     * The waiting requests of each level, from LOW up to HIGH.
+     */
+    private final RequestHeap[] mQueue = new RequestHeap[MAX_LEVEL + 1];
+
+    private final RequestHeap mAging = new RequestHeap(AGING_ORDER, 1);
+
+    private int mQueueSize;
+
+    /**
+     * The waiting requests.
+     */
+    private final Map<Request, Entry> mEntries = new HashMap<>();
+
+    private final int[] mQueuedByPriority = new int[Priority.values().length];
+
+    private long mSequence;
+
+    private int mRunning;
+
+    /**
+     * @param delegate      The executor that runs the requests.
+     * @param maxConcurrent The most requests to run on the delegate at once.
+     */
+    public PriorityRequestExecutor(RequestExecutor delegate, int maxConcurrent) {
+        this(delegate, maxConcurrent, DEFAULT_AGING_INTERVAL);
+    }
+
+    /**
+     * @param delegate      The executor that runs the requests.
+     * @param maxConcurrent The most requests to run on the delegate at once.
+     * @param agingInterval How long, in milliseconds, a request waits before it ranks with the next priority up.
+     */
+    public PriorityRequestExecutor(RequestExecutor delegate, int maxConcurrent, long agingInterval) {
+        super(delegate);
+        if (maxConcurrent <= 0 || agingInterval <= 0) {
+            throw new IllegalArgumentException("The max concurrent requests and aging interval must be positive");
+        }
+        mMaxConcurrent = maxConcurrent;
+        mAgingInterval = agingInterval;
+        for (int i = 0; i < mQueue.length; i++) {
+            mQueue[i] = new RequestHeap(DEADLINE_ORDER, 0);
+        }
+    }
+
+    @Override
+    public void execute(Request request) {
+        PriorityCallback callback = null;
+        synchronized (mLock) {
+            if (request.getPriority() == Priority.IMMEDIATE) {
+                callback = start(request);
+            } else {
+                Entry entry = new Entry(request, mSequence++, now());
+                mEntries.put(request, entry);
+                enqueue(entry);
+            }
+        }
+
+        if (callback != null) {
+            run(callback);
+        }
+        dispatch();
+    }
+
+    @Override
+    public boolean reprioritizeRequest(Object data, Request request, Priority priority) {
+        boolean moved = false;
+        List<PriorityCallback> immediate = new ArrayList<>();
+        synchronized (mLock) {
+            if (request != null) {
+                request.setPriority(priority);
+                Entry entry = mEntries.get(request);
+                if (entry != null) {
+                    move(entry, priority, immediate);
+                    moved = true;
+                }
+            } else if (data != null) {
+                for (Entry entry : new ArrayList<>(mEntries.values())) {
+                    if (data.equals(entry.mRequest.getMetaData())) {
+                        entry.mRequest.setPriority(priority);
+                        move(entry, priority, immediate);
+                        moved = true;
+                    }
+                }
+                for (AdmittedCallback callback : getAdmitted(data, null)) {
+                    callback.getRequest().setPriority(priority);
+                }
+            }
+        }
+
+        for (PriorityCallback callback : immediate) {
+            run(callback);
+        }
+        // Requests that already started may still be waiting in the delegate
+        if (request == null || !moved) {
+            moved |= super.reprioritizeRequest(data, request, priority);
+        }
+        return moved;
+    }
+
+    /**
+     * @return The number of requests waiting to run.
+     */
+    public int getQueueDepth() {
+        synchronized (mLock) {
+            return mQueueSize;
+        }
+    }
+
+    /**
+     * @param priority The priority the requests were executed with.
+     * @return The number of requests of that priority waiting to run.
+     */
+    public int getQueueDepth(Priority priority) {
+        synchronized (mLock) {
+            return mQueuedByPriority[priority.ordinal()];
+        }
+    }
+
+    /**
+     * @return The number of requests running on the delegate.
+     */
+    public int getRunningCount() {
+        synchronized (mLock) {
+            return mRunning;
+        }
+    }
+
+    /**
+     * @return How long, in milliseconds, the request that has waited the longest has been waiting, 0 if none are.
+     */
+    public long getOldestWaitTime() {
+        synchronized (mLock) {
+            long oldest = 0;
+            for (Entry entry : mEntries.values()) {
+                oldest = Math.max(oldest, now() - entry.mEnqueueTime);
+            }
+            return oldest;
+        }
+    }
+
+    @Override
+    protected boolean removeQueued(Object data, Request request) {
+        if (request != null) {
+            Entry entry = mEntries.get(request);
+            if (entry != null) {
+                dequeue(entry);
+            }
+            return entry != null;
+        }
+        boolean removed = false;
+        if (data != null) {
+            for (Entry entry : new ArrayList<>(mEntries.values())) {
+                if (data.equals(entry.mRequest.getMetaData())) {
+                    dequeue(entry);
+                    removed = true;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    protected void clearQueued() {
+        for (Entry entry : new ArrayList<>(mEntries.values())) {
+            dequeue(entry);
+        }
+    }
+
+    /**
+     * @return The current time in milliseconds, from a clock that only moves forward.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static int compareSequence(Entry lhs, Entry rhs) {
+        return lhs.mSequence < rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+    }
+
+    private void enqueue(Entry entry) {
+        mQueue[entry.mLevel].add(entry);
+        if (entry.mLevel < MAX_LEVEL) {
+            mAging.add(entry);
+        }
+        mQueuedByPriority[entry.mPriority.ordinal()]++;
+        mQueueSize++;
+    }
+
+    private void unqueue(Entry entry) {
+        mQueue[entry.mLevel].remove(entry);
+        mAging.remove(entry);
+        mQueuedByPriority[entry.mPriority.ordinal()]--;
+        mQueueSize--;
+    }
+
+    private void dequeue(Entry entry) {
+        unqueue(entry);
+        mEntries.remove(entry.mRequest);
+    }
+
+    /**
+     * Moves the requests that waited another aging interval up a level, then takes the first request of the highest
+     * level.
+     */
+    private Entry poll() {
+        long now = now();
+        Entry aged;
+        while ((aged = mAging.peek()) != null && aged.mNextAging <= now) {
+            mAging.poll();
+            mQueue[aged.mLevel].remove(aged);
+            aged.age();
+            mQueue[aged.mLevel].add(aged);
+            if (aged.mLevel < MAX_LEVEL) {
+                mAging.add(aged);
+            }
+        }
+
+        for (int level = MAX_LEVEL; level >= 0; level--) {
+            Entry next = mQueue[level].peek();
+            if (next != null) {
+                unqueue(next);
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves a waiting entry to where its new priority ranks it, or out of the queue to run if it is
+     * {@link com.raizlabs.android.broker.core.Priority#IMMEDIATE}.
+     *
+     * @param entry     The waiting entry.
+     * @param priority  Its new priority.
+     * @param immediate Receives the callback of the request if it has to run now.
+     */
+    private void move(Entry entry, Priority priority, List<PriorityCallback> immediate) {
+        if (priority == Priority.IMMEDIATE) {
+            dequeue(entry);
+            immediate.add(start(entry.mRequest));
+        } else {
+            unqueue(entry);
+            entry.setPriority(priority);
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Starts queued requests while there is room on the delegate.
+     */
+    private void dispatch() {
+        while (true) {
+            PriorityCallback next;
+            synchronized (mLock) {
+                if (mRunning >= mMaxConcurrent || mQueueSize == 0) {
+                    return;
+                }
+                Entry entry = poll();
+                mEntries.remove(entry.mRequest);
+                next = start(entry.mRequest);
+            }
+            run(next);
+        }
+    }
+
+    /**
+     * Takes a running slot for the request, holding {@link #mLock}.
+     */
+    private PriorityCallback start(Request request) {
+        mRunning++;
+        PriorityCallback callback = new PriorityCallback(request);
+        admit(callback);
+        return callback;
+    }
+
+    private void run(PriorityCallback callback) {
+        executeDelegate(callback.getRequest(), callback);
+    }
+
+    /**
+     * A request in the scheduler, with everything it is ordered by.
+     */
+    private class Entry {
+
+        final Request mRequest;
+
+        final long mSequence;
+
+        final long mEnqueueTime;
+
+        /**
+         * The priority the entry is queued and counted with.
+         */
+        Priority mPriority;
+
+        /**
+         * The aging intervals the entry has waited, as of the last time the queue was polled.
+         */
+        int mAge;
+
+        /**
+         * The level it waits at, its priority raised by its age.
+         */
+        int mLevel;
+
+        /**
+         * When it gains the next level.
+         */
+        long mNextAging;
+
+        final long mDeadline;
+
+        /**
+         * Its index in its level and in the aging heap, -1 when it is not in them.
+         */
+        final int[] mIndex = {-1, -1};
+
+        Entry(Request request, long sequence, long enqueueTime) {
+            mRequest = request;
+            mSequence = sequence;
+            mEnqueueTime = enqueueTime;
+            setPriority(request.getPriority());
+            mDeadline = request.hasDeadline() ? request.getDeadline() : Long.MAX_VALUE;
+        }
+
+        /**
+         * Ranks the entry with a new priority. It must not be in the queue while this changes.
+         */
+        void setPriority(Priority priority) {
+            mPriority = priority;
+            updateLevel();
+        }
+
+        /**
+         * Raises the entry a level. It must not be in the queue while this changes.
+         */
+        void age() {
+            mAge++;
+            updateLevel();
+        }
+
+        private void updateLevel() {
+            mLevel = Math.min(MAX_LEVEL, mPriority.ordinal() + mAge);
+            mNextAging = mEnqueueTime + (mAge + 1) * mAgingInterval;
+        }
+    }
+
+    /**
+     * A binary heap that keeps the index of each entry in it, so any entry can be removed in O(log n).
+     */
+    private static class RequestHeap {
+
+        private final Comparator<Entry> mComparator;
+
+        /**
+         * Which of the indexes of an entry this heap keeps, since an entry is in two heaps.
+         */
+        private final int mSlot;
+
+        private Entry[] mHeap = new Entry[16];
+
+        private int mSize;
+
+        RequestHeap(Comparator<Entry> comparator, int slot) {
+            mComparator = comparator;
+            mSlot = slot;
+        }
+
+        void add(Entry entry) {
+            if (mSize == mHeap.length) {
+                mHeap = Arrays.copyOf(mHeap, mSize * 2);
+            }
+            mHeap[mSize] = entry;
+            entry.mIndex[mSlot] = mSize;
+            mSize++;
+            siftUp(entry.mIndex[mSlot]);
+        }
+
+        Entry peek() {
+            return mSize > 0 ? mHeap[0] : null;
+        }
+
+        Entry poll() {
+            if (mSize == 0) {
+                return null;
+            }
+            Entry first = mHeap[0];
+            removeAt(0);
+            return first;
+        }
+
+        void remove(Entry entry) {
+            int index = entry.mIndex[mSlot];
+            if (index >= 0 && index < mSize && mHeap[index] == entry) {
+                removeAt(index);
+            }
+        }
+
+        private void removeAt(int index) {
+            Entry removed = mHeap[index];
+            mSize--;
+            Entry last = mHeap[mSize];
+            mHeap[mSize] = null;
+            removed.mIndex[mSlot] = -1;
+            if (index < mSize) {
+                mHeap[index] = last;
+                last.mIndex[mSlot] = index;
+                siftDown(index);
+                if (mHeap[index] == last) {
+                    siftUp(index);
+                }
+            }
+        }
+
+        private void siftUp(int index) {
+            Entry entry = mHeap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (mComparator.compare(mHeap[parent], entry) <= 0) {
+                    break;
+                }
+                mHeap[index] = mHeap[parent];
+                mHeap[index].mIndex[mSlot] = index;
+                index = parent;
+            }
+            mHeap[index] = entry;
+            entry.mIndex[mSlot] = index;
+        }
+
+        private void siftDown(int index) {
+            Entry entry = mHeap[index];
+            int half = mSize >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                int right = child + 1;
+                if (right < mSize && mComparator.compare(mHeap[right], mHeap[child]) < 0) {
+                    child = right;
+                }
+                if (mComparator.compare(entry, mHeap[child]) <= 0) {
+                    break;
+                }
+                mHeap[index] = mHeap[child];
+                mHeap[index].mIndex[mSlot] = index;
+                index = child;
+            }
+            mHeap[index] = entry;
+            entry.mIndex[mSlot] = index;
+        }
+    }
+
+    /**
+     * Frees the running slot of a request once it finishes.
+     */
+    private class PriorityCallback extends AdmittedCallback {
+
+        PriorityCallback(Request request) {
+            super(request);
+        }
+
+        @Override
+        protected void release() {
+            mRunning--;
+        }
+
+        @Override
+        protected void onReleased() {
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+
+/**
+ * Description: Stands in for the {@link com.raizlabs.android.broker.RequestCallback} of a {@link com.raizlabs.android.broker.Request}
+ * while it runs through a {@link com.raizlabs.android.broker.executor.DelegateRequestExecutor}. By default it forwards
+ * everything to the callback the request had when this wrapper was created, and puts that callback back on the request
+ * so it can be executed again later.
+ */
+public class RequestCallbackWrapper<ResponseType> implements RequestCallback<ResponseType> {
+
+    private final Request<ResponseType> mRequest;
+
+    private final RequestCallback<ResponseType> mCallback;
+
+    /**
+     * @param request The request whose current callback is wrapped.
+     */
+    public RequestCallbackWrapper(Request<ResponseType> request) {
+        mRequest = request;
+        mCallback = request.getCallback();
+    }
+
+    /**
+     * @return The request this wrapper belongs to.
+     */
+    public Request<ResponseType> getRequest() {
+        return mRequest;
+    }
+
+    /**
+     * @return The original callback, can be null.
+     */
+    public RequestCallback<ResponseType> getCallback() {
+        return mCallback;
+    }
+
+    @Override
+    public void onRequestDone(ResponseType responseType) {
+        deliverDone(responseType);
+    }
+
+    @Override
+    public void onRequestError(Throwable error, String stringError) {
+        deliverError(error, stringError);
+    }
+
+    /**
+     * Restores the original callback on the request and passes the result to it.
+     *
+     * @param responseType The handled response.
+     */
+    protected void deliverDone(ResponseType responseType) {
+        restore();
+        if (mCallback != null) {
+            mCallback.onRequestDone(responseType);
+        }
+    }
+
+    /**
+     * Restores the original callback on the request and passes the error to it.
+     *
+     * @param error       The error, can be null.
+     * @param stringError The error as a string, can be null.
+     */
+    protected void deliverError(Throwable error, String stringError) {
+        restore();
+        if (mCallback != null) {
+            mCallback.onRequestError(error, stringError);
+        }
+    }
+
+    /**
+     * Puts the original callback back on the request if this wrapper is still the one installed.
+     */
+    protected void restore() {
+        if (mRequest.getCallback() == this) {
+            mRequest.setCallback(mCallback);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description: Runs requests with the same {@link com.raizlabs.android.broker.Request#getLaneKey()} strictly one after
+ * the other, in the order they were executed, while requests in different lanes, or without a lane, run in parallel
+ * on the delegate. A request leaves its lane once the delegate reports its response or error, or it is cancelled.
+ * <br />
+ * The lanes are kept without locks. Each lane counts the requests it holds, and whichever thread adds to or finishes
+ * a request in a lane drains it, so only one thread ever sends from a lane at a time. An empty lane closes itself
+ * and is dropped, and a request that finds a closed lane starts a new one.
+ */
+public class SerialLaneRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * The count of a lane that closed and must not take requests anymore.
+     */
+    private static final int CLOSED = -1;
+
+    private final ConcurrentHashMap<String, Lane> mLanes = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate The executor that runs the requests.
+     */
+    public SerialLaneRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(Request request) {
+        String key = request.getLaneKey();
+        if (key == null) {
+            super.execute(request);
+            return;
+        }
+
+        while (true) {
+            Lane lane = mLanes.get(key);
+            if (lane == null) {
+                Lane newLane = new Lane(key);
+                lane = mLanes.putIfAbsent(key, newLane);
+                if (lane == null) {
+                    lane = newLane;
+                }
+            }
+
+            if (lane.reserve()) {
+                lane.mQueue.offer(request);
+                lane.drain();
+                return;
+            }
+            // Closed while we looked it up
+            mLanes.remove(key, lane);
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            Lane lane = request.getLaneKey() != null ? mLanes.get(request.getLaneKey()) : null;
+            if (lane != null && lane.mQueue.remove(request)) {
+                lane.release();
+                return;
+            }
+
+            super.cancelRequest(data, request);
+            LaneCallback running = lane != null ? lane.mRunning : null;
+            if (running != null && running.getRequest() == request) {
+                running.finish();
+            }
+        } else {
+            List<LaneCallback> cancelledRunning = new ArrayList<>();
+            for (Lane lane : mLanes.values()) {
+                Iterator<Request> queued = lane.mQueue.iterator();
+                while (queued.hasNext()) {
+                    Request next = queued.next();
+                    if (data != null && data.equals(next.getMetaData()) && lane.mQueue.remove(next)) {
+                        lane.release();
+                    }
+                }
+
+                LaneCallback running = lane.mRunning;
+                if (running != null && data != null && data.equals(running.getRequest().getMetaData())) {
+                    cancelledRunning.add(running);
+                }
+            }
+
+            super.cancelRequest(data, null);
+            for (LaneCallback running : cancelledRunning) {
+                running.finish();
+            }
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        for (Lane lane : mLanes.values()) {
+            Request queued;
+            while ((queued = lane.mQueue.poll()) != null) {
+                lane.release();
+            }
+        }
+        super.cancelAllRequests();
+        for (Lane lane : mLanes.values()) {
+            LaneCallback running = lane.mRunning;
+            if (running != null) {
+                running.finish();
+            }
+        }
+    }
+
+    /**
+     * The requests of one lane key.
+     */
+    private class Lane {
+
+        final String mKey;
+
+        final ConcurrentLinkedQueue<Request> mQueue = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The requests counted into this lane and not finished yet, or {@link #CLOSED}. A request is counted before
+         * it is queued, so the lane cannot close while it is on its way in.
+         */
+        final AtomicInteger mCount = new AtomicInteger();
+
+        /**
+         * How many times the lane was asked to drain, so that only the first caller drains and the others hand
+         * their work to it.
+         */
+        final AtomicInteger mWork = new AtomicInteger();
+
+        /**
+         * Set when the running request finished. Only read and cleared while draining.
+         */
+        volatile boolean mFinished;
+
+        /**
+         * The request on the delegate. Only written while draining.
+         */
+        volatile LaneCallback mRunning;
+
+        Lane(String key) {
+            mKey = key;
+        }
+
+        /**
+         * @return False if the lane is closed.
+         */
+        boolean reserve() {
+            while (true) {
+                int count = mCount.get();
+                if (count == CLOSED) {
+                    return false;
+                }
+                if (mCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Uncounts a request that left the lane, and closes the lane if it was the last one.
+         */
+        void release() {
+            while (true) {
+                int count = mCount.get();
+                if (count == 1) {
+                    if (mCount.compareAndSet(1, CLOSED)) {
+                        mLanes.remove(mKey, this);
+                        return;
+                    }
+                } else if (count > 1 && mCount.compareAndSet(count, count - 1)) {
+                    return;
+                } else if (count <= 0) {
+                    return;
+                }
+            }
+        }
+
+        void drain() {
+            if (mWork.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                if (mFinished) {
+                    mFinished = false;
+                    mRunning = null;
+                    release();
+                }
+
+                if (mRunning == null) {
+                    Request next = mQueue.poll();
+                    if (next != null) {
+                        LaneCallback callback = new LaneCallback(this, next);
+                        mRunning = callback;
+                        executeDelegate(next, callback);
+                    }
+                }
+
+                missed = mWork.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    /**
+     * Lets the lane send its next request once the running one finishes.
+     */
+    private static class LaneCallback extends RequestCallbackWrapper<Object> {
+
+        private final Lane mLane;
+
+        private final AtomicBoolean mDone = new AtomicBoolean();
+
+        @SuppressWarnings("unchecked")
+        LaneCallback(Lane lane, Request request) {
+            super(request);
+            mLane = lane;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            deliverDone(response);
+            finish();
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            deliverError(error, stringError);
+            finish();
+        }
+
+        /**
+         * Takes the request out of its lane, only the first time.
+         */
+        void finish() {
+            if (mDone.compareAndSet(false, true)) {
+                mLane.mFinished = true;
+                mLane.drain();
+            }
+        }
+    }
+}
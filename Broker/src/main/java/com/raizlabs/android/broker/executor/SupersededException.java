@@ -0,0 +1,26 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+
+/**
+ * Description: Reported to the callback of a queued write that was replaced by a newer write to the same resource
+ * before it was sent.
+ */
+public class SupersededException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Request mSupersededBy;
+
+    public SupersededException(Request supersededBy) {
+        super("Superseded by a newer write to " + supersededBy.getUrl());
+        mSupersededBy = supersededBy;
+    }
+
+    /**
+     * @return The request that will be sent instead.
+     */
+    public Request getSupersededBy() {
+        return mSupersededBy;
+    }
+}
@@ -0,0 +1,233 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.ResponseInterceptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Keeps only the latest request of each {@link com.raizlabs.android.broker.Request#getSwitchLatestGroup()}
+ * alive. Starting a request in a group cancels the one before it through
+ * {@link com.raizlabs.android.broker.RequestExecutor#cancelRequest(Object, com.raizlabs.android.broker.Request)}, and
+ * if its response already arrived, it fails before its {@link com.raizlabs.android.broker.responsehandler.ResponseHandler}
+ * runs. Like any cancelled request, a superseded request is never called back.
+ * <br />
+ * A request with a debounce interval is held back until no newer request joined its group for that long, so a
+ * burst of requests only sends the last one.
+ */
+public class SwitchLatestRequestExecutor extends DelegateRequestExecutor {
+
+    private final Map<String, Slot> mGroups = new HashMap<>();
+
+    /**
+     * @param delegate The executor that runs the requests.
+     */
+    public SwitchLatestRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(final Request request) {
+        final String group = request.getSwitchLatestGroup();
+        if (group == null) {
+            super.execute(request);
+            return;
+        }
+
+        Slot previous;
+        final Slot slot = new Slot(request);
+        synchronized (mGroups) {
+            previous = mGroups.put(group, slot);
+            if (request.getSwitchLatestDebounce() > 0) {
+                slot.mDebounce = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(group, slot);
+                    }
+                }, request.getSwitchLatestDebounce(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (previous != null) {
+            supersede(previous);
+        }
+        if (request.getSwitchLatestDebounce() <= 0) {
+            send(group, slot);
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            Slot slot = null;
+            String group = request.getSwitchLatestGroup();
+            if (group != null) {
+                synchronized (mGroups) {
+                    slot = mGroups.get(group);
+                    if (slot != null && slot.mRequest == request) {
+                        mGroups.remove(group);
+                    } else {
+                        slot = null;
+                    }
+                }
+            }
+            if (slot == null || slot.cancel()) {
+                super.cancelRequest(data, request);
+            }
+        } else {
+            synchronized (mGroups) {
+                Iterator<Slot> slots = mGroups.values().iterator();
+                while (slots.hasNext()) {
+                    Slot slot = slots.next();
+                    if (data != null && data.equals(slot.mRequest.getMetaData())) {
+                        slots.remove();
+                        slot.cancel();
+                    }
+                }
+            }
+            super.cancelRequest(data, null);
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        List<Slot> slots;
+        synchronized (mGroups) {
+            slots = new ArrayList<>(mGroups.values());
+            mGroups.clear();
+        }
+        for (Slot slot : slots) {
+            slot.cancel();
+        }
+        super.cancelAllRequests();
+    }
+
+    private void send(String group, Slot slot) {
+        SwitchCallback callback;
+        synchronized (mGroups) {
+            if (mGroups.get(group) != slot) {
+                return;
+            }
+            callback = slot.start(group);
+            if (callback == null) {
+                return;
+            }
+        }
+        executeDelegate(slot.mRequest, callback);
+    }
+
+    private void supersede(Slot slot) {
+        if (slot.cancel()) {
+            super.cancelRequest(slot.mRequest.getMetaData(), slot.mRequest);
+        }
+    }
+
+    /**
+     * Clears the group once its latest request finished.
+     */
+    private void finish(String group, Slot slot) {
+        synchronized (mGroups) {
+            if (mGroups.get(group) == slot) {
+                mGroups.remove(group);
+            }
+        }
+    }
+
+    /**
+     * One request of a group, waiting out its debounce or on the delegate.
+     */
+    private class Slot {
+
+        final Request mRequest;
+
+        ScheduledFuture<?> mDebounce;
+
+        SwitchCallback mCallback;
+
+        boolean mCancelled;
+
+        Slot(Request request) {
+            mRequest = request;
+        }
+
+        /**
+         * @return The callback to run the request with, or null if it was cancelled first.
+         */
+        synchronized SwitchCallback start(String group) {
+            if (mCancelled) {
+                return null;
+            }
+            mCallback = new SwitchCallback(this, group);
+            return mCallback;
+        }
+
+        /**
+         * @return True if the request was sent to the delegate and needs to be cancelled there too.
+         */
+        synchronized boolean cancel() {
+            if (mCancelled) {
+                return false;
+            }
+            mCancelled = true;
+            if (mDebounce != null) {
+                mDebounce.cancel(false);
+            }
+            // The callback stays on the request, so a response that still arrives is dropped
+            return mCallback != null;
+        }
+
+        synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /**
+     * Fails a superseded response before it is handled and drops its callback.
+     */
+    private class SwitchCallback extends RequestCallbackWrapper<Object> implements ResponseInterceptor {
+
+        private final Slot mSlot;
+
+        private final String mGroup;
+
+        @SuppressWarnings("unchecked")
+        SwitchCallback(Slot slot, String group) {
+            super(slot.mRequest);
+            mSlot = slot;
+            mGroup = group;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            if (mSlot.isCancelled()) {
+                throw new IOException("Superseded by a newer request in " + mGroup);
+            }
+            return body;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            if (!mSlot.isCancelled()) {
+                finish(mGroup, mSlot);
+                deliverDone(response);
+            }
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            if (!mSlot.isCancelled()) {
+                finish(mGroup, mSlot);
+                deliverError(error, stringError);
+            }
+        }
+    }
+}
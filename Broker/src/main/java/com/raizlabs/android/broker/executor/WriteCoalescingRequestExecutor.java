@@ -0,0 +1,216 @@
+package com.raizlabs.android.broker.executor;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestFingerprint;
+import com.raizlabs.android.broker.core.Method;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description: Sends PUT and PATCH requests to the same resource one at a time, and lets a newer write replace the
+ * one queued behind the write on the wire, last write wins. The replaced request is never sent and its callback
+ * receives a {@link com.raizlabs.android.broker.executor.SupersededException}. The write on the wire is left alone.
+ * <br />
+ * A write only replaces the last queued write, and only if it has the same method, so writes to a resource are still
+ * sent in the order they were made. PATCHes are assumed to carry the whole state they change; override
+ * {@link #isCoalescable(com.raizlabs.android.broker.Request)} if they do not.
+ */
+public class WriteCoalescingRequestExecutor extends DelegateRequestExecutor {
+
+    private final Map<Long, Lane> mLanes = new HashMap<>();
+
+    /**
+     * @param delegate The executor that runs the requests.
+     */
+    public WriteCoalescingRequestExecutor(RequestExecutor delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (!isCoalescable(request)) {
+            super.execute(request);
+            return;
+        }
+
+        long key = getResourceKey(request);
+        Request superseded = null;
+        boolean start = false;
+        synchronized (mLanes) {
+            Lane lane = mLanes.get(key);
+            if (lane == null) {
+                lane = new Lane();
+                mLanes.put(key, lane);
+            }
+
+            if (lane.mInFlight == null) {
+                lane.mInFlight = request;
+                start = true;
+            } else {
+                Request last = lane.mQueued.peekLast();
+                if (last != null && last.getMethod() == request.getMethod()) {
+                    superseded = lane.mQueued.removeLast();
+                }
+                lane.mQueued.addLast(request);
+            }
+        }
+
+        if (superseded != null) {
+            supersede(superseded, request);
+        }
+        if (start) {
+            send(key, request);
+        }
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        if (request != null) {
+            if (!isCoalescable(request)) {
+                super.cancelRequest(data, request);
+                return;
+            }
+
+            long key = getResourceKey(request);
+            boolean inFlight = false;
+            synchronized (mLanes) {
+                Lane lane = mLanes.get(key);
+                if (lane != null) {
+                    if (lane.mQueued.remove(request)) {
+                        return;
+                    }
+                    inFlight = lane.mInFlight == request;
+                }
+            }
+            super.cancelRequest(data, request);
+            if (inFlight) {
+                advance(key, request);
+            }
+        } else {
+            List<Request> cancelledInFlight = new ArrayList<>();
+            synchronized (mLanes) {
+                for (Lane lane : mLanes.values()) {
+                    Iterator<Request> queued = lane.mQueued.iterator();
+                    while (queued.hasNext()) {
+                        if (data != null && data.equals(queued.next().getMetaData())) {
+                            queued.remove();
+                        }
+                    }
+                    if (lane.mInFlight != null && data != null && data.equals(lane.mInFlight.getMetaData())) {
+                        cancelledInFlight.add(lane.mInFlight);
+                    }
+                }
+            }
+            super.cancelRequest(data, null);
+            for (Request inFlight : cancelledInFlight) {
+                advance(getResourceKey(inFlight), inFlight);
+            }
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mLanes) {
+            mLanes.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @param request The request
+     * @return True if a newer write of the request to the same resource makes it redundant.
+     */
+    protected boolean isCoalescable(Request request) {
+        return (request.getMethod() == Method.PUT || request.getMethod() == Method.PATCH)
+                && !request.isMultiPart() && !request.hasFile();
+    }
+
+    /**
+     * Identifies the resource a write changes. By default this is the fingerprint of its url and params, so it ignores
+     * the body and headers that differ between writes, such as an Idempotency-Key.
+     *
+     * @param request The request
+     * @return The key of the resource.
+     */
+    protected long getResourceKey(Request request) {
+        return RequestFingerprint.computeUrl(request);
+    }
+
+    private void send(long key, Request request) {
+        executeDelegate(request, new LaneCallback(request, key));
+    }
+
+    /**
+     * Finishes the write on the wire of a lane and sends the next one, if any.
+     */
+    private void advance(long key, Request finished) {
+        Request next = null;
+        synchronized (mLanes) {
+            Lane lane = mLanes.get(key);
+            if (lane == null || lane.mInFlight != finished) {
+                return;
+            }
+            next = lane.mQueued.pollFirst();
+            lane.mInFlight = next;
+            if (next == null) {
+                mLanes.remove(key);
+            }
+        }
+
+        if (next != null) {
+            send(key, next);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void supersede(Request superseded, Request by) {
+        RequestCallback callback = superseded.getCallback();
+        if (callback != null) {
+            SupersededException exception = new SupersededException(by);
+            callback.onRequestError(exception, exception.getMessage());
+        }
+    }
+
+    /**
+     * The write on the wire for one resource and the writes queued behind it.
+     */
+    private static class Lane {
+
+        final LinkedList<Request> mQueued = new LinkedList<>();
+
+        Request mInFlight;
+    }
+
+    /**
+     * Delivers the response of a write and sends the next write to the same resource.
+     */
+    private class LaneCallback extends RequestCallbackWrapper<Object> {
+
+        private final long mKey;
+
+        @SuppressWarnings("unchecked")
+        LaneCallback(Request request, long key) {
+            super(request);
+            mKey = key;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            deliverDone(response);
+            advance(mKey, getRequest());
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            deliverError(error, stringError);
+            advance(mKey, getRequest());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.raizlabs.android.broker.hedge;
+
+/**
+ * Description: Describes when a {@link com.raizlabs.android.broker.hedge.HedgingRequestExecutor} sends a second copy
+ * of a {@link com.raizlabs.android.broker.Request} that has not been answered yet.
+ */
+public class HedgePolicy {
+
+    /**
+     * Hedges after the percentile of latency observed for the endpoint.
+     */
+    public static final HedgePolicy OBSERVED = new HedgePolicy(0);
+
+    private final long mDelay;
+
+    /**
+     * @param delay How long, in milliseconds, to wait for a response before sending the copy, or 0 to wait for the
+     *              observed percentile of latency.
+     */
+    public HedgePolicy(long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("A HedgePolicy cannot have a negative delay");
+        }
+        mDelay = delay;
+    }
+
+    public long getDelay() {
+        return mDelay;
+    }
+
+    /**
+     * @return True if the delay follows the latency observed for the endpoint.
+     */
+    public boolean isObserved() {
+        return mDelay == 0;
+    }
+}
@@ -0,0 +1,338 @@
+package com.raizlabs.android.broker.hedge;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.core.Method;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+import com.raizlabs.android.broker.retry.RetryBudget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Cuts tail latency by sending a second copy of a slow request and using whichever copy answers first.
+ * The other is cancelled on the delegate. Only requests with a {@link com.raizlabs.android.broker.hedge.HedgePolicy}
+ * are hedged, and only GET, HEAD, DELETE and OPTIONS requests without a body or download file.
+ * <br />
+ * A request is hedged after the delay of its policy, or after the percentile of the latencies observed for its
+ * endpoint over the last {@link #WINDOW} responses. No request is hedged on observed latency until the endpoint has
+ * {@link #MIN_SAMPLES}. Hedges are taken from a {@link com.raizlabs.android.broker.retry.RetryBudget}, since a hedge is
+ * an early retry, so they add at most a share of the traffic.
+ */
+public class HedgingRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * The percentile of observed latency that requests are hedged after by default.
+     */
+    public static final int DEFAULT_PERCENTILE = 95;
+
+    /**
+     * The number of recent latencies kept per endpoint.
+     */
+    public static final int WINDOW = 100;
+
+    /**
+     * The number of latencies an endpoint needs before its requests are hedged on observed latency.
+     */
+    public static final int MIN_SAMPLES = 20;
+
+    private final int mPercentile;
+
+    private final RetryBudget mBudget;
+
+    private final Map<String, LatencyWindow> mLatencies = new HashMap<>();
+
+    /**
+     * The hedges of requests that have not been delivered yet, by their original request.
+     */
+    private final Map<Request, Hedge> mHedges = new HashMap<>();
+
+    /**
+     * Constructs an executor that hedges at the 95th percentile, with a budget of 5% of requests.
+     *
+     * @param delegate The executor that runs the requests and their copies.
+     */
+    public HedgingRequestExecutor(RequestExecutor delegate) {
+        this(delegate, DEFAULT_PERCENTILE, new RetryBudget(0.05, 0, 10));
+    }
+
+    /**
+     * @param delegate   The executor that runs the requests and their copies.
+     * @param percentile The percentile of observed latency to hedge after, from 1 to 100.
+     * @param budget     The budget each hedge is taken from, or null to not cap them.
+     */
+    public HedgingRequestExecutor(RequestExecutor delegate, int percentile, RetryBudget budget) {
+        super(delegate);
+        if (percentile < 1 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be from 1 to 100");
+        }
+        mPercentile = percentile;
+        mBudget = budget;
+    }
+
+    @Override
+    public void execute(Request request) {
+        HedgePolicy policy = request.getHedgePolicy();
+        if (policy == null || !canHedge(request)) {
+            super.execute(request);
+            return;
+        }
+
+        if (mBudget != null) {
+            mBudget.deposit();
+        }
+        String key = getEndpointKey(request);
+        long delay = policy.isObserved() ? getHedgeDelay(key) : policy.getDelay();
+        final Hedge hedge = new Hedge(key, now());
+        hedge.mPrimary = new HedgeCallback(hedge, request);
+        synchronized (mHedges) {
+            mHedges.put(request, hedge);
+            if (delay >= 0) {
+                hedge.mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendHedge(hedge);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        executeDelegate(request, hedge.mPrimary);
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        List<Request> copies = new ArrayList<>();
+        synchronized (mHedges) {
+            Iterator<Hedge> hedges = mHedges.values().iterator();
+            while (hedges.hasNext()) {
+                Hedge hedge = hedges.next();
+                Request next = hedge.mPrimary.getRequest();
+                if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                    hedges.remove();
+                    hedge.cancelTimer();
+                    if (hedge.mSecondary != null) {
+                        copies.add(hedge.mSecondary.getRequest());
+                    }
+                }
+            }
+        }
+        super.cancelRequest(data, request);
+        if (request != null) {
+            for (Request copy : copies) {
+                super.cancelRequest(data, copy);
+            }
+        }
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mHedges) {
+            for (Hedge hedge : mHedges.values()) {
+                hedge.cancelTimer();
+            }
+            mHedges.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @param key The endpoint, as returned by {@link #getEndpointKey(com.raizlabs.android.broker.Request)}.
+     * @return How long, in milliseconds, requests to the endpoint wait before they are hedged on observed latency, or
+     * -1 if the endpoint does not have enough samples yet.
+     */
+    public long getHedgeDelay(String key) {
+        synchronized (mLatencies) {
+            LatencyWindow window = mLatencies.get(key);
+            return window != null ? window.getPercentile(mPercentile) : -1;
+        }
+    }
+
+    /**
+     * @param request The request.
+     * @return The endpoint whose latencies the request is measured against. By default its method and url template,
+     * as returned by {@link com.raizlabs.android.broker.RequestUtils#getEndpointKey(com.raizlabs.android.broker.Request)}.
+     */
+    protected String getEndpointKey(Request request) {
+        return RequestUtils.getEndpointKey(request);
+    }
+
+    /**
+     * @return The current time in milliseconds, for measuring latency.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static boolean canHedge(Request request) {
+        int method = request.getMethod();
+        return (method == Method.GET || method == Method.HEAD || method == Method.DELETE || method == Method.OPTIONS)
+                && !request.hasBody() && !request.isMultiPart() && !request.hasFile();
+    }
+
+    private void sendHedge(Hedge hedge) {
+        HedgeCallback secondary;
+        synchronized (mHedges) {
+            Request original = hedge.mPrimary.getRequest();
+            if (mHedges.get(original) != hedge || hedge.mPrimary.mFailed) {
+                return;
+            }
+            hedge.mTimer = null;
+            if (mBudget != null && !mBudget.tryWithdraw()) {
+                return;
+            }
+            Request copy = original.copy();
+            copy.setCallback(hedge.mPrimary.getCallback());
+            secondary = new HedgeCallback(hedge, copy);
+            hedge.mSecondary = secondary;
+        }
+        executeDelegate(secondary.getRequest(), secondary);
+    }
+
+    private void record(String key, long latency) {
+        synchronized (mLatencies) {
+            LatencyWindow window = mLatencies.get(key);
+            if (window == null) {
+                window = new LatencyWindow();
+                mLatencies.put(key, window);
+            }
+            window.add(latency);
+        }
+    }
+
+    /**
+     * A request and the copy sent after it, if any.
+     */
+    private static class Hedge {
+
+        final String mKey;
+
+        /**
+         * When the original request was sent, so the latency of a copy that wins includes the delay before it.
+         */
+        final long mStartTime;
+
+        HedgeCallback mPrimary;
+
+        HedgeCallback mSecondary;
+
+        ScheduledFuture<?> mTimer;
+
+        Hedge(String key, long startTime) {
+            mKey = key;
+            mStartTime = startTime;
+        }
+
+        HedgeCallback getOther(HedgeCallback callback) {
+            return callback == mPrimary ? mSecondary : mPrimary;
+        }
+
+        void cancelTimer() {
+            if (mTimer != null) {
+                mTimer.cancel(false);
+                mTimer = null;
+            }
+        }
+    }
+
+    /**
+     * The most recent latencies of an endpoint.
+     */
+    private static class LatencyWindow {
+
+        private final long[] mSamples = new long[WINDOW];
+
+        private int mCount;
+
+        private int mNext;
+
+        void add(long latency) {
+            mSamples[mNext] = latency;
+            mNext = (mNext + 1) % WINDOW;
+            mCount = Math.min(mCount + 1, WINDOW);
+        }
+
+        long getPercentile(int percentile) {
+            if (mCount < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * mCount) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+
+    /**
+     * Delivers the first copy to answer and cancels the other, or the last error if both fail.
+     */
+    private class HedgeCallback extends RequestCallbackWrapper<Object> {
+
+        private final Hedge mHedge;
+
+        private boolean mFailed;
+
+        @SuppressWarnings("unchecked")
+        HedgeCallback(Hedge hedge, Request request) {
+            super(request);
+            mHedge = hedge;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            HedgeCallback other;
+            synchronized (mHedges) {
+                if (!finish()) {
+                    return;
+                }
+                other = mHedge.getOther(this);
+                if (other != null && other.mFailed) {
+                    other = null;
+                }
+            }
+            if (other != null) {
+                HedgingRequestExecutor.super.cancelRequest(other.getRequest().getMetaData(), other.getRequest());
+            }
+            record(mHedge.mKey, now() - mHedge.mStartTime);
+            mHedge.mPrimary.restore();
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            synchronized (mHedges) {
+                mFailed = true;
+                HedgeCallback other = mHedge.getOther(this);
+                if ((other != null && !other.mFailed) || !finish()) {
+                    // The other copy may still answer
+                    return;
+                }
+            }
+            mHedge.mPrimary.restore();
+            deliverError(error, stringError);
+        }
+
+        /**
+         * Ends the hedge, holding the lock of {@link #mHedges}.
+         *
+         * @return False if it already ended or was cancelled.
+         */
+        private boolean finish() {
+            Request original = mHedge.mPrimary.getRequest();
+            if (mHedges.get(original) != mHedge) {
+                return false;
+            }
+            mHedges.remove(original);
+            mHedge.cancelTimer();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.raizlabs.android.broker.metadata;
+
+import com.raizlabs.android.broker.Request;
+
+/**
+ * Description: Uses the request's {@link com.raizlabs.android.broker.RequestFingerprint} as its ID, so requests that
+ * only differ in the order of their params or headers share it. Unlike the {@link com.raizlabs.android.broker.metadata.UrlMetadataGenerator}
+ * it also tells apart requests to the same url with different bodies or vary headers.
+ */
+public class FingerprintMetadataGenerator implements RequestMetadataGenerator {
+
+    @Override
+    public Object generate(Request request) {
+        return request.getFingerprint();
+    }
+}
@@ -0,0 +1,93 @@
+package com.raizlabs.android.broker.retry;
+
+/**
+ * Description: Caps retries at a share of the requests sent, so that during an outage retries cannot multiply the
+ * load on the server. It is a token bucket: every request sent adds the ratio to it, every retry takes one, and a
+ * minimum trickle per second keeps retries possible when there is little traffic.
+ */
+public class RetryBudget {
+
+    private final double mRatio;
+
+    private final double mMinPerSecond;
+
+    private final double mMaxTokens;
+
+    private double mTokens;
+
+    private long mLastRefill;
+
+    /**
+     * Constructs a budget with a minimum of 1 retry per second and room for 10 saved retries.
+     *
+     * @param ratio The retries allowed per request sent, such as 0.1 for 10%.
+     */
+    public RetryBudget(double ratio) {
+        this(ratio, 1, 10);
+    }
+
+    /**
+     * @param ratio        The retries allowed per request sent, such as 0.1 for 10%.
+     * @param minPerSecond The retries allowed per second regardless of traffic.
+     * @param maxTokens    The most retries that can be saved up. The budget starts full.
+     */
+    public RetryBudget(double ratio, double minPerSecond, double maxTokens) {
+        if (ratio < 0 || minPerSecond < 0 || maxTokens < 1) {
+            throw new IllegalArgumentException("A RetryBudget needs a ratio and minimum of 0 or more, and room for at least 1 retry");
+        }
+        mRatio = ratio;
+        mMinPerSecond = minPerSecond;
+        mMaxTokens = maxTokens;
+        mTokens = maxTokens;
+        mLastRefill = now();
+    }
+
+    /**
+     * Adds to the budget for a request being sent for the first time.
+     */
+    public synchronized void deposit() {
+        refill();
+        mTokens = Math.min(mMaxTokens, mTokens + mRatio);
+    }
+
+    /**
+     * @return True if a retry may be sent, which is then taken from the budget.
+     */
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (mTokens >= 1) {
+            mTokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back a retry that was taken but never sent.
+     */
+    public synchronized void refund() {
+        refill();
+        mTokens = Math.min(mMaxTokens, mTokens + 1);
+    }
+
+    /**
+     * @return The retries that may be sent now.
+     */
+    public synchronized double getTokens() {
+        refill();
+        return mTokens;
+    }
+
+    /**
+     * @return The current time in milliseconds, for measuring elapsed time.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private void refill() {
+        long now = now();
+        mTokens = Math.min(mMaxTokens, mTokens + (now - mLastRefill) * mMinPerSecond / 1000);
+        mLastRefill = now;
+    }
+}
@@ -0,0 +1,72 @@
+package com.raizlabs.android.broker.retry;
+
+/**
+ * Description: Describes how a {@link com.raizlabs.android.broker.Request} is retried by a
+ * {@link com.raizlabs.android.broker.retry.RetryRequestExecutor}. The wait before each retry is picked at random up to
+ * the base delay doubled for each retry so far, capped at the max delay, so clients that failed together do not retry
+ * together.
+ */
+public class RetryPolicy {
+
+    /**
+     * Sends a request up to 3 times, waiting up to 100ms before the first retry and up to 10s before any.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 100, 10000, false);
+
+    /**
+     * Sends a request once.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, false);
+
+    private final int mMaxAttempts;
+
+    private final long mBaseDelay;
+
+    private final long mMaxDelay;
+
+    private final boolean mIdempotent;
+
+    /**
+     * @param maxAttempts The most times the request is sent, including the first.
+     * @param baseDelay   The most, in milliseconds, to wait before the first retry.
+     * @param maxDelay    The most, in milliseconds, to wait before any retry.
+     * @param idempotent  True to retry the request even if its method is not idempotent.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, boolean idempotent) {
+        if (maxAttempts < 1 || baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("A RetryPolicy needs at least 1 attempt and a max delay of at least the base delay");
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        mIdempotent = idempotent;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public long getBaseDelay() {
+        return mBaseDelay;
+    }
+
+    public long getMaxDelay() {
+        return mMaxDelay;
+    }
+
+    public boolean isIdempotent() {
+        return mIdempotent;
+    }
+
+    /**
+     * @param retry The number of the retry, starting at 1.
+     * @return The most, in milliseconds, to wait before it.
+     */
+    public long getBackoff(int retry) {
+        long backoff = mBaseDelay;
+        for (int i = 1; i < retry && backoff < mMaxDelay; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, mMaxDelay);
+    }
+}
@@ -0,0 +1,297 @@
+package com.raizlabs.android.broker.retry;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: Retries failed requests on any executor, with exponential backoff and full jitter. Only failures
+ * without a response and 408, 429, 500, 502, 503 and 504 responses are retried, and only for idempotent methods
+ * unless the {@link com.raizlabs.android.broker.retry.RetryPolicy} says otherwise. Failures that executors below
+ * report themselves, such as a {@link com.raizlabs.android.broker.circuit.CircuitOpenException}, are never retried.
+ * A request uses its own policy, set
+ * with {@link com.raizlabs.android.broker.core.Retry} or {@link com.raizlabs.android.broker.Request.Builder#retryPolicy(RetryPolicy)},
+ * or the default of this executor.
+ * <br />
+ * All requests share a {@link com.raizlabs.android.broker.retry.RetryBudget}, so during an outage only a share of the
+ * traffic is retried. A request whose body stream cannot be reset is not retried, and neither is one whose deadline
+ * would pass during the backoff. Backends with retries of their own, such as the VolleyExecutor, should have them
+ * turned off.
+ */
+public class RetryRequestExecutor extends DelegateRequestExecutor {
+
+    private final RetryPolicy mDefaultPolicy;
+
+    private final RetryBudget mBudget;
+
+    private final Random mRandom = new Random();
+
+    /**
+     * Requests that may still be retried, from when they are executed until they are delivered.
+     */
+    private final Map<Request, RetryCallback> mRequests = new HashMap<>();
+
+    /**
+     * Constructs an executor with {@link com.raizlabs.android.broker.retry.RetryPolicy#DEFAULT} and a budget of 10%.
+     *
+     * @param delegate The executor that runs the requests.
+     */
+    public RetryRequestExecutor(RequestExecutor delegate) {
+        this(delegate, RetryPolicy.DEFAULT, new RetryBudget(0.1));
+    }
+
+    /**
+     * @param delegate      The executor that runs the requests.
+     * @param defaultPolicy The policy of requests that have none of their own.
+     * @param budget        The budget all retries are taken from, or null to not cap them.
+     */
+    public RetryRequestExecutor(RequestExecutor delegate, RetryPolicy defaultPolicy, RetryBudget budget) {
+        super(delegate);
+        if (defaultPolicy == null) {
+            throw new IllegalArgumentException("A RetryRequestExecutor needs a default policy");
+        }
+        mDefaultPolicy = defaultPolicy;
+        mBudget = budget;
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (mBudget != null) {
+            mBudget.deposit();
+        }
+        RetryPolicy policy = request.getRetryPolicy() != null ? request.getRetryPolicy() : mDefaultPolicy;
+        if (policy.getMaxAttempts() <= 1 || !isIdempotent(request, policy) || !markBody(request)) {
+            super.execute(request);
+            return;
+        }
+
+        RetryCallback callback = new RetryCallback(request, policy);
+        synchronized (mRequests) {
+            mRequests.put(request, callback);
+        }
+        executeDelegate(request, callback);
+    }
+
+    @Override
+    public void cancelRequest(Object data, Request request) {
+        synchronized (mRequests) {
+            Iterator<RetryCallback> callbacks = mRequests.values().iterator();
+            while (callbacks.hasNext()) {
+                RetryCallback callback = callbacks.next();
+                Request next = callback.getRequest();
+                if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                    callbacks.remove();
+                    callback.cancelTimer();
+                }
+            }
+        }
+        super.cancelRequest(data, request);
+    }
+
+    @Override
+    public void cancelAllRequests() {
+        synchronized (mRequests) {
+            for (RetryCallback callback : mRequests.values()) {
+                callback.cancelTimer();
+            }
+            mRequests.clear();
+        }
+        super.cancelAllRequests();
+    }
+
+    /**
+     * @return The number of requests that may still be retried.
+     */
+    public int getRetryableCount() {
+        synchronized (mRequests) {
+            return mRequests.size();
+        }
+    }
+
+    /**
+     * @param request    The request that failed.
+     * @param statusCode The status of its response, or -1 if there was none or the executor does not know it.
+     * @param error      The error it failed with, or null.
+     * @return True if the failure may go away when the request is sent again. Failures that executors below this one
+     * report themselves, such as an open circuit or a full queue, are never retried, since that would only add load.
+     */
+    protected boolean isRetryable(Request request, int statusCode, Throwable error) {
+        if (RequestUtils.isLocalFailure(error)) {
+            return false;
+        }
+        return statusCode == -1 || statusCode == 408 || statusCode == 429 || statusCode == 500 || statusCode == 502
+                || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @param policy The policy of the request.
+     * @param retry  The number of the retry, starting at 1.
+     * @return How long, in milliseconds, to wait before it, picked at random up to the backoff of the policy.
+     */
+    protected long getDelay(RetryPolicy policy, int retry) {
+        return (long) (mRandom.nextDouble() * (policy.getBackoff(retry) + 1));
+    }
+
+    private static boolean isIdempotent(Request request, RetryPolicy policy) {
+        return policy.isIdempotent() || RequestUtils.isIdempotent(request.getMethod());
+    }
+
+    /**
+     * Marks the start of the body so it can be sent again.
+     *
+     * @return False if the body cannot be reset.
+     */
+    private static boolean markBody(Request request) {
+        InputStream body = request.getBody();
+        if (!request.hasBody() || body == null) {
+            return true;
+        }
+        if (!body.markSupported()) {
+            return false;
+        }
+        body.mark(Integer.MAX_VALUE);
+        return true;
+    }
+
+    private void retry(RetryCallback callback) {
+        Request request = callback.getRequest();
+        synchronized (mRequests) {
+            if (mRequests.get(request) != callback) {
+                return;
+            }
+            callback.mTimer = null;
+        }
+
+        if (callback.resetBody()) {
+            executeDelegate(request, callback);
+        }
+    }
+
+    /**
+     * Sends the request again when it fails, until it succeeds, runs out of attempts or the budget runs out.
+     */
+    private class RetryCallback extends RequestCallbackWrapper<Object> implements ResponseInterceptor {
+
+        private final RetryPolicy mPolicy;
+
+        private int mAttempt = 1;
+
+        private volatile int mStatusCode = -1;
+
+        private ScheduledFuture<?> mTimer;
+
+        @SuppressWarnings("unchecked")
+        RetryCallback(Request request, RetryPolicy policy) {
+            super(request);
+            mPolicy = policy;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            mStatusCode = statusCode;
+            return body;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            if (finish()) {
+                deliverDone(response);
+            }
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            int statusCode = mStatusCode;
+            mStatusCode = -1;
+            if (mAttempt < mPolicy.getMaxAttempts() && isRetryable(getRequest(), statusCode, error) && schedule()) {
+                return;
+            }
+            if (finish()) {
+                deliverError(error, stringError);
+            }
+        }
+
+        /**
+         * Takes the retry from the budget only once nothing else stops it.
+         *
+         * @return False if the request was cancelled, its deadline passes before the retry would be sent, or the
+         * budget ran out.
+         */
+        private boolean schedule() {
+            synchronized (mRequests) {
+                if (mRequests.get(getRequest()) != this) {
+                    return false;
+                }
+                long delay = getDelay(mPolicy, mAttempt);
+                if (delay >= getRequest().getTimeRemaining() || (mBudget != null && !mBudget.tryWithdraw())) {
+                    return false;
+                }
+                mAttempt++;
+                mTimer = ExecutorUtils.getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        retry(RetryCallback.this);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                return true;
+            }
+        }
+
+        /**
+         * @return False if the body could not be reset, in which case the request fails.
+         */
+        boolean resetBody() {
+            Request request = getRequest();
+            if (request.hasBody() && request.getBody() != null) {
+                try {
+                    request.getBody().reset();
+                } catch (IOException e) {
+                    if (finish()) {
+                        deliverError(e, e.getMessage());
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Stops a retry that is waiting, and gives it back to the budget, holding the lock of {@link #mRequests}.
+         */
+        void cancelTimer() {
+            if (mTimer != null) {
+                if (mTimer.cancel(false) && mBudget != null) {
+                    mBudget.refund();
+                }
+                mTimer = null;
+            }
+        }
+
+        /**
+         * @return True if the request was still waiting to be delivered.
+         */
+        boolean finish() {
+            synchronized (mRequests) {
+                if (mRequests.get(getRequest()) == this) {
+                    mRequests.remove(getRequest());
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
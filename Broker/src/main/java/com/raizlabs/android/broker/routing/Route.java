@@ -0,0 +1,17 @@
+package com.raizlabs.android.broker.routing;
+
+import com.raizlabs.android.broker.Request;
+
+/**
+ * Description: Decides whether a request belongs in a bulkhead of a
+ * {@link com.raizlabs.android.broker.routing.RoutingRequestExecutor}. {@link com.raizlabs.android.broker.routing.Routes}
+ * provides the common ones.
+ */
+public interface Route {
+
+    /**
+     * @param request The request to route.
+     * @return True if the request belongs in the bulkhead.
+     */
+    public boolean matches(Request request);
+}
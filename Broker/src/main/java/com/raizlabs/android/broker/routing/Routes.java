@@ -0,0 +1,119 @@
+package com.raizlabs.android.broker.routing;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.core.Priority;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Description: The {@link com.raizlabs.android.broker.routing.Route}s a
+ * {@link com.raizlabs.android.broker.routing.RoutingRequestExecutor} usually needs, which can be combined with
+ * {@link #all(Route...)} and {@link #any(Route...)}.
+ */
+public class Routes {
+
+    /**
+     * @param priorities The priorities to match.
+     * @return Matches requests with any of the priorities.
+     */
+    public static Route priority(Priority... priorities) {
+        final EnumSet<Priority> matched = EnumSet.noneOf(Priority.class);
+        matched.addAll(Arrays.asList(priorities));
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                return matched.contains(request.getPriority());
+            }
+        };
+    }
+
+    /**
+     * @param bytes The smallest body to match.
+     * @return Matches requests whose body is at least that long, including multipart requests, whose length is
+     * unknown up front.
+     */
+    public static Route bodyAtLeast(final long bytes) {
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                return request.isMultiPart() || (request.hasBody() && request.getBodyLength() >= bytes);
+            }
+        };
+    }
+
+    /**
+     * @return Matches requests that download their response to a file.
+     */
+    public static Route hasFile() {
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                return request.hasFile();
+            }
+        };
+    }
+
+    /**
+     * @param services The interfaces annotated with {@link com.raizlabs.android.broker.core.RestService}.
+     * @return Matches requests built by any of the services.
+     */
+    public static Route service(Class<?>... services) {
+        String[] names = new String[services.length];
+        for (int i = 0; i < services.length; i++) {
+            names[i] = services[i].getCanonicalName();
+        }
+        return service(names);
+    }
+
+    /**
+     * @param services The qualified names of the services.
+     * @return Matches requests built by any of the services.
+     */
+    public static Route service(String... services) {
+        final List<String> matched = Arrays.asList(services);
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                return request.getService() != null && matched.contains(request.getService());
+            }
+        };
+    }
+
+    /**
+     * @param routes The routes to combine.
+     * @return Matches requests that all of the routes match.
+     */
+    public static Route all(final Route... routes) {
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                for (Route route : routes) {
+                    if (!route.matches(request)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param routes The routes to combine.
+     * @return Matches requests that any of the routes match.
+     */
+    public static Route any(final Route... routes) {
+        return new Route() {
+            @Override
+            public boolean matches(Request request) {
+                for (Route route : routes) {
+                    if (route.matches(request)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+}
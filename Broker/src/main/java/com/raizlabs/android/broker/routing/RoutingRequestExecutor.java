@@ -0,0 +1,334 @@
+package com.raizlabs.android.broker.routing;
+
+import com.raizlabs.android.broker.DeadlineExceededException;
+import com.raizlabs.android.broker.ReprioritizableExecutor;
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestCallback;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.AdmissionRequestExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Description: Sends requests to separate bulkheads, so a slow transfer in one cannot hold back the requests in
+ * another. Each bulkhead has a {@link com.raizlabs.android.broker.routing.Route} that picks its requests, an executor
+ * that runs them, the most it runs at once and the most it queues. A request goes to the first bulkhead, in the order
+ * they were added, whose route matches, and to the default bulkhead if none do.
+ * <br />
+ * When a bulkhead's queue is full, a request spills to the bulkhead set with
+ * {@link #setOverflow(String, String)}, if that one has room. Otherwise its callback receives a
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ */
+public class RoutingRequestExecutor extends AdmissionRequestExecutor {
+
+    /**
+     * The name of the bulkhead that takes the requests no route matches.
+     */
+    public static final String DEFAULT = "default";
+
+    private final Map<String, Bulkhead> mBulkheads = new LinkedHashMap<>();
+
+    /**
+     * @param defaultExecutor The executor of the default bulkhead.
+     * @param maxConcurrent   The most requests the default bulkhead runs at once.
+     * @param maxQueued       The most requests the default bulkhead queues.
+     */
+    public RoutingRequestExecutor(RequestExecutor defaultExecutor, int maxConcurrent, int maxQueued) {
+        super(defaultExecutor);
+        addBulkhead(DEFAULT, null, defaultExecutor, maxConcurrent, maxQueued);
+    }
+
+    /**
+     * Adds a bulkhead. Its route is checked after those of the bulkheads added before it.
+     *
+     * @param name          The unique name of the bulkhead.
+     * @param route         Picks the requests of the bulkhead.
+     * @param executor      Runs the requests of the bulkhead. Bulkheads can share one.
+     * @param maxConcurrent The most requests the bulkhead runs at once.
+     * @param maxQueued     The most requests the bulkhead queues.
+     * @return This executor, to add more.
+     */
+    public RoutingRequestExecutor addBulkhead(String name, Route route, RequestExecutor executor, int maxConcurrent,
+                                              int maxQueued) {
+        if (executor == null || maxConcurrent <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("A bulkhead needs an executor, a positive max concurrent, and a max queued of 0 or more");
+        }
+        synchronized (mLock) {
+            if (mBulkheads.containsKey(name)) {
+                throw new IllegalArgumentException("There already is a bulkhead named " + name);
+            }
+            mBulkheads.put(name, new Bulkhead(route, executor, maxConcurrent, maxQueued));
+        }
+        return this;
+    }
+
+    /**
+     * Lets a bulkhead spill requests it has no room for to a sibling.
+     *
+     * @param name    The bulkhead that overflows.
+     * @param sibling The bulkhead that takes its overflow, or null to reject it.
+     * @return This executor, to set more.
+     */
+    public RoutingRequestExecutor setOverflow(String name, String sibling) {
+        synchronized (mLock) {
+            if (!mBulkheads.containsKey(name) || (sibling != null && !mBulkheads.containsKey(sibling))) {
+                throw new IllegalArgumentException("Both bulkheads must be added first");
+            }
+            mBulkheads.get(name).mOverflow = sibling;
+        }
+        return this;
+    }
+
+    @Override
+    public void execute(Request request) {
+        Bulkhead bulkhead;
+        boolean run = false;
+        synchronized (mLock) {
+            bulkhead = route(request);
+            if (!bulkhead.hasRoom() && bulkhead.mOverflow != null && mBulkheads.get(bulkhead.mOverflow).hasRoom()) {
+                bulkhead = mBulkheads.get(bulkhead.mOverflow);
+            }
+
+            if (bulkhead.mRunning < bulkhead.mMaxConcurrent) {
+                bulkhead.mRunning++;
+                run = true;
+            } else if (bulkhead.mQueue.size() < bulkhead.mMaxQueued) {
+                if (request.getPriority() == Priority.IMMEDIATE) {
+                    bulkhead.mQueue.addFirst(request);
+                } else {
+                    bulkhead.mQueue.addLast(request);
+                }
+            } else {
+                bulkhead = null;
+            }
+        }
+
+        if (bulkhead == null) {
+            reject(request);
+        } else if (run) {
+            run(bulkhead, request);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean reprioritizeRequest(Object data, Request request, Priority priority) {
+        Set<RequestExecutor> executors = new LinkedHashSet<>();
+        boolean moved = false;
+        synchronized (mLock) {
+            for (Bulkhead bulkhead : mBulkheads.values()) {
+                List<Request> immediate = new ArrayList<>();
+                Iterator<Request> queued = bulkhead.mQueue.iterator();
+                while (queued.hasNext()) {
+                    Request next = queued.next();
+                    if (next == request || (request == null && data != null && data.equals(next.getMetaData()))) {
+                        next.setPriority(priority);
+                        if (priority == Priority.IMMEDIATE) {
+                            queued.remove();
+                            immediate.add(next);
+                        }
+                        moved = true;
+                    }
+                }
+                for (Request next : immediate) {
+                    bulkhead.mQueue.addFirst(next);
+                }
+                executors.add(bulkhead.mExecutor);
+            }
+            if (request != null && !moved) {
+                executors.clear();
+                for (AdmittedCallback callback : getAdmitted(null, request)) {
+                    executors.add(((BulkheadCallback) callback).mBulkhead.mExecutor);
+                }
+                request.setPriority(priority);
+            }
+        }
+
+        if (request == null || !moved) {
+            for (RequestExecutor executor : executors) {
+                if (executor instanceof ReprioritizableExecutor) {
+                    moved |= ((ReprioritizableExecutor) executor).reprioritizeRequest(data, request, priority);
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * @param name The name of the bulkhead.
+     * @return The number of requests the bulkhead is running.
+     */
+    public int getRunningCount(String name) {
+        synchronized (mLock) {
+            Bulkhead bulkhead = mBulkheads.get(name);
+            return bulkhead != null ? bulkhead.mRunning : 0;
+        }
+    }
+
+    /**
+     * @param name The name of the bulkhead.
+     * @return The number of requests waiting in the bulkhead.
+     */
+    public int getQueueDepth(String name) {
+        synchronized (mLock) {
+            Bulkhead bulkhead = mBulkheads.get(name);
+            return bulkhead != null ? bulkhead.mQueue.size() : 0;
+        }
+    }
+
+    @Override
+    protected boolean removeQueued(Object data, Request request) {
+        boolean removed = false;
+        for (Bulkhead bulkhead : mBulkheads.values()) {
+            removed |= removeMatching(bulkhead.mQueue, data, request);
+            if (removed && request != null) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    protected void clearQueued() {
+        for (Bulkhead bulkhead : mBulkheads.values()) {
+            bulkhead.mQueue.clear();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void cancelAdmitted(Object data, Request request, List<AdmittedCallback> admitted) {
+        if (request != null) {
+            for (AdmittedCallback callback : admitted) {
+                ((BulkheadCallback) callback).mBulkhead.mExecutor.cancelRequest(data, request);
+            }
+        } else {
+            for (RequestExecutor executor : getExecutors()) {
+                executor.cancelRequest(data, null);
+            }
+        }
+    }
+
+    @Override
+    protected void cancelAllAdmitted() {
+        for (RequestExecutor executor : getExecutors()) {
+            executor.cancelAllRequests();
+        }
+    }
+
+    /**
+     * @return The executors of the bulkheads, each once.
+     */
+    private Set<RequestExecutor> getExecutors() {
+        Set<RequestExecutor> executors = new LinkedHashSet<>();
+        synchronized (mLock) {
+            for (Bulkhead bulkhead : mBulkheads.values()) {
+                executors.add(bulkhead.mExecutor);
+            }
+        }
+        return executors;
+    }
+
+    private Bulkhead route(Request request) {
+        for (Bulkhead bulkhead : mBulkheads.values()) {
+            if (bulkhead.mRoute != null && bulkhead.mRoute.matches(request)) {
+                return bulkhead;
+            }
+        }
+        return mBulkheads.get(DEFAULT);
+    }
+
+    private void run(Bulkhead bulkhead, Request request) {
+        BulkheadCallback callback = new BulkheadCallback(bulkhead, request);
+        admit(callback);
+        request.setCallback(callback);
+        if (request.isExpired()) {
+            // It waited in the queue past its deadline, so fail it and free its place
+            DeadlineExceededException error = new DeadlineExceededException();
+            callback.onRequestError(error, error.getMessage());
+            return;
+        }
+        bulkhead.mExecutor.execute(request);
+    }
+
+    private void reject(Request request) {
+        RequestCallback callback = request.getCallback();
+        if (callback != null) {
+            RejectedExecutionException error = new RejectedExecutionException("No room in any bulkhead for " + request.getFullUrl());
+            callback.onRequestError(error, error.getMessage());
+        }
+    }
+
+    /**
+     * A separate pool of requests, with its own limits.
+     */
+    private static class Bulkhead {
+
+        final Route mRoute;
+
+        final RequestExecutor mExecutor;
+
+        final int mMaxConcurrent;
+
+        final int mMaxQueued;
+
+        final ArrayDeque<Request> mQueue = new ArrayDeque<>();
+
+        int mRunning;
+
+        String mOverflow;
+
+        Bulkhead(Route route, RequestExecutor executor, int maxConcurrent, int maxQueued) {
+            mRoute = route;
+            mExecutor = executor;
+            mMaxConcurrent = maxConcurrent;
+            mMaxQueued = maxQueued;
+        }
+
+        boolean hasRoom() {
+            return mRunning < mMaxConcurrent || mQueue.size() < mMaxQueued;
+        }
+    }
+
+    /**
+     * Frees the slot of a request in its bulkhead once it finishes, and runs the next request waiting there.
+     */
+    private class BulkheadCallback extends AdmittedCallback {
+
+        private final Bulkhead mBulkhead;
+
+        /**
+         * The request that takes over the slot, set when it is released.
+         */
+        private Request mNext;
+
+        BulkheadCallback(Bulkhead bulkhead, Request request) {
+            super(request);
+            mBulkhead = bulkhead;
+        }
+
+        @Override
+        protected void release() {
+            mNext = mBulkhead.mQueue.pollFirst();
+            if (mNext == null) {
+                mBulkhead.mRunning--;
+            }
+        }
+
+        @Override
+        protected void onReleased() {
+            if (mNext != null) {
+                run(mBulkhead, mNext);
+            }
+        }
+    }
+}
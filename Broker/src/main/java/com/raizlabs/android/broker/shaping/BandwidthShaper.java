@@ -0,0 +1,181 @@
+package com.raizlabs.android.broker.shaping;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Description: A token bucket on bytes that background transfers draw from, so they leave room on the link for
+ * foreground requests. Every stream from {@link #shape(java.io.InputStream)} or {@link #shape(java.io.OutputStream)}
+ * shares the same rate. While any foreground request is on the wire, the yield rate applies instead. A yield rate of 0
+ * slows background transfers to a trickle rather than stopping them, since they may hold the threads that foreground
+ * requests are waiting for.
+ * <br />
+ * The backend marks foreground requests with {@link #foregroundStarted()} once it sends them, not while they are
+ * queued, and with {@link #foregroundFinished()} once their response is read.
+ * <br />
+ * The rates can change at any time, and the next bytes through the streams follow them.
+ */
+public class BandwidthShaper {
+
+    /**
+     * The fewest bytes the bucket holds when full, so small rates still allow whole reads.
+     */
+    private static final long MIN_BURST = 4096;
+
+    /**
+     * The most bytes a shaped stream reads or writes at once.
+     */
+    static final int MAX_CHUNK = 4096;
+
+    /**
+     * The rate background transfers trickle at while foreground requests are on the wire with a yield rate of 0.
+     */
+    static final long MIN_YIELD_RATE = 8192;
+
+    private long mRate;
+
+    private long mYieldRate;
+
+    private int mForeground;
+
+    private double mTokens;
+
+    private long mRefillTime = System.nanoTime();
+
+    /**
+     * Yields at a quarter of the rate.
+     *
+     * @param bytesPerSecond The rate of background transfers, or 0 for no limit.
+     */
+    public BandwidthShaper(long bytesPerSecond) {
+        this(bytesPerSecond, bytesPerSecond / 4);
+    }
+
+    /**
+     * @param bytesPerSecond      The rate of background transfers, or 0 for no limit.
+     * @param yieldBytesPerSecond The rate of background transfers while foreground requests are active, or 0 to slow
+     *                            them to a trickle.
+     */
+    public BandwidthShaper(long bytesPerSecond, long yieldBytesPerSecond) {
+        setRate(bytesPerSecond);
+        setYieldRate(yieldBytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond The rate of background transfers, or 0 for no limit.
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The rate cannot be negative");
+        }
+        mRate = bytesPerSecond;
+    }
+
+    /**
+     * @return The rate of background transfers, 0 if there is no limit.
+     */
+    public synchronized long getRate() {
+        return mRate;
+    }
+
+    /**
+     * @param bytesPerSecond The rate of background transfers while foreground requests are active, or 0 to slow them to
+     *                       a trickle.
+     */
+    public synchronized void setYieldRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("The yield rate cannot be negative");
+        }
+        mYieldRate = bytesPerSecond;
+    }
+
+    /**
+     * @return The rate of background transfers while foreground requests are active.
+     */
+    public synchronized long getYieldRate() {
+        return mYieldRate;
+    }
+
+    /**
+     * Marks a foreground request as sent, so background transfers yield to it.
+     */
+    public synchronized void foregroundStarted() {
+        mForeground++;
+    }
+
+    /**
+     * Marks the response of a foreground request as read.
+     */
+    public synchronized void foregroundFinished() {
+        if (mForeground > 0) {
+            mForeground--;
+        }
+    }
+
+    /**
+     * @return The number of foreground requests active.
+     */
+    public synchronized int getForegroundCount() {
+        return mForeground;
+    }
+
+    /**
+     * @param inputStream The stream a background transfer reads from.
+     * @return The stream, reading no faster than this shaper allows.
+     */
+    public InputStream shape(InputStream inputStream) {
+        return new ShapedInputStream(inputStream, this);
+    }
+
+    /**
+     * @param outputStream The stream a background transfer writes to.
+     * @return The stream, writing no faster than this shaper allows.
+     */
+    public OutputStream shape(OutputStream outputStream) {
+        return new ShapedOutputStream(outputStream, this);
+    }
+
+    /**
+     * Takes bytes from the bucket, blocking until the rate allows them.
+     *
+     * @param bytes The number of bytes transferred, best kept to a few kilobytes so the rate stays smooth.
+     * @throws InterruptedIOException If the thread is interrupted while it waits.
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        try {
+            long waitNanos;
+            synchronized (this) {
+                long rate = mForeground > 0 ? getYieldingRate() : mRate;
+                long now = System.nanoTime();
+                if (rate == 0) {
+                    mRefillTime = now;
+                    return;
+                }
+                double burst = Math.max(MIN_BURST, rate / 4);
+                mTokens = Math.min(burst, mTokens + (now - mRefillTime) * rate / 1e9);
+                mRefillTime = now;
+                mTokens -= bytes;
+                // Streams that take bytes while the bucket is in debt wait behind the ones before them
+                waitNanos = mTokens < 0 ? (long) (-mTokens * 1e9 / rate) : 0;
+            }
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while shaping bandwidth");
+        }
+    }
+
+    /**
+     * @return The rate while foreground requests are active. Never 0 when there is a rate, so a transfer that holds a
+     * thread a foreground request needs still finishes.
+     */
+    private long getYieldingRate() {
+        if (mYieldRate > 0 || mRate == 0) {
+            return mYieldRate;
+        }
+        return Math.min(mRate, MIN_YIELD_RATE);
+    }
+}
@@ -0,0 +1,67 @@
+package com.raizlabs.android.broker.shaping;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.core.Priority;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+
+/**
+ * Description: Shares a {@link com.raizlabs.android.broker.shaping.BandwidthShaper} with the backend, which sends
+ * background transfers through it.
+ * <br />
+ * Broker does not send or read bodies itself, so the backend shapes them with the same shaper, each body exactly once:
+ * the {@code ShapedHttpClientStack} of broker-volley, or {@code WebServiceManagerExecutor.setShaper()}. The backend
+ * also counts foreground requests, only while they are on the wire: one that waits in its queue does not slow
+ * background transfers, which may be holding the threads it waits for. For a backend that streams request bodies but
+ * does not shape them, this executor can read them through the shaper instead.
+ */
+public class BandwidthShapingRequestExecutor extends DelegateRequestExecutor {
+
+    private final BandwidthShaper mShaper;
+
+    private final boolean mShapeBodies;
+
+    /**
+     * @param delegate The executor that runs the requests.
+     * @param shaper   The shaper that background transfers share.
+     */
+    public BandwidthShapingRequestExecutor(RequestExecutor delegate, BandwidthShaper shaper) {
+        this(delegate, shaper, false);
+    }
+
+    /**
+     * @param delegate    The executor that runs the requests.
+     * @param shaper      The shaper that background transfers share.
+     * @param shapeBodies True to read the bodies of background requests through the shaper, for a backend that streams
+     *                    them without shaping. Volley reads bodies into memory, so shape them in its stack instead.
+     */
+    public BandwidthShapingRequestExecutor(RequestExecutor delegate, BandwidthShaper shaper, boolean shapeBodies) {
+        super(delegate);
+        mShaper = shaper;
+        mShapeBodies = shapeBodies;
+    }
+
+    /**
+     * @return The shaper that background transfers share.
+     */
+    public BandwidthShaper getShaper() {
+        return mShaper;
+    }
+
+    @Override
+    public void execute(Request request) {
+        if (mShapeBodies && isBackground(request) && request.hasBody()
+                && !(request.getBody() instanceof ShapedInputStream)) {
+            request.setBody(mShaper.shape(request.getBody()), request.getBodyLength());
+        }
+        super.execute(request);
+    }
+
+    /**
+     * @param request The request to run.
+     * @return True if the request is a background transfer. By default, those are {@link Priority#LOW} requests.
+     */
+    protected boolean isBackground(Request request) {
+        return request.getPriority() == Priority.LOW;
+    }
+}
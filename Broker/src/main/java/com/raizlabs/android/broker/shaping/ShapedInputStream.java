@@ -0,0 +1,40 @@
+package com.raizlabs.android.broker.shaping;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Description: Reads no faster than its {@link com.raizlabs.android.broker.shaping.BandwidthShaper} allows.
+ */
+public class ShapedInputStream extends FilterInputStream {
+
+    private final BandwidthShaper mShaper;
+
+    /**
+     * @param inputStream The stream to read from.
+     * @param shaper      The shaper whose rate applies.
+     */
+    public ShapedInputStream(InputStream inputStream, BandwidthShaper shaper) {
+        super(inputStream);
+        mShaper = shaper;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            mShaper.acquire(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, Math.min(count, BandwidthShaper.MAX_CHUNK));
+        if (read > 0) {
+            mShaper.acquire(read);
+        }
+        return read;
+    }
+}
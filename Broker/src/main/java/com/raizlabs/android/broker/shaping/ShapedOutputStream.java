@@ -0,0 +1,39 @@
+package com.raizlabs.android.broker.shaping;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Description: Writes no faster than its {@link com.raizlabs.android.broker.shaping.BandwidthShaper} allows.
+ */
+public class ShapedOutputStream extends FilterOutputStream {
+
+    private final BandwidthShaper mShaper;
+
+    /**
+     * @param outputStream The stream to write to.
+     * @param shaper       The shaper whose rate applies.
+     */
+    public ShapedOutputStream(OutputStream outputStream, BandwidthShaper shaper) {
+        super(outputStream);
+        mShaper = shaper;
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        mShaper.acquire(1);
+        out.write(oneByte);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0) {
+            int chunk = Math.min(count, BandwidthShaper.MAX_CHUNK);
+            mShaper.acquire(chunk);
+            out.write(buffer, offset, chunk);
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+}
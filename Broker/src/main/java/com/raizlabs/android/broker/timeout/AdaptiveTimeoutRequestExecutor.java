@@ -0,0 +1,203 @@
+package com.raizlabs.android.broker.timeout;
+
+import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.ResponseInterceptor;
+import com.raizlabs.android.broker.executor.DelegateRequestExecutor;
+import com.raizlabs.android.broker.executor.RequestCallbackWrapper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Description: Gives each request a socket timeout that fits its endpoint, instead of one long timeout for all of
+ * them. The timeout is a multiple of the 99th percentile of the latencies recently observed for the endpoint, kept
+ * within the min and max timeout. An endpoint uses the max timeout until it has {@link #MIN_SAMPLES}.
+ * <br />
+ * Latencies are kept in a {@link com.raizlabs.android.broker.timeout.LatencySketch} per endpoint, covering the last
+ * {@link #WINDOW} to twice as many responses. Requests that time out count as taking as long as they waited, so a
+ * timeout that is too tight grows again. Requests with a timeout set on them, such as from
+ * {@link com.raizlabs.android.broker.core.Timeout}, keep it. The adapted timeout is picked again each time a request
+ * runs.
+ */
+public class AdaptiveTimeoutRequestExecutor extends DelegateRequestExecutor {
+
+    /**
+     * The quantile of latency the timeout is a multiple of.
+     */
+    public static final double QUANTILE = 0.99;
+
+    public static final double DEFAULT_MULTIPLIER = 3;
+
+    public static final long DEFAULT_MIN_TIMEOUT = 1000;
+
+    public static final long DEFAULT_MAX_TIMEOUT = 15000;
+
+    /**
+     * The number of latencies an endpoint needs before its timeout adapts.
+     */
+    public static final int MIN_SAMPLES = 50;
+
+    /**
+     * The number of latencies after which an endpoint starts forgetting the oldest half.
+     */
+    public static final int WINDOW = 500;
+
+    private final double mMultiplier;
+
+    private final long mMinTimeout;
+
+    private final long mMaxTimeout;
+
+    private final Map<String, Endpoint> mEndpoints = new HashMap<>();
+
+    /**
+     * Constructs an executor with a timeout of 3 times the 99th percentile, from 1 to 15 seconds.
+     *
+     * @param delegate The executor that runs the requests.
+     */
+    public AdaptiveTimeoutRequestExecutor(RequestExecutor delegate) {
+        this(delegate, DEFAULT_MULTIPLIER, DEFAULT_MIN_TIMEOUT, DEFAULT_MAX_TIMEOUT);
+    }
+
+    /**
+     * @param delegate   The executor that runs the requests.
+     * @param multiplier How many times the 99th percentile of latency requests wait, 1 or more.
+     * @param minTimeout The shortest timeout, in milliseconds.
+     * @param maxTimeout The longest timeout, in milliseconds, also used until an endpoint has enough samples.
+     */
+    public AdaptiveTimeoutRequestExecutor(RequestExecutor delegate, double multiplier, long minTimeout,
+                                          long maxTimeout) {
+        super(delegate);
+        if (multiplier < 1 || minTimeout <= 0 || maxTimeout < minTimeout) {
+            throw new IllegalArgumentException("The multiplier must be 1 or more, with a positive min timeout of at most the max");
+        }
+        mMultiplier = multiplier;
+        mMinTimeout = minTimeout;
+        mMaxTimeout = maxTimeout;
+    }
+
+    @Override
+    public void execute(Request request) {
+        String key = getEndpointKey(request);
+        if (!request.hasFixedTimeout()) {
+            request.setAdaptiveTimeout(getTimeout(key));
+        }
+        executeDelegate(request, new TimingCallback(request, key));
+    }
+
+    /**
+     * @param key The endpoint, as returned by {@link #getEndpointKey(com.raizlabs.android.broker.Request)}.
+     * @return The timeout, in milliseconds, requests to the endpoint get.
+     */
+    public long getTimeout(String key) {
+        long quantile;
+        synchronized (mEndpoints) {
+            Endpoint endpoint = mEndpoints.get(key);
+            if (endpoint == null || endpoint.getCount() < MIN_SAMPLES) {
+                return mMaxTimeout;
+            }
+            quantile = endpoint.getQuantile(QUANTILE);
+        }
+        return Math.max(mMinTimeout, Math.min(mMaxTimeout, (long) Math.ceil(quantile * mMultiplier)));
+    }
+
+    /**
+     * @param request The request.
+     * @return The endpoint whose latencies the request is measured against. By default its method and url template,
+     * as returned by {@link com.raizlabs.android.broker.RequestUtils#getEndpointKey(com.raizlabs.android.broker.Request)}.
+     */
+    protected String getEndpointKey(Request request) {
+        return RequestUtils.getEndpointKey(request);
+    }
+
+    /**
+     * @return The current time in milliseconds, for measuring latency.
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private void record(String key, long latency) {
+        synchronized (mEndpoints) {
+            Endpoint endpoint = mEndpoints.get(key);
+            if (endpoint == null) {
+                endpoint = new Endpoint();
+                mEndpoints.put(key, endpoint);
+            }
+            endpoint.add(latency);
+        }
+    }
+
+    /**
+     * The recent latencies of an endpoint, in two sketches. Once the newer is full, the older is cleared and takes its
+     * place.
+     */
+    private static class Endpoint {
+
+        private LatencySketch mCurrent = new LatencySketch();
+
+        private LatencySketch mPrevious = new LatencySketch();
+
+        void add(long latency) {
+            if (mCurrent.getCount() >= WINDOW) {
+                LatencySketch oldest = mPrevious;
+                mPrevious = mCurrent;
+                mCurrent = oldest;
+                mCurrent.clear();
+            }
+            mCurrent.add(latency);
+        }
+
+        long getCount() {
+            return mCurrent.getCount() + mPrevious.getCount();
+        }
+
+        long getQuantile(double quantile) {
+            return LatencySketch.getQuantile(quantile, mCurrent, mPrevious);
+        }
+    }
+
+    /**
+     * Records how long the request took once it is answered, or once it times out.
+     */
+    private class TimingCallback extends RequestCallbackWrapper<Object> implements ResponseInterceptor {
+
+        private final String mKey;
+
+        private final long mStartTime = now();
+
+        private volatile boolean mAnswered;
+
+        @SuppressWarnings("unchecked")
+        TimingCallback(Request request, String key) {
+            super(request);
+            mKey = key;
+        }
+
+        @Override
+        public byte[] interceptResponse(Request request, int statusCode, Map<String, String> headers, byte[] body,
+                                        String charset) throws IOException {
+            mAnswered = true;
+            return body;
+        }
+
+        @Override
+        public void onRequestDone(Object response) {
+            record(mKey, now() - mStartTime);
+            deliverDone(response);
+        }
+
+        @Override
+        public void onRequestError(Throwable error, String stringError) {
+            long latency = now() - mStartTime;
+            // A failure without a response only says something about latency if it waited out the timeout
+            if (mAnswered || latency >= getRequest().getTimeout()) {
+                record(mKey, latency);
+            }
+            deliverError(error, stringError);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.raizlabs.android.broker.timeout;
+
+/**
+ * Description: A streaming sketch of latencies that answers quantiles in constant memory. Latencies go into buckets
+ * that grow geometrically, so any quantile it returns is within {@link #RELATIVE_ACCURACY} of the true value, from a
+ * millisecond up to {@link #MAX_LATENCY}. It is not thread safe.
+ */
+public class LatencySketch {
+
+    /**
+     * How far, relative to the true value, a quantile may be off.
+     */
+    public static final double RELATIVE_ACCURACY = 0.02;
+
+    /**
+     * The latency, in milliseconds, above which all latencies count as this one.
+     */
+    public static final long MAX_LATENCY = 60 * 60 * 1000;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private static final int BUCKETS = getBucket(MAX_LATENCY) + 1;
+
+    private final long[] mCounts = new long[BUCKETS];
+
+    private long mCount;
+
+    /**
+     * @param latency The latency to add, in milliseconds.
+     */
+    public void add(long latency) {
+        mCounts[Math.min(getBucket(latency), BUCKETS - 1)]++;
+        mCount++;
+    }
+
+    /**
+     * @return The number of latencies added.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Forgets all latencies.
+     */
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * @param quantile The quantile, such as 0.99.
+     * @return The latency at the quantile, in milliseconds, or -1 if there are none.
+     */
+    public long getQuantile(double quantile) {
+        return getQuantile(quantile, this);
+    }
+
+    /**
+     * @param quantile The quantile, such as 0.99.
+     * @param sketches The sketches to read as one.
+     * @return The latency at the quantile of all latencies in the sketches, in milliseconds, or -1 if there are none.
+     */
+    public static long getQuantile(double quantile, LatencySketch... sketches) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("The quantile must be from 0 to 1");
+        }
+        long count = 0;
+        for (LatencySketch sketch : sketches) {
+            count += sketch.mCount;
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (LatencySketch sketch : sketches) {
+                seen += sketch.mCounts[i];
+            }
+            if (seen >= rank) {
+                return getValue(i);
+            }
+        }
+        return MAX_LATENCY;
+    }
+
+    /**
+     * @return The bucket holding latencies above GAMMA^(bucket - 1) and up to GAMMA^bucket.
+     */
+    private static int getBucket(long latency) {
+        return latency <= 1 ? 0 : (int) Math.ceil(Math.log(latency) / LOG_GAMMA);
+    }
+
+    /**
+     * @return The latency that is off by no more than the accuracy from every latency in the bucket.
+     */
+    private static long getValue(int bucket) {
+        return bucket == 0 ? 1 : Math.round(2 * Math.pow(GAMMA, bucket) / (GAMMA + 1));
+    }
+}
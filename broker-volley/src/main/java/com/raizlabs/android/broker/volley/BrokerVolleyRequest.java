@@ -1,12 +1,18 @@
 package com.raizlabs.android.broker.volley;
 
 import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
 import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Response;
+import com.android.volley.VolleyError;
 import com.android.volley.VolleyLog;
 import com.android.volley.toolbox.HttpHeaderParser;
+import com.raizlabs.android.broker.DeadlineExceededException;
 import com.raizlabs.android.broker.Request;
+import com.raizlabs.android.broker.RequestConfig;
 import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.executor.ExecutorUtils;
 
 import org.apache.http.HttpEntity;
 
@@ -16,7 +22,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -35,16 +40,38 @@ public class BrokerVolleyRequest<ResponseType> extends com.android.volley.Reques
      */
     private HttpEntity mMultiPartEntity;
 
+    /**
+     * The executor that runs this request. The {@link com.raizlabs.android.broker.Request} may point to an executor
+     * that decorates it, so we keep our own reference.
+     */
+    private final VolleyExecutor mExecutor;
+
+    /**
+     * Set once a dispatcher took this request off a queue for good, so it can no longer be moved.
+     */
+    private volatile boolean mStarted;
+
     /**
      * Constructs a new volley request with our {@link com.raizlabs.android.broker.Request} object
      *
      * @param request       - the {@link com.raizlabs.android.broker.Request}
-     * @param url           - URL formatted url from Request
      * @param errorListener - the listener for an error
      */
     public BrokerVolleyRequest(Request<ResponseType> request, Response.ErrorListener errorListener) {
+        this(request, VolleyExecutor.getSharedExecutor(), errorListener);
+    }
+
+    /**
+     * Constructs a new volley request with our {@link com.raizlabs.android.broker.Request} object
+     *
+     * @param request       - the {@link com.raizlabs.android.broker.Request}
+     * @param executor      - the executor that runs this request
+     * @param errorListener - the listener for an error
+     */
+    public BrokerVolleyRequest(Request<ResponseType> request, VolleyExecutor executor, Response.ErrorListener errorListener) {
         super(request.getMethod(), request.getFullUrl(), errorListener);
         mRequest = request;
+        mExecutor = executor;
 
         if (mRequest.isMultiPart()) {
             mMultiPartEntity = RequestUtils.createMultipartEntity(request);
@@ -67,20 +94,74 @@ public class BrokerVolleyRequest<ResponseType> extends com.android.volley.Reques
             return null;
         } else {
 
-            String parsed;
             try {
-                parsed = new String(networkResponse.data, HttpHeaderParser.parseCharset(networkResponse.headers));
-            } catch (UnsupportedEncodingException e) {
-                parsed = new String(networkResponse.data);
+                return Response.success((ResponseType) RequestUtils.handleResponse(mRequest, networkResponse.statusCode,
+                                networkResponse.headers, networkResponse.data,
+                                HttpHeaderParser.parseCharset(networkResponse.headers)),
+                        HttpHeaderParser.parseCacheHeaders(networkResponse));
+            } catch (IOException e) {
+                return Response.error(new ParseError(e));
             }
-            return Response.success((ResponseType) mRequest.getResponseHandler().handleResponse(parsed),
-                    HttpHeaderParser.parseCacheHeaders(networkResponse));
         }
     }
 
+    /**
+     * @return The request this volley request runs.
+     */
+    public Request getRequest() {
+        return mRequest;
+    }
+
+    /**
+     * @return True once the request is on the network or served from the cache.
+     */
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    @Override
+    public void addMarker(String tag) {
+        if ("network-queue-take".equals(tag) || "cache-hit".equals(tag)) {
+            mStarted = true;
+        }
+        if ("network-queue-take".equals(tag) && mRequest.hasDeadline()) {
+            takeWithDeadline();
+        }
+        super.addMarker(tag);
+    }
+
+    /**
+     * Called as a dispatcher takes a request with a deadline off the queue. Fails it if the deadline passed, since
+     * the dispatcher skips cancelled requests, and otherwise cuts its socket timeout to the time left. The error is
+     * posted to the main thread, where volley delivers everything else.
+     */
+    private void takeWithDeadline() {
+        if (mRequest.isExpired()) {
+            cancel();
+            ExecutorUtils.getMainThreadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverError(new VolleyError(new DeadlineExceededException()));
+                }
+            });
+        } else {
+            int timeout = (int) Math.min(RequestUtils.getSocketTimeout(mRequest, getRetryPolicy().getCurrentTimeout()),
+                    Integer.MAX_VALUE);
+            // No retries of its own, any would run past the deadline
+            setRetryPolicy(new DefaultRetryPolicy(timeout, 0, 1));
+        }
+    }
+
+    @Override
+    public void deliverError(VolleyError error) {
+        mExecutor.finish(this);
+        super.deliverError(error);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     protected void deliverResponse(ResponseType response) {
+        mExecutor.finish(this);
         if (mRequest.getCallback() != null) {
             mRequest.getCallback().onRequestDone(response);
         }
@@ -136,7 +217,7 @@ public class BrokerVolleyRequest<ResponseType> extends com.android.volley.Reques
 
     @Override
     public Priority getPriority() {
-        return ((VolleyExecutor) mRequest.getExecutor()).convertPriority(mRequest.getPriority());
+        return mExecutor.convertPriority(mRequest.getPriority());
     }
 
     @Override
@@ -145,6 +226,11 @@ public class BrokerVolleyRequest<ResponseType> extends com.android.volley.Reques
         Map<String, String> headers = mRequest.getHeaders();
         if (headers == null)
             headers = new HashMap<>();
+        String deadlineHeader = RequestConfig.getDeadlineHeader();
+        if (deadlineHeader != null && mRequest.hasDeadline()) {
+            headers = new HashMap<>(headers);
+            headers.put(deadlineHeader, String.valueOf(mRequest.getTimeRemaining()));
+        }
         return headers;
     }
 
@@ -0,0 +1,166 @@
+package com.raizlabs.android.broker.volley;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.toolbox.HttpClientStack;
+import com.raizlabs.android.broker.shaping.BandwidthShaper;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Description: An {@link com.android.volley.toolbox.HttpClientStack} that sends and reads the bodies of background
+ * requests through a {@link com.raizlabs.android.broker.shaping.BandwidthShaper}, so a large download or upload backs
+ * off at the socket and leaves room on the link for foreground requests. By default, {@link Request.Priority#LOW}
+ * requests are background requests. Every other request counts as foreground from when a network dispatcher sends it
+ * until its response is read, so one still waiting in the queue does not slow the transfers ahead of it. Set it with {@link VolleyExecutor#setStack(com.android.volley.toolbox.HttpClientStack)}.
+ */
+public class ShapedHttpClientStack extends HttpClientStack {
+
+    private final BandwidthShaper mShaper;
+
+    /**
+     * The request this thread is sending, so {@link #onPrepareRequest(org.apache.http.client.methods.HttpUriRequest)}
+     * knows whether to shape it.
+     */
+    private final ThreadLocal<Request<?>> mCurrentRequest = new ThreadLocal<>();
+
+    /**
+     * @param client The client that sends the requests.
+     * @param shaper The shaper that background transfers share.
+     */
+    public ShapedHttpClientStack(HttpClient client, BandwidthShaper shaper) {
+        super(client);
+        mShaper = shaper;
+    }
+
+    /**
+     * @return The shaper that background transfers share.
+     */
+    public BandwidthShaper getShaper() {
+        return mShaper;
+    }
+
+    @Override
+    public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        boolean background = isBackground(request);
+        if (!background) {
+            mShaper.foregroundStarted();
+        }
+        mCurrentRequest.set(request);
+        HttpResponse response;
+        try {
+            response = super.performRequest(request, additionalHeaders);
+        } catch (IOException | AuthFailureError | RuntimeException e) {
+            if (!background) {
+                mShaper.foregroundFinished();
+            }
+            throw e;
+        } finally {
+            mCurrentRequest.remove();
+        }
+        if (background) {
+            if (response.getEntity() != null) {
+                response.setEntity(new ShapedEntity(response.getEntity()));
+            }
+        } else if (response.getEntity() != null
+                && response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+            response.setEntity(new ForegroundEntity(response.getEntity()));
+        } else {
+            // The network does not read a body it will not use
+            mShaper.foregroundFinished();
+        }
+        return response;
+    }
+
+    @Override
+    protected void onPrepareRequest(HttpUriRequest request) throws IOException {
+        super.onPrepareRequest(request);
+        Request<?> volleyRequest = mCurrentRequest.get();
+        if (volleyRequest != null && isBackground(volleyRequest) && request instanceof HttpEntityEnclosingRequest) {
+            shapeEntity((HttpEntityEnclosingRequest) request);
+        }
+    }
+
+    private void shapeEntity(HttpEntityEnclosingRequest request) {
+        if (request.getEntity() != null) {
+            request.setEntity(new ShapedEntity(request.getEntity()));
+        }
+    }
+
+    /**
+     * @param request The request to send.
+     * @return True if its bodies go through the shaper.
+     */
+    protected boolean isBackground(Request<?> request) {
+        return request.getPriority() == Request.Priority.LOW;
+    }
+
+    /**
+     * Reads and writes its entity through the shaper.
+     */
+    private class ShapedEntity extends HttpEntityWrapper {
+
+        ShapedEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return mShaper.shape(wrappedEntity.getContent());
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            wrappedEntity.writeTo(mShaper.shape(outputStream));
+        }
+    }
+
+    /**
+     * Ends the foreground period of its request once the network reads and consumes it, only the first time.
+     */
+    private class ForegroundEntity extends HttpEntityWrapper {
+
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+
+        ForegroundEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public void consumeContent() throws IOException {
+            try {
+                super.consumeContent();
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try {
+                super.writeTo(outputStream);
+            } finally {
+                finish();
+            }
+        }
+
+        private void finish() {
+            if (mFinished.compareAndSet(false, true)) {
+                mShaper.foregroundFinished();
+            }
+        }
+    }
+}
@@ -1,22 +1,39 @@
 package com.raizlabs.android.broker.volley;
 
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.RetryPolicy;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpClientStack;
+import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.Volley;
+import com.raizlabs.android.broker.GroupCancellableExecutor;
+import com.raizlabs.android.broker.ReprioritizableExecutor;
 import com.raizlabs.android.broker.Request;
 import com.raizlabs.android.broker.RequestCallback;
 import com.raizlabs.android.broker.RequestConfig;
-import com.raizlabs.android.broker.RequestExecutor;
+import com.raizlabs.android.broker.RequestUtils;
+import com.raizlabs.android.broker.cancel.CancellationRegistry;
 import com.raizlabs.android.broker.core.Priority;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Description: Provides the default implementation for a volley request.
+ * <br />
+ * Volley orders its queues once, when a request is added, so reprioritizing a request that a dispatcher has not
+ * taken yet cancels its volley request and adds a new one with the new priority. A dispatcher can take the old
+ * one at the same moment, in which case it is fetched twice, but only the new one is delivered. So only requests with
+ * an idempotent method are moved.
+ * <br />
+ * Requests are cancelled through a {@link com.raizlabs.android.broker.cancel.CancellationRegistry} instead of
+ * walking the volley queue, by the request if there is one, otherwise by metadata, or by group.
  */
-public class VolleyExecutor implements RequestExecutor<Object> {
+public class VolleyExecutor implements ReprioritizableExecutor<Object>, GroupCancellableExecutor<Object> {
 
     /**
      * Default timeout set to 15 seconds
@@ -36,6 +53,11 @@ public class VolleyExecutor implements RequestExecutor<Object> {
 
     private HttpClientStack mStack;
 
+    /**
+     * The volley request that currently runs each request, until it is delivered or cancelled.
+     */
+    private final CancellationRegistry<BrokerVolleyRequest> mVolleyRequests = new CancellationRegistry<>();
+
     /**
      * This defines the retry policy for all requests on this executor. This is a default retry policy with
      * a timeout of 15 seconds (since 2.5 seconds for default is pretty quick).
@@ -45,6 +67,14 @@ public class VolleyExecutor implements RequestExecutor<Object> {
             DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
             DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
 
+    /**
+     * The retries and backoff of the retry policy, kept for requests with a timeout of their own, since volley's
+     * policies do not expose them.
+     */
+    private int mMaxRetries = DefaultRetryPolicy.DEFAULT_MAX_RETRIES;
+
+    private float mBackoffMultiplier = DefaultRetryPolicy.DEFAULT_BACKOFF_MULT;
+
     /**
      * Sets a custom stack for us to use in order to manage cookies.
      *
@@ -55,7 +85,8 @@ public class VolleyExecutor implements RequestExecutor<Object> {
     }
 
     /**
-     * Defines a custom {@link com.android.volley.RetryPolicy} for volley.
+     * Defines a custom {@link com.android.volley.RetryPolicy} for volley. Requests with a timeout of their own keep
+     * the retries and backoff set with {@link #setRetryPolicy(int, int, float)}.
      *
      * @param retryPolicy
      */
@@ -63,6 +94,20 @@ public class VolleyExecutor implements RequestExecutor<Object> {
         mRetryPolicy = retryPolicy;
     }
 
+    /**
+     * Defines a {@link com.android.volley.DefaultRetryPolicy} for volley. Requests with a timeout of their own start
+     * from it instead of the timeout here, with the same retries and backoff.
+     *
+     * @param timeoutMs         The initial socket timeout in milliseconds.
+     * @param maxRetries        The most times a request is retried.
+     * @param backoffMultiplier How much the timeout grows with each retry.
+     */
+    public void setRetryPolicy(int timeoutMs, int maxRetries, float backoffMultiplier) {
+        mRetryPolicy = new DefaultRetryPolicy(timeoutMs, maxRetries, backoffMultiplier);
+        mMaxRetries = maxRetries;
+        mBackoffMultiplier = backoffMultiplier;
+    }
+
     /**
      * @return The queue for the {@link com.raizlabs.android.broker.volley.VolleyExecutor}
      */
@@ -91,8 +136,24 @@ public class VolleyExecutor implements RequestExecutor<Object> {
         return mRetryPolicy;
     }
 
+    /**
+     * @param request The request to run.
+     * @return The policy of this executor, or one that starts from the timeout of the request if it has its own.
+     */
+    private RetryPolicy getRetryPolicy(Request request) {
+        if (!request.hasTimeout()) {
+            return mRetryPolicy;
+        }
+        return new DefaultRetryPolicy((int) Math.min(request.getTimeout(), Integer.MAX_VALUE),
+                mMaxRetries, mBackoffMultiplier);
+    }
+
     @Override
-    public void execute(final Request request) {
+    public void execute(Request request) {
+        add(request);
+    }
+
+    private void add(final Request request) {
         Response.ErrorListener errorListener = new Response.ErrorListener() {
             @Override
             public void onErrorResponse(VolleyError volleyError) {
@@ -102,6 +163,11 @@ public class VolleyExecutor implements RequestExecutor<Object> {
                 } catch (Throwable ignored) {
                     ignored.printStackTrace();
                 }
+                NetworkResponse response = volleyError.networkResponse;
+                if (response != null) {
+                    RequestUtils.interceptErrorResponse(request, response.statusCode, response.headers,
+                            response.data, HttpHeaderParser.parseCharset(response.headers));
+                }
                 RequestCallback callback = request.getCallback();
                 if (callback != null) {
                     callback.onRequestError(volleyError, errStr);
@@ -109,29 +175,77 @@ public class VolleyExecutor implements RequestExecutor<Object> {
             }
         };
 
-        com.android.volley.Request volleyRequest = new BrokerVolleyRequest(request, errorListener);
-        volleyRequest.setRetryPolicy(mRetryPolicy);
+        BrokerVolleyRequest volleyRequest = new BrokerVolleyRequest(request, this, errorListener);
+        volleyRequest.setRetryPolicy(getRetryPolicy(request));
+        mVolleyRequests.register(request, volleyRequest);
         getQueue().add(volleyRequest);
     }
 
+    /**
+     * Stops tracking a volley request once it was delivered, unless it was replaced already.
+     */
+    void finish(BrokerVolleyRequest volleyRequest) {
+        mVolleyRequests.unregister(volleyRequest.getRequest(), volleyRequest);
+    }
+
     @Override
-    public void cancelRequest(Object tag, final Request request) {
-        if (tag != null && !tag.equals("")) {
-            getQueue().cancelAll(tag);
+    public boolean reprioritizeRequest(Object tag, Request request, Priority priority) {
+        List<Request> requests = new ArrayList<>();
+        if (request != null) {
+            request.setPriority(priority);
+            requests.add(request);
+        } else if (tag != null && !tag.equals("")) {
+            for (BrokerVolleyRequest tracked : mVolleyRequests.getByMetadata(tag)) {
+                tracked.getRequest().setPriority(priority);
+                requests.add(tracked.getRequest());
+            }
+        }
+
+        boolean moved = false;
+        for (Request tracked : requests) {
+            if (!RequestUtils.isIdempotent(tracked.getMethod())) {
+                continue;
+            }
+            BrokerVolleyRequest volleyRequest = mVolleyRequests.get(tracked);
+            if (volleyRequest != null && !volleyRequest.isStarted() && !volleyRequest.isCanceled()
+                    && mVolleyRequests.unregister(tracked, volleyRequest)) {
+                volleyRequest.cancel();
+                add(tracked);
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    @Override
+    public void cancelRequest(Object tag, Request request) {
+        List<BrokerVolleyRequest> cancelled;
+        if (request != null) {
+            BrokerVolleyRequest volleyRequest = mVolleyRequests.remove(request);
+            cancelled = volleyRequest != null ? Collections.singletonList(volleyRequest)
+                    : Collections.<BrokerVolleyRequest>emptyList();
+        } else if (tag != null && !tag.equals("")) {
+            cancelled = mVolleyRequests.removeByMetadata(tag);
         } else {
-            getQueue().cancelAll(new RequestQueue.RequestFilter() {
-                @Override
-                public boolean apply(com.android.volley.Request<?> volleyRequest) {
-                    String url = request.getFullUrl();
-                    String url2 = volleyRequest.getUrl();
-                    return url.equalsIgnoreCase(url2);
-                }
-            });
+            return;
+        }
+        cancel(cancelled);
+    }
+
+    @Override
+    public void cancelGroup(String group) {
+        cancel(mVolleyRequests.removeGroup(group));
+    }
+
+    private static void cancel(List<BrokerVolleyRequest> volleyRequests) {
+        for (BrokerVolleyRequest volleyRequest : volleyRequests) {
+            volleyRequest.cancel();
         }
     }
 
     @Override
     public void cancelAllRequests() {
+        mVolleyRequests.removeAll();
         getQueue().cancelAll(new RequestQueue.RequestFilter() {
                 @Override
                 public boolean apply(com.android.volley.Request<?> request) {